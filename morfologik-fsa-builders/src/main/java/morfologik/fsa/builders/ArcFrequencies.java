@@ -0,0 +1,200 @@
+package morfologik.fsa.builders;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntLongHashMap;
+import java.util.BitSet;
+import java.util.Set;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSAFlags;
+
+/**
+ * Counts how often each arc of an automaton is traversed by lookups of sample sequences (for
+ * example words of a corpus, with their frequencies). Serializers can then place the arcs of each
+ * state in the order of decreasing counts so that formats scanning arcs linearly find the common
+ * transitions first.
+ *
+ * <p>Arcs that are never traversed keep their original relative order, after all the counted arcs.
+ * Note that changing the order of arcs changes the order in which sequences are enumerated (and
+ * their perfect hash numbers).
+ *
+ * @see FSA5Serializer#withArcFrequencies(ArcFrequencies)
+ * @see CFSA2Serializer#withArcFrequencies(ArcFrequencies)
+ */
+public final class ArcFrequencies {
+  /** The automaton whose arcs are counted. */
+  private final FSA fsa;
+
+  /** A hash map of [arc, count] pairs. */
+  private final IntLongHashMap counts = new IntLongHashMap();
+
+  /** Nodes with at least one counted arc. */
+  private final BitSet countedNodes = new BitSet();
+
+  /**
+   * @param fsa The automaton whose arcs are counted. The same automaton must be passed to the
+   *     serializer.
+   */
+  public ArcFrequencies(FSA fsa) {
+    this.fsa = fsa;
+  }
+
+  /**
+   * Follows the arcs matching a sequence from the root node, adding <code>count</code> to each
+   * traversed arc. The sequence does not have to be accepted by the automaton, arcs are counted
+   * until the first mismatch.
+   *
+   * @param sequence The input sequence.
+   * @param start Start index in the sequence array.
+   * @param length Length of the sequence.
+   * @param count The number of lookups of this sequence (its frequency), must be positive.
+   */
+  public void add(byte[] sequence, int start, int length, long count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Count must be positive: " + count);
+    }
+
+    int node = fsa.getRootNode();
+    for (int i = start, end = start + length; i < end; i++) {
+      final int arc = fsa.getArc(node, sequence[i]);
+      if (arc == 0) {
+        break;
+      }
+
+      counts.addTo(arc, count);
+      countedNodes.set(node);
+      if (fsa.isArcTerminal(arc)) {
+        break;
+      }
+      node = fsa.getEndNode(arc);
+    }
+  }
+
+  /**
+   * @param arc The arc's identifier.
+   * @return Returns the total count of lookups that traversed the arc.
+   */
+  public long getCount(int arc) {
+    return counts.get(arc);
+  }
+
+  /**
+   * Returns a view of the automaton with arcs of each state in the order of decreasing counts (ties
+   * keep the original order).
+   */
+  FSA orderArcs(FSA fsa) {
+    if (fsa != this.fsa) {
+      throw new IllegalArgumentException("Arc frequencies were collected for another automaton.");
+    }
+
+    final IntIntHashMap firstArcs = new IntIntHashMap();
+    final IntIntHashMap nextArcs = new IntIntHashMap();
+    final IntArrayList arcs = new IntArrayList();
+    for (int node = countedNodes.nextSetBit(0);
+        node >= 0;
+        node = countedNodes.nextSetBit(node + 1)) {
+      arcs.clear();
+      for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+        arcs.add(arc);
+      }
+
+      // Insertion sort (stable), only a few arcs of each state are usually counted.
+      final int[] buffer = arcs.buffer;
+      boolean moved = false;
+      for (int j = 1; j < arcs.size(); j++) {
+        final int arc = buffer[j];
+        final long count = counts.get(arc);
+        int k = j;
+        while (k > 0 && counts.get(buffer[k - 1]) < count) {
+          buffer[k] = buffer[k - 1];
+          k--;
+        }
+        buffer[k] = arc;
+        moved |= k != j;
+      }
+
+      if (moved) {
+        firstArcs.put(node, buffer[0]);
+        for (int j = 0; j < arcs.size(); j++) {
+          nextArcs.put(buffer[j], j + 1 < arcs.size() ? buffer[j + 1] : 0);
+        }
+      }
+    }
+
+    return firstArcs.isEmpty() ? fsa : new ReorderedFSA(fsa, firstArcs, nextArcs);
+  }
+
+  /** A view of an automaton with a different order of arcs of some states. */
+  private static final class ReorderedFSA extends FSA {
+    private final FSA fsa;
+
+    /** A hash map of [node, first arc] pairs of reordered states. */
+    private final IntIntHashMap firstArcs;
+
+    /** A hash map of [arc, next arc] pairs of reordered states. */
+    private final IntIntHashMap nextArcs;
+
+    ReorderedFSA(FSA fsa, IntIntHashMap firstArcs, IntIntHashMap nextArcs) {
+      this.fsa = fsa;
+      this.firstArcs = firstArcs;
+      this.nextArcs = nextArcs;
+    }
+
+    @Override
+    public int getRootNode() {
+      return fsa.getRootNode();
+    }
+
+    @Override
+    public int getFirstArc(int node) {
+      final int index = firstArcs.indexOf(node);
+      return firstArcs.indexExists(index) ? firstArcs.indexGet(index) : fsa.getFirstArc(node);
+    }
+
+    @Override
+    public int getNextArc(int arc) {
+      final int index = nextArcs.indexOf(arc);
+      return nextArcs.indexExists(index) ? nextArcs.indexGet(index) : fsa.getNextArc(arc);
+    }
+
+    @Override
+    public int getArc(int node, byte label) {
+      return fsa.getArc(node, label);
+    }
+
+    @Override
+    public byte getArcLabel(int arc) {
+      return fsa.getArcLabel(arc);
+    }
+
+    @Override
+    public boolean isArcFinal(int arc) {
+      return fsa.isArcFinal(arc);
+    }
+
+    @Override
+    public boolean isArcTerminal(int arc) {
+      return fsa.isArcTerminal(arc);
+    }
+
+    @Override
+    public int getEndNode(int arc) {
+      return fsa.getEndNode(arc);
+    }
+
+    @Override
+    public int getArcCount(int node) {
+      return fsa.getArcCount(node);
+    }
+
+    @Override
+    public int getRightLanguageCount(int node) {
+      return fsa.getRightLanguageCount(node);
+    }
+
+    @Override
+    public Set<FSAFlags> getFlags() {
+      return fsa.getFlags();
+    }
+  }
+}
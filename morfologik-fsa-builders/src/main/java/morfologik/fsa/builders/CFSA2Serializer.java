@@ -3,47 +3,54 @@ package morfologik.fsa.builders;
 import static morfologik.fsa.CFSA2.*;
 import static morfologik.fsa.FSAFlags.*;
 
-import com.carrotsearch.hppc.BoundedProportionalArraySizingStrategy;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntIntHashMap;
 import com.carrotsearch.hppc.IntStack;
-import com.carrotsearch.hppc.cursors.IntCursor;
-import com.carrotsearch.hppc.cursors.IntIntCursor;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import morfologik.fsa.CFSA2;
 import morfologik.fsa.FSA;
 import morfologik.fsa.FSAFlags;
 import morfologik.fsa.FSAHeader;
-import morfologik.fsa.StateVisitor;
 import morfologik.fsa.builders.FSAUtils.IntIntHolder;
 
 /**
  * Serializes in-memory {@link FSA} graphs to {@link CFSA2}.
  *
  * <p>It is possible to serialize the automaton with numbers required for perfect hashing. See
- * {@link #withNumbers()} method.
+ * {@link #withNumbers()} method. Arcs can be sorted for faster lookups, see {@link
+ * #withSortedArcs()}, and states close to the root can be kept together, see {@link
+ * #withBreadthFirstLevels(int)}.
+ *
+ * <p>Alternative state layouts are evaluated concurrently for large automata, see {@link
+ * #withThreads(int)}. {@link #serializeWithStats(FSA, OutputStream)} returns the time spent in each
+ * phase.
  *
  * @see CFSA2
  */
 public final class CFSA2Serializer implements FSASerializer {
-  private final Logger logger = Logger.getLogger(getClass().getName());
-
   /** Supported flags. */
-  private static final EnumSet<FSAFlags> flags = EnumSet.of(NUMBERS, FLEXIBLE, STOPBIT, NEXTBIT);
+  private static final EnumSet<FSAFlags> flags =
+      EnumSet.of(NUMBERS, FLEXIBLE, STOPBIT, NEXTBIT, SORTED_ARCS);
 
   /** No-state id. */
   private static final int NO_STATE = -1;
 
+  /** The minimum number of states for which layouts are evaluated concurrently. */
+  private static final int MIN_STATES_FOR_THREADS = 10000;
+
   /**
    * <code>true</code> if we should serialize with numbers.
    *
@@ -51,14 +58,34 @@ public final class CFSA2Serializer implements FSASerializer {
    */
   private boolean withNumbers;
 
-  /** A hash map of [state, offset] pairs. */
-  private IntIntHashMap offsets = new IntIntHashMap();
+  /**
+   * <code>true</code> if arcs should be sorted by label.
+   *
+   * @see #withSortedArcs()
+   */
+  private boolean withSortedArcs;
 
-  /** A hash map of [state, right-language-count] pairs. */
-  private IntIntHashMap numbers = new IntIntHashMap();
+  /**
+   * Arc counts to order arcs of each state by, if any.
+   *
+   * @see #withArcFrequencies(ArcFrequencies)
+   */
+  private ArcFrequencies arcFrequencies;
+
+  /**
+   * The number of levels (arc distance from the root) of states placed first, in breadth-first
+   * order.
+   *
+   * @see #withBreadthFirstLevels(int)
+   */
+  private int breadthFirstLevels = -1;
 
-  /** Scratch array for serializing vints. */
-  private final byte[] scratch = new byte[5];
+  /**
+   * The number of threads evaluating state layouts.
+   *
+   * @see #withThreads(int)
+   */
+  private int threads = Runtime.getRuntime().availableProcessors();
 
   /** The most frequent labels for integrating with the flags field. */
   private byte[] labelsIndex;
@@ -69,6 +96,74 @@ public final class CFSA2Serializer implements FSASerializer {
    */
   private int[] labelsInvIndex;
 
+  /** Time spent in each phase of a serialization and its outcome. */
+  public static final class Stats {
+    /** The number of serialized states. */
+    public final int states;
+
+    /** The number of states with most inlinks moved to the front of the automaton. */
+    public final int statesMoved;
+
+    /** The number of alternative state layouts evaluated. */
+    public final int layouts;
+
+    /** The size of the automaton (without the header) before moving any states. */
+    public final int initialSize;
+
+    /** The size of the automaton (without the header). */
+    public final int size;
+
+    /** Time spent collecting states and arcs of the input automaton. */
+    public final long collectMillis;
+
+    /** Time spent computing the right-language counts (if serialized with numbers). */
+    public final long numbersMillis;
+
+    /** Time spent computing and evaluating state layouts. */
+    public final long layoutMillis;
+
+    /** Time spent writing the automaton. */
+    public final long emitMillis;
+
+    Stats(
+        int states,
+        int statesMoved,
+        int layouts,
+        int initialSize,
+        int size,
+        long collectMillis,
+        long numbersMillis,
+        long layoutMillis,
+        long emitMillis) {
+      this.states = states;
+      this.statesMoved = statesMoved;
+      this.layouts = layouts;
+      this.initialSize = initialSize;
+      this.size = size;
+      this.collectMillis = collectMillis;
+      this.numbersMillis = numbersMillis;
+      this.layoutMillis = layoutMillis;
+      this.emitMillis = emitMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%,d states (%,d moved), %,d layouts, size: %,d -> %,d bytes;"
+              + " collect: %,d ms, numbers: %,d ms, layout: %,d ms, emit: %,d ms",
+          states,
+          statesMoved,
+          layouts,
+          initialSize,
+          size,
+          collectMillis,
+          numbersMillis,
+          layoutMillis,
+          emitMillis);
+    }
+  }
+
   /**
    * Serialize the automaton with the number of right-language sequences in each node. This is
    * required to implement perfect hashing. The numbering also preserves the order of input
@@ -81,6 +176,64 @@ public final class CFSA2Serializer implements FSASerializer {
     return this;
   }
 
+  /**
+   * Serialize the automaton with arcs of each state sorted by their (unsigned) labels. States with
+   * many arcs are serialized with arcs of equal length so that lookups can binary-search them,
+   * other states can stop scanning arcs early. This makes the automaton slightly larger.
+   *
+   * @see FSAFlags#SORTED_ARCS
+   * @return Returns the same object for easier call chaining.
+   */
+  public CFSA2Serializer withSortedArcs() {
+    withSortedArcs = true;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Arcs of states that no counted lookup passes through keep their order. The order of
+   * sequences (and their numbers, see {@link #withNumbers()}) follows the new order of arcs. This
+   * option cannot be combined with {@link #withSortedArcs()}.
+   */
+  @Override
+  public CFSA2Serializer withArcFrequencies(ArcFrequencies frequencies) {
+    this.arcFrequencies = frequencies;
+    return this;
+  }
+
+  /**
+   * Place the root state and all states up to <code>levels</code> arcs away from it at the start of
+   * the automaton, in breadth-first order. Every lookup passes through these states, so keeping
+   * them together (and close to their siblings) reduces cache misses on large automata. This makes
+   * the automaton slightly larger since fewer arcs can point at the state that follows.
+   *
+   * @param levels The number of levels of states to place first (0 places only the root state).
+   * @return Returns the same object for easier call chaining.
+   */
+  public CFSA2Serializer withBreadthFirstLevels(int levels) {
+    if (levels < 0) {
+      throw new IllegalArgumentException("The number of levels must be >= 0: " + levels);
+    }
+    this.breadthFirstLevels = levels;
+    return this;
+  }
+
+  /**
+   * Sets the number of threads evaluating alternative state layouts of large automata (the number
+   * of available processors by default). The output does not depend on the number of threads.
+   *
+   * @param threads The number of threads, 1 evaluates layouts in the calling thread.
+   * @return Returns the same object for easier call chaining.
+   */
+  public CFSA2Serializer withThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The number of threads must be >= 1: " + threads);
+    }
+    this.threads = threads;
+    return this;
+  }
+
   /**
    * Serializes any {@link FSA} to {@link CFSA2} stream.
    *
@@ -89,33 +242,75 @@ public final class CFSA2Serializer implements FSASerializer {
    */
   @Override
   public <T extends OutputStream> T serialize(final FSA fsa, T os) throws IOException {
+    serializeWithStats(fsa, os);
+    return os;
+  }
+
+  /**
+   * Serializes any {@link FSA} to {@link CFSA2} stream.
+   *
+   * @param fsa The automaton to serialize.
+   * @param os The output stream to serialize to.
+   * @return Returns the time spent in each phase of the serialization and its outcome.
+   * @throws IOException Rethrown if an I/O error occurs.
+   */
+  public Stats serializeWithStats(FSA fsa, OutputStream os) throws IOException {
+    if (arcFrequencies != null) {
+      if (withSortedArcs) {
+        throw new IllegalStateException("Sorted arcs cannot be ordered by their frequencies.");
+      }
+      fsa = arcFrequencies.orderArcs(fsa);
+    }
+
+    long start = System.nanoTime();
+
+    /*
+     * Collect all states and their arcs into arrays indexed by state ordinals.
+     */
+    final StateGraph graph = new StateGraph(fsa);
+
     /*
      * Calculate the most frequent labels and build indexed labels dictionary.
      */
-    computeLabelsIndex(fsa);
+    computeLabelsIndex(graph);
+    final long collectMillis = millisSince(start);
 
     /*
      * Calculate the number of bytes required for the node data, if
      * serializing with numbers.
      */
+    start = System.nanoTime();
     if (withNumbers) {
-      this.numbers = FSAUtils.rightLanguageForAllStates(fsa);
+      IntIntHashMap numbers = FSAUtils.rightLanguageForAllStates(fsa);
+      graph.numbers = new int[graph.size()];
+      for (int state = 0; state < graph.size(); state++) {
+        graph.numbers[state] = numbers.get(graph.nodes[state]);
+      }
     }
+    final long numbersMillis = millisSince(start);
 
     /*
      * Linearize all the states, optimizing their layout.
      */
-    IntArrayList linearized = linearize(fsa);
+    start = System.nanoTime();
+    final Layout[] layouts = linearize(graph);
+    final Layout initial = layouts[0];
+    final Layout layout = layouts[layouts.length - 1];
+    final long layoutMillis = millisSince(start);
 
     /*
      * Emit the header.
      */
+    start = System.nanoTime();
     FSAHeader.write(os, CFSA2.VERSION);
 
     EnumSet<FSAFlags> fsaFlags = EnumSet.of(FLEXIBLE, STOPBIT, NEXTBIT);
     if (withNumbers) {
       fsaFlags.add(NUMBERS);
     }
+    if (withSortedArcs) {
+      fsaFlags.add(SORTED_ARCS);
+    }
 
     final short sflags = FSAFlags.asShort(fsaFlags);
     os.write((sflags >> 8) & 0xFF);
@@ -130,25 +325,33 @@ public final class CFSA2Serializer implements FSASerializer {
     /*
      * Emit the automaton.
      */
-    int size = emitNodes(fsa, os, linearized);
+    int size = layout.emitNodes(os);
     assert size == 0 : "Size changed in the final pass?";
+    final long emitMillis = millisSince(start);
+
+    return new Stats(
+        graph.size(),
+        layout.statesMoved,
+        layouts.length - 1,
+        initial.size,
+        layout.size,
+        collectMillis,
+        numbersMillis,
+        layoutMillis,
+        emitMillis);
+  }
 
-    return os;
+  private static long millisSince(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
   }
 
   /** Compute a set of labels to be integrated with the flags field. */
-  private void computeLabelsIndex(final FSA fsa) {
+  private void computeLabelsIndex(final StateGraph graph) {
     // Compute labels count.
     final int[] countByValue = new int[256];
-
-    fsa.visitAllStates(
-        new StateVisitor() {
-          public boolean accept(int state) {
-            for (int arc = fsa.getFirstArc(state); arc != 0; arc = fsa.getNextArc(arc))
-              countByValue[fsa.getArcLabel(arc) & 0xff]++;
-            return true;
-          }
-        });
+    for (int arc = 0; arc < graph.arcCount(); arc++) {
+      countByValue[graph.labels[arc] & 0xff]++;
+    }
 
     // Order by descending frequency of counts and increasing label value.
     Comparator<IntIntHolder> comparator =
@@ -185,296 +388,501 @@ public final class CFSA2Serializer implements FSASerializer {
     return flags;
   }
 
-  /** Linearization of states. */
-  private IntArrayList linearize(final FSA fsa) throws IOException {
-    /*
-     * Compute the states with most inlinks. These should be placed as close to the
-     * start of the automaton, as possible so that v-coded addresses are tiny.
-     */
-    final IntIntHashMap inlinkCount = computeInlinkCount(fsa);
-
-    /*
-     * An array of ordered states for serialization.
-     */
-    final IntArrayList linearized =
-        new IntArrayList(0, new BoundedProportionalArraySizingStrategy(1000, 10000, 1.5f));
-
+  /**
+   * Linearization of states.
+   *
+   * @return Returns the initial layout (no states moved) first, then all probed layouts and the
+   *     selected layout last.
+   */
+  private Layout[] linearize(final StateGraph graph) {
     /*
      * Determine which states should be linearized first (at fixed positions) so as to
-     * minimize the place occupied by goto fields.
+     * minimize the place occupied by goto fields. These are the states with most inlinks,
+     * they should be placed as close to the start of the automaton as possible so that
+     * v-coded addresses are tiny.
      */
-    int maxStates = Integer.MAX_VALUE;
-    int minInlinkCount = 2;
-    int[] states = computeFirstStates(inlinkCount, maxStates, minInlinkCount);
+    final int minInlinkCount = 2;
+    final int[] states = computeFirstStates(graph, minInlinkCount);
+    final int[] breadthFirstStates = computeBreadthFirstStates(graph, breadthFirstLevels);
 
     /*
-     * Compute initial addresses, without node rearrangements.
+     * Probe the initial region a little bit, looking for optimal cut. It can't be binary search
+     * because the result isn't monotonic. The initial layout (no states moved) and all cuts
+     * are independent of each other and evaluated concurrently.
      */
-    int serializedSize = linearizeAndCalculateOffsets(fsa, new IntArrayList(), linearized, offsets);
+    final IntArrayList cuts = new IntArrayList();
+    cuts.add(0);
+    for (int cut = Math.min(25, states.length); cut <= Math.min(150, states.length); cut += 25) {
+      cuts.add(cut);
+    }
 
-    /*
-     * Probe for better node arrangements by selecting between [lower, upper]
-     * nodes from the potential candidate nodes list.
-     */
-    IntArrayList sublist = new IntArrayList();
-    sublist.buffer = states;
-    sublist.elementsCount = states.length;
+    final List<Callable<Layout>> tasks = new ArrayList<>();
+    for (int i = 0; i < cuts.size(); i++) {
+      final int cut = cuts.get(i);
+      tasks.add(
+          new Callable<Layout>() {
+            public Layout call() {
+              Layout layout = new Layout(graph, breadthFirstStates, states, cut);
+              layout.calculateOffsets();
+              return layout;
+            }
+          });
+    }
+    final List<Layout> layouts = evaluate(tasks, graph.size());
 
     /*
-     * Probe the initial region a little bit, looking for optimal cut. It can't be binary search
-     * because the result isn't monotonic.
+     * Cut at the last point before the size stops decreasing.
      */
-    log(Level.FINE, "Compacting, initial output size: %,d", serializedSize);
-    int cutAt = 0;
-    for (int cut = Math.min(25, states.length); cut <= Math.min(150, states.length); cut += 25) {
-      sublist.elementsCount = cut;
-      int newSize = linearizeAndCalculateOffsets(fsa, sublist, linearized, offsets);
-      log(Level.FINE, "Moved %,d states, output size: %,d", sublist.size(), newSize);
-      if (newSize >= serializedSize) {
+    final int serializedSize = layouts.get(0).size;
+    Layout selected = layouts.get(0);
+    for (int i = 1; i < layouts.size(); i++) {
+      if (layouts.get(i).size >= serializedSize) {
         break;
       }
-      cutAt = cut;
+      selected = layouts.get(i);
     }
 
-    /*
-     * Cut at the calculated point and repeat linearization.
-     */
-    sublist.elementsCount = cutAt;
-    int size = linearizeAndCalculateOffsets(fsa, sublist, linearized, offsets);
-    log(Level.FINE, "%,d states moved, final size: %,d", sublist.size(), size);
-    return linearized;
+    layouts.add(selected);
+    return layouts.toArray(new Layout[layouts.size()]);
   }
 
-  private void log(Level level, String msg, Object... args) {
-    logger.log(level, String.format(Locale.ROOT, msg, args));
+  /** Runs the tasks, concurrently if there are enough states to make it worth it. */
+  private List<Layout> evaluate(List<Callable<Layout>> tasks, int stateCount) {
+    final List<Layout> layouts = new ArrayList<>();
+    final int poolSize = Math.min(threads, tasks.size());
+    if (poolSize <= 1 || stateCount < MIN_STATES_FOR_THREADS) {
+      for (Callable<Layout> task : tasks) {
+        try {
+          layouts.add(task.call());
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return layouts;
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool(poolSize);
+    try {
+      final List<ForkJoinTask<Layout>> submitted = new ArrayList<>();
+      for (Callable<Layout> task : tasks) {
+        submitted.add(pool.submit(task));
+      }
+      for (ForkJoinTask<Layout> task : submitted) {
+        layouts.add(task.join());
+      }
+      return layouts;
+    } finally {
+      pool.shutdownNow();
+    }
   }
 
   /**
-   * Linearize all states, putting <code>states</code> in front of the automaton and calculating
-   * stable state offsets.
+   * Compute the set of states that should be linearized first to minimize other states goto length
+   * (states with more than <code>minInlinkCount</code> inlinks, most inlinks first).
    */
-  private int linearizeAndCalculateOffsets(
-      FSA fsa, IntArrayList states, IntArrayList linearized, IntIntHashMap offsets)
-      throws IOException {
-    final BitSet visited = new BitSet();
-    final IntStack nodes = new IntStack();
-    linearized.clear();
-
-    /*
-     * Linearize states with most inlinks first.
-     */
-    for (int i = 0; i < states.size(); i++) {
-      linearizeState(fsa, nodes, linearized, visited, states.get(i));
+  private int[] computeFirstStates(StateGraph graph, int minInlinkCount) {
+    final int[] inlinkCount = new int[graph.size()];
+    for (int arc = 0; arc < graph.arcCount(); arc++) {
+      if (graph.targets[arc] != NO_STATE) {
+        inlinkCount[graph.targets[arc]]++;
+      }
     }
 
-    /*
-     * Linearize the remaining states by chaining them one after another, in depth-order.
-     */
-    nodes.push(fsa.getRootNode());
-    while (!nodes.isEmpty()) {
-      final int node = nodes.pop();
-      if (visited.get(node)) continue;
-
-      linearizeState(fsa, nodes, linearized, visited, node);
+    // Sort by descending inlink count, then by descending node id.
+    long[] keys = new long[graph.size()];
+    int count = 0;
+    for (int state = 0; state < graph.size(); state++) {
+      if (inlinkCount[state] > minInlinkCount) {
+        keys[count++] = ((long) inlinkCount[state] << 32) | graph.nodes[state];
+      }
     }
+    Arrays.sort(keys, 0, count);
 
-    /*
-     * Calculate new state offsets. This is iterative. We start with
-     * maximum potential offsets and recalculate until converged.
-     */
-    int MAX_OFFSET = Integer.MAX_VALUE;
-    for (IntCursor c : linearized) {
-      offsets.put(c.value, MAX_OFFSET);
+    final IntIntHashMap ordinals = graph.ordinals;
+    int[] states = new int[count];
+    for (int i = 0; i < count; i++) {
+      states[i] = ordinals.get((int) keys[count - 1 - i]);
     }
+    return states;
+  }
 
-    int i, j = 0;
-    while ((i = emitNodes(fsa, null, linearized)) > 0) {
-      j = i;
+  /** Compute states up to <code>levels</code> arcs away from the root, in breadth-first order. */
+  private int[] computeBreadthFirstStates(final StateGraph graph, int levels) {
+    if (levels < 0 || graph.root == NO_STATE) {
+      return new int[0];
     }
-    return j;
-  }
 
-  /** Add a state to linearized list. */
-  private void linearizeState(
-      final FSA fsa, IntStack nodes, IntArrayList linearized, BitSet visited, int node) {
-    linearized.add(node);
-    visited.set(node);
-    for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
-      if (!fsa.isArcTerminal(arc)) {
-        final int target = fsa.getEndNode(arc);
-        if (!visited.get(target)) nodes.push(target);
+    IntArrayList states = new IntArrayList();
+    boolean[] visited = new boolean[graph.size()];
+    states.add(graph.root);
+    visited[graph.root] = true;
+
+    for (int level = 0, levelStart = 0; level < levels && levelStart < states.size(); level++) {
+      final int levelEnd = states.size();
+      for (int i = levelStart; i < levelEnd; i++) {
+        final int state = states.get(i);
+        for (int arc = graph.firstArcs[state]; arc < graph.firstArcs[state + 1]; arc++) {
+          final int target = graph.targets[arc];
+          if (target != NO_STATE && !visited[target]) {
+            visited[target] = true;
+            states.add(target);
+          }
+        }
       }
+      levelStart = levelEnd;
     }
+
+    return states.toArray();
   }
 
   /**
-   * Compute the set of states that should be linearized first to minimize other states goto length.
+   * All states reachable from the root of the input automaton and their arcs, in arrays indexed by
+   * state ordinals (in depth-first discovery order) and arc ordinals.
    */
-  private int[] computeFirstStates(IntIntHashMap inlinkCount, int maxStates, int minInlinkCount) {
-    Comparator<IntIntHolder> comparator =
-        new Comparator<FSAUtils.IntIntHolder>() {
-          public int compare(IntIntHolder o1, IntIntHolder o2) {
-            int v = o1.a - o2.a;
-            return v == 0 ? (o1.b - o2.b) : v;
+  private final class StateGraph {
+    /** State ordinal to the node of the input automaton. */
+    final int[] nodes;
+
+    /** Nodes of the input automaton to state ordinals. */
+    final IntIntHashMap ordinals;
+
+    /** The root's ordinal or {@link #NO_STATE}. */
+    final int root;
+
+    /**
+     * Arcs of state <code>i</code> are between <code>firstArcs[i]</code> (inclusive) and <code>
+     * firstArcs[i + 1]</code> (exclusive).
+     */
+    final int[] firstArcs;
+
+    final byte[] labels;
+    final boolean[] finals;
+
+    /** Target state ordinals or {@link #NO_STATE} for terminal arcs. */
+    final int[] targets;
+
+    /** Arc ordinals in the serialization order (sorted by label within a state, if requested). */
+    final int[] arcOrder;
+
+    /** Right-language counts, if serialized with numbers. */
+    int[] numbers;
+
+    StateGraph(FSA fsa) {
+      IntArrayList nodeList = new IntArrayList();
+      ordinals = new IntIntHashMap();
+      if (fsa.getRootNode() != 0) {
+        IntStack stack = new IntStack();
+        stack.push(fsa.getRootNode());
+        ordinals.put(fsa.getRootNode(), 0);
+        nodeList.add(fsa.getRootNode());
+        while (!stack.isEmpty()) {
+          final int node = stack.pop();
+          for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+            if (!fsa.isArcTerminal(arc)) {
+              final int target = fsa.getEndNode(arc);
+              if (!ordinals.containsKey(target)) {
+                ordinals.put(target, nodeList.size());
+                nodeList.add(target);
+                stack.push(target);
+              }
+            }
           }
-        };
+        }
+      }
+      nodes = nodeList.toArray();
+      root = nodes.length > 0 ? 0 : NO_STATE;
+
+      int arcCount = 0;
+      firstArcs = new int[nodes.length + 1];
+      for (int state = 0; state < nodes.length; state++) {
+        firstArcs[state] = arcCount;
+        arcCount += fsa.getArcCount(nodes[state]);
+      }
+      firstArcs[nodes.length] = arcCount;
+
+      labels = new byte[arcCount];
+      finals = new boolean[arcCount];
+      targets = new int[arcCount];
+      arcOrder = new int[arcCount];
+      for (int state = 0, i = 0; state < nodes.length; state++) {
+        for (int arc = fsa.getFirstArc(nodes[state]); arc != 0; arc = fsa.getNextArc(arc), i++) {
+          labels[i] = fsa.getArcLabel(arc);
+          finals[i] = fsa.isArcFinal(arc);
+          targets[i] = fsa.isArcTerminal(arc) ? NO_STATE : ordinals.get(fsa.getEndNode(arc));
+          arcOrder[i] = i;
+        }
 
-    PriorityQueue<IntIntHolder> stateInlink = new PriorityQueue<IntIntHolder>(1, comparator);
-    IntIntHolder scratch = new IntIntHolder();
-    for (IntIntCursor c : inlinkCount) {
-      if (c.value > minInlinkCount) {
-        scratch.a = c.value;
-        scratch.b = c.key;
-
-        if (stateInlink.size() < maxStates || comparator.compare(scratch, stateInlink.peek()) > 0) {
-          stateInlink.add(new IntIntHolder(c.value, c.key));
-          if (stateInlink.size() > maxStates) {
-            stateInlink.remove();
+        if (withSortedArcs) {
+          // Insertion sort, arcs of automata built from sorted input are already sorted.
+          for (int j = firstArcs[state] + 1; j < firstArcs[state + 1]; j++) {
+            final int arc = arcOrder[j];
+            final int label = labels[arc] & 0xff;
+            int k = j;
+            while (k > firstArcs[state] && (labels[arcOrder[k - 1]] & 0xff) > label) {
+              arcOrder[k] = arcOrder[k - 1];
+              k--;
+            }
+            arcOrder[k] = arc;
           }
         }
       }
     }
 
-    int[] states = new int[stateInlink.size()];
-    for (int position = states.length; !stateInlink.isEmpty(); ) {
-      IntIntHolder i = stateInlink.remove();
-      states[--position] = i.b;
+    int size() {
+      return nodes.length;
     }
 
-    return states;
+    int arcCount() {
+      return labels.length;
+    }
   }
 
-  /** Compute in-link count for each state. */
-  private IntIntHashMap computeInlinkCount(final FSA fsa) {
-    IntIntHashMap inlinkCount = new IntIntHashMap();
-    BitSet visited = new BitSet();
-    IntStack nodes = new IntStack();
-    nodes.push(fsa.getRootNode());
+  /**
+   * A linear order of states and their offsets. Layouts only read the (shared) {@link StateGraph},
+   * so different layouts can be computed concurrently.
+   */
+  private final class Layout {
+    private final StateGraph graph;
+
+    /** State ordinals in serialization order. */
+    final int[] order;
 
-    while (!nodes.isEmpty()) {
-      final int node = nodes.pop();
-      if (visited.get(node)) continue;
+    /** Offsets of states, indexed by state ordinal. */
+    final int[] offsets;
 
-      visited.set(node);
+    /** The number of states with most inlinks placed first. */
+    final int statesMoved;
 
-      for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
-        if (!fsa.isArcTerminal(arc)) {
-          final int target = fsa.getEndNode(arc);
-          inlinkCount.putOrAdd(target, 1, 1);
-          if (!visited.get(target)) nodes.push(target);
+    /** The size of the serialized automaton (without the header). */
+    int size;
+
+    /** Scratch array for serializing vints. */
+    private final byte[] scratch = new byte[5];
+
+    /**
+     * Linearize all states, putting <code>breadthFirstStates</code> and then the first <code>cut
+     * </code> of <code>states</code> in front of the automaton.
+     */
+    Layout(StateGraph graph, int[] breadthFirstStates, int[] states, int cut) {
+      this.graph = graph;
+      this.statesMoved = cut;
+      this.order = new int[graph.size()];
+      this.offsets = new int[graph.size()];
+
+      final boolean[] visited = new boolean[graph.size()];
+      final IntStack nodes = new IntStack();
+      int last = 0;
+
+      /*
+       * Linearize states near the root first, then states with most inlinks.
+       */
+      for (int state : breadthFirstStates) {
+        last = linearizeState(nodes, visited, last, state);
+      }
+      for (int i = 0; i < cut; i++) {
+        if (!visited[states[i]]) {
+          last = linearizeState(nodes, visited, last, states[i]);
         }
       }
-    }
 
-    return inlinkCount;
-  }
-
-  /** Update arc offsets assuming the given goto length. */
-  private int emitNodes(FSA fsa, OutputStream os, IntArrayList linearized) throws IOException {
-    int offset = 0;
-
-    // Add epsilon state.
-    offset += emitNodeData(os, 0);
-    if (fsa.getRootNode() != 0)
-      offset += emitArc(os, BIT_LAST_ARC, (byte) '^', offsets.get(fsa.getRootNode()));
-    else offset += emitArc(os, BIT_LAST_ARC, (byte) '^', 0);
-
-    boolean offsetsChanged = false;
-    final int max = linearized.size();
-    for (IntCursor c : linearized) {
-      final int state = c.value;
-      final int nextState = c.index + 1 < max ? linearized.get(c.index + 1) : NO_STATE;
-
-      if (os == null) {
-        offsetsChanged |= (offsets.get(state) != offset);
-        offsets.put(state, offset);
-      } else {
-        assert offsets.get(state) == offset : state + " " + offsets.get(state) + " " + offset;
+      /*
+       * Linearize the remaining states by chaining them one after another, in depth-order.
+       */
+      if (graph.root != NO_STATE) {
+        nodes.push(graph.root);
       }
+      while (!nodes.isEmpty()) {
+        final int state = nodes.pop();
+        if (visited[state]) continue;
 
-      offset += emitNodeData(os, withNumbers ? numbers.get(state) : 0);
-      offset += emitNodeArcs(fsa, os, state, nextState);
+        last = linearizeState(nodes, visited, last, state);
+      }
+      assert last == order.length;
     }
 
-    return offsetsChanged ? offset : 0;
-  }
+    /** Add a state to linearized list. */
+    private int linearizeState(IntStack nodes, boolean[] visited, int last, int state) {
+      order[last++] = state;
+      visited[state] = true;
+      for (int arc = graph.firstArcs[state]; arc < graph.firstArcs[state + 1]; arc++) {
+        final int target = graph.targets[arc];
+        if (target != NO_STATE && !visited[target]) nodes.push(target);
+      }
+      return last;
+    }
 
-  /** Emit all arcs of a single node. */
-  private int emitNodeArcs(FSA fsa, OutputStream os, final int state, final int nextState)
-      throws IOException {
-    int offset = 0;
-    for (int arc = fsa.getFirstArc(state); arc != 0; arc = fsa.getNextArc(arc)) {
-      int targetOffset;
-      final int target;
-
-      if (fsa.isArcTerminal(arc)) {
-        target = 0;
-        targetOffset = 0;
-      } else {
-        target = fsa.getEndNode(arc);
-        targetOffset = offsets.get(target);
+    /**
+     * Calculate state offsets. This is iterative. We start with maximum potential offsets and
+     * recalculate until converged.
+     */
+    void calculateOffsets() {
+      Arrays.fill(offsets, Integer.MAX_VALUE);
+      try {
+        int i;
+        while ((i = emitNodes(null)) > 0) {
+          size = i;
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e); // Not possible without an output stream.
       }
+    }
+
+    /** Update arc offsets (if <code>os</code> is null) or emit all states. */
+    int emitNodes(OutputStream os) throws IOException {
+      int offset = 0;
 
-      int flags = 0;
+      // Add epsilon state.
+      offset += emitNodeData(os, 0);
+      if (withSortedArcs) {
+        offset += emitArcCount(os, 1, 0);
+      }
+      if (graph.root != NO_STATE)
+        offset += emitArc(os, BIT_LAST_ARC, (byte) '^', offsets[graph.root]);
+      else offset += emitArc(os, BIT_LAST_ARC, (byte) '^', 0);
+
+      boolean offsetsChanged = false;
+      final int max = order.length;
+      for (int i = 0; i < max; i++) {
+        final int state = order[i];
+        final int nextState = i + 1 < max ? order[i + 1] : NO_STATE;
+
+        if (os == null) {
+          offsetsChanged |= (offsets[state] != offset);
+          offsets[state] = offset;
+        } else {
+          assert offsets[state] == offset : state + " " + offsets[state] + " " + offset;
+        }
 
-      if (fsa.isArcFinal(arc)) {
-        flags |= BIT_FINAL_ARC;
+        offset += emitNodeData(os, withNumbers ? graph.numbers[state] : 0);
+        offset += emitNodeArcs(os, state, nextState);
       }
 
-      if (fsa.getNextArc(arc) == 0) {
-        flags |= BIT_LAST_ARC;
+      return offsetsChanged ? offset : 0;
+    }
+
+    /** Emit all arcs of a single node. */
+    private int emitNodeArcs(OutputStream os, final int state, final int nextState)
+        throws IOException {
+      final int first = graph.firstArcs[state];
+      final int count = graph.firstArcs[state + 1] - first;
+      if (withSortedArcs && count >= MIN_FIXED_LENGTH_ARCS) {
+        return emitFixedLengthArcs(os, first, count);
       }
 
-      if (targetOffset != 0 && target == nextState) {
-        flags |= BIT_TARGET_NEXT;
-        targetOffset = 0;
+      int offset = withSortedArcs ? emitArcCount(os, count, 0) : 0;
+      for (int i = 0; i < count; i++) {
+        final int arc = graph.arcOrder[first + i];
+        final int target = graph.targets[arc];
+        int targetOffset = target == NO_STATE ? 0 : offsets[target];
+
+        int flags = 0;
+
+        if (graph.finals[arc]) {
+          flags |= BIT_FINAL_ARC;
+        }
+
+        if (i + 1 == count) {
+          flags |= BIT_LAST_ARC;
+        }
+
+        if (targetOffset != 0 && target == nextState) {
+          flags |= BIT_TARGET_NEXT;
+          targetOffset = 0;
+        }
+
+        offset += emitArc(os, flags, graph.labels[arc], targetOffset);
       }
 
-      offset += emitArc(os, flags, fsa.getArcLabel(arc), targetOffset);
+      return offset;
     }
 
-    return offset;
-  }
+    /** Emit fixed-length arcs: flags, explicit label and a goto field padded to the longest one. */
+    private int emitFixedLengthArcs(OutputStream os, final int first, final int count)
+        throws IOException {
+      int gotoLength = 1;
+      for (int i = 0; i < count; i++) {
+        final int target = graph.targets[first + i];
+        if (target != NO_STATE) {
+          gotoLength = Math.max(gotoLength, vIntLength(offsets[target]));
+        }
+      }
 
-  /** */
-  private int emitArc(OutputStream os, int flags, byte label, int targetOffset) throws IOException {
-    int length = 0;
-
-    int labelIndex = labelsInvIndex[label & 0xff];
-    if (labelIndex > 0) {
-      if (os != null) os.write(flags | labelIndex);
-      length++;
-    } else {
+      final int arcLength = 2 + gotoLength;
+      int offset = emitArcCount(os, count, arcLength);
       if (os != null) {
-        os.write(flags);
-        os.write(label);
+        for (int i = 0; i < count; i++) {
+          final int arc = graph.arcOrder[first + i];
+          final int target = graph.targets[arc];
+          int flags = graph.finals[arc] ? BIT_FINAL_ARC : 0;
+          if (i + 1 == count) {
+            flags |= BIT_LAST_ARC;
+          }
+          os.write(flags);
+          os.write(graph.labels[arc]);
+          writeVInt(scratch, 0, target == NO_STATE ? 0 : offsets[target], gotoLength);
+          os.write(scratch, 0, gotoLength);
+        }
       }
-      length += 2;
+      return offset + count * arcLength;
     }
 
-    if ((flags & BIT_TARGET_NEXT) == 0) {
-      int len = writeVInt(scratch, 0, targetOffset);
+    /** Emit the arc count of a node (and the length of each arc, for fixed-length arcs). */
+    private int emitArcCount(OutputStream os, int count, int arcLength) throws IOException {
+      int size = writeVInt(scratch, 0, count);
       if (os != null) {
-        os.write(scratch, 0, len);
+        os.write(scratch, 0, size);
       }
-      length += len;
+
+      if (count >= MIN_FIXED_LENGTH_ARCS) {
+        if (os != null) {
+          os.write(arcLength);
+        }
+        size++;
+      }
+      return size;
     }
 
-    return length;
-  }
+    /** */
+    private int emitArc(OutputStream os, int flags, byte label, int targetOffset)
+        throws IOException {
+      int length = 0;
 
-  /** */
-  private int emitNodeData(OutputStream os, int number) throws IOException {
-    int size = 0;
+      int labelIndex = labelsInvIndex[label & 0xff];
+      if (labelIndex > 0) {
+        if (os != null) os.write(flags | labelIndex);
+        length++;
+      } else {
+        if (os != null) {
+          os.write(flags);
+          os.write(label);
+        }
+        length += 2;
+      }
 
-    if (withNumbers) {
-      size = writeVInt(scratch, 0, number);
-      if (os != null) {
-        os.write(scratch, 0, size);
+      if ((flags & BIT_TARGET_NEXT) == 0) {
+        int len = writeVInt(scratch, 0, targetOffset);
+        if (os != null) {
+          os.write(scratch, 0, len);
+        }
+        length += len;
       }
+
+      return length;
     }
 
-    return size;
+    /** */
+    private int emitNodeData(OutputStream os, int number) throws IOException {
+      int size = 0;
+
+      if (withNumbers) {
+        size = writeVInt(scratch, 0, number);
+        if (os != null) {
+          os.write(scratch, 0, size);
+        }
+      }
+
+      return size;
+    }
   }
 
   /** */
@@ -501,4 +909,26 @@ public final class CFSA2Serializer implements FSASerializer {
 
     return offset;
   }
+
+  /** Write a v-int padded to exactly <code>length</code> bytes to a byte array. */
+  static int writeVInt(byte[] array, int offset, int value, int length) {
+    assert value >= 0 && vIntLength(value) <= length : "Can't v-code in " + length + " bytes.";
+
+    for (int i = 1; i < length; i++) {
+      array[offset++] = (byte) (0x80 | (value & 0x7F));
+      value >>= 7;
+    }
+    array[offset++] = (byte) value;
+
+    return offset;
+  }
+
+  /** Return the byte-length of a v-coded int. */
+  private static int vIntLength(int value) {
+    int bytes;
+    for (bytes = 1; value > 0x7F; bytes++) {
+      value >>= 7;
+    }
+    return bytes;
+  }
 }
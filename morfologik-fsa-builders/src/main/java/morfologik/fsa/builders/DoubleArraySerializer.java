@@ -0,0 +1,341 @@
+package morfologik.fsa.builders;
+
+import static morfologik.fsa.FSAFlags.*;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntStack;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import morfologik.fsa.DoubleArrayFSA;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSAFlags;
+import morfologik.fsa.FSAHeader;
+
+/**
+ * Serializes any {@link FSA} to {@link DoubleArrayFSA}, a layout with constant-time transitions
+ * that takes several times more memory than {@link FSA5Serializer} or {@link CFSA2Serializer}
+ * output. {@link #serializeWithStats(FSA, OutputStream)} reports the size of the result.
+ *
+ * <p>The arcs of each state are placed at the first free base slot (first-fit), states are placed
+ * in depth-first order so that states along a path are close to each other.
+ *
+ * @see DoubleArrayFSA
+ */
+public final class DoubleArraySerializer implements FSASerializer {
+  /** Supported flags. */
+  private static final EnumSet<FSAFlags> flags = EnumSet.of(NUMBERS);
+
+  /** The number of label values (arc slots reserved after each base). */
+  private static final int LABELS = 256;
+
+  /**
+   * <code>true</code> if we should serialize with numbers.
+   *
+   * @see #withNumbers()
+   */
+  private boolean withNumbers;
+
+  /**
+   * Arc counts to order arcs of each state by, if any.
+   *
+   * @see #withArcFrequencies(ArcFrequencies)
+   */
+  private ArcFrequencies arcFrequencies;
+
+  /** The outcome of a serialization. */
+  public static final class Stats {
+    /** The number of serialized states (not counting the state with no arcs). */
+    public final int states;
+
+    /** The number of serialized arcs. */
+    public final int arcs;
+
+    /** The number of arc slots (used and free). */
+    public final int slots;
+
+    /** The size of the automaton (without the header). */
+    public final long size;
+
+    /** Time spent placing states in the double array. */
+    public final long placeMillis;
+
+    Stats(int states, int arcs, int slots, long size, long placeMillis) {
+      this.states = states;
+      this.arcs = arcs;
+      this.slots = slots;
+      this.size = size;
+      this.placeMillis = placeMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%,d states, %,d arcs, %,d slots (%.1f%% used), size: %,d bytes (%.1f bytes/arc);"
+              + " place: %,d ms",
+          states,
+          arcs,
+          slots,
+          slots == 0 ? 0d : 100d * arcs / slots,
+          size,
+          arcs == 0 ? 0d : (double) size / arcs,
+          placeMillis);
+    }
+  }
+
+  /**
+   * Serialize the automaton with the number of right-language sequences in each node. This is
+   * required to implement perfect hashing.
+   *
+   * @return Returns the same object for easier call chaining.
+   */
+  @Override
+  public DoubleArraySerializer withNumbers() {
+    withNumbers = true;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The order of arcs does not change lookup speed in this format, only the order in which
+   * sequences are enumerated (and their numbers, see {@link #withNumbers()}).
+   */
+  @Override
+  public DoubleArraySerializer withArcFrequencies(ArcFrequencies frequencies) {
+    this.arcFrequencies = frequencies;
+    return this;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DoubleArraySerializer withFiller(byte filler) {
+    throw new UnsupportedOperationException(
+        "Double-array automata do not support filler. Use .info file.");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DoubleArraySerializer withAnnotationSeparator(byte annotationSeparator) {
+    throw new UnsupportedOperationException(
+        "Double-array automata do not support separator. Use .info file.");
+  }
+
+  /** Return supported flags. */
+  @Override
+  public Set<FSAFlags> getFlags() {
+    return flags;
+  }
+
+  /**
+   * Serializes any {@link FSA} to {@link DoubleArrayFSA} stream.
+   *
+   * @see #withNumbers()
+   * @return Returns <code>os</code> for chaining.
+   */
+  @Override
+  public <T extends OutputStream> T serialize(FSA fsa, T os) throws IOException {
+    serializeWithStats(fsa, os);
+    return os;
+  }
+
+  /**
+   * Converts any {@link FSA} to an in-memory {@link DoubleArrayFSA}.
+   *
+   * @param fsa The automaton to convert.
+   * @return Returns the converted automaton.
+   */
+  public DoubleArrayFSA build(FSA fsa) {
+    try {
+      ByteArrayOutputStream baos = serialize(fsa, new ByteArrayOutputStream());
+      return FSA.read(new ByteArrayInputStream(baos.toByteArray()), DoubleArrayFSA.class);
+    } catch (IOException e) {
+      throw new RuntimeException("Unexpected I/O error in memory.", e);
+    }
+  }
+
+  /**
+   * Serializes any {@link FSA} to {@link DoubleArrayFSA} stream.
+   *
+   * @param fsa The automaton to serialize.
+   * @param os The output stream to serialize to.
+   * @return Returns the size of the automaton and the time spent placing its states.
+   * @throws IOException Rethrown if an I/O error occurs.
+   */
+  public Stats serializeWithStats(FSA fsa, OutputStream os) throws IOException {
+    if (arcFrequencies != null) {
+      fsa = arcFrequencies.orderArcs(fsa);
+    }
+
+    /*
+     * Number the states in depth-first order (the order of placement), so that states along a path
+     * are placed close to each other.
+     */
+    final IntIntHashMap ids = new IntIntHashMap();
+    final IntArrayList nodes = new IntArrayList();
+    nodes.add(0);
+    if (fsa.getRootNode() != 0) {
+      final IntStack stack = new IntStack();
+      stack.push(fsa.getRootNode());
+      while (!stack.isEmpty()) {
+        final int node = stack.pop();
+        if (ids.containsKey(node)) {
+          continue;
+        }
+        ids.put(node, nodes.size());
+        nodes.add(node);
+        for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+          if (!fsa.isArcTerminal(arc) && !ids.containsKey(fsa.getEndNode(arc))) {
+            stack.push(fsa.getEndNode(arc));
+          }
+        }
+      }
+    }
+    final int nodeCount = nodes.size();
+
+    /*
+     * Place the arcs of each state at the first unused base with all the slots free.
+     */
+    long start = System.nanoTime();
+    final int[] base = new int[nodeCount];
+    final BitSet used = new BitSet();
+    final BitSet usedBases = new BitSet();
+    final int[] labels = new int[LABELS];
+    int firstFree = 1;
+    int maxBase = 0;
+    int arcCount = 0;
+    for (int id = 1; id < nodeCount; id++) {
+      int count = 0;
+      for (int arc = fsa.getFirstArc(nodes.get(id)); arc != 0; arc = fsa.getNextArc(arc)) {
+        labels[count++] = fsa.getArcLabel(arc) & 0xff;
+      }
+      if (count == 0) {
+        continue;
+      }
+      Arrays.sort(labels, 0, count);
+      arcCount += count;
+
+      firstFree = used.nextClearBit(firstFree);
+      int b;
+      for (int slot = used.nextClearBit(Math.max(firstFree, labels[0] + 1));
+          ;
+          slot = used.nextClearBit(slot + 1)) {
+        b = slot - labels[0];
+        boolean fits = !usedBases.get(b);
+        for (int i = 1; i < count && fits; i++) {
+          fits = !used.get(b + labels[i]);
+        }
+        if (fits) {
+          break;
+        }
+      }
+
+      for (int i = 0; i < count; i++) {
+        used.set(b + labels[i]);
+      }
+      usedBases.set(b);
+      base[id] = b;
+      maxBase = Math.max(maxBase, b);
+    }
+    final long placeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    /*
+     * Fill in the slots, nodes are identified by their bases.
+     */
+    final int slotCount = maxBase + LABELS;
+    final byte[] slots = new byte[DoubleArrayFSA.SLOT_SIZE * slotCount];
+    final byte[] nextLabels = new byte[slotCount];
+    final byte[] firstLabels = new byte[slotCount];
+    for (int id = 1; id < nodeCount; id++) {
+      int previous = 0;
+      for (int arc = fsa.getFirstArc(nodes.get(id)); arc != 0; arc = fsa.getNextArc(arc)) {
+        final byte label = fsa.getArcLabel(arc);
+        final int slot = base[id] + (label & 0xff);
+        if (previous == 0) {
+          firstLabels[base[id]] = label;
+        } else {
+          nextLabels[previous] = label;
+        }
+
+        int target = fsa.isArcTerminal(arc) ? 0 : base[ids.get(fsa.getEndNode(arc))];
+        target = (target << DoubleArrayFSA.TARGET_SHIFT) | DoubleArrayFSA.BIT_ARC;
+        if (fsa.isArcFinal(arc)) {
+          target |= DoubleArrayFSA.BIT_FINAL_ARC;
+        }
+        if (fsa.getNextArc(arc) == 0) {
+          target |= DoubleArrayFSA.BIT_LAST_ARC;
+        }
+
+        final int offset = DoubleArrayFSA.SLOT_SIZE * slot;
+        slots[offset] = label;
+        slots[offset + 1] = (byte) (target >>> 24);
+        slots[offset + 2] = (byte) (target >>> 16);
+        slots[offset + 3] = (byte) (target >>> 8);
+        slots[offset + 4] = (byte) target;
+        previous = slot;
+      }
+    }
+
+    int[] numbers = null;
+    if (withNumbers) {
+      IntIntHashMap rightLanguage = FSAUtils.rightLanguageForAllStates(fsa);
+      numbers = new int[slotCount];
+      for (int id = 1; id < nodeCount; id++) {
+        numbers[base[id]] = rightLanguage.get(nodes.get(id));
+      }
+    }
+
+    /*
+     * Emit the header and the arrays.
+     */
+    FSAHeader.write(os, DoubleArrayFSA.VERSION);
+
+    EnumSet<FSAFlags> fsaFlags = EnumSet.noneOf(FSAFlags.class);
+    if (withNumbers) {
+      fsaFlags.add(NUMBERS);
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    buffer.putShort(FSAFlags.asShort(fsaFlags));
+    buffer.putInt(base.length > 1 ? base[1] : 0);
+    buffer.putInt(nodeCount - 1);
+    buffer.putInt(slotCount);
+    flush(os, buffer);
+    os.write(slots);
+    os.write(nextLabels);
+    os.write(firstLabels);
+    long size = slots.length + nextLabels.length + firstLabels.length;
+    if (numbers != null) {
+      size += write(os, buffer, numbers);
+      flush(os, buffer);
+    }
+
+    return new Stats(nodeCount - 1, arcCount, slotCount, size, placeMillis);
+  }
+
+  /** Writes an array of integers (through the buffer), returns the number of bytes. */
+  private static long write(OutputStream os, ByteBuffer buffer, int[] values) throws IOException {
+    for (int value : values) {
+      if (buffer.remaining() < Integer.BYTES) {
+        flush(os, buffer);
+      }
+      buffer.putInt(value);
+    }
+    return (long) Integer.BYTES * values.length;
+  }
+
+  private static void flush(OutputStream os, ByteBuffer buffer) throws IOException {
+    os.write(buffer.array(), 0, buffer.position());
+    buffer.clear();
+  }
+}
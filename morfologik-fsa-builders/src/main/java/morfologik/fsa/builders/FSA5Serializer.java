@@ -57,6 +57,13 @@ public final class FSA5Serializer implements FSASerializer {
    */
   private boolean withNumbers;
 
+  /**
+   * Arc counts to order arcs of each state by, if any.
+   *
+   * @see #withArcFrequencies(ArcFrequencies)
+   */
+  private ArcFrequencies arcFrequencies;
+
   /** A hash map of [state, offset] pairs. */
   private IntIntHashMap offsets = new IntIntHashMap();
 
@@ -75,6 +82,18 @@ public final class FSA5Serializer implements FSASerializer {
     return this;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Arcs of states that no counted lookup passes through keep their order. The order of
+   * sequences (and their numbers, see {@link #withNumbers()}) follows the new order of arcs.
+   */
+  @Override
+  public FSA5Serializer withArcFrequencies(ArcFrequencies frequencies) {
+    this.arcFrequencies = frequencies;
+    return this;
+  }
+
   /** {@inheritDoc} */
   @Override
   public FSA5Serializer withFiller(byte filler) {
@@ -96,7 +115,10 @@ public final class FSA5Serializer implements FSASerializer {
    * @return Returns <code>os</code> for chaining.
    */
   @Override
-  public <T extends OutputStream> T serialize(final FSA fsa, T os) throws IOException {
+  public <T extends OutputStream> T serialize(FSA fsa, T os) throws IOException {
+    if (arcFrequencies != null) {
+      fsa = arcFrequencies.orderArcs(fsa);
+    }
 
     // Prepare space for arc offsets and linearize all the states.
     int[] linearized = linearize(fsa);
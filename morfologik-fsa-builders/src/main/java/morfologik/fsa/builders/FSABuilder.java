@@ -25,6 +25,9 @@ public final class FSABuilder {
     MAX_ACTIVE_PATH_LENGTH("Max active path"),
     STATE_REGISTRY_TABLE_SLOTS("Registry hash slots"),
     STATE_REGISTRY_SIZE("Registry hash entries"),
+    STATE_REGISTRY_MAX_PROBE_LENGTH("Registry max probe length"),
+    STATE_REGISTRY_MEAN_PROBE_LENGTH("Registry mean probe length"),
+    STATE_REGISTRY_FINGERPRINT_COLLISIONS("Registry fingerprint collisions"),
     ESTIMATED_MEMORY_CONSUMPTION_MB("Estimated mem consumption (MB)");
 
     private final String stringified;
@@ -45,9 +48,22 @@ public final class FSABuilder {
   /** Internal serialized FSA buffer expand ratio. */
   private static final int BUFFER_GROWTH_SIZE = 5 * MB;
 
+  /** The number of slots moved to the expanded hash set with each new state. */
+  private static final int MOVED_SLOTS_PER_STATE = 4;
+
   /** Maximum number of labels from a single state. */
   private static final int MAX_LABELS = 256;
 
+  /**
+   * Receives states as they are added to the state registry, always after all the states they point
+   * to (in post-order).
+   *
+   * @see StreamingFSA5Serializer
+   */
+  interface StateSink {
+    void stateFrozen(FSABuilder builder, int state);
+  }
+
   /** A comparator comparing full byte arrays. Unsigned byte comparisons ('C'-locale). */
   public static final Comparator<byte[]> LEXICAL_ORDERING =
       new Comparator<byte[]>() {
@@ -59,6 +75,9 @@ public final class FSABuilder {
   /** Internal serialized FSA buffer expand ratio. */
   private final int bufferGrowthSize;
 
+  /** Receives frozen states, if not <code>null</code>. */
+  private final StateSink sink;
+
   /**
    * Holds serialized and mutable states. Each state is a sequential list of arcs, the last arc is
    * marked with {@link #BIT_ARC_LAST}.
@@ -97,9 +116,33 @@ public final class FSABuilder {
    */
   private int[] hashSet = new int[2];
 
-  /** Number of entries currently stored in {@link #hashSet}. */
+  /** Hashes of states in {@link #hashSet} (at the same slots), compared before state bytes are. */
+  private int[] fingerprints = new int[2];
+
+  /**
+   * The hash set before it was last expanded, while its entries are being moved to {@link #hashSet}
+   * (a few with each new state, see {@link #moveSlots()}). <code>null</code> otherwise.
+   */
+  private int[] oldHashSet;
+
+  /** Fingerprints of states in {@link #oldHashSet}. */
+  private int[] oldFingerprints;
+
+  /** The number of {@link #oldHashSet} slots already moved. */
+  private int movedSlots;
+
+  /** Number of entries currently stored in {@link #hashSet} and {@link #oldHashSet}. */
   private int hashSize = 0;
 
+  /** Number of hash set lookups and slots probed in total. */
+  private long lookups, probes;
+
+  /** The longest probe sequence of a lookup. */
+  private int maxProbeLength;
+
+  /** The number of states with an identical fingerprint, but different arcs. */
+  private long fingerprintCollisions;
+
   /**
    * Previous sequence added to the automaton in {@link #add(byte[], int, int)}. Used in assertions
    * only.
@@ -121,7 +164,23 @@ public final class FSABuilder {
    * @param bufferGrowthSize Buffer growth size (in bytes) when constructing the automaton.
    */
   public FSABuilder(int bufferGrowthSize) {
+    this(bufferGrowthSize, null);
+  }
+
+  /**
+   * @param sink Receives new states as they are frozen.
+   */
+  FSABuilder(StateSink sink) {
+    this(BUFFER_GROWTH_SIZE, sink);
+  }
+
+  /**
+   * @param bufferGrowthSize Buffer growth size (in bytes) when constructing the automaton.
+   * @param sink Receives new states as they are frozen (may be <code>null</code>).
+   */
+  FSABuilder(int bufferGrowthSize, StateSink sink) {
     this.bufferGrowthSize = Math.max(bufferGrowthSize, ARC_SIZE * MAX_LABELS);
+    this.sink = sink;
 
     // Allocate epsilon state.
     epsilon = allocateState(1);
@@ -186,6 +245,39 @@ public final class FSABuilder {
    * @return Finalizes the construction of the automaton and returns it.
    */
   public FSA complete() {
+    freezeRoot();
+
+    final FSA fsa =
+        new ConstantArcSizeFSA(java.util.Arrays.copyOf(this.serialized, this.size), epsilon);
+    this.serialized = null;
+    this.hashSet = null;
+    this.fingerprints = null;
+    this.oldHashSet = null;
+    this.oldFingerprints = null;
+    return fsa;
+  }
+
+  /**
+   * Finalizes the construction of the automaton without creating an in-memory {@link FSA}. All
+   * states have been passed to the {@link StateSink} by the time this method returns.
+   *
+   * @return Returns the root state or {@link ConstantArcSizeFSA#TERMINAL_STATE} if the automaton is
+   *     empty.
+   */
+  int completeStates() {
+    freezeRoot();
+
+    final int rootState = getArcTarget(epsilon);
+    this.serialized = null;
+    this.hashSet = null;
+    this.fingerprints = null;
+    this.oldHashSet = null;
+    this.oldFingerprints = null;
+    return rootState;
+  }
+
+  /** Freezes the root state (and all states on the active path) and collects information. */
+  private void freezeRoot() {
     add(new byte[0], 0, 0);
 
     if (nextArcOffset[0] - activePath[0] == 0) {
@@ -204,15 +296,13 @@ public final class FSABuilder {
     info.put(InfoEntry.MAX_ACTIVE_PATH_LENGTH, activePath.length);
     info.put(InfoEntry.STATE_REGISTRY_TABLE_SLOTS, hashSet.length);
     info.put(InfoEntry.STATE_REGISTRY_SIZE, hashSize);
+    info.put(InfoEntry.STATE_REGISTRY_MAX_PROBE_LENGTH, maxProbeLength);
+    info.put(
+        InfoEntry.STATE_REGISTRY_MEAN_PROBE_LENGTH, lookups == 0 ? 0d : probes / (double) lookups);
+    info.put(InfoEntry.STATE_REGISTRY_FINGERPRINT_COLLISIONS, fingerprintCollisions);
     info.put(
         InfoEntry.ESTIMATED_MEMORY_CONSUMPTION_MB,
-        (this.serialized.length + this.hashSet.length * 4) / (double) MB);
-
-    final FSA fsa =
-        new ConstantArcSizeFSA(java.util.Arrays.copyOf(this.serialized, this.size), epsilon);
-    this.serialized = null;
-    this.hashSet = null;
-    return fsa;
+        (this.serialized.length + this.hashSet.length * 8) / (double) MB);
   }
 
   /**
@@ -256,17 +346,17 @@ public final class FSABuilder {
   }
 
   /** Is this arc the state's last? */
-  private boolean isArcLast(int arc) {
+  boolean isArcLast(int arc) {
     return (serialized[arc + FLAGS_OFFSET] & BIT_ARC_LAST) != 0;
   }
 
   /** Is this arc final? */
-  private boolean isArcFinal(int arc) {
+  boolean isArcFinal(int arc) {
     return (serialized[arc + FLAGS_OFFSET] & BIT_ARC_FINAL) != 0;
   }
 
   /** Get label's arc. */
-  private byte getArcLabel(int arc) {
+  byte getArcLabel(int arc) {
     return serialized[arc + LABEL_OFFSET];
   }
 
@@ -280,7 +370,7 @@ public final class FSABuilder {
   }
 
   /** Returns the address of an arc. */
-  private int getArcTarget(int arc) {
+  int getArcTarget(int arc) {
     arc += ADDRESS_OFFSET;
     return (serialized[arc]) << 24
         | (serialized[arc + 1] & 0xff) << 16
@@ -318,48 +408,96 @@ public final class FSABuilder {
     // Set the last arc flag on the current active path's state.
     serialized[end - ARC_SIZE + FLAGS_OFFSET] |= BIT_ARC_LAST;
 
-    // Try to locate a state with an identical content in the hash set.
-    final int bucketMask = (hashSet.length - 1);
-    int slot = hash(start, len) & bucketMask;
-    for (int i = 0; ; ) {
-      int state = hashSet[slot];
-      if (state == 0) {
-        state = hashSet[slot] = serialize(activePathIndex);
-        if (++hashSize > hashSet.length / 2) expandAndRehash();
-        return state;
-      } else if (equivalent(state, start, len)) {
-        return state;
+    // Try to locate a state with an identical content in the hash set (or the one being moved).
+    final int fingerprint = hash(start, len);
+    if (oldHashSet != null) {
+      final int slot = findSlot(oldHashSet, oldFingerprints, fingerprint, start, len);
+      if (oldHashSet[slot] != 0) {
+        return oldHashSet[slot];
       }
+    }
 
-      slot = (slot + (++i)) & bucketMask;
+    final int slot = findSlot(hashSet, fingerprints, fingerprint, start, len);
+    if (hashSet[slot] != 0) {
+      return hashSet[slot];
     }
+
+    final int state = hashSet[slot] = serialize(activePathIndex);
+    fingerprints[slot] = fingerprint;
+    if (sink != null) sink.stateFrozen(this, state);
+    hashSize++;
+
+    if (oldHashSet != null) {
+      moveSlots();
+    } else if (hashSize > hashSet.length / 2) {
+      expand();
+    }
+    return state;
   }
 
-  /** Reallocate and rehash the hash set. */
-  private void expandAndRehash() {
-    final int[] newHashSet = new int[hashSet.length * 2];
-    final int bucketMask = (newHashSet.length - 1);
+  /**
+   * Return the slot of a state with the given fingerprint and content or the (empty) slot it should
+   * be inserted at.
+   */
+  private int findSlot(int[] states, int[] hashes, int fingerprint, int start, int len) {
+    final int bucketMask = (states.length - 1);
+    int slot = fingerprint & bucketMask;
+    int i = 0;
+    for (int state; (state = states[slot]) != 0; slot = (slot + (++i)) & bucketMask) {
+      if (hashes[slot] == fingerprint) {
+        if (equivalent(state, start, len)) {
+          break;
+        }
+        fingerprintCollisions++;
+      }
+    }
 
-    for (int j = 0; j < hashSet.length; j++) {
-      final int state = hashSet[j];
-      if (state > 0) {
-        int slot = hash(state, stateLength(state)) & bucketMask;
-        for (int i = 0; newHashSet[slot] > 0; ) {
+    lookups++;
+    probes += i + 1;
+    maxProbeLength = Math.max(maxProbeLength, i + 1);
+    return slot;
+  }
+
+  /**
+   * Reallocate the hash set. Existing entries are moved to the new hash set incrementally, as new
+   * states are added, so that there are no long pauses when the hash set is large.
+   */
+  private void expand() {
+    assert oldHashSet == null : "Previous hash set still being moved.";
+    oldHashSet = hashSet;
+    oldFingerprints = fingerprints;
+    movedSlots = 0;
+
+    hashSet = new int[oldHashSet.length * 2];
+    fingerprints = new int[hashSet.length];
+    moveSlots();
+  }
+
+  /**
+   * Move the next few slots of {@link #oldHashSet} to {@link #hashSet}. The old hash set is not
+   * modified so that lookups of states not moved yet still work. With a load factor of 1/2, all the
+   * slots are moved before the new hash set needs to be expanded again.
+   */
+  private void moveSlots() {
+    final int bucketMask = (hashSet.length - 1);
+    final int max = Math.min(movedSlots + MOVED_SLOTS_PER_STATE, oldHashSet.length);
+    for (; movedSlots < max; movedSlots++) {
+      final int state = oldHashSet[movedSlots];
+      if (state != 0) {
+        final int fingerprint = oldFingerprints[movedSlots];
+        int slot = fingerprint & bucketMask;
+        for (int i = 0; hashSet[slot] != 0; ) {
           slot = (slot + (++i)) & bucketMask;
         }
-        newHashSet[slot] = state;
+        hashSet[slot] = state;
+        fingerprints[slot] = fingerprint;
       }
     }
-    this.hashSet = newHashSet;
-  }
 
-  /** The total length of the serialized state data (all arcs). */
-  private int stateLength(int state) {
-    int arc = state;
-    while (!isArcLast(arc)) {
-      arc += ARC_SIZE;
+    if (movedSlots == oldHashSet.length) {
+      oldHashSet = null;
+      oldFingerprints = null;
     }
-    return arc - state + ARC_SIZE;
   }
 
   /** Return <code>true</code> if two regions in {@link #serialized} are identical. */
@@ -384,18 +522,20 @@ public final class FSABuilder {
     return newState;
   }
 
-  /** Hash code of a fragment of {@link #serialized} array. */
+  /**
+   * Hash code of a fragment of {@link #serialized} array. Each arc is mixed in with multiplicative
+   * hashing so that the full 32 bits can serve as a fingerprint of the state.
+   */
   private int hash(int start, int byteCount) {
     assert byteCount % ARC_SIZE == 0 : "Not an arc multiply?";
 
     int h = 0;
     for (int arcs = byteCount / ARC_SIZE; --arcs >= 0; start += ARC_SIZE) {
-      h = 17 * h + getArcLabel(start);
-      h = 17 * h + getArcTarget(start);
-      if (isArcFinal(start)) h += 17;
+      h = (h ^ (getArcLabel(start) & 0xff) ^ (isArcFinal(start) ? 0x100 : 0)) * 0x9E3779B1;
+      h = (h ^ getArcTarget(start)) * 0x85EBCA6B;
     }
 
-    return h;
+    return h ^ (h >>> 16);
   }
 
   /** Append a new mutable state to the active path. */
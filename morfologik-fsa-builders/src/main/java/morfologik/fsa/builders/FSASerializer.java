@@ -48,4 +48,17 @@ public interface FSASerializer {
    * @return Returns <code>this</code> for call chaining.
    */
   public FSASerializer withNumbers();
+
+  /**
+   * Orders arcs of each state by the number of lookups that traverse them (most frequent first), so
+   * that lookups in formats scanning arcs linearly find common transitions sooner.
+   *
+   * @param frequencies Arc counts collected for the automaton passed to {@link #serialize(FSA,
+   *     OutputStream)}.
+   * @return Returns <code>this</code> for call chaining. The default implementation ignores the
+   *     frequencies (arc order does not change the language of the automaton).
+   */
+  public default FSASerializer withArcFrequencies(ArcFrequencies frequencies) {
+    return this;
+  }
 }
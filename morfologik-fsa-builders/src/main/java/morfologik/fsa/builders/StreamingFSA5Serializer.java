@@ -0,0 +1,277 @@
+package morfologik.fsa.builders;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Map;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSA5;
+import morfologik.fsa.FSAHeader;
+
+/**
+ * Builds an automaton from sorted input sequences and writes it to a channel in {@link FSA5} format
+ * as {@link FSABuilder} freezes its states, without creating an intermediate in-memory {@link FSA}.
+ *
+ * <p>This saves the copy of the automaton made by {@link FSABuilder#complete()} and the output
+ * buffer of {@link FSA5Serializer}, not memory proportional to the automaton: the builder's state
+ * registry still holds every state (minimization needs them) and the output offsets (and numbers)
+ * of all states are kept until the automaton is complete.
+ *
+ * <p>States are written in post-order (every state follows all the states it points to), so the
+ * output is larger than that of {@link FSA5Serializer}: no arc can point at the state that follows
+ * it and all goto fields (and numbers, see {@link #withNumbers()}) have a fixed length. The address
+ * of the root state is written when the automaton is complete, so the channel must be seekable. An
+ * automaton can be re-serialized to a more compact form once it is complete.
+ *
+ * @see FSA5Serializer
+ */
+public final class StreamingFSA5Serializer {
+  /** Goto field length (flags and the target address). */
+  private static final int GOTO_LENGTH = 4;
+
+  /** The maximum target address that fits in a goto field. */
+  private static final int MAX_ADDRESS = (1 << (GOTO_LENGTH * 8 - 3)) - 1;
+
+  /** Number of bytes for per-node data (right-language counts), if serialized with numbers. */
+  private static final int NUMBERS_LENGTH = 4;
+
+  /**
+   * @see FSA5#filler
+   */
+  private byte fillerByte = FSA5.DEFAULT_FILLER;
+
+  /**
+   * @see FSA5#annotation
+   */
+  private byte annotationByte = FSA5.DEFAULT_ANNOTATION;
+
+  /**
+   * <code>true</code> if we should serialize with numbers.
+   *
+   * @see #withNumbers()
+   */
+  private boolean withNumbers;
+
+  /** Information about the last automaton's compilation. */
+  private Map<FSABuilder.InfoEntry, Object> info;
+
+  /**
+   * Serialize the automaton with the number of right-language sequences in each node. This is
+   * required to implement perfect hashing. The numbering also preserves the order of input
+   * sequences.
+   *
+   * @return Returns the same object for easier call chaining.
+   */
+  public StreamingFSA5Serializer withNumbers() {
+    withNumbers = true;
+    return this;
+  }
+
+  /**
+   * @param filler The filler separator byte.
+   * @return Returns the same object for easier call chaining.
+   * @see FSASerializer#withFiller(byte)
+   */
+  public StreamingFSA5Serializer withFiller(byte filler) {
+    this.fillerByte = filler;
+    return this;
+  }
+
+  /**
+   * @param annotationSeparator The annotation separator byte.
+   * @return Returns the same object for easier call chaining.
+   * @see FSASerializer#withAnnotationSeparator(byte)
+   */
+  public StreamingFSA5Serializer withAnnotationSeparator(byte annotationSeparator) {
+    this.annotationByte = annotationSeparator;
+    return this;
+  }
+
+  /**
+   * Builds a minimal, deterministic automaton from a sorted list of byte sequences and writes it to
+   * a channel, starting at the channel's current position.
+   *
+   * @param input Input sequences to build automaton from, in {@link FSABuilder#LEXICAL_ORDERING}.
+   * @param channel The channel to write to. It is left positioned after the automaton.
+   * @return Returns the number of bytes written.
+   * @throws IOException Rethrown if an I/O error occurs or if the automaton is too large.
+   */
+  public long serialize(Iterable<byte[]> input, SeekableByteChannel channel) throws IOException {
+    final long start = channel.position();
+    final int nodeDataLength = withNumbers ? NUMBERS_LENGTH : 0;
+
+    /*
+     * Emit the header.
+     */
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    FSAHeader.write(header, FSA5.VERSION);
+    header.write(fillerByte);
+    header.write(annotationByte);
+    header.write((nodeDataLength << 4) | GOTO_LENGTH);
+
+    final StateWriter writer =
+        new StateWriter(
+            new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), nodeDataLength);
+    writer.os.write(header.toByteArray());
+
+    // Add dummy terminal state.
+    writer.emitNodeData(0);
+    writer.emitArc(0, (byte) 0, 0);
+
+    // Add epsilon state, its target is written when the root is known.
+    writer.emitNodeData(0);
+    final int epsilonGoto = writer.offset + 1;
+    writer.emitArc(FSA5.BIT_LAST_ARC, (byte) '^', 0);
+
+    /*
+     * Emit all states as they are frozen.
+     */
+    final FSABuilder builder = new FSABuilder(writer);
+    final int root;
+    try {
+      for (byte[] chs : input) {
+        builder.add(chs, 0, chs.length);
+      }
+      root = builder.completeStates();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    info = builder.getInfo();
+    writer.os.flush();
+
+    final long end = channel.position();
+    assert end - start == header.size() + writer.offset;
+
+    /*
+     * Point the epsilon state at the root.
+     */
+    if (root != ConstantArcSizeFSA.TERMINAL_STATE) {
+      ByteBuffer bb = ByteBuffer.allocate(GOTO_LENGTH);
+      writer.putGoto(bb, FSA5.BIT_LAST_ARC, writer.offsets.get(root));
+      channel.position(start + header.size() + epsilonGoto);
+      Channels.newOutputStream(channel).write(bb.array());
+      channel.position(end);
+    }
+
+    return end - start;
+  }
+
+  /**
+   * @return Returns various statistics concerning the last automaton's compilation.
+   * @see FSABuilder#getInfo()
+   */
+  public Map<FSABuilder.InfoEntry, Object> getInfo() {
+    return info;
+  }
+
+  /** Writes frozen states of the builder. */
+  private static final class StateWriter implements FSABuilder.StateSink {
+    final OutputStream os;
+    final int nodeDataLength;
+
+    /** A hash map of [state, offset] pairs. */
+    final IntIntHashMap offsets = new IntIntHashMap();
+
+    /** A hash map of [state, right-language-count] pairs. */
+    final IntIntHashMap numbers = new IntIntHashMap();
+
+    /** The offset of the next state (relative to the end of the header). */
+    int offset;
+
+    private final ByteBuffer bb = ByteBuffer.allocate(1 + Math.max(GOTO_LENGTH, NUMBERS_LENGTH));
+
+    StateWriter(OutputStream os, int nodeDataLength) {
+      this.os = os;
+      this.nodeDataLength = nodeDataLength;
+    }
+
+    @Override
+    public void stateFrozen(FSABuilder builder, int state) {
+      try {
+        if (offset > MAX_ADDRESS) {
+          throw new IOException(
+              "The automaton is too large for "
+                  + GOTO_LENGTH
+                  + "-byte addresses, use FSA5Serializer instead.");
+        }
+        offsets.put(state, offset);
+
+        if (nodeDataLength > 0) {
+          int count = 0;
+          for (int arc = state; ; arc += ConstantArcSizeFSA.ARC_SIZE) {
+            if (builder.isArcFinal(arc)) {
+              count++;
+            }
+            final int target = builder.getArcTarget(arc);
+            if (target != ConstantArcSizeFSA.TERMINAL_STATE) {
+              count += numbers.get(target);
+            }
+            if (builder.isArcLast(arc)) {
+              break;
+            }
+          }
+          numbers.put(state, count);
+          emitNodeData(count);
+        }
+
+        for (int arc = state; ; arc += ConstantArcSizeFSA.ARC_SIZE) {
+          final int target = builder.getArcTarget(arc);
+          final int targetOffset =
+              target == ConstantArcSizeFSA.TERMINAL_STATE ? 0 : offsets.get(target);
+
+          int flags = 0;
+          if (builder.isArcFinal(arc)) {
+            flags |= FSA5.BIT_FINAL_ARC;
+          }
+
+          final boolean last = builder.isArcLast(arc);
+          if (last) {
+            flags |= FSA5.BIT_LAST_ARC;
+          }
+
+          emitArc(flags, builder.getArcLabel(arc), targetOffset);
+          if (last) {
+            break;
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void emitArc(int flags, byte label, int targetOffset) throws IOException {
+      bb.put(label);
+      putGoto(bb, flags, targetOffset);
+      write();
+    }
+
+    void putGoto(ByteBuffer buffer, int flags, int targetOffset) {
+      flags |= (targetOffset << 3);
+      for (int b = 0; b < GOTO_LENGTH; b++) {
+        buffer.put((byte) flags);
+        flags >>>= 8;
+      }
+    }
+
+    void emitNodeData(int number) throws IOException {
+      for (int i = 0; i < nodeDataLength; i++) {
+        bb.put((byte) number);
+        number >>>= 8;
+      }
+      write();
+    }
+
+    private void write() throws IOException {
+      bb.flip();
+      offset += bb.remaining();
+      os.write(bb.array(), bb.position(), bb.remaining());
+      bb.clear();
+    }
+  }
+}
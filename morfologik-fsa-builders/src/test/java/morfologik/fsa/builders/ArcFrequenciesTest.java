@@ -0,0 +1,106 @@
+package morfologik.fsa.builders;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static morfologik.fsa.builders.FSATestUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSATraversal;
+import org.junit.jupiter.api.Test;
+
+/** Tests {@link ArcFrequencies}. */
+public class ArcFrequenciesTest extends TestBase {
+  @Test
+  public void testMostFrequentArcsFirst() throws IOException {
+    byte[][] input = {
+      "ab".getBytes(UTF_8), "ac".getBytes(UTF_8), "b".getBytes(UTF_8), "cb".getBytes(UTF_8),
+    };
+    FSA fsa = FSABuilder.build(input);
+
+    ArcFrequencies frequencies = new ArcFrequencies(fsa);
+    frequencies.add("cb".getBytes(UTF_8), 0, 2, 10);
+    frequencies.add("ac".getBytes(UTF_8), 0, 2, 3);
+    frequencies.add("b".getBytes(UTF_8), 0, 1, 5);
+    // Only the matching prefix is counted.
+    frequencies.add("axyz".getBytes(UTF_8), 0, 4, 1);
+
+    int root = fsa.getRootNode();
+    assertEquals(10, frequencies.getCount(fsa.getArc(root, (byte) 'c')));
+    assertEquals(4, frequencies.getCount(fsa.getArc(root, (byte) 'a')));
+    int a = fsa.getEndNode(fsa.getArc(root, (byte) 'a'));
+    assertEquals(0, frequencies.getCount(fsa.getArc(a, (byte) 'b')));
+    assertEquals(3, frequencies.getCount(fsa.getArc(a, (byte) 'c')));
+
+    for (FSASerializer serializer :
+        new FSASerializer[] {new FSA5Serializer(), new CFSA2Serializer()}) {
+      FSA ordered = serialize(serializer.withArcFrequencies(frequencies), fsa);
+      checkCorrect(input, ordered);
+
+      StringBuilder labels = new StringBuilder();
+      root = ordered.getRootNode();
+      for (int arc = ordered.getFirstArc(root); arc != 0; arc = ordered.getNextArc(arc)) {
+        labels.append((char) ordered.getArcLabel(arc));
+      }
+      assertEquals("cba", labels.toString());
+
+      a = ordered.getEndNode(ordered.getArc(root, (byte) 'a'));
+      assertEquals('c', ordered.getArcLabel(ordered.getFirstArc(a)));
+    }
+  }
+
+  @Test
+  public void testNumbersFollowArcOrder(Random rnd) throws IOException {
+    byte[][] input = generateRandom(rnd, 2000, new MinMax(1, 8), new MinMax(0, 6));
+    FSA fsa = FSABuilder.build(input);
+
+    ArcFrequencies frequencies = new ArcFrequencies(fsa);
+    for (int i = 0; i < 500; i++) {
+      byte[] sequence = input[rnd.nextInt(input.length)];
+      frequencies.add(sequence, 0, sequence.length, 1 + rnd.nextInt(100));
+    }
+
+    for (FSASerializer serializer :
+        new FSASerializer[] {
+          new FSA5Serializer().withNumbers(), new CFSA2Serializer().withNumbers()
+        }) {
+      FSA ordered = serialize(serializer.withArcFrequencies(frequencies), fsa);
+      checkCorrect(input, ordered);
+
+      FSATraversal traversal = new FSATraversal(ordered);
+      int root = ordered.getRootNode();
+      int expected = 0;
+      for (ByteBuffer bb : ordered) {
+        assertEquals(expected++, traversal.perfectHash(bb.array(), 0, bb.remaining(), root));
+      }
+    }
+  }
+
+  @Test
+  public void testSortedArcsRejected() {
+    FSA fsa = FSABuilder.build(new byte[][] {{'a'}});
+    CFSA2Serializer serializer =
+        new CFSA2Serializer().withSortedArcs().withArcFrequencies(new ArcFrequencies(fsa));
+    assertThrows(
+        IllegalStateException.class, () -> serializer.serialize(fsa, new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void testOtherAutomatonRejected() {
+    FSA fsa = FSABuilder.build(new byte[][] {{'a'}});
+    FSA other = FSABuilder.build(new byte[][] {{'b'}});
+    FSA5Serializer serializer = new FSA5Serializer().withArcFrequencies(new ArcFrequencies(other));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> serializer.serialize(fsa, new ByteArrayOutputStream()));
+  }
+
+  private static FSA serialize(FSASerializer serializer, FSA fsa) throws IOException {
+    byte[] data = serializer.serialize(fsa, new ByteArrayOutputStream()).toByteArray();
+    return FSA.read(new ByteArrayInputStream(data));
+  }
+}
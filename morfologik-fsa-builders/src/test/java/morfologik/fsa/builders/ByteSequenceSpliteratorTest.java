@@ -0,0 +1,92 @@
+package morfologik.fsa.builders;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static morfologik.fsa.builders.FSATestUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import morfologik.fsa.ByteSequenceSpliterator;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSAFlags;
+import org.junit.jupiter.api.Test;
+
+/** Tests {@link ByteSequenceSpliterator}. */
+public class ByteSequenceSpliteratorTest extends TestBase {
+  @Test
+  public void testSameAsIterator(Random rnd) throws IOException {
+    byte[][] input = generateRandom(rnd, 3000, new MinMax(1, 10), new MinMax(0, 30));
+    FSA built = FSABuilder.build(input);
+
+    for (FSASerializer serializer :
+        new FSASerializer[] {
+          new FSA5Serializer(),
+          new FSA5Serializer().withNumbers(),
+          new CFSA2Serializer().withNumbers(),
+          new DoubleArraySerializer()
+        }) {
+      byte[] data = serializer.serialize(built, new ByteArrayOutputStream()).toByteArray();
+      FSA fsa = FSA.read(new ByteArrayInputStream(data));
+
+      List<String> expected = new ArrayList<>();
+      for (ByteBuffer bb : fsa) {
+        expected.add(toString(bb));
+      }
+
+      assertEquals(expected, collect(StreamSupport.stream(fsa.spliterator(), false)));
+      assertEquals(expected, collect(StreamSupport.stream(fsa.spliterator(), true)));
+
+      // Split recursively, the parts must add up to the whole in order.
+      List<String> parts = new ArrayList<>();
+      split(fsa.spliterator(), parts, fsa.getFlags().contains(FSAFlags.NUMBERS));
+      assertEquals(expected, parts);
+    }
+  }
+
+  @Test
+  public void testEmptyAndSingle() {
+    FSA empty = FSABuilder.build(new byte[0][]);
+    assertEquals(0, StreamSupport.stream(empty.spliterator(), true).count());
+
+    FSA single = FSABuilder.build(new byte[][] {{'a', 'b'}});
+    Spliterator<ByteBuffer> spliterator = single.spliterator();
+    assertNull(spliterator.trySplit());
+    assertEquals(Arrays.asList("ab"), collect(StreamSupport.stream(spliterator, false)));
+  }
+
+  private static void split(Spliterator<ByteBuffer> s, List<String> parts, boolean sized) {
+    long size = s.estimateSize();
+    Spliterator<ByteBuffer> prefix = s.trySplit();
+    if (prefix != null) {
+      if (sized) {
+        assertEquals(size, prefix.estimateSize() + s.estimateSize());
+      }
+      split(prefix, parts, sized);
+      split(s, parts, sized);
+    } else {
+      List<String> part = collect(StreamSupport.stream(s, false));
+      if (sized) {
+        assertEquals(size, part.size());
+      }
+      parts.addAll(part);
+    }
+  }
+
+  private static List<String> collect(Stream<ByteBuffer> stream) {
+    return stream.map(bb -> toString(bb)).collect(Collectors.toList());
+  }
+
+  private static String toString(ByteBuffer bb) {
+    return new String(bb.array(), 0, bb.remaining(), ISO_8859_1);
+  }
+}
@@ -0,0 +1,65 @@
+package morfologik.fsa.builders;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import morfologik.fsa.FSA;
+import org.junit.jupiter.api.Test;
+
+/** */
+public class CFSA2BreadthFirstSerializerTest extends SerializerTestBase {
+  private static final int LEVELS = 2;
+
+  protected CFSA2Serializer createSerializer() {
+    return new CFSA2Serializer().withBreadthFirstLevels(LEVELS);
+  }
+
+  @Test
+  public void testStatesNearRootComeFirst(Random rnd) throws IOException {
+    List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(8)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) ('a' + rnd.nextInt(10));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    FSA built = FSABuilder.build(input);
+
+    final byte[] fsaData =
+        createSerializer().serialize(built, new ByteArrayOutputStream()).toByteArray();
+    final FSA fsa = FSA.read(new ByteArrayInputStream(fsaData));
+    checkCorrect(input.toArray(new byte[input.size()][]), fsa);
+
+    // Breadth-first discovery order is the order of states in the serialized automaton.
+    List<Integer> states = new ArrayList<>();
+    BitSet visited = new BitSet();
+    states.add(fsa.getRootNode());
+    visited.set(fsa.getRootNode());
+    for (int level = 0, levelStart = 0; level < LEVELS; level++) {
+      final int levelEnd = states.size();
+      for (int i = levelStart; i < levelEnd; i++) {
+        for (int arc = fsa.getFirstArc(states.get(i)); arc != 0; arc = fsa.getNextArc(arc)) {
+          if (!fsa.isArcTerminal(arc) && !visited.get(fsa.getEndNode(arc))) {
+            visited.set(fsa.getEndNode(arc));
+            states.add(fsa.getEndNode(arc));
+          }
+        }
+      }
+      levelStart = levelEnd;
+    }
+
+    assertTrue(states.size() > 10);
+    for (int i = 1; i < states.size(); i++) {
+      assertTrue(states.get(i - 1) < states.get(i), "Not in breadth-first order: " + states);
+    }
+  }
+}
@@ -1,8 +1,48 @@
 package morfologik.fsa.builders;
 
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import morfologik.fsa.FSA;
+import org.junit.jupiter.api.Test;
+
 /** */
 public class CFSA2SerializerTest extends SerializerTestBase {
   protected CFSA2Serializer createSerializer() {
     return new CFSA2Serializer();
   }
+
+  @Test
+  public void testThreadsDoNotChangeOutput(Random rnd) throws IOException {
+    List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(10)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) ('a' + rnd.nextInt(20));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    FSA built = FSABuilder.build(input);
+
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    CFSA2Serializer.Stats stats =
+        new CFSA2Serializer().withNumbers().withThreads(1).serializeWithStats(built, sequential);
+    ByteArrayOutputStream concurrent = new ByteArrayOutputStream();
+    new CFSA2Serializer().withNumbers().withThreads(4).serialize(built, concurrent);
+
+    assertArrayEquals(sequential.toByteArray(), concurrent.toByteArray());
+    assertTrue(stats.states > 10000, "Too few states to use threads: " + stats);
+    assertTrue(stats.size <= stats.initialSize);
+    assertTrue(stats.size < sequential.size());
+
+    final FSA fsa = FSA.read(new ByteArrayInputStream(concurrent.toByteArray()));
+    checkCorrect(input.toArray(new byte[input.size()][]), fsa);
+  }
 }
@@ -0,0 +1,69 @@
+package morfologik.fsa.builders;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import morfologik.fsa.CFSA2;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSAFlags;
+import morfologik.fsa.StateVisitor;
+import org.junit.jupiter.api.Test;
+
+/** */
+public class CFSA2SortedArcsSerializerTest extends SerializerTestBase {
+  protected CFSA2Serializer createSerializer() {
+    return new CFSA2Serializer().withSortedArcs();
+  }
+
+  @Test
+  public void testGetArcMatchesLinearScan(Random rnd) throws IOException {
+    List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(4)];
+      for (int j = 0; j < sequence.length; j++) {
+        // Wide first-level fan-out (including labels above 0x7f), narrower below.
+        sequence[j] = (byte) (j == 0 ? rnd.nextInt(256) : 'a' + rnd.nextInt(1 + rnd.nextInt(26)));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    FSA built = FSABuilder.build(input);
+
+    for (CFSA2Serializer serializer :
+        new CFSA2Serializer[] {createSerializer(), createSerializer().withNumbers()}) {
+      final byte[] fsaData = serializer.serialize(built, new ByteArrayOutputStream()).toByteArray();
+      final FSA fsa = FSA.read(new ByteArrayInputStream(fsaData));
+      assertTrue(fsa instanceof CFSA2);
+      assertTrue(fsa.getFlags().contains(FSAFlags.SORTED_ARCS));
+      assertTrue(fsa.getArcCount(fsa.getRootNode()) >= CFSA2.MIN_FIXED_LENGTH_ARCS);
+      checkCorrect(input.toArray(new byte[input.size()][]), fsa);
+
+      fsa.visitAllStates(
+          new StateVisitor() {
+            public boolean accept(int state) {
+              int count = 0;
+              int previous = -1;
+              int[] expected = new int[256];
+              for (int arc = fsa.getFirstArc(state); arc != 0; arc = fsa.getNextArc(arc)) {
+                int label = fsa.getArcLabel(arc) & 0xff;
+                assertTrue(label > previous, "Arcs not sorted.");
+                previous = label;
+                expected[label] = arc;
+                count++;
+              }
+              assertEquals(count, fsa.getArcCount(state));
+              for (int label = 0; label < 256; label++) {
+                assertEquals(expected[label], fsa.getArc(state, (byte) label));
+              }
+              return true;
+            }
+          });
+    }
+  }
+}
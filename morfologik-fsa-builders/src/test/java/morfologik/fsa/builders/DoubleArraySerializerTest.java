@@ -0,0 +1,62 @@
+package morfologik.fsa.builders;
+
+import static morfologik.fsa.builders.FSATestUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import morfologik.fsa.DoubleArrayFSA;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSATraversal;
+import morfologik.fsa.MatchResult;
+import org.junit.jupiter.api.Test;
+
+/** */
+public class DoubleArraySerializerTest extends SerializerTestBase {
+  protected DoubleArraySerializer createSerializer() {
+    return new DoubleArraySerializer();
+  }
+
+  @Test
+  public void testSameMatchesAsFSA5(Random rnd) throws IOException {
+    byte[][] input = generateRandom(rnd, 5000, new MinMax(1, 12), new MinMax(0, 255));
+    FSA fsa = FSABuilder.build(input);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    DoubleArraySerializer.Stats stats =
+        new DoubleArraySerializer().withNumbers().serializeWithStats(fsa, os);
+    DoubleArrayFSA da = new DoubleArraySerializer().withNumbers().build(fsa);
+    checkCorrect(input, da);
+    assertEquals(stats.states, da.getNodeCount());
+    assertEquals(stats.slots, da.getSlotCount());
+    assertEquals(stats.arcs, da.getUsedSlotCount());
+
+    FSA fsa5 =
+        FSA.read(
+            new ByteArrayInputStream(
+                new FSA5Serializer()
+                    .withNumbers()
+                    .serialize(fsa, new ByteArrayOutputStream())
+                    .toByteArray()));
+    FSATraversal expected = new FSATraversal(fsa5);
+    FSATraversal actual = new FSATraversal(da);
+    for (int i = 0; i < 1000; i++) {
+      byte[] sequence = input[rnd.nextInt(input.length)];
+      if (rnd.nextBoolean()) {
+        sequence = Arrays.copyOf(sequence, 1 + rnd.nextInt(sequence.length + 1));
+        sequence[rnd.nextInt(sequence.length)] = (byte) rnd.nextInt(256);
+      }
+
+      MatchResult m1 = expected.match(sequence);
+      MatchResult m2 = actual.match(sequence);
+      assertEquals(m1.kind, m2.kind);
+      assertEquals(m1.index, m2.index);
+      assertEquals(
+          expected.perfectHash(sequence, 0, sequence.length, fsa5.getRootNode()),
+          actual.perfectHash(sequence, 0, sequence.length, da.getRootNode()));
+    }
+  }
+}
@@ -2,9 +2,11 @@ package morfologik.fsa.builders;
 
 import static morfologik.fsa.builders.FSATestUtils.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Random;
 import morfologik.fsa.FSA;
 import org.junit.jupiter.api.BeforeAll;
@@ -81,4 +83,25 @@ public class FSABuilderTest extends TestBase {
     checkCorrect(input2, fsa);
     checkMinimal(fsa);
   }
+
+  @Test
+  public void testRegistryExpansion(Random rnd) {
+    // Many states with shared suffixes, found in the registry while it is being expanded.
+    byte[][] input = generateRandom(rnd, 50000, new MinMax(1, 15), new MinMax(0, 4));
+
+    FSABuilder builder = new FSABuilder();
+    for (byte[] sequence : input) {
+      builder.add(sequence, 0, sequence.length);
+    }
+    FSA fsa = builder.complete();
+    checkCorrect(input, fsa);
+    checkMinimal(fsa);
+
+    Map<FSABuilder.InfoEntry, Object> info = builder.getInfo();
+    int states = (Integer) info.get(FSABuilder.InfoEntry.STATE_REGISTRY_SIZE);
+    int slots = (Integer) info.get(FSABuilder.InfoEntry.STATE_REGISTRY_TABLE_SLOTS);
+    assertTrue(states > 1000 && states <= slots, info.toString());
+    assertTrue((Integer) info.get(FSABuilder.InfoEntry.STATE_REGISTRY_MAX_PROBE_LENGTH) >= 1);
+    assertTrue((Double) info.get(FSABuilder.InfoEntry.STATE_REGISTRY_MEAN_PROBE_LENGTH) >= 1);
+  }
 }
@@ -8,12 +8,19 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import morfologik.fsa.ArcCursor;
 import morfologik.fsa.FSA;
 import morfologik.fsa.FSA5;
 import morfologik.fsa.FSATraversal;
 import morfologik.fsa.MatchResult;
+import morfologik.fsa.StateVisitor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -168,4 +175,131 @@ public final class FSATraversalTest extends TestBase {
     }
     return result;
   }
+
+  @Test
+  public void testPerfectHashSharedTraversal(Random rnd) throws IOException {
+    final List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(8)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) ('a' + rnd.nextInt(6));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    final List<byte[]> unique = new ArrayList<>();
+    for (byte[] sequence : input) {
+      if (unique.isEmpty() || !Arrays.equals(unique.get(unique.size() - 1), sequence)) {
+        unique.add(sequence);
+      }
+    }
+    final byte[][] sequences = unique.toArray(new byte[unique.size()][]);
+
+    final byte[] fsaData =
+        new FSA5Serializer()
+            .withNumbers()
+            .serialize(FSABuilder.build(sequences), new ByteArrayOutputStream())
+            .toByteArray();
+    final FSATraversal traversal =
+        new FSATraversal(FSA.read(new ByteArrayInputStream(fsaData), FSA5.class));
+
+    // A traversal holds no state, so it can be shared by threads.
+    for (int round = 0; round < 10; round++) {
+      assertTrue(
+          IntStream.range(0, sequences.length)
+              .parallel()
+              .allMatch(i -> traversal.perfectHash(sequences[i]) == i));
+    }
+  }
+
+  @Test
+  public void testMatchSameForAllFormats(Random rnd) throws IOException {
+    List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(6)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) (j == 0 ? rnd.nextInt(256) : 'a' + rnd.nextInt(6));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    FSA built = FSABuilder.build(input);
+    List<FSA> automata = serializeAll(built);
+
+    FSATraversal generic = new FSATraversal(built);
+    for (int i = 0; i < 5000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(8)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) (j == 0 ? rnd.nextInt(256) : 'a' + rnd.nextInt(7));
+      }
+
+      MatchResult expected = generic.match(sequence);
+      for (FSA fsa : automata) {
+        MatchResult actual = new FSATraversal(fsa).match(sequence);
+        assertEquals(expected.kind, actual.kind);
+        assertEquals(expected.index, actual.index);
+      }
+    }
+  }
+
+  @Test
+  public void testArcCursorSameAsFSAMethods(Random rnd) throws IOException {
+    List<byte[]> input = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      byte[] sequence = new byte[1 + rnd.nextInt(6)];
+      for (int j = 0; j < sequence.length; j++) {
+        sequence[j] = (byte) (j == 0 ? rnd.nextInt(256) : 'a' + rnd.nextInt(6));
+      }
+      input.add(sequence);
+    }
+    Collections.sort(input, FSABuilder.LEXICAL_ORDERING);
+    FSA built = FSABuilder.build(input);
+
+    List<FSA> automata = serializeAll(built);
+    automata.add(built);
+    for (FSA fsa : automata) {
+      final ArcCursor cursor = fsa.newArcCursor();
+      final StateVisitor checkArcs =
+          (node) -> {
+            int arcs = 0;
+            int arc = fsa.getFirstArc(node);
+            for (boolean hasArc = cursor.first(node); hasArc; hasArc = cursor.next()) {
+              assertEquals(arc, cursor.getArc());
+              assertEquals(fsa.getArcLabel(arc), cursor.getLabel());
+              assertEquals(fsa.isArcFinal(arc), cursor.isFinal());
+              assertEquals(fsa.isArcTerminal(arc), cursor.isTerminal());
+              if (!cursor.isTerminal()) {
+                assertEquals(fsa.getEndNode(arc), cursor.getEndNode());
+              }
+              assertEquals(fsa.getNextArc(arc), cursor.getNextArc());
+
+              ArcCursor found = fsa.newArcCursor();
+              assertTrue(found.find(node, cursor.getLabel()));
+              assertEquals(arc, found.getArc());
+
+              arc = fsa.getNextArc(arc);
+              arcs++;
+            }
+            assertEquals(0, arc);
+            assertEquals(fsa.getArcCount(node), arcs);
+            return true;
+          };
+      fsa.visitInPreOrder(checkArcs);
+    }
+  }
+
+  private static List<FSA> serializeAll(FSA fsa) throws IOException {
+    List<FSA> automata = new ArrayList<>();
+    for (FSASerializer serializer :
+        new FSASerializer[] {
+          new FSA5Serializer(),
+          new FSA5Serializer().withNumbers(),
+          new CFSA2Serializer(),
+          new CFSA2Serializer().withNumbers().withSortedArcs()
+        }) {
+      byte[] fsaData = serializer.serialize(fsa, new ByteArrayOutputStream()).toByteArray();
+      automata.add(FSA.read(new ByteArrayInputStream(fsaData)));
+    }
+    return automata;
+  }
 }
@@ -0,0 +1,156 @@
+package morfologik.fsa.builders;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSAPattern;
+import morfologik.fsa.PatternMatchIterator;
+import org.junit.jupiter.api.Test;
+
+/** Tests {@link FSAPattern} and {@link PatternMatchIterator}. */
+public class PatternMatchIteratorTest extends TestBase {
+  /** Patterns and equivalent {@link java.util.regex.Pattern}s. */
+  private static final String[][] WILDCARDS = {
+    {"", ""},
+    {"*", ".*"},
+    {"a*", "a.*"},
+    {"?b*", ".b.*"},
+    {"*ą", ".*ą"},
+    {"[aą]?*", "[aą]..*"},
+    {"[^a-b]*[ż]", "[^a-b].*[ż]"},
+    {"*\\*", ".*\\*"},
+  };
+
+  private static final String[][] REGEXES = {
+    {"a+", "a+"},
+    {"(ab|ą)*c?", "(ab|ą)*c?"},
+    {".{2}", ".{2}"},
+    {"[a-c]{1,3}ż?", "[a-c]{1,3}ż?"},
+    {"(a|bą){2,}.", "(a|bą){2,}."},
+    {"[^ą]*ą[^ą]*", "[^ą]*ą[^ą]*"},
+  };
+
+  @Test
+  public void testSameAsJdkPatterns(Random rnd) throws IOException {
+    final String alphabet = "abcąż*";
+    final List<String> words = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int len = 1 + rnd.nextInt(6); --len >= 0; ) {
+        sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+      words.add(sb.toString());
+    }
+
+    for (Charset charset : new Charset[] {UTF_8, Charset.forName("ISO-8859-2")}) {
+      FSA fsa = build(words, charset);
+      for (String[] p : WILDCARDS) {
+        assertEquals(
+            expected(words, p[1]),
+            matches(fsa, FSAPattern.wildcard(p[0], charset), charset, -1),
+            p[0]);
+      }
+      for (String[] p : REGEXES) {
+        assertEquals(
+            expected(words, p[1]),
+            matches(fsa, FSAPattern.regex(p[0], charset), charset, -1),
+            p[0]);
+      }
+    }
+  }
+
+  @Test
+  public void testPrefixesBeforeSeparator() throws IOException {
+    List<String> entries = Arrays.asList("abc+x", "abc+y", "abd+z", "ab+q", "ac", "abc");
+    FSA fsa = build(entries, UTF_8);
+
+    assertEquals(
+        Arrays.asList("abc", "abd"), matches(fsa, FSAPattern.wildcard("ab?", UTF_8), UTF_8, '+'));
+    assertEquals(
+        Arrays.asList("ab", "abc", "abd"),
+        matches(fsa, FSAPattern.wildcard("a*", UTF_8), UTF_8, '+'));
+    assertEquals(Arrays.asList(), matches(fsa, FSAPattern.wildcard("ac", UTF_8), UTF_8, '+'));
+  }
+
+  @Test
+  public void testLimit() throws IOException {
+    FSA fsa = build(Arrays.asList("a", "ab", "abc", "b"), UTF_8);
+    FSAPattern pattern = FSAPattern.wildcard("a*", UTF_8);
+
+    assertEquals(0, count(new PatternMatchIterator(fsa, pattern, 0)));
+    assertEquals(2, count(new PatternMatchIterator(fsa, pattern, 2)));
+    assertEquals(3, count(new PatternMatchIterator(fsa, pattern, 10)));
+    assertThrows(IllegalArgumentException.class, () -> new PatternMatchIterator(fsa, pattern, -1));
+  }
+
+  @Test
+  public void testInvalidPatterns() {
+    for (String p : new String[] {"[ab", "\\", "a{2,1}", "(a", "a)", "*a", "a{", "a|?"}) {
+      assertThrows(IllegalArgumentException.class, () -> FSAPattern.regex(p, UTF_8));
+    }
+    assertThrows(IllegalArgumentException.class, () -> FSAPattern.wildcard("[a", UTF_8));
+    assertThrows(IllegalArgumentException.class, () -> FSAPattern.regex("a{9999}{9999}", UTF_8));
+    assertThrows(
+        IllegalArgumentException.class, () -> FSAPattern.wildcard("a", Charset.forName("UTF-16")));
+  }
+
+  private static FSA build(List<String> words, Charset charset) throws IOException {
+    byte[][] input = new byte[words.size()][];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = words.get(i).getBytes(charset);
+    }
+    Arrays.sort(input, FSABuilder.LEXICAL_ORDERING);
+    byte[] data =
+        new CFSA2Serializer()
+            .serialize(FSABuilder.build(input), new ByteArrayOutputStream())
+            .toByteArray();
+    return FSA.read(new ByteArrayInputStream(data));
+  }
+
+  private static List<String> expected(List<String> words, String regex) {
+    Pattern pattern = Pattern.compile(regex);
+    TreeSet<String> expected = new TreeSet<>();
+    for (String word : words) {
+      if (pattern.matcher(word).matches()) {
+        expected.add(word);
+      }
+    }
+    return new ArrayList<>(expected);
+  }
+
+  private static List<String> matches(FSA fsa, FSAPattern pattern, Charset charset, int separator) {
+    PatternMatchIterator i =
+        separator < 0
+            ? new PatternMatchIterator(fsa, pattern, Integer.MAX_VALUE)
+            : new PatternMatchIterator(fsa, pattern, (byte) separator, Integer.MAX_VALUE);
+
+    // Compare as strings, sorted (the automaton's byte order differs between charsets).
+    TreeSet<String> matches = new TreeSet<>();
+    while (i.hasNext()) {
+      ByteBuffer bb = i.next();
+      matches.add(new String(bb.array(), bb.position(), bb.remaining(), charset));
+    }
+    return new ArrayList<>(matches);
+  }
+
+  private static int count(PatternMatchIterator i) {
+    int count = 0;
+    while (i.hasNext()) {
+      i.next();
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,95 @@
+package morfologik.fsa.builders;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSA5;
+import morfologik.fsa.FSAFlags;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** */
+public class StreamingFSA5SerializerTest extends TestBase {
+  @Test
+  public void testRandomInput(@TempDir Path tempDir, Random rnd) throws IOException {
+    byte[][] input = FSATestUtils.generateRandom(rnd, 10000, new MinMax(1, 20), new MinMax(0, 10));
+
+    FSA fsa = streamAndRead(new StreamingFSA5Serializer(), Arrays.asList(input), tempDir);
+    assertTrue(fsa instanceof FSA5);
+    FSATestUtils.checkCorrect(input, fsa);
+    FSATestUtils.checkIdentical(FSABuilder.build(input), fsa);
+  }
+
+  @Test
+  public void testNumbers(@TempDir Path tempDir) throws IOException {
+    byte[][] input =
+        new byte[][] {
+          {'a'}, {'a', 'b', 'a'}, {'a', 'c'}, {'b'}, {'b', 'a'}, {'c'},
+        };
+
+    FSA fsa =
+        streamAndRead(new StreamingFSA5Serializer().withNumbers(), Arrays.asList(input), tempDir);
+    assertTrue(fsa.getFlags().contains(FSAFlags.NUMBERS));
+
+    byte[] buffer = new byte[128];
+    final ArrayList<String> result = new ArrayList<String>();
+    FSA5Test.walkNode(buffer, 0, fsa, fsa.getRootNode(), 0, result);
+
+    Collections.sort(result);
+    assertEquals(Arrays.asList("0 a", "1 aba", "2 ac", "3 b", "4 ba", "5 c"), result);
+  }
+
+  @Test
+  public void testEmptyInput(@TempDir Path tempDir) throws IOException {
+    List<byte[]> input = Collections.emptyList();
+    FSA fsa = streamAndRead(new StreamingFSA5Serializer(), input, tempDir);
+    FSATestUtils.checkCorrect(new byte[0][], fsa);
+  }
+
+  @Test
+  public void testStartsAtChannelPosition(@TempDir Path tempDir) throws IOException {
+    byte[][] input = new byte[][] {{'a', 'b'}, {'a', 'c'}, {'b'}};
+
+    final Path file = tempDir.resolve("fsa");
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.position(3);
+      long bytes = new StreamingFSA5Serializer().serialize(Arrays.asList(input), channel);
+      assertEquals(3 + bytes, channel.position());
+      assertEquals(3 + bytes, channel.size());
+    }
+
+    try (InputStream is = Files.newInputStream(file)) {
+      assertEquals(3, is.skip(3));
+      FSATestUtils.checkCorrect(input, FSA.read(is));
+    }
+  }
+
+  private static FSA streamAndRead(
+      StreamingFSA5Serializer serializer, Iterable<byte[]> input, Path tempDir) throws IOException {
+    final Path file = tempDir.resolve("fsa");
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      serializer.serialize(input, channel);
+    }
+
+    try (InputStream is = Files.newInputStream(file)) {
+      return FSA.read(is);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package morfologik.fsa.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+import morfologik.fsa.LabelMatcher;
+
+/**
+ * Compares {@link #SPECIES} labels at a time, using the Vector API (<code>jdk.incubator.vector
+ * </code>). Registered as a service provider of {@link LabelMatcher}, so that it becomes {@link
+ * LabelMatcher#getDefault()} if this module is on the class path and the JVM is started with <code>
+ * --add-modules jdk.incubator.vector</code> (otherwise the scalar matcher is used).
+ */
+public final class VectorLabelMatcher extends LabelMatcher {
+  /** 128-bit vectors (16 labels), few nodes have more arcs than that. */
+  static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+
+  /** Creates the matcher (fails if the incubator module is not available). */
+  public VectorLabelMatcher() {
+    assert SPECIES.length() <= PADDING;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int indexOf(byte[] labels, int from, int to, byte label) {
+    // Blocks shorter than a vector (most of them) are faster to scan one label at a time.
+    if (to - from < SPECIES.length()) {
+      return SCALAR.indexOf(labels, from, to, label);
+    }
+
+    // Full vectors are loaded even past 'to', reading at most PADDING bytes after the last block.
+    for (int i = from; i < to; i += SPECIES.length()) {
+      final int hit = ByteVector.fromArray(SPECIES, labels, i).eq(label).firstTrue();
+      if (hit < SPECIES.length()) {
+        return i + hit < to ? i + hit : -1;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,84 @@
+package morfologik.fsa.vector;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.carrotsearch.randomizedtesting.jupiter.Randomized;
+import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSATraversal;
+import morfologik.fsa.FixedStrideFSA;
+import morfologik.fsa.LabelMatcher;
+import morfologik.fsa.MatchResult;
+import morfologik.fsa.builders.FSA5Serializer;
+import morfologik.fsa.builders.FSABuilder;
+import org.junit.jupiter.api.Test;
+
+/** Tests {@link VectorLabelMatcher}. */
+@Randomized
+public class VectorLabelMatcherTest extends RandomizedTest {
+  @Test
+  public void testLoadedAsDefault() {
+    assertTrue(LabelMatcher.getDefault() instanceof VectorLabelMatcher);
+  }
+
+  @Test
+  public void testSameAsScalar(Random rnd) {
+    final LabelMatcher vector = new VectorLabelMatcher();
+    for (int round = 0; round < 1000; round++) {
+      final int length = rnd.nextInt(300);
+      final byte[] labels = new byte[length + LabelMatcher.PADDING];
+      // A small alphabet, so that labels repeat (also in the padding).
+      final int alphabet = 1 + rnd.nextInt(256);
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = (byte) rnd.nextInt(alphabet);
+      }
+
+      final int from = rnd.nextInt(length + 1);
+      final int to = from + rnd.nextInt(length - from + 1);
+      for (int i = 0; i < 10; i++) {
+        final byte label = (byte) rnd.nextInt(alphabet + 1);
+        assertEquals(
+            LabelMatcher.SCALAR.indexOf(labels, from, to, label),
+            vector.indexOf(labels, from, to, label));
+      }
+    }
+  }
+
+  @Test
+  public void testSameMatchesAsFSA5(Random rnd) throws IOException {
+    final byte[][] input = new byte[5000][];
+    for (int i = 0; i < input.length; i++) {
+      input[i] = new byte[1 + rnd.nextInt(12)];
+      rnd.nextBytes(input[i]);
+    }
+    Arrays.sort(input, FSABuilder.LEXICAL_ORDERING);
+
+    final FSA fsa5 =
+        FSA.read(
+            new ByteArrayInputStream(
+                new FSA5Serializer()
+                    .serialize(FSABuilder.build(input), new ByteArrayOutputStream())
+                    .toByteArray()));
+    final FixedStrideFSA fs = new FixedStrideFSA(fsa5);
+    assertTrue(fs.getLabelMatcher() instanceof VectorLabelMatcher);
+
+    final FSATraversal expected = new FSATraversal(fsa5);
+    final FSATraversal actual = new FSATraversal(fs);
+    for (ByteBuffer bb : fsa5) {
+      final byte[] sequence = Arrays.copyOf(bb.array(), bb.remaining());
+      assertEquals(MatchResult.EXACT_MATCH, actual.match(sequence).kind);
+      sequence[rnd.nextInt(sequence.length)] = (byte) rnd.nextInt(256);
+
+      final MatchResult m1 = expected.match(sequence);
+      final MatchResult m2 = actual.match(sequence);
+      assertEquals(m1.kind, m2.kind);
+      assertEquals(m1.index, m2.index);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package morfologik.fsa;
+
+/**
+ * A reusable view of a single arc of an {@link FSA}. The arc's label, flags, end node and the next
+ * arc of the same node are decoded at once, when the cursor is moved to the arc, instead of on each
+ * call to {@link FSA}'s methods.
+ *
+ * <pre>
+ * ArcCursor cursor = fsa.newArcCursor();
+ * for (boolean hasArc = cursor.first(node); hasArc; hasArc = cursor.next()) {
+ *   ... cursor.getLabel(), cursor.isFinal(), cursor.getEndNode() ...
+ * }
+ * </pre>
+ *
+ * <p>Cursors are not thread-safe, each thread should create its own.
+ *
+ * @see FSA#newArcCursor()
+ */
+public class ArcCursor {
+  /** The automaton whose arcs are decoded. */
+  private final FSA fsa;
+
+  /** The current arc or 0. */
+  int arc;
+
+  /** The current arc's label. */
+  byte label;
+
+  /** <code>true</code> if the current arc is final. */
+  boolean isFinal;
+
+  /** The current arc's end node, 0 for terminal arcs. */
+  int endNode;
+
+  /** The next arc of the same node, 0 if the current arc is the node's last one. */
+  int nextArc;
+
+  /**
+   * @param fsa The automaton whose arcs are decoded (using its public methods).
+   */
+  ArcCursor(FSA fsa) {
+    this.fsa = fsa;
+  }
+
+  /**
+   * Moves the cursor to the given arc and decodes it.
+   *
+   * @param arc The arc's identifier or 0.
+   * @return Returns <code>false</code> if <code>arc</code> is 0 (the cursor is not on any arc).
+   */
+  public boolean read(int arc) {
+    this.arc = arc;
+    if (arc == 0) {
+      return false;
+    }
+
+    label = fsa.getArcLabel(arc);
+    isFinal = fsa.isArcFinal(arc);
+    endNode = fsa.isArcTerminal(arc) ? 0 : fsa.getEndNode(arc);
+    nextArc = fsa.getNextArc(arc);
+    return true;
+  }
+
+  /**
+   * Moves the cursor to the first arc of a node.
+   *
+   * @param node Identifier of the node.
+   * @return Returns <code>false</code> if the node has no arcs.
+   * @see FSA#getFirstArc(int)
+   */
+  public boolean first(int node) {
+    return read(fsa.getFirstArc(node));
+  }
+
+  /**
+   * Moves the cursor to the next arc of the current node.
+   *
+   * @return Returns <code>false</code> if there are no more arcs.
+   * @see FSA#getNextArc(int)
+   */
+  public final boolean next() {
+    assert arc != 0 : "The cursor is not on an arc.";
+    return read(nextArc);
+  }
+
+  /**
+   * Moves the cursor to the arc of a node with the given label.
+   *
+   * @param node Identifier of the node.
+   * @param label The arc's label.
+   * @return Returns <code>false</code> if the node has no arc with this label.
+   * @see FSA#getArc(int, byte)
+   */
+  public boolean find(int node, byte label) {
+    return read(fsa.getArc(node, label));
+  }
+
+  /**
+   * @return Returns the identifier of the current arc (0 if the cursor is not on any arc).
+   */
+  public final int getArc() {
+    return arc;
+  }
+
+  /**
+   * @return Returns the label of the current arc.
+   * @see FSA#getArcLabel(int)
+   */
+  public final byte getLabel() {
+    return label;
+  }
+
+  /**
+   * @return Returns <code>true</code> if the current arc is final.
+   * @see FSA#isArcFinal(int)
+   */
+  public final boolean isFinal() {
+    return isFinal;
+  }
+
+  /**
+   * @return Returns <code>true</code> if the current arc has no end node.
+   * @see FSA#isArcTerminal(int)
+   */
+  public final boolean isTerminal() {
+    return endNode == 0;
+  }
+
+  /**
+   * @return Returns the end node of the current arc (which must not be terminal).
+   * @see FSA#getEndNode(int)
+   */
+  public final int getEndNode() {
+    assert endNode != 0 : "No end node for terminal arcs.";
+    return endNode;
+  }
+
+  /**
+   * @return Returns the identifier of the next arc of the current node, 0 if the current arc is the
+   *     node's last one.
+   * @see FSA#getNextArc(int)
+   */
+  public final int getNextArc() {
+    return nextArc;
+  }
+}
@@ -17,6 +17,9 @@ public final class ByteSequenceIterator implements Iterator<ByteBuffer> {
   /** The FSA to which this iterator belongs. */
   private final FSA fsa;
 
+  /** Decodes arcs of {@link #fsa}. */
+  private final ArcCursor cursor;
+
   /** An internal cache for the next element in the FSA */
   private ByteBuffer nextElement;
 
@@ -49,6 +52,7 @@ public final class ByteSequenceIterator implements Iterator<ByteBuffer> {
    */
   public ByteSequenceIterator(FSA fsa, int node) {
     this.fsa = fsa;
+    this.cursor = fsa.newArcCursor();
 
     if (fsa.getFirstArc(node) != 0) {
       restartFrom(node);
@@ -117,7 +121,9 @@ public final class ByteSequenceIterator implements Iterator<ByteBuffer> {
 
       // Go to the next arc, but leave it on the stack
       // so that we keep the recursion depth level accurate.
-      arcs[lastIndex] = fsa.getNextArc(arc);
+      final ArcCursor cursor = this.cursor;
+      cursor.read(arc);
+      arcs[lastIndex] = cursor.getNextArc();
 
       // Expand buffer if needed.
       final int bufferLength = this.buffer.length;
@@ -125,14 +131,14 @@ public final class ByteSequenceIterator implements Iterator<ByteBuffer> {
         this.buffer = Arrays.copyOf(buffer, bufferLength + EXPECTED_MAX_STATES);
         this.bufferWrapper = ByteBuffer.wrap(buffer);
       }
-      buffer[lastIndex] = fsa.getArcLabel(arc);
+      buffer[lastIndex] = cursor.getLabel();
 
-      if (!fsa.isArcTerminal(arc)) {
+      if (!cursor.isTerminal()) {
         // Recursively descend into the arc's node.
-        pushNode(fsa.getEndNode(arc));
+        pushNode(cursor.getEndNode());
       }
 
-      if (fsa.isArcFinal(arc)) {
+      if (cursor.isFinal()) {
         bufferWrapper.clear();
         bufferWrapper.limit(lastIndex + 1);
         return bufferWrapper;
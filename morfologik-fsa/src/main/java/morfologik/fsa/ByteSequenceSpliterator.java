@@ -0,0 +1,261 @@
+package morfologik.fsa;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the right language of a given node (all sequences reachable from a
+ * given node), in the same order as {@link ByteSequenceIterator}. Splits at the arcs of the
+ * starting node and their end nodes, so that sub-trees of the automaton can be traversed in
+ * parallel (see {@link java.util.stream.StreamSupport#stream(Spliterator, boolean)}).
+ *
+ * <p>Unlike {@link ByteSequenceIterator}, each sequence is returned in a new {@link ByteBuffer}
+ * (not shared with other sequences). If the automaton was compiled with {@link FSAFlags#NUMBERS},
+ * this spliterator is {@link Spliterator#SIZED} and splits sub-trees into halves with the same
+ * number of sequences.
+ */
+public final class ByteSequenceSpliterator implements Spliterator<ByteBuffer> {
+  /** Arcs deeper than this (counting from the starting node) are not split at. */
+  private static final int MAX_SPLIT_DEPTH = 2;
+
+  /** The FSA to which this spliterator belongs. */
+  private final FSA fsa;
+
+  /** <code>true</code> if sub-trees can be counted (the automaton has {@link FSAFlags#NUMBERS}). */
+  private final boolean sized;
+
+  /** A sequence to return before any sub-tree (the final arc the sub-trees were split at). */
+  private byte[] pending;
+
+  /**
+   * Sub-trees to traverse: <code>prefixes[i]</code> followed by the label of <code>arcs[i]</code>
+   * and all sequences of the arc's end node. Only the range [{@link #from}, {@link #to}) belongs to
+   * this spliterator, the arrays are shared with spliterators split off.
+   */
+  private byte[][] prefixes;
+
+  private int[] arcs;
+  private int from;
+  private int to;
+
+  /** The number of sequences left, if {@link #sized}. */
+  private long remaining;
+
+  /** The prefix of the sub-tree being traversed, including the arc's label. */
+  private byte[] current;
+
+  /** Traverses the end node of the current sub-tree, <code>null</code> if not started yet. */
+  private ByteSequenceIterator iterator;
+
+  /** Reused by {@link #iterator}, if any. */
+  private ByteSequenceIterator walker;
+
+  /**
+   * Create an instance of the spliterator over all automaton sequences.
+   *
+   * @param fsa The automaton to iterate over.
+   */
+  public ByteSequenceSpliterator(FSA fsa) {
+    this(fsa, fsa.getRootNode());
+  }
+
+  /**
+   * Create an instance of the spliterator for a given node.
+   *
+   * @param fsa The automaton to iterate over.
+   * @param node The starting node's identifier (can be the {@link FSA#getRootNode()}).
+   */
+  public ByteSequenceSpliterator(FSA fsa, int node) {
+    this.fsa = fsa;
+    this.sized = fsa.getFlags().contains(FSAFlags.NUMBERS);
+
+    int count = 0;
+    for (int arc = node == 0 ? 0 : fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+      count++;
+    }
+
+    this.arcs = new int[count];
+    this.prefixes = new byte[count][];
+    final byte[] empty = new byte[0];
+    for (int i = 0, arc = count == 0 ? 0 : fsa.getFirstArc(node); i < count; i++) {
+      arcs[i] = arc;
+      prefixes[i] = empty;
+      arc = fsa.getNextArc(arc);
+    }
+    this.to = count;
+    this.remaining = countSequences(from, to);
+  }
+
+  private ByteSequenceSpliterator(
+      ByteSequenceSpliterator other, byte[] pending, int from, int to, long remaining) {
+    this.fsa = other.fsa;
+    this.sized = other.sized;
+    this.pending = pending;
+    this.prefixes = other.prefixes;
+    this.arcs = other.arcs;
+    this.from = from;
+    this.to = to;
+    this.remaining = remaining;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+    if (pending != null) {
+      final byte[] sequence = pending;
+      pending = null;
+      return accept(action, ByteBuffer.wrap(sequence));
+    }
+
+    while (iterator == null || !iterator.hasNext()) {
+      iterator = null;
+      if (from == to) {
+        return false;
+      }
+
+      final int arc = arcs[from];
+      final byte[] prefix = prefixes[from];
+      from++;
+
+      current = Arrays.copyOf(prefix, prefix.length + 1);
+      current[prefix.length] = fsa.getArcLabel(arc);
+      if (!fsa.isArcTerminal(arc)) {
+        if (walker == null) {
+          walker = new ByteSequenceIterator(fsa, fsa.getEndNode(arc));
+        } else {
+          walker.restartFrom(fsa.getEndNode(arc));
+        }
+        iterator = walker;
+      }
+
+      if (fsa.isArcFinal(arc)) {
+        return accept(action, ByteBuffer.wrap(current.clone()));
+      }
+    }
+
+    final ByteBuffer suffix = iterator.next();
+    final byte[] sequence = Arrays.copyOf(current, current.length + suffix.remaining());
+    System.arraycopy(suffix.array(), 0, sequence, current.length, suffix.remaining());
+    return accept(action, ByteBuffer.wrap(sequence));
+  }
+
+  private boolean accept(Consumer<? super ByteBuffer> action, ByteBuffer sequence) {
+    remaining--;
+    action.accept(sequence);
+    return true;
+  }
+
+  /**
+   * Splits off the first half of the sub-trees not traversed yet. Returns <code>null</code> once a
+   * sub-tree is being traversed or if the only sub-tree left is too deep to split.
+   */
+  @Override
+  public Spliterator<ByteBuffer> trySplit() {
+    if (iterator != null) {
+      return null;
+    }
+
+    if (to - from == 1) {
+      if (pending != null) {
+        return split(from, 1);
+      }
+
+      if (!expand()) {
+        return null;
+      }
+    }
+
+    if (to - from < 2) {
+      return pending != null && to - from == 1 ? split(from, 1) : null;
+    }
+
+    int mid = from + (to - from) / 2;
+    if (sized) {
+      long half = remaining / 2 - (pending != null ? 1 : 0);
+      for (mid = from; mid < to - 1 && half > 0; mid++) {
+        half -= countSubtree(mid);
+      }
+      mid = Math.max(mid, from + 1);
+    }
+
+    return split(mid, countSequences(from, mid) + (pending != null ? 1 : 0));
+  }
+
+  /** Moves {@link #pending} and sub-trees up to <code>mid</code> to a new spliterator. */
+  private ByteSequenceSpliterator split(int mid, long count) {
+    final ByteSequenceSpliterator prefix =
+        new ByteSequenceSpliterator(this, pending, from, mid, sized ? count : Long.MAX_VALUE);
+    pending = null;
+    from = mid;
+    if (sized) {
+      remaining -= count;
+    }
+    return prefix;
+  }
+
+  /** Replaces the only sub-tree left with the sub-trees of its end node, if not too deep. */
+  private boolean expand() {
+    final int arc = arcs[from];
+    final byte[] prefix = prefixes[from];
+    if (prefix.length + 1 >= MAX_SPLIT_DEPTH || fsa.isArcTerminal(arc)) {
+      return false;
+    }
+
+    final byte[] path = Arrays.copyOf(prefix, prefix.length + 1);
+    path[prefix.length] = fsa.getArcLabel(arc);
+
+    final int node = fsa.getEndNode(arc);
+    int count = 0;
+    for (int a = fsa.getFirstArc(node); a != 0; a = fsa.getNextArc(a)) {
+      count++;
+    }
+
+    final int[] arcs = new int[count];
+    final byte[][] prefixes = new byte[count][];
+    for (int i = 0, a = fsa.getFirstArc(node); i < count; i++, a = fsa.getNextArc(a)) {
+      arcs[i] = a;
+      prefixes[i] = path;
+    }
+
+    this.pending = fsa.isArcFinal(arc) ? path : null;
+    this.arcs = arcs;
+    this.prefixes = prefixes;
+    this.from = 0;
+    this.to = count;
+    return true;
+  }
+
+  /** Returns the number of sequences of sub-trees in the given range, if {@link #sized}. */
+  private long countSequences(int from, int to) {
+    long count = 0;
+    if (sized) {
+      for (int i = from; i < to; i++) {
+        count += countSubtree(i);
+      }
+    }
+    return sized ? count : Long.MAX_VALUE;
+  }
+
+  private long countSubtree(int i) {
+    final int arc = arcs[i];
+    return (fsa.isArcFinal(arc) ? 1 : 0)
+        + (fsa.isArcTerminal(arc) ? 0 : fsa.getRightLanguageCount(fsa.getEndNode(arc)));
+  }
+
+  /**
+   * Returns the exact number of sequences left if the automaton has {@link FSAFlags#NUMBERS},
+   * {@link Long#MAX_VALUE} (unknown) otherwise.
+   */
+  @Override
+  public long estimateSize() {
+    return sized ? remaining : Long.MAX_VALUE;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL | IMMUTABLE | (sized ? SIZED | SUBSIZED : 0);
+  }
+}
@@ -83,6 +83,13 @@ import java.util.Set;
  *       |A|A|A|A|A|A|A|A| +------ v-coded goto address
  *       +-+-+-+-+-+-+-+-+/
  * </pre>
+ *
+ * <p>If the automaton was compiled with {@link FSAFlags#SORTED_ARCS}, the arcs of each node are
+ * sorted by their unsigned label values and preceded by a v-coded number of arcs (after the
+ * optional right-language count). Nodes with at least {@link #MIN_FIXED_LENGTH_ARCS} arcs then
+ * store one more byte with the length of each of their arcs: such arcs never use {@link
+ * #BIT_TARGET_NEXT} or indexed labels and their goto fields are padded to the same number of bytes,
+ * so that {@link #getArc(int, byte)} can binary-search them.
  */
 public final class CFSA2 extends FSA {
   /** Automaton header version value. */
@@ -109,6 +116,12 @@ public final class CFSA2 extends FSA {
   /** Maximum size of the labels index. */
   public static final int LABEL_INDEX_SIZE = (1 << LABEL_INDEX_BITS) - 1;
 
+  /**
+   * The minimum number of arcs of a node for which arcs have fixed length (if compiled with {@link
+   * FSAFlags#SORTED_ARCS}).
+   */
+  public static final int MIN_FIXED_LENGTH_ARCS = 8;
+
   /**
    * An array of bytes with the internal representation of the automaton. Please see the
    * documentation of this class for more information on how this structure is organized.
@@ -124,6 +137,9 @@ public final class CFSA2 extends FSA {
   /** If <code>true</code> states are prepended with numbers. */
   private final boolean hasNumbers;
 
+  /** If <code>true</code> arcs are sorted and prepended with their count. */
+  private final boolean hasSortedArcs;
+
   /** Epsilon node's offset. */
   private final int epsilon = 0;
 
@@ -145,6 +161,7 @@ public final class CFSA2 extends FSA {
     }
 
     this.hasNumbers = flags.contains(FSAFlags.NUMBERS);
+    this.hasSortedArcs = flags.contains(FSAFlags.SORTED_ARCS);
 
     /*
      * Read mapping dictionary.
@@ -169,11 +186,15 @@ public final class CFSA2 extends FSA {
   /** {@inheritDoc} */
   @Override
   public final int getFirstArc(int node) {
-    if (hasNumbers) {
-      return skipVInt(node);
-    } else {
-      return node;
+    int offset = hasNumbers ? skipVInt(node) : node;
+    if (hasSortedArcs) {
+      if (readVInt(arcs, offset) >= MIN_FIXED_LENGTH_ARCS) {
+        offset = skipVInt(offset) + 1;
+      } else {
+        offset = skipVInt(offset);
+      }
     }
+    return offset;
   }
 
   /** {@inheritDoc} */
@@ -189,6 +210,10 @@ public final class CFSA2 extends FSA {
   /** {@inheritDoc} */
   @Override
   public int getArc(int node, byte label) {
+    if (hasSortedArcs) {
+      return getSortedArc(node, label & 0xff);
+    }
+
     for (int arc = getFirstArc(node); arc != 0; arc = getNextArc(arc)) {
       if (getArcLabel(arc) == label) {
         return arc;
@@ -199,6 +224,136 @@ public final class CFSA2 extends FSA {
     return 0;
   }
 
+  /** Binary search (or a linear scan up to the label) over sorted arcs. */
+  private int getSortedArc(int node, int label) {
+    int offset = hasNumbers ? skipVInt(node) : node;
+    final int count = readVInt(arcs, offset);
+    offset = skipVInt(offset);
+
+    if (count >= MIN_FIXED_LENGTH_ARCS) {
+      // Fixed-length arcs with explicit labels: narrow down to the last arc with label <= label.
+      final int arcLength = arcs[offset++];
+      int first = offset;
+      for (int n = count; n > 1; ) {
+        final int half = n >>> 1;
+        final int middle = first + half * arcLength;
+        first = (arcs[middle + 1] & 0xff) <= label ? middle : first;
+        n -= half;
+      }
+      return (arcs[first + 1] & 0xff) == label ? first : 0;
+    }
+
+    for (int arc = offset; ; arc = skipArc(arc)) {
+      final int arcLabel = getArcLabel(arc) & 0xff;
+      if (arcLabel >= label) {
+        return arcLabel == label ? arc : 0;
+      }
+      if (isArcLast(arc)) {
+        return 0;
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getArcCount(int node) {
+    if (hasSortedArcs) {
+      return readVInt(arcs, hasNumbers ? skipVInt(node) : node);
+    }
+    return super.getArcCount(node);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public ArcCursor newArcCursor() {
+    return new CFSA2ArcCursor(this);
+  }
+
+  /** Decodes an arc reading its flags and goto field once. */
+  private static final class CFSA2ArcCursor extends ArcCursor {
+    private final CFSA2 fsa;
+
+    CFSA2ArcCursor(CFSA2 fsa) {
+      super(fsa);
+      this.fsa = fsa;
+    }
+
+    @Override
+    public boolean read(int arc) {
+      this.arc = arc;
+      if (arc == 0) {
+        return false;
+      }
+
+      final byte[] arcs = fsa.arcs;
+      final int flags = arcs[arc];
+      final int index = flags & LABEL_INDEX_MASK;
+      int offset = arc + 1;
+      if (index > 0) {
+        label = fsa.labelMapping[index];
+      } else {
+        label = arcs[offset++];
+      }
+      isFinal = (flags & BIT_FINAL_ARC) != 0;
+
+      if ((flags & BIT_TARGET_NEXT) != 0) {
+        endNode = fsa.getDestinationNodeOffset(arc);
+      } else {
+        endNode = readVInt(arcs, offset);
+        offset = fsa.skipVInt(offset);
+      }
+      nextArc = (flags & BIT_LAST_ARC) != 0 ? 0 : offset;
+      return true;
+    }
+
+    @Override
+    public boolean first(int node) {
+      return read(fsa.getFirstArc(node));
+    }
+
+    @Override
+    public boolean find(int node, byte label) {
+      return read(fsa.getArc(node, label));
+    }
+  }
+
+  /** Matches with arcs decoded inline, decoding each arc's target once. */
+  @Override
+  MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
+    if (node == 0) {
+      reuse.reset(MatchResult.NO_MATCH, start, node);
+      return reuse;
+    }
+
+    final int end = start + length;
+    for (int i = start; i < end; i++) {
+      final int arc = getArc(node, sequence[i]);
+      if (arc == 0) {
+        return mismatch(reuse, start, i, node);
+      }
+
+      if (i + 1 == end && (arcs[arc] & BIT_FINAL_ARC) != 0) {
+        /* The automaton has an exact match of the input sequence. */
+        reuse.reset(MatchResult.EXACT_MATCH, i, node);
+        return reuse;
+      }
+
+      final int target = getDestinationNodeOffset(arc);
+      if (target == 0) {
+        /* The automaton contains a prefix of the input sequence. */
+        reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, i + 1, node);
+        return reuse;
+      }
+
+      // Make a transition along the arc.
+      node = target;
+    }
+
+    /* The sequence is a prefix of at least one sequence in the automaton. */
+    reuse.reset(MatchResult.SEQUENCE_IS_A_PREFIX, 0, node);
+    return reuse;
+  }
+
   /** {@inheritDoc} */
   @Override
   public int getEndNode(int arc) {
@@ -0,0 +1,294 @@
+package morfologik.fsa;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A read-only automaton stored in a double-array (base-check) layout. Every node has a distinct
+ * base slot and is identified by it; the arc labeled <code>l</code> of node <code>n</code> is
+ * stored at slot <code>n + l</code> and exists if the slot is used and its check field is <code>
+ * l</code> (since bases are distinct, the label identifies the owner of a slot). This makes {@link
+ * #getArc(int, byte)} a constant-time operation touching a single slot, regardless of the number of
+ * arcs, at the cost of more memory than {@link FSA5} or {@link CFSA2}.
+ *
+ * <p>Node 0 has no arcs, terminal arcs point at it. Arcs are identified by their slots (slot 0 is
+ * never used).
+ *
+ * <p>The encoding of automaton body is as follows (all integers are stored MSB first).
+ *
+ * <pre>
+ * ---- header
+ *   4 bytes    '\', 'f', 's', 'a'
+ *   1 byte     version (fixed 0xda)
+ *   2 bytes    flags
+ *   4 bytes    root node
+ *   4 bytes    number of nodes (informative)
+ *   4 bytes    number of slots (S)
+ *
+ * ---- slots
+ *   S * 5 bytes   the check field (the arc's label) followed by the arc's end node, shifted left
+ *                 by {@link #TARGET_SHIFT} bits and ORed with {@link #BIT_ARC}, {@link
+ *                 #BIT_LAST_ARC} and {@link #BIT_FINAL_ARC}; all zeros if the slot is free
+ *   S * 1 byte    the label of the next arc of the same node (if not the last arc)
+ *   S * 1 byte    the label of the first arc of the node with this base
+ *   S * 4 bytes   the right-language count of the node with this base, only if compiled with
+ *                 NUMBERS
+ * </pre>
+ *
+ * <p>The number of slots includes padding, so that <code>n + l</code> is always a valid slot. The
+ * layout follows J. Aoe's double-array structure (IEEE Transactions on Software Engineering, 1989),
+ * adapted to automata where many arcs share the same end node.
+ */
+public final class DoubleArrayFSA extends FSA {
+  /** Automaton header version value. */
+  public static final byte VERSION = (byte) 0xda;
+
+  /** The slot is used by an arc. */
+  public static final int BIT_ARC = 1 << 2;
+
+  /** The arc is the last one from the current node's arcs list. */
+  public static final int BIT_LAST_ARC = 1 << 1;
+
+  /**
+   * The arc corresponds to the last character of a sequence available when building the automaton
+   * (acceptor transition).
+   */
+  public static final int BIT_FINAL_ARC = 1 << 0;
+
+  /** The number of bits the end node of an arc is shifted left by (to make room for flags). */
+  public static final int TARGET_SHIFT = 3;
+
+  /** The number of bytes of each slot. */
+  public static final int SLOT_SIZE = 1 + 4;
+
+  /** Flags for this automaton version. */
+  private final EnumSet<FSAFlags> flags;
+
+  /** The root node. */
+  private final int root;
+
+  /** The number of nodes. */
+  private final int nodeCount;
+
+  /**
+   * The check field and the end node with flags of each slot, kept together so that a transition
+   * usually reads a single cache line.
+   */
+  private final byte[] slots;
+
+  /** The label of the next arc of the same node, for each slot. */
+  private final byte[] nextLabels;
+
+  /** The label of the first arc of the node with the given base. */
+  private final byte[] firstLabels;
+
+  /** Right-language counts of the node with the given base, if compiled with numbers. */
+  private final int[] numbers;
+
+  /** Reads an automaton from a byte stream. */
+  DoubleArrayFSA(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+
+    // Read flags.
+    short flagBits = in.readShort();
+    flags = EnumSet.noneOf(FSAFlags.class);
+    for (FSAFlags f : FSAFlags.values()) {
+      if (f.isSet(flagBits)) {
+        flags.add(f);
+      }
+    }
+
+    if (flagBits != FSAFlags.asShort(flags)) {
+      throw new IOException("Unrecognized flags: 0x" + Integer.toHexString(flagBits));
+    }
+
+    root = in.readInt();
+    nodeCount = in.readInt();
+    final int slotCount = in.readInt();
+    if (slotCount <= 0xff || root < 0 || root + 0xff >= slotCount) {
+      throw new IOException("Invalid automaton header.");
+    }
+
+    final ByteBuffer data = ByteBuffer.wrap(readRemaining(in));
+    final boolean hasNumbers = flags.contains(FSAFlags.NUMBERS);
+    final long expected = ((long) SLOT_SIZE + 1 + 1 + (hasNumbers ? 4 : 0)) * slotCount;
+    if (data.remaining() != expected) {
+      throw new IOException(
+          "Truncated or corrupt automaton data: " + data.remaining() + " != " + expected);
+    }
+
+    slots = readBytes(data, SLOT_SIZE * slotCount);
+    nextLabels = readBytes(data, slotCount);
+    firstLabels = readBytes(data, slotCount);
+    numbers = hasNumbers ? readInts(data, slotCount) : null;
+
+    for (int slot = 0; slot < slotCount; slot++) {
+      if ((target(slot) >>> TARGET_SHIFT) + 0xff >= slotCount) {
+        throw new IOException("Node out of range in slot: " + slot);
+      }
+    }
+  }
+
+  private static int[] readInts(ByteBuffer data, int count) {
+    int[] values = new int[count];
+    data.asIntBuffer().get(values);
+    data.position(data.position() + 4 * count);
+    return values;
+  }
+
+  private static byte[] readBytes(ByteBuffer data, int count) {
+    byte[] values = new byte[count];
+    data.get(values);
+    return values;
+  }
+
+  /** Returns the end node and flags of the arc at the given slot. */
+  private int target(int slot) {
+    final byte[] slots = this.slots;
+    final int offset = SLOT_SIZE * slot + 1;
+    return (slots[offset] << 24)
+        | (slots[offset + 1] & 0xff) << 16
+        | (slots[offset + 2] & 0xff) << 8
+        | (slots[offset + 3] & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRootNode() {
+    return root;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getFirstArc(int node) {
+    return node == 0 ? 0 : node + (firstLabels[node] & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getNextArc(int arc) {
+    if ((target(arc) & BIT_LAST_ARC) != 0) {
+      return 0;
+    }
+    return arc - (slots[SLOT_SIZE * arc] & 0xff) + (nextLabels[arc] & 0xff);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getArc(int node, byte label) {
+    final int slot = node + (label & 0xff);
+    return slots[SLOT_SIZE * slot] == label && (target(slot) & BIT_ARC) != 0 ? slot : 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
+    if (node == 0) {
+      reuse.reset(MatchResult.NO_MATCH, start, node);
+      return reuse;
+    }
+
+    final byte[] slots = this.slots;
+    final int end = start + length;
+    for (int i = start; i < end; i++) {
+      final byte label = sequence[i];
+      final int slot = node + (label & 0xff);
+      final int target = target(slot);
+      if (slots[SLOT_SIZE * slot] != label || (target & BIT_ARC) == 0) {
+        return mismatch(reuse, start, i, node);
+      }
+
+      if (i + 1 == end && (target & BIT_FINAL_ARC) != 0) {
+        /* The automaton has an exact match of the input sequence. */
+        reuse.reset(MatchResult.EXACT_MATCH, i, node);
+        return reuse;
+      }
+
+      if ((target >>> TARGET_SHIFT) == 0) {
+        /* The automaton contains a prefix of the input sequence. */
+        reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, i + 1, node);
+        return reuse;
+      }
+
+      // Make a transition along the arc.
+      node = target >>> TARGET_SHIFT;
+    }
+
+    /* The sequence is a prefix of at least one sequence in the automaton. */
+    reuse.reset(MatchResult.SEQUENCE_IS_A_PREFIX, 0, node);
+    return reuse;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte getArcLabel(int arc) {
+    return slots[SLOT_SIZE * arc];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isArcFinal(int arc) {
+    return (target(arc) & BIT_FINAL_ARC) != 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isArcTerminal(int arc) {
+    return (target(arc) >>> TARGET_SHIFT) == 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getEndNode(int arc) {
+    final int node = target(arc) >>> TARGET_SHIFT;
+    assert node != 0 : "No target node for terminal arcs.";
+    return node;
+  }
+
+  /**
+   * Returns the number of sequences reachable from the given state if the automaton was compiled
+   * with {@link FSAFlags#NUMBERS}.
+   */
+  @Override
+  public int getRightLanguageCount(int node) {
+    assert getFlags().contains(FSAFlags.NUMBERS) : "This FSA was not compiled with NUMBERS.";
+    return numbers[node];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Set<FSAFlags> getFlags() {
+    return flags;
+  }
+
+  /**
+   * @return Returns the number of nodes (not counting node 0).
+   */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * @return Returns the number of arc slots (used and free).
+   */
+  public int getSlotCount() {
+    return nextLabels.length;
+  }
+
+  /**
+   * @return Returns the number of arc slots used by arcs.
+   */
+  public int getUsedSlotCount() {
+    int used = 0;
+    for (int slot = 0; slot < getSlotCount(); slot++) {
+      if ((target(slot) & BIT_ARC) != 0) {
+        used++;
+      }
+    }
+    return used;
+  }
+}
@@ -1,6 +1,5 @@
 package morfologik.fsa;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -9,6 +8,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Set;
+import java.util.Spliterator;
 
 /**
  * This is a top abstract class for handling finite state automata. These automata are arc-based, a
@@ -102,6 +102,62 @@ public abstract class FSA implements Iterable<ByteBuffer> {
     throw new UnsupportedOperationException("Automaton not compiled with " + FSAFlags.NUMBERS);
   }
 
+  /**
+   * @return Returns a new cursor decoding arcs of this automaton.
+   */
+  public ArcCursor newArcCursor() {
+    return new ArcCursor(this);
+  }
+
+  /**
+   * Implements {@link FSATraversal#match(MatchResult, byte[], int, int, int)}. Automata override it
+   * with their format's arcs decoded inline, so that matching makes a single virtual call (instead
+   * of several per arc) even if automata of different formats are used side by side.
+   */
+  MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
+    if (node == 0) {
+      reuse.reset(MatchResult.NO_MATCH, start, node);
+      return reuse;
+    }
+
+    final int end = start + length;
+    for (int i = start; i < end; i++) {
+      final int arc = getArc(node, sequence[i]);
+      if (arc != 0) {
+        if (i + 1 == end && isArcFinal(arc)) {
+          /* The automaton has an exact match of the input sequence. */
+          reuse.reset(MatchResult.EXACT_MATCH, i, node);
+          return reuse;
+        }
+
+        if (isArcTerminal(arc)) {
+          /* The automaton contains a prefix of the input sequence. */
+          reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, i + 1, node);
+          return reuse;
+        }
+
+        // Make a transition along the arc.
+        node = getEndNode(arc);
+      } else {
+        return mismatch(reuse, start, i, node);
+      }
+    }
+
+    /* The sequence is a prefix of at least one sequence in the automaton. */
+    reuse.reset(MatchResult.SEQUENCE_IS_A_PREFIX, 0, node);
+    return reuse;
+  }
+
+  /** Sets the result of a match with no arc for the label at <code>index</code>. */
+  static MatchResult mismatch(MatchResult reuse, int start, int index, int node) {
+    if (index > start) {
+      reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, index, node);
+    } else {
+      reuse.reset(MatchResult.NO_MATCH, index, node);
+    }
+    return reuse;
+  }
+
   /**
    * Returns an iterator over all binary sequences starting at the given FSA state (node) and ending
    * in final nodes. This corresponds to a set of suffixes of a given prefix from all sequences
@@ -151,6 +207,18 @@ public abstract class FSA implements Iterable<ByteBuffer> {
     return getSequences().iterator();
   }
 
+  /**
+   * Returns a spliterator over all binary sequences starting from the initial FSA state (node) and
+   * ending in final nodes, in the same order as {@link #iterator()}. Unlike the iterator, each
+   * sequence is a separate {@link ByteBuffer}, so the spliterator can be used by parallel streams.
+   *
+   * @see ByteSequenceSpliterator
+   */
+  @Override
+  public final Spliterator<ByteBuffer> spliterator() {
+    return new ByteSequenceSpliterator(this);
+  }
+
   /**
    * Visit all states. The order of visiting is undefined. This method may be faster than traversing
    * the automaton in post or preorder since it can scan states linearly. Returning false from
@@ -234,13 +302,8 @@ public abstract class FSA implements Iterable<ByteBuffer> {
    * @throws IOException Rethrown if an I/O exception occurs.
    */
   protected static final byte[] readRemaining(InputStream in) throws IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    byte[] buffer = new byte[1024 * 8];
-    int len;
-    while ((len = in.read(buffer)) >= 0) {
-      baos.write(buffer, 0, len);
-    }
-    return baos.toByteArray();
+    // Avoids repeated buffer growth and the final copy of a ByteArrayOutputStream.
+    return in.readAllBytes();
   }
 
   /** Private recursion. */
@@ -277,6 +340,8 @@ public abstract class FSA implements Iterable<ByteBuffer> {
         return new CFSA(stream);
       case CFSA2.VERSION:
         return new CFSA2(stream);
+      case DoubleArrayFSA.VERSION:
+        return new DoubleArrayFSA(stream);
       default:
         throw new IOException(
             String.format(
@@ -179,6 +179,102 @@ public final class FSA5 extends FSA {
     return 0;
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public ArcCursor newArcCursor() {
+    return new FSA5ArcCursor(this);
+  }
+
+  /** Decodes an arc reading its flags once. */
+  private static final class FSA5ArcCursor extends ArcCursor {
+    private final FSA5 fsa;
+
+    FSA5ArcCursor(FSA5 fsa) {
+      super(fsa);
+      this.fsa = fsa;
+    }
+
+    @Override
+    public boolean read(int arc) {
+      this.arc = arc;
+      if (arc == 0) {
+        return false;
+      }
+
+      final byte[] arcs = fsa.arcs;
+      final int flags = arcs[arc + ADDRESS_OFFSET];
+      label = arcs[arc];
+      isFinal = (flags & BIT_FINAL_ARC) != 0;
+      if ((flags & BIT_TARGET_NEXT) != 0) {
+        endNode = nextArc = arc + 1 + 1;
+      } else {
+        endNode = decodeFromBytes(arcs, arc + ADDRESS_OFFSET, fsa.gtl) >>> 3;
+        nextArc = arc + 1 + fsa.gtl;
+      }
+      if ((flags & BIT_LAST_ARC) != 0) {
+        nextArc = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean first(int node) {
+      return read(fsa.getFirstArc(node));
+    }
+
+    @Override
+    public boolean find(int node, byte label) {
+      return read(fsa.getArc(node, label));
+    }
+  }
+
+  /** Matches with arcs decoded inline, reading each arc's flags once. */
+  @Override
+  MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
+    if (node == 0) {
+      reuse.reset(MatchResult.NO_MATCH, start, node);
+      return reuse;
+    }
+
+    final byte[] arcs = this.arcs;
+    final int end = start + length;
+    for (int i = start; i < end; i++) {
+      final byte label = sequence[i];
+      int arc = node + nodeDataLength;
+      int flags = arcs[arc + ADDRESS_OFFSET];
+      while (arcs[arc] != label) {
+        if ((flags & BIT_LAST_ARC) != 0) {
+          return mismatch(reuse, start, i, node);
+        }
+        arc += (flags & BIT_TARGET_NEXT) != 0 ? 1 + 1 : 1 + gtl;
+        flags = arcs[arc + ADDRESS_OFFSET];
+      }
+
+      if (i + 1 == end && (flags & BIT_FINAL_ARC) != 0) {
+        /* The automaton has an exact match of the input sequence. */
+        reuse.reset(MatchResult.EXACT_MATCH, i, node);
+        return reuse;
+      }
+
+      final int target =
+          (flags & BIT_TARGET_NEXT) != 0
+              ? arc + 1 + 1
+              : decodeFromBytes(arcs, arc + ADDRESS_OFFSET, gtl) >>> 3;
+      if (target == 0) {
+        /* The automaton contains a prefix of the input sequence. */
+        reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, i + 1, node);
+        return reuse;
+      }
+
+      // Make a transition along the arc.
+      node = target;
+    }
+
+    /* The sequence is a prefix of at least one sequence in the automaton. */
+    reuse.reset(MatchResult.SEQUENCE_IS_A_PREFIX, 0, node);
+    return reuse;
+  }
+
   /** {@inheritDoc} */
   @Override
   public int getEndNode(int arc) {
@@ -31,7 +31,15 @@ public enum FSAFlags {
    * The FSA supports legacy built-in separator and filler characters (Daciuk's FSA package
    * compatibility).
    */
-  SEPARATORS(1 << 9);
+  SEPARATORS(1 << 9),
+
+  /**
+   * Arcs of each state are sorted by their (unsigned) label values and preceded by the number of
+   * arcs. States with many arcs have arcs of equal length, so that they can be binary-searched.
+   *
+   * @see FSA#getArc(int, byte)
+   */
+  SORTED_ARCS(1 << 10);
 
   /** Bit mask for the corresponding flag. */
   public final int bits;
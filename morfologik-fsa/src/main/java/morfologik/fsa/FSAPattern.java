@@ -0,0 +1,496 @@
+package morfologik.fsa;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A wildcard or a (small) regular expression pattern, compiled into a nondeterministic automaton
+ * over characters. Sequences of an {@link FSA} matching the pattern are enumerated by a {@link
+ * PatternMatchIterator}, which traverses both automata simultaneously (so only the parts of the FSA
+ * that can still match are visited).
+ *
+ * <p>Wildcard patterns ({@link #wildcard(String, Charset)}) support:
+ *
+ * <ul>
+ *   <li><code>?</code> - any single character,
+ *   <li><code>*</code> - any sequence of characters (including an empty one),
+ *   <li><code>[abc]</code>, <code>[a-z]</code>, <code>[^abc]</code> - character classes,
+ *   <li><code>\x</code> - the literal character <code>x</code>.
+ * </ul>
+ *
+ * <p>Regular expressions ({@link #regex(String, Charset)}) support <code>.</code> (any character),
+ * character classes, escapes, groups <code>( )</code>, alternatives <code>|</code> and the
+ * quantifiers <code>*</code>, <code>+</code>, <code>?</code>, <code>{m}</code>, <code>{m,}</code>
+ * and <code>{m,n}</code> (bounded repetition). A pattern always matches entire sequences (there are
+ * no anchors).
+ *
+ * <p>Sequences are decoded into characters using the given charset, which must be UTF-8 or a
+ * single-byte charset. Instances of this class are immutable and thread-safe.
+ */
+public final class FSAPattern {
+  /** Maximum number of automaton states (bounded repetition copies its sub-pattern). */
+  private static final int MAX_STATES = 10000;
+
+  /** The character matched by undecodable bytes. */
+  static final int REPLACEMENT_CHARACTER = 0xfffd;
+
+  /** A range matching any character. */
+  private static final int[] ANY = {0, Character.MAX_CODE_POINT};
+
+  /** The pattern, as given. */
+  private final String pattern;
+
+  /** The charset of sequences to match. */
+  final Charset charset;
+
+  /** Characters of single-byte charsets (<code>null</code> for UTF-8). */
+  final char[] singleByteChars;
+
+  /**
+   * Character ranges (inclusive pairs) matched by each state, <code>null</code> for states without
+   * outgoing character transitions.
+   */
+  private final int[][] ranges;
+
+  /** <code>true</code> if the state matches characters outside of its {@link #ranges}. */
+  private final boolean[] negated;
+
+  /** The state following a character transition. */
+  private final int[] next;
+
+  /** States reachable from each state without consuming characters (bit sets). */
+  private final long[][] closures;
+
+  /** The only accepting state. */
+  private final int accept;
+
+  /** States active before any character is consumed. */
+  private final long[] initial;
+
+  /**
+   * Compiles a wildcard pattern.
+   *
+   * @param pattern The pattern.
+   * @param charset The charset of sequences to match.
+   * @return Returns the compiled pattern.
+   * @throws IllegalArgumentException If the pattern is invalid or the charset is not supported.
+   */
+  public static FSAPattern wildcard(String pattern, Charset charset) {
+    return new FSAPattern(pattern, new Parser(pattern, false).parse(), charset);
+  }
+
+  /**
+   * Compiles a regular expression.
+   *
+   * @param pattern The pattern.
+   * @param charset The charset of sequences to match.
+   * @return Returns the compiled pattern.
+   * @throws IllegalArgumentException If the pattern is invalid or the charset is not supported.
+   */
+  public static FSAPattern regex(String pattern, Charset charset) {
+    return new FSAPattern(pattern, new Parser(pattern, true).parse(), charset);
+  }
+
+  private FSAPattern(String pattern, Node root, Charset charset) {
+    this.pattern = pattern;
+    this.charset = charset;
+    this.singleByteChars = singleByteChars(charset);
+
+    final Compiler compiler = new Compiler();
+    final int accept = compiler.addState(null, false, -1);
+    final int start = compiler.compile(root, accept);
+
+    final int count = compiler.ranges.size();
+    this.accept = accept;
+    this.ranges = compiler.ranges.toArray(new int[count][]);
+    this.negated = new boolean[count];
+    this.next = new int[count];
+    for (int i = 0; i < count; i++) {
+      negated[i] = compiler.negated.get(i);
+      next[i] = compiler.next.get(i);
+    }
+
+    this.closures = new long[count][];
+    for (int i = 0; i < count; i++) {
+      final long[] closure = new long[words()];
+      addClosure(closure, i, compiler.epsilons);
+      closures[i] = closure;
+    }
+    this.initial = closures[start];
+  }
+
+  /** Returns the number of <code>long</code> words of state sets. */
+  int words() {
+    return (ranges.length + 63) >>> 6;
+  }
+
+  /** Copies the initial state set to <code>states</code>. */
+  void initial(long[] states) {
+    System.arraycopy(initial, 0, states, 0, initial.length);
+  }
+
+  /**
+   * Computes the states following <code>from</code> on character <code>chr</code>.
+   *
+   * @return Returns <code>false</code> if there are no such states (no match is possible).
+   */
+  boolean step(long[] from, int chr, long[] to) {
+    Arrays.fill(to, 0L);
+    boolean any = false;
+    for (int w = 0; w < from.length; w++) {
+      for (long bits = from[w]; bits != 0; bits &= bits - 1) {
+        final int state = (w << 6) + Long.numberOfTrailingZeros(bits);
+        if (ranges[state] != null && matches(state, chr)) {
+          final long[] closure = closures[next[state]];
+          for (int k = 0; k < to.length; k++) {
+            to[k] |= closure[k];
+          }
+          any = true;
+        }
+      }
+    }
+    return any;
+  }
+
+  /** Returns <code>true</code> if <code>states</code> contains the accepting state. */
+  boolean accepts(long[] states) {
+    return (states[accept >>> 6] & (1L << accept)) != 0;
+  }
+
+  private boolean matches(int state, int chr) {
+    final int[] r = ranges[state];
+    boolean in = false;
+    for (int i = 0; i < r.length && !in; i += 2) {
+      in = chr >= r[i] && chr <= r[i + 1];
+    }
+    return in != negated[state];
+  }
+
+  private void addClosure(long[] closure, int state, List<int[]> epsilons) {
+    if ((closure[state >>> 6] & (1L << state)) != 0) {
+      return;
+    }
+    closure[state >>> 6] |= 1L << state;
+    for (int target : epsilons.get(state)) {
+      addClosure(closure, target, epsilons);
+    }
+  }
+
+  private static char[] singleByteChars(Charset charset) {
+    if (StandardCharsets.UTF_8.equals(charset)) {
+      return null;
+    }
+
+    if (charset.newEncoder().maxBytesPerChar() != 1f) {
+      throw new IllegalArgumentException(
+          "Only UTF-8 and single-byte charsets are supported: " + charset.name());
+    }
+
+    final CharsetDecoder decoder =
+        charset
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    final char[] chars = new char[256];
+    for (int b = 0; b < chars.length; b++) {
+      try {
+        final CharBuffer decoded = decoder.decode(ByteBuffer.wrap(new byte[] {(byte) b}));
+        chars[b] = decoded.remaining() == 1 ? decoded.get() : (char) REPLACEMENT_CHARACTER;
+      } catch (CharacterCodingException e) {
+        chars[b] = (char) REPLACEMENT_CHARACTER;
+      }
+    }
+    return chars;
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+
+  /** A node of the parsed pattern. */
+  private abstract static class Node {}
+
+  private static final class CharClass extends Node {
+    final int[] ranges;
+    final boolean negated;
+
+    CharClass(int[] ranges, boolean negated) {
+      this.ranges = ranges;
+      this.negated = negated;
+    }
+  }
+
+  private static final class Sequence extends Node {
+    final List<Node> nodes;
+
+    Sequence(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+  }
+
+  private static final class Alternatives extends Node {
+    final List<Node> nodes;
+
+    Alternatives(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+  }
+
+  private static final class Repeat extends Node {
+    final Node node;
+    final int min;
+
+    /** The maximum number of repetitions, <code>-1</code> if unbounded. */
+    final int max;
+
+    Repeat(Node node, int min, int max) {
+      this.node = node;
+      this.min = min;
+      this.max = max;
+    }
+  }
+
+  /** Parses wildcards and regular expressions into {@link Node}s. */
+  private static final class Parser {
+    private final String pattern;
+    private final boolean regex;
+    private int pos;
+
+    Parser(String pattern, boolean regex) {
+      this.pattern = pattern;
+      this.regex = regex;
+    }
+
+    Node parse() {
+      final Node node = regex ? alternatives() : wildcard();
+      if (pos < pattern.length()) {
+        throw error("Unexpected character");
+      }
+      return node;
+    }
+
+    private Node wildcard() {
+      final List<Node> nodes = new ArrayList<>();
+      while (pos < pattern.length()) {
+        final int chr = pattern.codePointAt(pos);
+        if (chr == '*') {
+          pos++;
+          nodes.add(new Repeat(new CharClass(ANY, false), 0, -1));
+        } else if (chr == '?') {
+          pos++;
+          nodes.add(new CharClass(ANY, false));
+        } else {
+          nodes.add(atom());
+        }
+      }
+      return new Sequence(nodes);
+    }
+
+    private Node alternatives() {
+      final List<Node> nodes = new ArrayList<>();
+      nodes.add(sequence());
+      while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+        pos++;
+        nodes.add(sequence());
+      }
+      return nodes.size() == 1 ? nodes.get(0) : new Alternatives(nodes);
+    }
+
+    private Node sequence() {
+      final List<Node> nodes = new ArrayList<>();
+      while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+        Node node;
+        if (pattern.charAt(pos) == '(') {
+          pos++;
+          node = alternatives();
+          expect(')');
+        } else if (pattern.charAt(pos) == '.') {
+          pos++;
+          node = new CharClass(ANY, false);
+        } else if ("*+?{".indexOf(pattern.charAt(pos)) >= 0) {
+          throw error("Nothing to repeat");
+        } else {
+          node = atom();
+        }
+        nodes.add(quantifiers(node));
+      }
+      return new Sequence(nodes);
+    }
+
+    private Node quantifiers(Node node) {
+      while (pos < pattern.length()) {
+        final char chr = pattern.charAt(pos);
+        if (chr == '*') {
+          node = new Repeat(node, 0, -1);
+        } else if (chr == '+') {
+          node = new Repeat(node, 1, -1);
+        } else if (chr == '?') {
+          node = new Repeat(node, 0, 1);
+        } else if (chr == '{') {
+          pos++;
+          final int min = number();
+          int max = min;
+          if (pos < pattern.length() && pattern.charAt(pos) == ',') {
+            pos++;
+            max = pos < pattern.length() && pattern.charAt(pos) == '}' ? -1 : number();
+          }
+          if (max >= 0 && max < min) {
+            throw error("Invalid repetition bounds");
+          }
+          expect('}');
+          node = new Repeat(node, min, max);
+          continue;
+        } else {
+          break;
+        }
+        pos++;
+      }
+      return node;
+    }
+
+    private int number() {
+      final int start = pos;
+      while (pos < pattern.length() && pos - start < 4 && Character.isDigit(pattern.charAt(pos))) {
+        pos++;
+      }
+      if (start == pos) {
+        throw error("Expected a number");
+      }
+      return Integer.parseInt(pattern.substring(start, pos));
+    }
+
+    /** A character class, an escaped or a literal character. */
+    private Node atom() {
+      if (pattern.charAt(pos) != '[') {
+        final int chr = literal();
+        return new CharClass(new int[] {chr, chr}, false);
+      }
+
+      pos++;
+      final boolean negated = pos < pattern.length() && pattern.charAt(pos) == '^';
+      if (negated) {
+        pos++;
+      }
+
+      final List<Integer> ranges = new ArrayList<>();
+      do {
+        if (pos >= pattern.length()) {
+          throw error("Unterminated character class");
+        }
+        final int from = literal();
+        int to = from;
+        if (pos + 1 < pattern.length()
+            && pattern.charAt(pos) == '-'
+            && pattern.charAt(pos + 1) != ']') {
+          pos++;
+          to = literal();
+          if (to < from) {
+            throw error("Invalid character range");
+          }
+        }
+        ranges.add(from);
+        ranges.add(to);
+      } while (pos >= pattern.length() || pattern.charAt(pos) != ']');
+      pos++;
+
+      final int[] array = new int[ranges.size()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = ranges.get(i);
+      }
+      return new CharClass(array, negated);
+    }
+
+    private int literal() {
+      if (pattern.charAt(pos) == '\\') {
+        pos++;
+        if (pos >= pattern.length()) {
+          throw error("Dangling escape");
+        }
+      }
+      final int chr = pattern.codePointAt(pos);
+      pos += Character.charCount(chr);
+      return chr;
+    }
+
+    private void expect(char chr) {
+      if (pos >= pattern.length() || pattern.charAt(pos) != chr) {
+        throw error("Expected '" + chr + "'");
+      }
+      pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(
+          message + " at position " + pos + " of pattern: " + pattern);
+    }
+  }
+
+  /** Compiles {@link Node}s into states, backwards from the state that follows them. */
+  private static final class Compiler {
+    final List<int[]> ranges = new ArrayList<>();
+    final List<Boolean> negated = new ArrayList<>();
+    final List<Integer> next = new ArrayList<>();
+    final List<int[]> epsilons = new ArrayList<>();
+
+    int addState(int[] ranges, boolean negated, int next, int... epsilons) {
+      if (this.ranges.size() >= MAX_STATES) {
+        throw new IllegalArgumentException("Pattern too complex (too many states).");
+      }
+      this.ranges.add(ranges);
+      this.negated.add(negated);
+      this.next.add(next);
+      this.epsilons.add(epsilons);
+      return this.ranges.size() - 1;
+    }
+
+    /** Returns the first state of <code>node</code>, followed by state <code>next</code>. */
+    int compile(Node node, int next) {
+      if (node instanceof CharClass) {
+        final CharClass chars = (CharClass) node;
+        return addState(chars.ranges, chars.negated, next);
+      }
+
+      if (node instanceof Sequence) {
+        final List<Node> nodes = ((Sequence) node).nodes;
+        for (int i = nodes.size(); --i >= 0; ) {
+          next = compile(nodes.get(i), next);
+        }
+        return next;
+      }
+
+      if (node instanceof Alternatives) {
+        final List<Node> nodes = ((Alternatives) node).nodes;
+        final int[] starts = new int[nodes.size()];
+        for (int i = 0; i < starts.length; i++) {
+          starts[i] = compile(nodes.get(i), next);
+        }
+        return addState(null, false, -1, starts);
+      }
+
+      final Repeat repeat = (Repeat) node;
+      int start = next;
+      if (repeat.max < 0) {
+        final int loop = addState(null, false, -1);
+        epsilons.set(loop, new int[] {compile(repeat.node, loop), next});
+        start = loop;
+      } else {
+        for (int i = repeat.min; i < repeat.max; i++) {
+          start = addState(null, false, -1, compile(repeat.node, start), next);
+        }
+      }
+      for (int i = 0; i < repeat.min; i++) {
+        start = compile(repeat.node, start);
+      }
+      return start;
+    }
+  }
+}
@@ -42,9 +42,11 @@ public final class FSATraversal {
     byte label = sequence[seqIndex];
 
     // Seek through the current node's labels, looking for 'label', update hash.
-    for (int arc = fsa.getFirstArc(node); arc != 0; ) {
-      if (fsa.getArcLabel(arc) == label) {
-        if (fsa.isArcFinal(arc)) {
+    // A cursor per call: traversals hold no state apart from the automaton (and are thread-safe).
+    final ArcCursor cursor = fsa.newArcCursor();
+    for (boolean hasArc = cursor.first(node); hasArc; ) {
+      if (cursor.getLabel() == label) {
+        if (cursor.isFinal()) {
           if (seqIndex == end) {
             return hash;
           }
@@ -52,7 +54,7 @@ public final class FSATraversal {
           hash++;
         }
 
-        if (fsa.isArcTerminal(arc)) {
+        if (cursor.isTerminal()) {
           /* The automaton contains a prefix of the input sequence. */
           return AUTOMATON_HAS_PREFIX;
         }
@@ -63,19 +65,19 @@ public final class FSATraversal {
         }
 
         // Make a transition along the arc, go the target node's first arc.
-        arc = fsa.getFirstArc(fsa.getEndNode(arc));
+        hasArc = cursor.first(cursor.getEndNode());
         label = sequence[++seqIndex];
         continue;
       } else {
-        if (fsa.isArcFinal(arc)) {
+        if (cursor.isFinal()) {
           hash++;
         }
-        if (!fsa.isArcTerminal(arc)) {
-          hash += fsa.getRightLanguageCount(fsa.getEndNode(arc));
+        if (!cursor.isTerminal()) {
+          hash += fsa.getRightLanguageCount(cursor.getEndNode());
         }
       }
 
-      arc = fsa.getNextArc(arc);
+      hasArc = cursor.next();
     }
 
     if (seqIndex > start) {
@@ -113,43 +115,7 @@ public final class FSATraversal {
    *     and other relevant fields.
    */
   public MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
-    if (node == 0) {
-      reuse.reset(NO_MATCH, start, node);
-      return reuse;
-    }
-
-    final FSA fsa = this.fsa;
-    final int end = start + length;
-    for (int i = start; i < end; i++) {
-      final int arc = fsa.getArc(node, sequence[i]);
-      if (arc != 0) {
-        if (i + 1 == end && fsa.isArcFinal(arc)) {
-          /* The automaton has an exact match of the input sequence. */
-          reuse.reset(EXACT_MATCH, i, node);
-          return reuse;
-        }
-
-        if (fsa.isArcTerminal(arc)) {
-          /* The automaton contains a prefix of the input sequence. */
-          reuse.reset(AUTOMATON_HAS_PREFIX, i + 1, node);
-          return reuse;
-        }
-
-        // Make a transition along the arc.
-        node = fsa.getEndNode(arc);
-      } else {
-        if (i > start) {
-          reuse.reset(AUTOMATON_HAS_PREFIX, i, node);
-        } else {
-          reuse.reset(NO_MATCH, i, node);
-        }
-        return reuse;
-      }
-    }
-
-    /* The sequence is a prefix of at least one sequence in the automaton. */
-    reuse.reset(SEQUENCE_IS_A_PREFIX, 0, node);
-    return reuse;
+    return fsa.match(reuse, sequence, start, length, node);
   }
 
   /**
@@ -0,0 +1,242 @@
+package morfologik.fsa;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only, in-memory copy of another automaton with the labels of each node's arcs stored
+ * contiguously, so that {@link #getArc(int, byte)} is a scan of a single block of bytes (done by a
+ * {@link LabelMatcher}, which may compare many labels at once). Every arc has a fixed-length target
+ * field in a separate array, at the same index as its label.
+ *
+ * <p>A node with <code>n</code> arcs takes <code>n + 1</code> consecutive indexes of both arrays:
+ *
+ * <pre>
+ * labels:   n - 1 (the header), label 1, label 2, ..., label n
+ * targets:  right-language count (if NUMBERS), target 1, target 2, ..., target n
+ * </pre>
+ *
+ * <p>A node is identified by the index of its first label, an arc by the index of its label. Each
+ * target is the arc's end node, shifted left by {@link #TARGET_SHIFT} bits and ORed with {@link
+ * #BIT_LAST_ARC} and {@link #BIT_FINAL_ARC}. Node 0 has no arcs, terminal arcs point at it.
+ *
+ * @see LabelMatcher#getDefault()
+ */
+public final class FixedStrideFSA extends FSA {
+  /** The arc is the last one from the current node's arcs list. */
+  public static final int BIT_LAST_ARC = 1 << 1;
+
+  /**
+   * The arc corresponds to the last character of a sequence available when building the automaton
+   * (acceptor transition).
+   */
+  public static final int BIT_FINAL_ARC = 1 << 0;
+
+  /** The number of bits the end node of an arc is shifted left by (to make room for flags). */
+  public static final int TARGET_SHIFT = 2;
+
+  /** Flags for this automaton (only {@link FSAFlags#NUMBERS} is preserved). */
+  private final EnumSet<FSAFlags> flags;
+
+  /** The root node. */
+  private final int root;
+
+  /** Node headers and arc labels, followed by {@link LabelMatcher#PADDING} bytes. */
+  private final byte[] labels;
+
+  /** Right-language counts of nodes and arc targets, at the same indexes as {@link #labels}. */
+  private final int[] targets;
+
+  /** Finds arcs in blocks of labels. */
+  private final LabelMatcher matcher;
+
+  /**
+   * Copies an automaton, using {@link LabelMatcher#getDefault()} to find arcs.
+   *
+   * @param fsa The automaton to copy.
+   */
+  public FixedStrideFSA(FSA fsa) {
+    this(fsa, LabelMatcher.getDefault());
+  }
+
+  /**
+   * Copies an automaton.
+   *
+   * @param fsa The automaton to copy.
+   * @param matcher Finds arcs in blocks of labels.
+   */
+  public FixedStrideFSA(FSA fsa, LabelMatcher matcher) {
+    this.matcher = matcher;
+    this.flags = EnumSet.noneOf(FSAFlags.class);
+    final boolean hasNumbers = fsa.getFlags().contains(FSAFlags.NUMBERS);
+    if (hasNumbers) {
+      flags.add(FSAFlags.NUMBERS);
+    }
+
+    // Assign indexes to nodes in preorder, so that the root's subtree comes first.
+    final Map<Integer, Integer> nodes = new HashMap<>();
+    final int[] size = {0};
+    fsa.visitInPreOrder(
+        (int node) -> {
+          final int arcs = fsa.getArcCount(node);
+          if (arcs > 0) {
+            nodes.put(node, size[0] + 1);
+            size[0] += 1 + arcs;
+          }
+          return true;
+        });
+
+    if (size[0] > (Integer.MAX_VALUE >>> TARGET_SHIFT) - LabelMatcher.PADDING) {
+      throw new IllegalArgumentException("Automaton too large: " + size[0] + " arcs and nodes.");
+    }
+
+    labels = new byte[size[0] + LabelMatcher.PADDING];
+    targets = new int[size[0]];
+    for (Map.Entry<Integer, Integer> e : nodes.entrySet()) {
+      final int node = e.getValue();
+      int arc = node;
+      for (int source = fsa.getFirstArc(e.getKey()); source != 0; source = fsa.getNextArc(source)) {
+        labels[arc] = fsa.getArcLabel(source);
+        final int endNode =
+            fsa.isArcTerminal(source) ? 0 : nodes.getOrDefault(fsa.getEndNode(source), 0);
+        targets[arc] =
+            endNode << TARGET_SHIFT
+                | (fsa.isArcFinal(source) ? BIT_FINAL_ARC : 0)
+                | (fsa.getNextArc(source) == 0 ? BIT_LAST_ARC : 0);
+        arc++;
+      }
+      labels[node - 1] = (byte) (arc - node - 1);
+      if (hasNumbers) {
+        targets[node - 1] = fsa.getRightLanguageCount(e.getKey());
+      }
+    }
+
+    root = nodes.getOrDefault(fsa.getRootNode(), 0);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getRootNode() {
+    return root;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getFirstArc(int node) {
+    return node;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getNextArc(int arc) {
+    return (targets[arc] & BIT_LAST_ARC) != 0 ? 0 : arc + 1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getArc(int node, byte label) {
+    if (node == 0) {
+      return 0;
+    }
+    final int to = node + (labels[node - 1] & 0xff) + 1;
+    final int arc = matcher.indexOf(labels, node, to, label);
+    return arc < 0 ? 0 : arc;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  MatchResult match(MatchResult reuse, byte[] sequence, int start, int length, int node) {
+    if (node == 0) {
+      reuse.reset(MatchResult.NO_MATCH, start, node);
+      return reuse;
+    }
+
+    final byte[] labels = this.labels;
+    final int[] targets = this.targets;
+    final int end = start + length;
+    for (int i = start; i < end; i++) {
+      final int arc =
+          matcher.indexOf(labels, node, node + (labels[node - 1] & 0xff) + 1, sequence[i]);
+      if (arc < 0) {
+        return mismatch(reuse, start, i, node);
+      }
+
+      final int target = targets[arc];
+      if (i + 1 == end && (target & BIT_FINAL_ARC) != 0) {
+        /* The automaton has an exact match of the input sequence. */
+        reuse.reset(MatchResult.EXACT_MATCH, i, node);
+        return reuse;
+      }
+
+      if ((target >>> TARGET_SHIFT) == 0) {
+        /* The automaton contains a prefix of the input sequence. */
+        reuse.reset(MatchResult.AUTOMATON_HAS_PREFIX, i + 1, node);
+        return reuse;
+      }
+
+      // Make a transition along the arc.
+      node = target >>> TARGET_SHIFT;
+    }
+
+    /* The sequence is a prefix of at least one sequence in the automaton. */
+    reuse.reset(MatchResult.SEQUENCE_IS_A_PREFIX, 0, node);
+    return reuse;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getArcCount(int node) {
+    return node == 0 ? 0 : (labels[node - 1] & 0xff) + 1;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public byte getArcLabel(int arc) {
+    return labels[arc];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isArcFinal(int arc) {
+    return (targets[arc] & BIT_FINAL_ARC) != 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isArcTerminal(int arc) {
+    return (targets[arc] >>> TARGET_SHIFT) == 0;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getEndNode(int arc) {
+    final int node = targets[arc] >>> TARGET_SHIFT;
+    assert node != 0 : "No target node for terminal arcs.";
+    return node;
+  }
+
+  /**
+   * Returns the number of sequences reachable from the given state if the automaton was compiled
+   * with {@link FSAFlags#NUMBERS}.
+   */
+  @Override
+  public int getRightLanguageCount(int node) {
+    assert getFlags().contains(FSAFlags.NUMBERS) : "This FSA was not compiled with NUMBERS.";
+    return node == 0 ? 0 : targets[node - 1];
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Set<FSAFlags> getFlags() {
+    return flags;
+  }
+
+  /**
+   * @return Returns the matcher used to find arcs.
+   */
+  public LabelMatcher getLabelMatcher() {
+    return matcher;
+  }
+}
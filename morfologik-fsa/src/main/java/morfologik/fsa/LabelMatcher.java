@@ -0,0 +1,70 @@
+package morfologik.fsa;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Finds a label in a contiguous block of arc labels (used by {@link FixedStrideFSA}). The default
+ * matcher compares one label at a time; faster matchers can be plugged in as service providers of
+ * this class (see <code>morfologik-fsa-vector</code>, which compares whole vectors of labels on
+ * JDKs with the <code>jdk.incubator.vector</code> module).
+ *
+ * @see #getDefault()
+ */
+public abstract class LabelMatcher {
+  /**
+   * The number of bytes following the last block of labels in an array passed to {@link
+   * #indexOf(byte[], int, int, byte)}. Matchers may read (but never match) these bytes, so that
+   * whole vectors can be loaded regardless of the block's length.
+   */
+  public static final int PADDING = 64;
+
+  /** Compares one label at a time. */
+  public static final LabelMatcher SCALAR =
+      new LabelMatcher() {
+        @Override
+        public int indexOf(byte[] labels, int from, int to, byte label) {
+          for (int i = from; i < to; i++) {
+            if (labels[i] == label) {
+              return i;
+            }
+          }
+          return -1;
+        }
+      };
+
+  /**
+   * @param labels An array of labels, with at least {@link #PADDING} bytes after <code>to</code>.
+   * @param from The first label of the block (inclusive).
+   * @param to The end of the block (exclusive).
+   * @param label The label to look for.
+   * @return Returns the index of the first occurrence of <code>label</code> in <code>labels[from,
+   *     to)</code> or -1 if there is none.
+   */
+  public abstract int indexOf(byte[] labels, int from, int to, byte label);
+
+  /**
+   * @return Returns the first matcher registered as a service provider that could be loaded or
+   *     {@link #SCALAR} if there is none.
+   */
+  public static LabelMatcher getDefault() {
+    return DefaultHolder.DEFAULT;
+  }
+
+  /** Loads the default matcher on first use. */
+  private static final class DefaultHolder {
+    static final LabelMatcher DEFAULT = load();
+
+    private static LabelMatcher load() {
+      try {
+        for (LabelMatcher matcher :
+            ServiceLoader.load(LabelMatcher.class, LabelMatcher.class.getClassLoader())) {
+          return matcher;
+        }
+      } catch (ServiceConfigurationError | LinkageError e) {
+        // The provider requires a module not available at runtime (jdk.incubator.vector).
+      }
+      return SCALAR;
+    }
+  }
+}
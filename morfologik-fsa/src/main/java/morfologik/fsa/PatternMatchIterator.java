@@ -0,0 +1,254 @@
+package morfologik.fsa;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over sequences of an automaton matching an {@link FSAPattern}. The automaton and the
+ * pattern are traversed simultaneously (depth-first, in the automaton's order), so arcs that cannot
+ * lead to a match are never followed; matches are found lazily, as the iterator advances.
+ *
+ * <p>Matches are returned in a reused {@link ByteBuffer} (valid until the next call to {@link
+ * #next()}), just like in {@link ByteSequenceIterator}.
+ */
+public final class PatternMatchIterator implements Iterator<ByteBuffer> {
+  /**
+   * Default expected depth of the recursion stack (estimated longest sequence in the automaton).
+   * Buffers expand by the same value if exceeded.
+   */
+  private static final int EXPECTED_MAX_STATES = 15;
+
+  /** The FSA to which this iterator belongs. */
+  private final FSA fsa;
+
+  /** Decodes arcs of {@link #fsa}. */
+  private final ArcCursor cursor;
+
+  /** The pattern to match. */
+  private final FSAPattern pattern;
+
+  /** The separator following matched prefixes or <code>-1</code> to match entire sequences. */
+  private final int separator;
+
+  /** The number of matches left to return. */
+  private int remaining;
+
+  /** An internal cache for the next element in the FSA */
+  private ByteBuffer nextElement;
+
+  /** A buffer for the current sequence of bytes from the current node to the root. */
+  private byte[] buffer = new byte[EXPECTED_MAX_STATES];
+
+  /** Reusable byte buffer wrapper around {@link #buffer}. */
+  private ByteBuffer bufferWrapper = ByteBuffer.wrap(buffer);
+
+  /** An arc stack for DFS when processing the automaton. */
+  private int[] arcs = new int[EXPECTED_MAX_STATES];
+
+  /** Pattern states at each depth of {@link #arcs}. */
+  private long[][] states = new long[EXPECTED_MAX_STATES][];
+
+  /** Bytes of an incomplete (UTF-8) character at each depth, still to be read. */
+  private int[] pendingBytes = new int[EXPECTED_MAX_STATES];
+
+  /** Bits of an incomplete (UTF-8) character at each depth. */
+  private int[] partialChars = new int[EXPECTED_MAX_STATES];
+
+  /** Current processing depth in {@link #arcs}. */
+  private int position;
+
+  /**
+   * Create an iterator over all automaton sequences matching the pattern.
+   *
+   * @param fsa The automaton to iterate over.
+   * @param pattern The pattern to match.
+   * @param limit The maximum number of matches to return.
+   */
+  public PatternMatchIterator(FSA fsa, FSAPattern pattern, int limit) {
+    this(fsa, pattern, -1, limit);
+  }
+
+  /**
+   * Create an iterator over prefixes of automaton sequences matching the pattern and followed by a
+   * separator, for example inflected forms of a dictionary (each prefix is returned once, without
+   * the separator).
+   *
+   * @param fsa The automaton to iterate over.
+   * @param pattern The pattern to match.
+   * @param separator The separator following matching prefixes.
+   * @param limit The maximum number of matches to return.
+   */
+  public PatternMatchIterator(FSA fsa, FSAPattern pattern, byte separator, int limit) {
+    this(fsa, pattern, separator & 0xff, limit);
+  }
+
+  private PatternMatchIterator(FSA fsa, FSAPattern pattern, int separator, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit must not be negative: " + limit);
+    }
+
+    this.fsa = fsa;
+    this.cursor = fsa.newArcCursor();
+    this.pattern = pattern;
+    this.separator = separator;
+    this.remaining = limit;
+
+    final int node = fsa.getRootNode();
+    if (limit > 0 && fsa.getFirstArc(node) != 0) {
+      states[0] = new long[pattern.words()];
+      pattern.initial(states[0]);
+      pushNode(node);
+    }
+  }
+
+  /** Returns <code>true</code> if there are still elements in this iterator. */
+  @Override
+  public boolean hasNext() {
+    if (nextElement == null) {
+      nextElement = advance();
+    }
+
+    return nextElement != null;
+  }
+
+  /**
+   * @return Returns a {@link ByteBuffer} with the next matching sequence.
+   */
+  @Override
+  public ByteBuffer next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    final ByteBuffer cache = nextElement;
+    nextElement = null;
+    return cache;
+  }
+
+  /** Advances to the next match. */
+  private ByteBuffer advance() {
+    if (remaining == 0) {
+      return null;
+    }
+
+    while (position > 0) {
+      final int lastIndex = position - 1;
+      final int arc = arcs[lastIndex];
+
+      if (arc == 0) {
+        // Remove the current node from the queue.
+        position--;
+        continue;
+      }
+
+      // Go to the next arc, but leave it on the stack
+      // so that we keep the recursion depth level accurate.
+      final ArcCursor cursor = this.cursor;
+      cursor.read(arc);
+      arcs[lastIndex] = cursor.getNextArc();
+
+      final long[] from = states[lastIndex];
+      final int label = cursor.getLabel() & 0xff;
+      if (label == separator) {
+        if (pendingBytes[lastIndex] == 0 && pattern.accepts(from)) {
+          return match(lastIndex);
+        }
+        continue;
+      }
+
+      // Expand buffers if needed.
+      if (lastIndex + 1 >= buffer.length) {
+        final int length = buffer.length + EXPECTED_MAX_STATES;
+        buffer = Arrays.copyOf(buffer, length);
+        bufferWrapper = ByteBuffer.wrap(buffer);
+        states = Arrays.copyOf(states, length);
+        pendingBytes = Arrays.copyOf(pendingBytes, length);
+        partialChars = Arrays.copyOf(partialChars, length);
+      }
+      buffer[lastIndex] = (byte) label;
+
+      // Decode the next character, if complete.
+      int pending = pendingBytes[lastIndex];
+      int partial = partialChars[lastIndex];
+      int chr = -1;
+      if (pattern.singleByteChars != null) {
+        chr = pattern.singleByteChars[label];
+      } else if (pending > 0) {
+        if ((label & 0xc0) == 0x80) {
+          partial = (partial << 6) | (label & 0x3f);
+          if (--pending == 0) {
+            chr = partial;
+          }
+        } else {
+          chr = FSAPattern.REPLACEMENT_CHARACTER;
+          pending = 0;
+        }
+      } else if (label < 0x80) {
+        chr = label;
+      } else if ((label & 0xe0) == 0xc0) {
+        pending = 1;
+        partial = label & 0x1f;
+      } else if ((label & 0xf0) == 0xe0) {
+        pending = 2;
+        partial = label & 0x0f;
+      } else if ((label & 0xf8) == 0xf0) {
+        pending = 3;
+        partial = label & 0x07;
+      } else {
+        chr = FSAPattern.REPLACEMENT_CHARACTER;
+      }
+
+      if (states[lastIndex + 1] == null) {
+        states[lastIndex + 1] = new long[from.length];
+      }
+      final long[] to = states[lastIndex + 1];
+      if (chr < 0) {
+        System.arraycopy(from, 0, to, 0, from.length);
+      } else if (!pattern.step(from, chr, to)) {
+        // No match possible below this arc.
+        continue;
+      }
+
+      final boolean match =
+          separator < 0 && cursor.isFinal() && pending == 0 && pattern.accepts(to);
+
+      if (!cursor.isTerminal()) {
+        // Recursively descend into the arc's node.
+        pendingBytes[lastIndex + 1] = pending;
+        partialChars[lastIndex + 1] = partial;
+        pushNode(cursor.getEndNode());
+      }
+
+      if (match) {
+        return match(lastIndex + 1);
+      }
+    }
+
+    return null;
+  }
+
+  private ByteBuffer match(int length) {
+    remaining--;
+    bufferWrapper.clear();
+    bufferWrapper.limit(length);
+    return bufferWrapper;
+  }
+
+  /** Not implemented in this iterator. */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("Read-only iterator.");
+  }
+
+  /** Descends to a given node, adds its arcs to the stack to be traversed. */
+  private void pushNode(int node) {
+    // Expand buffers if needed.
+    if (position == arcs.length) {
+      arcs = Arrays.copyOf(arcs, arcs.length + EXPECTED_MAX_STATES);
+    }
+
+    arcs[position++] = fsa.getFirstArc(node);
+  }
+}
@@ -7,8 +7,11 @@ import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import morfologik.stemming.Dictionary;
 import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.DictionaryWarmer;
 import morfologik.stemming.IStemmer;
 import morfologik.stemming.WordData;
 
@@ -25,28 +28,53 @@ public final class PolishStemmer implements IStemmer, Iterable<WordData> {
   private final DictionaryLookup lookup;
 
   public PolishStemmer() {
-    synchronized (getClass()) {
-      if (dictionary == null) {
-        try {
-          dictionary =
-              AccessController.doPrivileged(
-                  new PrivilegedExceptionAction<Dictionary>() {
-                    @Override
-                    public Dictionary run() throws Exception {
-                      URL dictResource = getClass().getResource("polish.dict");
-                      if (dictResource == null) {
-                        throw new IOException("Polish dictionary resource not found.");
-                      }
-                      return Dictionary.read(dictResource);
+    lookup = new DictionaryLookup(dictionary());
+  }
+
+  /**
+   * Loads the dictionary (unless already loaded) and {@linkplain DictionaryWarmer warms it up} in a
+   * task run by <code>executor</code>, so that stemmers created later (for example once an
+   * application starts serving requests) don't stall on reading the dictionary and their first
+   * lookups don't run cold code.
+   *
+   * <p>Running the preload in a training run of an application started with <code>
+   * -XX:ArchiveClassesAtExit</code> also puts all classes used by lookups in the application's
+   * class data sharing archive.
+   *
+   * @param executor The executor to run the task with.
+   * @return Returns a future completed with the loaded dictionary once the warm-up is over.
+   */
+  public static CompletableFuture<Dictionary> preload(Executor executor) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          final Dictionary dictionary = dictionary();
+          DictionaryWarmer.warmUp(dictionary);
+          return dictionary;
+        },
+        executor);
+  }
+
+  /** Returns the dictionary, loading it on first use. */
+  private static synchronized Dictionary dictionary() {
+    if (dictionary == null) {
+      try {
+        dictionary =
+            AccessController.doPrivileged(
+                new PrivilegedExceptionAction<Dictionary>() {
+                  @Override
+                  public Dictionary run() throws Exception {
+                    URL dictResource = PolishStemmer.class.getResource("polish.dict");
+                    if (dictResource == null) {
+                      throw new IOException("Polish dictionary resource not found.");
                     }
-                  });
-        } catch (PrivilegedActionException e) {
-          throw new RuntimeException("Could not read dictionary data.", e.getException());
-        }
+                    return Dictionary.read(dictResource);
+                  }
+                });
+      } catch (PrivilegedActionException e) {
+        throw new RuntimeException("Could not read dictionary data.", e.getException());
       }
     }
-
-    lookup = new DictionaryLookup(dictionary);
+    return dictionary;
   }
 
   /**
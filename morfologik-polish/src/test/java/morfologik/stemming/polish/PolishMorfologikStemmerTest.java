@@ -7,6 +7,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryWarmer;
 import morfologik.stemming.IStemmer;
 import morfologik.stemming.WordData;
 import org.assertj.core.api.Assertions;
@@ -118,6 +120,17 @@ public class PolishMorfologikStemmerTest {
     }
   }
 
+  /* */
+  @Test
+  public void testPreload() throws Exception {
+    Dictionary dictionary = PolishStemmer.preload(Runnable::run).get();
+    assertSame(dictionary, new PolishStemmer().getDictionary());
+
+    // Sampled forms come from the dictionary, so all lookups find something.
+    Assertions.assertThat(DictionaryWarmer.warmUp(dictionary, 100)).isGreaterThanOrEqualTo(100);
+    assertEquals(0, DictionaryWarmer.warmUp(dictionary, 0));
+  }
+
   /* */
   public static String asString(CharSequence s) {
     if (s == null) return null;
@@ -0,0 +1,220 @@
+package morfologik.speller;
+
+import java.util.Arrays;
+
+/**
+ * Bit-parallel restricted Damerau-Levenshtein distance between a word of up to {@link #MAX_LENGTH}
+ * characters and a candidate that grows (and shrinks) one character at a time, as in a depth-first
+ * search over an automaton.
+ *
+ * <p>Each column of the distance matrix (one per candidate prefix) is kept as vertical delta bit
+ * vectors, so appending a candidate character updates the whole column in a few word operations
+ * (Myers' algorithm, with Hyyrö's extension for transpositions). Columns of all prefixes are kept,
+ * so the search can backtrack to any earlier prefix for free.
+ */
+final class BitParallelEditDistance {
+  /** Maximum word length (the number of bits in a column vector). */
+  static final int MAX_LENGTH = Long.SIZE;
+
+  /** Character equality used for substitutions (transpositions require identical characters). */
+  interface CharEquality {
+    boolean areEqual(char wordChar, char candidateChar);
+  }
+
+  private final CharEquality equality;
+
+  /** Positive and negative vertical deltas of each column. */
+  private final long[] positive;
+
+  private final long[] negative;
+
+  /** Zero diagonal deltas of each column (needed for transpositions in the next column). */
+  private final long[] zeroDiagonal;
+
+  /** Identical characters mask of each column's candidate character. */
+  private final long[] identical;
+
+  /** Distance of the full word to each candidate prefix. */
+  private final int[] scores;
+
+  private char[] word;
+  private int length;
+
+  /** Per-character masks for the current word, in an open addressing table. */
+  private char[] keys = new char[64];
+
+  private long[] equalMasks = new long[keys.length];
+  private long[] identicalMasks = new long[keys.length];
+  private int[] generations = new int[keys.length];
+  private int generation;
+  private int assigned;
+
+  /**
+   * @param equality Character equality for substitutions.
+   * @param maxCandidateLength Maximum length of a candidate.
+   */
+  BitParallelEditDistance(CharEquality equality, int maxCandidateLength) {
+    this.equality = equality;
+    this.positive = new long[maxCandidateLength + 1];
+    this.negative = new long[maxCandidateLength + 1];
+    this.zeroDiagonal = new long[maxCandidateLength + 1];
+    this.identical = new long[maxCandidateLength + 1];
+    this.scores = new int[maxCandidateLength + 1];
+  }
+
+  /**
+   * Starts over with a new word and an empty candidate (column 0).
+   *
+   * @param word The word's characters.
+   * @param length The word's length, at most {@link #MAX_LENGTH}.
+   */
+  void reset(char[] word, int length) {
+    assert length <= MAX_LENGTH;
+    this.word = word;
+    this.length = length;
+    this.assigned = 0;
+    if (++generation == 0) {
+      Arrays.fill(generations, 0);
+      generation = 1;
+    }
+
+    positive[0] = length == MAX_LENGTH ? -1L : (1L << length) - 1;
+    negative[0] = 0;
+    zeroDiagonal[0] = 0;
+    identical[0] = 0;
+    scores[0] = length;
+  }
+
+  /**
+   * Computes column <code>column + 1</code> from column <code>column</code> and the candidate
+   * character at that position.
+   */
+  void advance(int column, char c) {
+    final int slot = slot(c);
+    final long equal = equalMasks[slot];
+    final long same = identicalMasks[slot];
+    final long pv = positive[column];
+    final long mv = negative[column];
+
+    final long transposed = (((~zeroDiagonal[column]) & same) << 1) & identical[column];
+    final long d0 = (((equal & pv) + pv) ^ pv) | equal | mv | transposed;
+    long hp = mv | ~(d0 | pv);
+    long hn = d0 & pv;
+
+    int score = scores[column];
+    if (length > 0) {
+      final long last = 1L << (length - 1);
+      if ((hp & last) != 0) {
+        score++;
+      } else if ((hn & last) != 0) {
+        score--;
+      }
+    } else {
+      score++;
+    }
+
+    hp = (hp << 1) | 1;
+    hn = hn << 1;
+    positive[column + 1] = hn | ~(d0 | hp);
+    negative[column + 1] = d0 & hp;
+    zeroDiagonal[column + 1] = d0;
+    identical[column + 1] = same;
+    scores[column + 1] = score;
+  }
+
+  /**
+   * @return The distance between the full word and the candidate prefix of length column.
+   */
+  int score(int column) {
+    return scores[column];
+  }
+
+  /**
+   * @return The distance between the word prefix of length <code>row</code> and the candidate
+   *     prefix of length <code>column</code>.
+   */
+  int get(int row, int column) {
+    final long rows = row == MAX_LENGTH ? -1L : (1L << row) - 1;
+    return column + Long.bitCount(positive[column] & rows) - Long.bitCount(negative[column] & rows);
+  }
+
+  /**
+   * @return The minimum distance in column <code>column</code> between rows <code>fromRow</code>
+   *     and <code>toRow</code> (inclusive), or {@link Integer#MAX_VALUE} if the range is empty.
+   */
+  int min(int column, int fromRow, int toRow) {
+    if (fromRow > toRow) {
+      return Integer.MAX_VALUE;
+    }
+    final long pv = positive[column];
+    final long mv = negative[column];
+    int value = get(fromRow, column);
+    int min = value;
+    for (int row = fromRow; row < toRow; row++) {
+      value += (int) ((pv >>> row) & 1) - (int) ((mv >>> row) & 1);
+      min = Math.min(min, value);
+    }
+    return min;
+  }
+
+  /**
+   * @return The slot of character masks for <code>c</code>, computed on first use.
+   */
+  private int slot(char c) {
+    int mask = keys.length - 1;
+    int slot = (c * 0x9E3779B1) >>> 16 & mask;
+    while (generations[slot] == generation) {
+      if (keys[slot] == c) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (assigned * 2 >= keys.length) {
+      grow();
+      return slot(c);
+    }
+
+    long equal = 0;
+    long same = 0;
+    for (int i = 0; i < length; i++) {
+      if (word[i] == c) {
+        same |= 1L << i;
+        equal |= 1L << i;
+      } else if (equality.areEqual(word[i], c)) {
+        equal |= 1L << i;
+      }
+    }
+    keys[slot] = c;
+    equalMasks[slot] = equal;
+    identicalMasks[slot] = same;
+    generations[slot] = generation;
+    assigned++;
+    return slot;
+  }
+
+  private void grow() {
+    final char[] oldKeys = keys;
+    final long[] oldEqual = equalMasks;
+    final long[] oldIdentical = identicalMasks;
+    final int[] oldGenerations = generations;
+
+    keys = new char[oldKeys.length * 2];
+    equalMasks = new long[keys.length];
+    identicalMasks = new long[keys.length];
+    generations = new int[keys.length];
+    final int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldGenerations[i] == generation) {
+        int slot = (oldKeys[i] * 0x9E3779B1) >>> 16 & mask;
+        while (generations[slot] == generation) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        equalMasks[slot] = oldEqual[i];
+        identicalMasks[slot] = oldIdentical[i];
+        generations[slot] = generation;
+      }
+    }
+  }
+}
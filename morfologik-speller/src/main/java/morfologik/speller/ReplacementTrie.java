@@ -0,0 +1,268 @@
+package morfologik.speller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A character trie compiled from replacement pairs whose targets are longer than two characters.
+ * Keys may carry a <code>^</code> (start) and/or a <code>$</code> (end) anchor. The trie finds the
+ * leftmost (and then the longest) applicable key in a single left-to-right scan instead of probing
+ * every key with {@link String#indexOf(String)}, and generates replacement variants lazily.
+ */
+final class ReplacementTrie {
+  private static final int ANCHOR_START = 1;
+  private static final int ANCHOR_END = 2;
+
+  /** Anchor variants in the order they are preferred for the same key length. */
+  private static final int[] ANCHOR_PREFERENCE = {
+    ANCHOR_START | ANCHOR_END, ANCHOR_END, ANCHOR_START, 0
+  };
+
+  /** A single trie node. Child labels are sorted for binary search. */
+  private static final class Node {
+    char[] labels = new char[0];
+    Node[] children = new Node[0];
+
+    /** Replacements indexed by anchor flags ({@link #ANCHOR_START}, {@link #ANCHOR_END}). */
+    String[][] replacements;
+
+    Node child(char label) {
+      int index = Arrays.binarySearch(labels, label);
+      return index >= 0 ? children[index] : null;
+    }
+  }
+
+  /** A key occurrence found by {@link #find(CharSequence, int)}. */
+  static final class Match {
+    final int index;
+    final int length;
+    final String[] replacements;
+
+    Match(int index, int length, String[] replacements) {
+      this.index = index;
+      this.length = length;
+      this.replacements = replacements;
+    }
+  }
+
+  private final Node root;
+  private final boolean isEmpty;
+
+  /**
+   * @param pairs Replacement pairs, keys may carry <code>^</code> and <code>$</code> anchors.
+   */
+  ReplacementTrie(Map<String, List<String>> pairs) {
+    this.isEmpty = pairs.isEmpty();
+
+    // Build a mutable tree first (sorted children), then freeze it into arrays.
+    TreeNode tmp = new TreeNode();
+    for (Map.Entry<String, List<String>> e : pairs.entrySet()) {
+      String key = e.getKey();
+      int anchors = 0;
+      int start = 0;
+      int end = key.length();
+      if (key.startsWith("^")) {
+        anchors |= ANCHOR_START;
+        start++;
+      }
+      if (end > start && key.endsWith("$")) {
+        anchors |= ANCHOR_END;
+        end--;
+      }
+
+      TreeNode node = tmp;
+      for (int i = start; i < end; i++) {
+        node = node.children.computeIfAbsent(key.charAt(i), c -> new TreeNode());
+      }
+      if (node.replacements[anchors] == null) {
+        node.replacements[anchors] = new ArrayList<>();
+      }
+      node.replacements[anchors].addAll(e.getValue());
+    }
+
+    this.root = tmp.freeze();
+  }
+
+  /**
+   * Finds the first key occurrence at or after <code>fromIndex</code>. If more than one key starts
+   * at that position, the longest one is returned.
+   *
+   * @param s The sequence to search in.
+   * @param fromIndex The index to start searching from.
+   * @return The match or <code>null</code> if no key occurs in the sequence.
+   */
+  Match find(CharSequence s, int fromIndex) {
+    final int length = s.length();
+    for (int pos = Math.max(fromIndex, 0); pos <= length; pos++) {
+      final boolean startAllowed = pos == 0 && fromIndex <= 0;
+      Match best = null;
+      Node node = root;
+      for (int depth = 0; ; depth++) {
+        if (node.replacements != null) {
+          String[] reps = select(node, startAllowed, pos + depth == length);
+          if (reps != null) {
+            best = new Match(pos, depth, reps);
+          }
+        }
+        if (pos + depth == length || (node = node.child(s.charAt(pos + depth))) == null) {
+          break;
+        }
+      }
+
+      if (best != null) {
+        return best;
+      }
+    }
+    return null;
+  }
+
+  private static String[] select(Node node, boolean startAllowed, boolean endAllowed) {
+    for (int anchors : ANCHOR_PREFERENCE) {
+      if (((anchors & ANCHOR_START) == 0 || startAllowed)
+          && ((anchors & ANCHOR_END) == 0 || endAllowed)
+          && node.replacements[anchors] != null) {
+        return node.replacements[anchors];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Lazily enumerates all variants of <code>str</code> with replacements applied (or not) at every
+   * matching position. The first variant is always the input string itself (no replacements).
+   *
+   * @param str The input string.
+   * @param fromIndex The index from which replacements are applied.
+   * @param maxLevel Maximum number of subsequent key occurrences considered.
+   * @param limit Maximum number of variants to return.
+   * @return An iterator over the variants.
+   */
+  Iterator<String> variants(String str, int fromIndex, int maxLevel, int limit) {
+    if (isEmpty) {
+      return limit > 0
+          ? Collections.singletonList(str).iterator()
+          : Collections.<String>emptyIterator();
+    }
+    return new VariantIterator(str, fromIndex, maxLevel, limit);
+  }
+
+  /**
+   * Depth-first enumeration of replacement variants with an explicit stack. The order of returned
+   * variants is the same as in a recursive descent that first skips a key occurrence and then
+   * applies each of its replacements.
+   */
+  private final class VariantIterator implements Iterator<String> {
+    private final ArrayDeque<Frame> stack = new ArrayDeque<>();
+    private final int maxLevel;
+    private int remaining;
+    private String next;
+
+    VariantIterator(String str, int fromIndex, int maxLevel, int limit) {
+      this.maxLevel = maxLevel;
+      this.remaining = limit;
+      stack.push(new Frame(str, fromIndex, 0));
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && remaining > 0) {
+        next = advance();
+        if (next != null) {
+          remaining--;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String result = next;
+      next = null;
+      return result;
+    }
+
+    private String advance() {
+      while (!stack.isEmpty()) {
+        final Frame frame = stack.pop();
+        final String str = frame.str;
+        final int fromIndex = frame.fromIndex;
+        final int level = frame.level;
+
+        final Match m;
+        if (level > maxLevel || (m = find(str, fromIndex)) == null) {
+          return str;
+        }
+
+        // Push in reverse so that the branch without replacement is expanded first.
+        final int end = m.index + m.length;
+        for (int i = m.replacements.length; --i >= 0; ) {
+          final String rep = m.replacements[i];
+          // avoid unnecessary replacements (ex. don't replace L by L·L when L·L already present)
+          int ind = str.indexOf(rep, fromIndex - rep.length() + 1);
+          if (rep.length() > m.length
+              && ind > -1
+              && (ind == m.index || ind == m.index - rep.length() + 1)) {
+            continue;
+          }
+          String replaced = str.substring(0, m.index) + rep + str.substring(end);
+          stack.push(new Frame(replaced, m.index + rep.length(), level + 1));
+        }
+        stack.push(new Frame(str, end, level + 1));
+      }
+      return null;
+    }
+  }
+
+  /** A pending (partially replaced) string and the position to continue from. */
+  private static final class Frame {
+    final String str;
+    final int fromIndex;
+    final int level;
+
+    Frame(String str, int fromIndex, int level) {
+      this.str = str;
+      this.fromIndex = fromIndex;
+      this.level = level;
+    }
+  }
+
+  /** Mutable trie node used during construction only. */
+  private static final class TreeNode {
+    final TreeMap<Character, TreeNode> children = new TreeMap<>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final List<String>[] replacements = new List[4];
+
+    Node freeze() {
+      Node node = new Node();
+      node.labels = new char[children.size()];
+      node.children = new Node[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, TreeNode> e : children.entrySet()) {
+        node.labels[i] = e.getKey();
+        node.children[i] = e.getValue().freeze();
+        i++;
+      }
+
+      for (int anchors = 0; anchors < replacements.length; anchors++) {
+        if (replacements[anchors] != null) {
+          if (node.replacements == null) {
+            node.replacements = new String[replacements.length][];
+          }
+          node.replacements[anchors] = replacements[anchors].toArray(new String[0]);
+        }
+      }
+      return node;
+    }
+  }
+}
@@ -11,7 +11,6 @@ import java.nio.charset.CoderResult;
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
 import java.util.*;
-import morfologik.fsa.ByteSequenceIterator;
 import morfologik.fsa.FSA;
 import morfologik.fsa.FSATraversal;
 import morfologik.fsa.MatchResult;
@@ -19,6 +18,7 @@ import morfologik.stemming.BufferUtils;
 import morfologik.stemming.Dictionary;
 import morfologik.stemming.DictionaryLookup;
 import morfologik.stemming.DictionaryMetadata;
+import morfologik.stemming.NodeFrequencies;
 import morfologik.stemming.UnmappableInputException;
 
 /**
@@ -32,8 +32,7 @@ public class Speller {
   /** Maximum length of the word to be checked. */
   public static final int MAX_WORD_LENGTH = 120;
 
-  static final int FREQ_RANGES = 'Z' - 'A' + 1;
-  static final int FIRST_RANGE_CODE = 'A'; // less frequent words
+  static final int FREQ_RANGES = NodeFrequencies.FREQ_RANGES;
 
   // FIXME: this is an upper limit for replacement searches, we need
   // proper tree traversal instead of generation of all possible candidates
@@ -41,11 +40,20 @@ public class Speller {
   private static final int MIN_WORD_LENGTH = 4;
   private static final int MAX_RECURSION_LEVEL = 6;
 
+  /** Maximum number of variants generated from replacement pairs with longer targets. */
+  static final int MAX_REPLACEMENT_VARIANTS = 1024;
+
   private final int editDistance;
   private int effectEditDistance; // effective edit distance
 
   private final HMatrix hMatrix;
 
+  /**
+   * Column-at-a-time edit distance used instead of {@link #hMatrix} for words of up to 64
+   * characters (until a replacement pair is applied on the search path).
+   */
+  private final BitParallelEditDistance bitParallelDistance;
+
   private char[] candidate; /* current replacement */
   private int candLen;
   private int wordLen; /* length of word being processed */
@@ -64,11 +72,27 @@ public class Speller {
     }
   }
 
-  private Map<Character, List<Pattern>> replacementsAnyToOne = new HashMap<>();
-  private Map<String, List<Pattern>> replacementsAnyToTwo = new HashMap<>();
+  /** Replacement pairs of a dictionary, compiled into lookup structures (read-only). */
+  private static final class Replacements {
+    final Map<Character, List<Pattern>> anyToOne = new HashMap<>();
+    final Map<String, List<Pattern>> anyToTwo = new HashMap<>();
 
-  /** Keys may carry ^ / $ anchors; values are the replacement strings. */
-  private Map<String, List<String>> replacementsTheRest = new HashMap<>();
+    /** Replacement pairs with targets longer than two characters, compiled into a trie. */
+    ReplacementTrie theRest;
+  }
+
+  /**
+   * Compiled replacement pairs of dictionaries (by their metadata), shared by all spellers of a
+   * dictionary so that creating spellers is cheap.
+   */
+  private static final Map<DictionaryMetadata, Replacements> compiledReplacements =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final Map<Character, List<Pattern>> replacementsAnyToOne;
+  private final Map<String, List<Pattern>> replacementsAnyToTwo;
+
+  /** Replacement pairs with targets longer than two characters, compiled into a trie. */
+  private final ReplacementTrie replacementsTheRest;
 
   private boolean containsSeparators = true;
 
@@ -103,22 +127,44 @@ public class Speller {
   /** The FSA we are using. */
   private final FSA fsa;
 
-  /** An iterator for walking along the final states of {@link #fsa}. */
-  private final ByteSequenceIterator finalStatesIterator;
+  /** Maximum frequencies reachable from each node, computed on first use. */
+  private NodeFrequencies nodeFrequencies;
+
+  /** Minimum frequency of candidates in the current search, 0 if not limited. */
+  private int minFrequency;
+
+  /** Recent verdicts of {@link #isMisspelled(String)}, <code>null</code> if not cached. */
+  private final Map<String, Boolean> misspellings;
 
   public Speller(final Dictionary dictionary) {
     this(dictionary, 1);
   }
 
   public Speller(final Dictionary dictionary, final int editDistance) {
+    this(dictionary, editDistance, 0);
+  }
+
+  /**
+   * @param dictionary The dictionary to use.
+   * @param editDistance Maximum edit distance of suggestions.
+   * @param misspellingsCacheSize The number of recent {@link #isMisspelled(String)} verdicts to
+   *     cache. Useful if the same tokens are checked repeatedly. Zero disables the cache.
+   * @since 2.2.0
+   */
+  public Speller(
+      final Dictionary dictionary, final int editDistance, final int misspellingsCacheSize) {
+    if (misspellingsCacheSize < 0) {
+      throw new IllegalArgumentException("Cache size must be >= 0: " + misspellingsCacheSize);
+    }
+
     this.editDistance = editDistance;
     this.hMatrix = new HMatrix(editDistance, MAX_WORD_LENGTH);
+    this.bitParallelDistance = new BitParallelEditDistance(this::areEqual, MAX_WORD_LENGTH);
 
     this.dictionaryMetadata = dictionary.metadata;
     this.rootNode = dictionary.fsa.getRootNode();
     this.fsa = dictionary.fsa;
     this.matcher = new FSATraversal(fsa);
-    this.finalStatesIterator = new ByteSequenceIterator(fsa, rootNode);
 
     if (rootNode == 0) {
       throw new IllegalArgumentException("Dictionary must have at least the root node.");
@@ -134,7 +180,23 @@ public class Speller {
     // Multibyte separator will result in an exception here.
     dictionaryMetadata.getSeparatorAsChar();
 
-    this.createReplacementsMaps();
+    final Replacements replacements =
+        compiledReplacements.computeIfAbsent(dictionaryMetadata, Speller::createReplacementsMaps);
+    this.replacementsAnyToOne = replacements.anyToOne;
+    this.replacementsAnyToTwo = replacements.anyToTwo;
+    this.replacementsTheRest = replacements.theRest;
+
+    if (misspellingsCacheSize > 0) {
+      this.misspellings =
+          new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+              return size() > misspellingsCacheSize;
+            }
+          };
+    } else {
+      this.misspellings = null;
+    }
   }
 
   private static boolean isStartAnchored(String key) {
@@ -151,7 +213,13 @@ public class Speller {
     return key.substring(start, end);
   }
 
-  private void createReplacementsMaps() {
+  private static Replacements createReplacementsMaps(DictionaryMetadata dictionaryMetadata) {
+    final Replacements replacements = new Replacements();
+    final Map<Character, List<Pattern>> replacementsAnyToOne = replacements.anyToOne;
+    final Map<String, List<Pattern>> replacementsAnyToTwo = replacements.anyToTwo;
+
+    // Keys may carry ^ / $ anchors; values are the replacement strings.
+    Map<String, List<String>> theRest = new HashMap<>();
     for (Map.Entry<String, List<String>> entry :
         dictionaryMetadata.getReplacementPairs().entrySet()) {
       String rawKey = entry.getKey();
@@ -183,16 +251,18 @@ public class Speller {
           }
         } else {
           // replacements with longer targets: key keeps anchors for getAllReplacements
-          if (!replacementsTheRest.containsKey(rawKey)) {
+          if (!theRest.containsKey(rawKey)) {
             List<String> list = new ArrayList<>();
             list.add(s);
-            replacementsTheRest.put(rawKey, list);
+            theRest.put(rawKey, list);
           } else {
-            replacementsTheRest.get(rawKey).add(s);
+            theRest.get(rawKey).add(s);
           }
         }
       }
     }
+    replacements.theRest = new ReplacementTrie(theRest);
+    return replacements;
   }
 
   private ByteBuffer charSequenceToBytes(final CharSequence word) throws UnmappableInputException {
@@ -229,10 +299,25 @@ public class Speller {
    * case word is found in its lowercase version in the dictionary, and for all-uppercase words,
    * whether the word is found in the dictionary with the initial uppercase letter.
    *
+   * <p>If the speller was created with a cache size, recent verdicts are returned from the cache.
+   *
    * @param word - the word to be checked
    * @return true if the word is misspelled
    */
   public boolean isMisspelled(final String word) {
+    if (misspellings == null) {
+      return checkMisspelled(word);
+    }
+
+    Boolean verdict = misspellings.get(word);
+    if (verdict == null) {
+      verdict = checkMisspelled(word);
+      misspellings.put(word, verdict);
+    }
+    return verdict;
+  }
+
+  private boolean checkMisspelled(final String word) {
     // dictionaries usually do not contain punctuation
     String wordToCheck = word;
     if (!dictionaryMetadata.getInputConversionPairs().isEmpty()) {
@@ -250,9 +335,91 @@ public class Speller {
         && !isInDictionary(wordToCheck)
         && (!dictionaryMetadata.isConvertingCase()
             || !(!isMixedCase(wordToCheck)
-                && (isInDictionary(wordToCheck.toLowerCase(dictionaryMetadata.getLocale()))
-                    || isAllUppercase(wordToCheck)
-                        && isInDictionary(initialUppercase(wordToCheck)))));
+                && isCaseVariantInDictionary(wordToCheck, isAllUppercase(wordToCheck))));
+  }
+
+  /**
+   * Checks whether the lowercase or, optionally, the initial-uppercase variant of a word is in the
+   * dictionary. Both variants differ in the first character only, so they are checked in a single
+   * walk over the automaton which branches on the first character.
+   *
+   * @param word The word to check.
+   * @param initialUppercase Whether to check the initial-uppercase variant.
+   * @return True if any of the variants is found.
+   */
+  private boolean isCaseVariantInDictionary(final String word, final boolean initialUppercase) {
+    final String lowerWord = word.toLowerCase(dictionaryMetadata.getLocale());
+    final EncodedWord lower;
+    if (lowerWord.length() != word.length()
+        || word.indexOf(dictionaryMetadata.getSeparatorAsChar()) >= 0
+        || (lower = encodeWithOffsets(lowerWord)) == null
+        || lower.offsets[1] < 0) {
+      return isInDictionary(lowerWord)
+          || initialUppercase && isInDictionary(initialUppercase(word));
+    }
+
+    final int first = lower.offsets[1];
+    final int end = lower.bytes.length;
+    int lowerArc = walk(rootNode, lower.bytes, 0, first);
+    int upperArc = 0;
+    if (initialUppercase) {
+      try {
+        byteBuffer = charSequenceToBytes(word.subSequence(0, 1));
+        upperArc = walk(rootNode, byteBuffer.array(), 0, byteBuffer.remaining());
+      } catch (UnmappableInputException e) {
+        // the initial-uppercase variant is not in the dictionary.
+      }
+    }
+
+    // Both variants are the same from here on: continue once if they reach the same node.
+    if (upperArc != 0
+        && lowerArc != 0
+        && !fsa.isArcTerminal(upperArc)
+        && !fsa.isArcTerminal(lowerArc)
+        && fsa.getEndNode(upperArc) == fsa.getEndNode(lowerArc)
+        && fsa.isArcFinal(upperArc) == fsa.isArcFinal(lowerArc)) {
+      upperArc = 0;
+    }
+
+    return isWordEnd(walkFrom(lowerArc, lower.bytes, first, end))
+        || isWordEnd(walkFrom(upperArc, lower.bytes, first, end));
+  }
+
+  /**
+   * @return The last arc followed along <code>bytes[from..to)</code> or 0 if there is none.
+   */
+  private int walk(int node, final byte[] bytes, final int from, final int to) {
+    int arc = 0;
+    for (int i = from; i < to; i++) {
+      if (arc != 0) {
+        if (fsa.isArcTerminal(arc)) {
+          return 0;
+        }
+        node = fsa.getEndNode(arc);
+      }
+      if ((arc = fsa.getArc(node, bytes[i])) == 0) {
+        return 0;
+      }
+    }
+    return arc;
+  }
+
+  /** Continues {@link #walk} after <code>arc</code> (which may be 0 for no path). */
+  private int walkFrom(final int arc, final byte[] bytes, final int from, final int to) {
+    if (arc == 0 || from == to) {
+      return arc;
+    }
+    return fsa.isArcTerminal(arc) ? 0 : walk(fsa.getEndNode(arc), bytes, from, to);
+  }
+
+  /**
+   * @return True if the path ending with <code>arc</code> is a word in the dictionary.
+   */
+  private boolean isWordEnd(final int arc) {
+    return arc != 0
+        && (fsa.isArcFinal(arc)
+            || (!fsa.isArcTerminal(arc)
+                && fsa.getArc(fsa.getEndNode(arc), dictionaryMetadata.getSeparator()) != 0));
   }
 
   private CharSequence initialUppercase(final String wordToCheck) {
@@ -321,19 +488,32 @@ public class Speller {
     if (match.kind == SEQUENCE_IS_A_PREFIX) {
       final int arc = fsa.getArc(match.node, separator);
       if (arc != 0 && !fsa.isArcFinal(arc)) {
-        finalStatesIterator.restartFrom(fsa.getEndNode(arc));
-        if (finalStatesIterator.hasNext()) {
-          final ByteBuffer bb = finalStatesIterator.next();
-          final byte[] ba = bb.array();
-          final int bbSize = bb.remaining();
-          // the last byte contains the frequency after a separator
-          return ba[bbSize - 1] - FIRST_RANGE_CODE;
-        }
+        // the last byte contains the frequency after a separator
+        return NodeFrequencies.frequencyAfterSeparator(fsa, fsa.getEndNode(arc));
       }
     }
     return 0;
   }
 
+  /**
+   * Returns the frequency of a candidate ending with <code>arc</code> found while traversing the
+   * automaton. This is the same as {@link #getFrequency(CharSequence)}, but does not look the
+   * candidate up again.
+   */
+  private int getCandidateFrequency(final int arc) {
+    if (!dictionaryMetadata.isFrequencyIncluded()
+        || fsa.isArcFinal(arc)
+        || fsa.isArcTerminal(arc)) {
+      return 0;
+    }
+
+    final int sepArc = fsa.getArc(fsa.getEndNode(arc), dictionaryMetadata.getSeparator());
+    if (sepArc != 0 && !fsa.isArcFinal(sepArc)) {
+      return NodeFrequencies.frequencyAfterSeparator(fsa, fsa.getEndNode(sepArc));
+    }
+    return 0;
+  }
+
   /**
    * Propose suggestions for misspelled run-on words. This algorithm is inspired by spell.cc in
    * s_fsa package by Jan Daciuk.
@@ -342,6 +522,22 @@ public class Speller {
    * @return The list of suggested pairs, as CandidateData with space-concatenated strings.
    */
   public List<CandidateData> replaceRunOnWordCandidates(final String original) {
+    return replaceRunOnWordCandidates(original, 2);
+  }
+
+  /**
+   * Propose suggestions for misspelled run-on words, splitting the word into two or more dictionary
+   * words. Candidates with fewer parts come first, their distance is the number of inserted spaces.
+   *
+   * <p>The automaton is walked once from each reachable split position, recording all positions at
+   * which a dictionary word ends, so the word is not re-encoded for every split point.
+   *
+   * @param original The original misspelled word.
+   * @param maxParts The maximum number of words to split into (at least 2).
+   * @return The list of suggested splits, as CandidateData with space-concatenated strings.
+   * @since 2.2.0
+   */
+  public List<CandidateData> replaceRunOnWordCandidates(final String original, final int maxParts) {
     final List<CandidateData> candidates = new ArrayList<>();
     String wordToCheck = original;
     if (!dictionaryMetadata.getInputConversionPairs().isEmpty()) {
@@ -349,28 +545,46 @@ public class Speller {
           DictionaryLookup.applyReplacements(
               original, dictionaryMetadata.getInputConversionPairs());
     }
-    if (!isInDictionary(wordToCheck) && dictionaryMetadata.isSupportingRunOnWords()) {
-      Locale locale = dictionaryMetadata.getLocale();
-      for (int i = 1; i < wordToCheck.length(); i++) {
-        // chop from left to right
-        final String prefix = wordToCheck.substring(0, i);
-        final String suffix = wordToCheck.substring(i);
-        if (isInDictionary(suffix)
-            // camel case words: e.g. GreatElephant
-            || (!isNotCapitalizedWord(suffix) && isInDictionary(suffix.toLowerCase(locale)))) {
-          if (isInDictionary(prefix)) {
-            addReplacement(candidates, prefix + " " + suffix);
-          } else if (Character.isUpperCase(prefix.charAt(0))
-              && isInDictionary(prefix.toLowerCase(locale))) {
-            // a word that's uppercase just because used at sentence start
-            addReplacement(candidates, prefix + " " + suffix);
-          }
+    if (maxParts >= 2
+        && wordToCheck.length() > 1
+        && !isInDictionary(wordToCheck)
+        && dictionaryMetadata.isSupportingRunOnWords()) {
+      final RunOnWordLattice lattice = new RunOnWordLattice(wordToCheck);
+      if (lattice.exact != null) {
+        final int limit = Math.min(maxParts, wordToCheck.length());
+        final int[] splits = new int[limit + 1];
+        for (int parts = 2; parts <= limit; parts++) {
+          collectRunOnWords(candidates, lattice, splits, 0, parts);
         }
       }
     }
     return candidates;
   }
 
+  private void collectRunOnWords(
+      List<CandidateData> candidates, RunOnWordLattice lattice, int[] splits, int part, int parts) {
+    final String word = lattice.word;
+    final int start = splits[part];
+    final boolean[] ends = lattice.wordEnds(start);
+    if (part + 1 == parts) {
+      if (ends[word.length()]) {
+        final StringBuilder sb = new StringBuilder(word.length() + parts);
+        for (int i = 0; i < part; i++) {
+          sb.append(word, splits[i], splits[i + 1]).append(' ');
+        }
+        sb.append(word, start, word.length());
+        addReplacement(candidates, sb.toString(), parts - 1);
+      }
+    } else {
+      for (int end = start + 1; end < word.length(); end++) {
+        if (ends[end]) {
+          splits[part + 1] = end;
+          collectRunOnWords(candidates, lattice, splits, part + 1, parts);
+        }
+      }
+    }
+  }
+
   /**
    * Propose suggestions for misspelled run-on words. This algorithm is inspired by spell.cc in
    * s_fsa package by Jan Daciuk.
@@ -379,7 +593,18 @@ public class Speller {
    * @return The list of suggested pairs, as space-concatenated strings.
    */
   public List<String> replaceRunOnWords(final String original) {
-    final List<CandidateData> candidateData = replaceRunOnWordCandidates(original);
+    return replaceRunOnWords(original, 2);
+  }
+
+  /**
+   * @param original The original misspelled word.
+   * @param maxParts The maximum number of words to split into (at least 2).
+   * @return The list of suggested splits, as space-concatenated strings.
+   * @see #replaceRunOnWordCandidates(String, int)
+   * @since 2.2.0
+   */
+  public List<String> replaceRunOnWords(final String original, final int maxParts) {
+    final List<CandidateData> candidateData = replaceRunOnWordCandidates(original, maxParts);
     final List<String> candidates = new ArrayList<>();
     for (CandidateData candidate : candidateData) {
       candidates.add(candidate.word);
@@ -387,18 +612,169 @@ public class Speller {
     return candidates;
   }
 
-  private void addReplacement(List<CandidateData> candidates, String replacement) {
+  private void addReplacement(List<CandidateData> candidates, String replacement, int distance) {
     if (dictionaryMetadata.getOutputConversionPairs().isEmpty()) {
-      candidates.add(new CandidateData(replacement, 1));
+      candidates.add(new CandidateData(replacement, distance));
     } else {
       candidates.add(
           new CandidateData(
               DictionaryLookup.applyReplacements(
                   replacement, dictionaryMetadata.getOutputConversionPairs()),
-              1));
+              distance));
     }
   }
 
+  /**
+   * Encodes a word once and records, for each split position, the positions at which a dictionary
+   * word starting there ends. Besides exact matches, the first part may be found in lowercase if it
+   * starts with an uppercase letter; other parts may be found in lowercase if they are capitalized.
+   */
+  private final class RunOnWordLattice {
+    final String word;
+    final EncodedWord exact;
+    final EncodedWord lower;
+    final boolean[][] ends;
+
+    RunOnWordLattice(String word) {
+      this.word = word;
+      this.exact = encodeWithOffsets(word);
+      this.ends = new boolean[word.length() + 1][];
+
+      EncodedWord lower = null;
+      if (exact != null && Character.isUpperCase(word.charAt(0))) {
+        String lowerWord = word.toLowerCase(dictionaryMetadata.getLocale());
+        if (lowerWord.length() == word.length()) {
+          lower = encodeWithOffsets(lowerWord);
+        }
+      }
+      this.lower = lower;
+    }
+
+    /**
+     * @return Flags marking every position <code>end</code> for which [start, end) is a word.
+     */
+    boolean[] wordEnds(int start) {
+      if (ends[start] == null) {
+        final boolean[] result = exact.wordEnds(start);
+        final Locale locale = dictionaryMetadata.getLocale();
+        if (start == 0) {
+          if (lower != null) {
+            final boolean[] lowerEnds = lower.wordEnds(0);
+            for (int i = 0; i < result.length; i++) {
+              result[i] |= lowerEnds[i];
+            }
+          } else if (Character.isUpperCase(word.charAt(0))) {
+            // lowercasing changes the length of the word, check each prefix separately.
+            for (int end = 1; end <= word.length(); end++) {
+              result[end] |=
+                  exact.offsets[end] >= 0
+                      && isInDictionary(word.substring(0, end).toLowerCase(locale));
+            }
+          }
+        } else if (Character.isUpperCase(word.charAt(start))) {
+          // camel case words: e.g. GreatElephant
+          for (int end = start + 1; end <= word.length(); end++) {
+            final char c = word.charAt(end - 1);
+            if (end > start + 1 && Character.isLetter(c) && !Character.isLowerCase(c)) {
+              break;
+            }
+            result[end] |=
+                exact.offsets[end] >= 0
+                    && isInDictionary(word.substring(start, end).toLowerCase(locale));
+          }
+        }
+        ends[start] = result;
+      }
+      return ends[start];
+    }
+  }
+
+  /** A word encoded into the FSA's bytes, with byte offsets of character boundaries. */
+  private final class EncodedWord {
+    final byte[] bytes;
+
+    /** Byte offset for each character index, -1 for indexes in the middle of a surrogate pair. */
+    final int[] offsets;
+
+    /** Character index for each byte offset, -1 for offsets in the middle of a character. */
+    final int[] charIndex;
+
+    EncodedWord(byte[] bytes, int[] offsets) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.charIndex = new int[bytes.length + 1];
+      Arrays.fill(charIndex, -1);
+      for (int i = 0; i < offsets.length; i++) {
+        if (offsets[i] >= 0) {
+          charIndex[offsets[i]] = i;
+        }
+      }
+    }
+
+    /** Walks the automaton from <code>start</code>, marking the end of every dictionary word. */
+    boolean[] wordEnds(int start) {
+      final boolean[] result = new boolean[offsets.length];
+      final byte separator = dictionaryMetadata.getSeparator();
+      int node = rootNode;
+      for (int i = offsets[start]; i < bytes.length && bytes[i] != separator; i++) {
+        final int arc = fsa.getArc(node, bytes[i]);
+        if (arc == 0) {
+          break;
+        }
+
+        final boolean terminal = fsa.isArcTerminal(arc);
+        final int end = charIndex[i + 1];
+        if (end >= 0) {
+          result[end] =
+              fsa.isArcFinal(arc) || (!terminal && fsa.getArc(fsa.getEndNode(arc), separator) != 0);
+        }
+
+        if (terminal) {
+          break;
+        }
+        node = fsa.getEndNode(arc);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Encodes the word code point by code point, recording the byte offset of every character
+   * boundary.
+   *
+   * @return The encoded word or <code>null</code> if the word cannot be encoded.
+   */
+  private EncodedWord encodeWithOffsets(final String word) {
+    final int length = word.length();
+    charBuffer = BufferUtils.clearAndEnsureCapacity(charBuffer, length);
+    charBuffer.put(word);
+    charBuffer.flip();
+    byteBuffer =
+        BufferUtils.clearAndEnsureCapacity(byteBuffer, (int) (length * encoder.maxBytesPerChar()));
+
+    final int[] offsets = new int[length + 1];
+    Arrays.fill(offsets, -1);
+    offsets[0] = 0;
+
+    encoder.reset();
+    for (int i = 0; i < length; ) {
+      final int next = i + Character.charCount(Character.codePointAt(word, i));
+      charBuffer.limit(next);
+      final CoderResult cr = encoder.encode(charBuffer, byteBuffer, next == length);
+      if (cr.isError() || charBuffer.hasRemaining()) {
+        return null;
+      }
+      offsets[next] = byteBuffer.position();
+      i = next;
+    }
+    if (encoder.flush(byteBuffer).isError() || byteBuffer.position() != offsets[length]) {
+      return null;
+    }
+
+    byteBuffer.flip();
+    return new EncodedWord(BufferUtils.toArray(byteBuffer), offsets);
+  }
+
   /**
    * Find similar words even if the original word is a correct word that exists in the dictionary
    *
@@ -406,7 +782,7 @@ public class Speller {
    * @return A list of suggested candidate replacements.
    */
   public ArrayList<CandidateData> findSimilarWordCandidates(String word) {
-    return findReplacementCandidates(word, true);
+    return findReplacementCandidates(word, true, 0);
   }
 
   public ArrayList<String> findSimilarWords(String word) {
@@ -444,12 +820,30 @@ public class Speller {
    * @return A list of suggested candidate replacements.
    */
   public ArrayList<CandidateData> findReplacementCandidates(String word) {
-    return findReplacementCandidates(word, false);
+    return findReplacementCandidates(word, false, 0);
+  }
+
+  /**
+   * Same as {@link #findReplacementCandidates(String)}, but only returns candidates with the given
+   * minimum frequency. Branches of the automaton in which no word reaches this frequency are not
+   * searched at all. The frequency is ignored if the dictionary does not include frequency data.
+   *
+   * @param word The original misspelled word.
+   * @param minFrequency The minimum frequency of candidates, in range 0..25 (0: less frequent).
+   * @return A list of suggested candidate replacements.
+   * @since 2.2.0
+   */
+  public ArrayList<CandidateData> findReplacementCandidates(String word, int minFrequency) {
+    return findReplacementCandidates(word, false, minFrequency);
   }
 
   private ArrayList<CandidateData> findReplacementCandidates(
-      String word, boolean evenIfWordInDictionary) {
+      String word, boolean evenIfWordInDictionary, int minFrequency) {
     hMatrix.reset();
+    this.minFrequency = dictionaryMetadata.isFrequencyIncluded() ? minFrequency : 0;
+    if (this.minFrequency > 0 && nodeFrequencies == null) {
+      nodeFrequencies = new NodeFrequencies(fsa, dictionaryMetadata.getSeparator());
+    }
     if (!dictionaryMetadata.getInputConversionPairs().isEmpty()) {
       word = DictionaryLookup.applyReplacements(word, dictionaryMetadata.getInputConversionPairs());
     }
@@ -462,8 +856,11 @@ public class Speller {
         && word.length() < MAX_WORD_LENGTH
         && (!isInDictionary(word) || evenIfWordInDictionary)) {
       List<String> wordsToCheck = new ArrayList<>();
-      if (replacementsTheRest != null && word.length() > 1) {
-        for (final String wordChecked : getAllReplacements(word, 0, 0)) {
+      if (word.length() > 1) {
+        Iterator<String> variants =
+            replacementsTheRest.variants(word, 0, MAX_RECURSION_LEVEL, MAX_REPLACEMENT_VARIANTS);
+        while (variants.hasNext()) {
+          final String wordChecked = variants.next();
           if (isInDictionary(wordChecked)) {
             candidates.add(new CandidateData(wordChecked, 0));
           } else {
@@ -509,8 +906,14 @@ public class Speller {
         effectEditDistance = wordLen <= editDistance ? wordLen - 1 : editDistance;
         charBuffer = BufferUtils.clearAndEnsureCapacity(charBuffer, MAX_WORD_LENGTH);
         byteBuffer = BufferUtils.clearAndEnsureCapacity(byteBuffer, MAX_WORD_LENGTH);
+        // The matrix band is only fully initialized for the full edit distance.
+        final boolean isBitParallel =
+            wordLen <= BitParallelEditDistance.MAX_LENGTH && effectEditDistance == editDistance;
+        if (isBitParallel) {
+          bitParallelDistance.reset(wordProcessed, wordLen);
+        }
         final byte[] prevBytes = new byte[0];
-        findRepl(candidates, 0, fsa.getRootNode(), prevBytes, 0, 0, -1, null, '\0');
+        findRepl(candidates, 0, fsa.getRootNode(), prevBytes, 0, 0, -1, null, '\0', !isBitParallel);
       }
     }
 
@@ -524,8 +927,9 @@ public class Speller {
           DictionaryLookup.applyReplacements(
               cd.getWord(), dictionaryMetadata.getOutputConversionPairs());
       // Add only the first occurrence of a given word.
-      if (words.add(replaced) && !replaced.equals(word)) {
-        result.add(new CandidateData(replaced, cd.origDistance));
+      if (cd.frequency >= this.minFrequency && words.add(replaced) && !replaced.equals(word)) {
+        final int frequency = replaced.equals(cd.getWord()) ? cd.frequency : getFrequency(replaced);
+        result.add(new CandidateData(replaced, cd.origDistance, frequency));
       }
     }
 
@@ -541,7 +945,8 @@ public class Speller {
       final int candIndex,
       final int minLookbackWordIndex,
       final String lastAnyToOneSource,
-      final char lastAnyToOneTarget) {
+      final char lastAnyToOneTarget,
+      final boolean usesMatrix) {
     int dist = 0;
     for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
       byteBuffer = BufferUtils.clearAndEnsureCapacity(byteBuffer, prevBytes.length + 1);
@@ -556,7 +961,7 @@ public class Speller {
         final byte[] prev = new byte[bufPos];
         byteBuffer.position(0);
         byteBuffer.get(prev);
-        if (!fsa.isArcTerminal(arc)) {
+        if (!fsa.isArcTerminal(arc) && !isBelowMinFrequency(arc)) {
           findRepl(
               candidates,
               depth,
@@ -566,7 +971,8 @@ public class Speller {
               candIndex,
               minLookbackWordIndex,
               lastAnyToOneSource,
-              lastAnyToOneTarget); // note: depth is not incremented
+              lastAnyToOneTarget,
+              usesMatrix); // note: depth is not incremented
         }
         byteBuffer.clear();
       } else if (!c.isError()) { // unmappable characters are silently discarded
@@ -586,6 +992,9 @@ public class Speller {
                     lastAnyToOneSource,
                     lastAnyToOneTarget))
             > 0) {
+          if (!usesMatrix) {
+            copyToMatrix(depth);
+          }
           // the replacement takes place at the end of the candidate
           if (isEndOfCandidate(arc, wordIndex)
               && (dist = hMatrix.get(depth - 1, depth - 1)) <= effectEditDistance) {
@@ -594,10 +1003,14 @@ public class Speller {
               dist = dist + Math.abs(wordLen - 1 - (wordIndex + lengthReplacement - 2));
             }
             if (dist <= effectEditDistance) {
-              candidates.add(new CandidateData(String.valueOf(candidate, 0, candIndex + 1), dist));
+              candidates.add(
+                  new CandidateData(
+                      String.valueOf(candidate, 0, candIndex + 1),
+                      dist,
+                      getCandidateFrequency(arc)));
             }
           }
-          if (isArcNotTerminal(arc, candIndex)) {
+          if (isArcNotTerminal(arc, candIndex) && !isBelowMinFrequency(arc)) {
             int x = hMatrix.get(depth, depth);
             hMatrix.set(depth, depth, hMatrix.get(depth - 1, depth - 1));
             findRepl(
@@ -609,12 +1022,16 @@ public class Speller {
                 candIndex + 1,
                 minLookbackWordIndex,
                 lastAnyToOneSource,
-                lastAnyToOneTarget);
+                lastAnyToOneTarget,
+                true);
             hMatrix.set(depth, depth, x);
           }
         }
         // replacement "any to one"
         if ((lengthReplacement = matchAnyToOne(wordIndex, candIndex)) > 0) {
+          if (!usesMatrix) {
+            copyToMatrix(depth);
+          }
           // the replacement takes place at the end of the candidate
           if (isEndOfCandidate(arc, wordIndex)
               && (dist = hMatrix.get(depth, depth)) <= effectEditDistance) {
@@ -623,10 +1040,14 @@ public class Speller {
               dist = dist + Math.abs(wordLen - 1 - (wordIndex + lengthReplacement - 1));
             }
             if (dist <= effectEditDistance) {
-              candidates.add(new CandidateData(String.valueOf(candidate, 0, candIndex + 1), dist));
+              candidates.add(
+                  new CandidateData(
+                      String.valueOf(candidate, 0, candIndex + 1),
+                      dist,
+                      getCandidateFrequency(arc)));
             }
           }
-          if (isArcNotTerminal(arc, candIndex)) {
+          if (isArcNotTerminal(arc, candIndex) && !isBelowMinFrequency(arc)) {
             String newAnyToOneSource = new String(wordProcessed, wordIndex, lengthReplacement);
             findRepl(
                 candidates,
@@ -637,17 +1058,20 @@ public class Speller {
                 candIndex + 1,
                 wordIndex + lengthReplacement,
                 newAnyToOneSource,
-                candidate[candIndex]);
+                candidate[candIndex],
+                true);
           }
         }
         // general
-        if (cuted(depth, wordIndex, candIndex) <= effectEditDistance) {
+        if (cutOffDistance(depth, wordIndex, candIndex, usesMatrix) <= effectEditDistance) {
           if ((isEndOfCandidate(arc, wordIndex))
-              && (dist = ed(wordLen - 1 - (wordIndex - depth), depth, wordLen - 1, candIndex))
+              && (dist = editDistance(depth, wordIndex, candIndex, usesMatrix))
                   <= effectEditDistance) {
-            candidates.add(new CandidateData(String.valueOf(candidate, 0, candIndex + 1), dist));
+            candidates.add(
+                new CandidateData(
+                    String.valueOf(candidate, 0, candIndex + 1), dist, getCandidateFrequency(arc)));
           }
-          if (isArcNotTerminal(arc, candIndex)) {
+          if (isArcNotTerminal(arc, candIndex) && !isBelowMinFrequency(arc)) {
             findRepl(
                 candidates,
                 depth + 1,
@@ -657,13 +1081,61 @@ public class Speller {
                 candIndex + 1,
                 minLookbackWordIndex,
                 lastAnyToOneSource,
-                lastAnyToOneTarget);
+                lastAnyToOneTarget,
+                usesMatrix);
           }
         }
       }
     }
   }
 
+  /**
+   * Cut-off edit distance of the candidate ending at <code>candIndex</code>, see {@link #cuted(int,
+   * int, int)}. Without replacements on the search path <code>wordIndex == depth
+   * </code>, so the bit-parallel column covers the same rows.
+   */
+  private int cutOffDistance(
+      final int depth, final int wordIndex, final int candIndex, final boolean usesMatrix) {
+    if (usesMatrix) {
+      return cuted(depth, wordIndex, candIndex);
+    }
+    bitParallelDistance.advance(depth, candidate[candIndex]);
+    return bitParallelDistance.min(
+        depth + 1,
+        Math.max(0, depth - effectEditDistance) + 1,
+        Math.min(wordLen - 1, depth + effectEditDistance) + 1);
+  }
+
+  /** Edit distance between the word and the candidate ending at <code>candIndex</code>. */
+  private int editDistance(
+      final int depth, final int wordIndex, final int candIndex, final boolean usesMatrix) {
+    if (usesMatrix) {
+      return ed(wordLen - 1 - (wordIndex - depth), depth, wordLen - 1, candIndex);
+    }
+    return bitParallelDistance.score(depth + 1);
+  }
+
+  /**
+   * Copies the band of the last two bit-parallel columns into {@link #hMatrix}, so that replacement
+   * pairs (which read and patch the matrix diagonal) can continue the search from there. Values
+   * over the edit distance are only compared against it, so they are capped like in the matrix.
+   */
+  private void copyToMatrix(final int depth) {
+    for (int column = Math.max(0, depth - 1); column <= depth; column++) {
+      final int last = Math.min(wordLen, column + editDistance);
+      for (int row = Math.max(0, column - editDistance); row <= last; row++) {
+        hMatrix.set(row, column, Math.min(editDistance + 1, bitParallelDistance.get(row, column)));
+      }
+    }
+  }
+
+  /**
+   * @return True if no word reachable through <code>arc</code> has the minimum frequency.
+   */
+  private boolean isBelowMinFrequency(final int arc) {
+    return minFrequency > 0 && nodeFrequencies.maxFrequency(fsa.getEndNode(arc)) < minFrequency;
+  }
+
   private boolean isArcNotTerminal(final int arc, final int candIndex) {
     return !fsa.isArcTerminal(arc)
         && !(containsSeparators && candidate[candIndex] == dictionaryMetadata.getSeparatorAsChar());
@@ -971,74 +1443,16 @@ public class Speller {
    * @param str The string to find the replacements for.
    * @param fromIndex The index from which replacements are found.
    * @param level The recursion level. The search stops if level is &gt; MAX_RECURSION_LEVEL.
-   * @return A list of all possible replacements of a {#link str} given string
+   * @return A list of all possible replacements of a {#link str} given string. At most {@link
+   *     #MAX_REPLACEMENT_VARIANTS} strings are returned.
    */
   public List<String> getAllReplacements(final String str, final int fromIndex, final int level) {
     List<String> replaced = new ArrayList<>();
-    if (level > MAX_RECURSION_LEVEL) { // Stop searching at some point
-      replaced.add(str);
-      return replaced;
-    }
-    StringBuilder sb = new StringBuilder();
-    sb.append(str);
-    int index = MAX_WORD_LENGTH;
-    String key = "";
-    int keyLength = 0;
-    boolean found = false;
-    // find first possible replacement after fromIndex position
-    String strippedKeyForSelected = "";
-    for (final String auxKey : replacementsTheRest.keySet()) {
-      boolean startAnchor = isStartAnchored(auxKey);
-      boolean endAnchor = isEndAnchored(auxKey);
-      String stripped = (startAnchor || endAnchor) ? stripAnchors(auxKey) : auxKey;
-      int auxIndex;
-      if (startAnchor && fromIndex > 0) {
-        continue; // ^ anchor only valid from the beginning
-      } else if (startAnchor) {
-        auxIndex = sb.indexOf(stripped, 0) == 0 ? 0 : -1;
-      } else if (endAnchor) {
-        int expectedIndex = sb.length() - stripped.length();
-        auxIndex =
-            (expectedIndex >= fromIndex && sb.indexOf(stripped, expectedIndex) == expectedIndex)
-                ? expectedIndex
-                : -1;
-      } else {
-        auxIndex = sb.indexOf(auxKey, fromIndex);
-      }
-      if (auxIndex > -1
-          && (auxIndex < index
-              || (auxIndex == index
-                  && !(stripped.length() < keyLength)))) { // select the longest possible key
-        index = auxIndex;
-        key = auxKey;
-        keyLength = stripped.length();
-        strippedKeyForSelected = stripped;
-      }
-    }
-    if (index < MAX_WORD_LENGTH) {
-      for (final String rep : replacementsTheRest.get(key)) {
-        // start a branch without replacement (only once per key)
-        if (!found) {
-          replaced.addAll(
-              getAllReplacements(str, index + strippedKeyForSelected.length(), level + 1));
-          found = true;
-        }
-        // avoid unnecessary replacements (ex. don't replace L by L·L when L·L already present)
-        int ind = sb.indexOf(rep, fromIndex - rep.length() + 1);
-        if (rep.length() > strippedKeyForSelected.length()
-            && ind > -1
-            && (ind == index || ind == index - rep.length() + 1)) {
-          continue;
-        }
-        // start a branch with replacement
-        sb.replace(index, index + strippedKeyForSelected.length(), rep);
-        replaced.addAll(getAllReplacements(sb.toString(), index + rep.length(), level + 1));
-        sb.setLength(0);
-        sb.append(str);
-      }
-    }
-    if (!found) {
-      replaced.add(sb.toString());
+    Iterator<String> variants =
+        replacementsTheRest.variants(
+            str, fromIndex, MAX_RECURSION_LEVEL - level, MAX_REPLACEMENT_VARIANTS);
+    while (variants.hasNext()) {
+      replaced.add(variants.next());
     }
     return replaced;
   }
@@ -1076,12 +1490,18 @@ public class Speller {
   public final class CandidateData implements Comparable<CandidateData> {
     private final String word;
     private final int origDistance;
+    private final int frequency;
     private final int distance;
 
     CandidateData(final String word, final int distance) {
+      this(word, distance, getFrequency(word));
+    }
+
+    CandidateData(final String word, final int distance, final int frequency) {
       this.word = word;
       this.origDistance = distance;
-      this.distance = distance * FREQ_RANGES + FREQ_RANGES - getFrequency(word) - 1;
+      this.frequency = frequency;
+      this.distance = distance * FREQ_RANGES + FREQ_RANGES - frequency - 1;
     }
 
     public final String getWord() {
@@ -0,0 +1,121 @@
+package morfologik.speller;
+
+import com.carrotsearch.randomizedtesting.jupiter.Randomized;
+import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
+import com.carrotsearch.randomizedtesting.jupiter.generators.RandomNumbers;
+import java.util.Random;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@Randomized
+public class BitParallelEditDistanceTest extends RandomizedTest {
+  private static final int MAX_CANDIDATE_LENGTH = 120;
+
+  /** 'a' and 'á' are equivalent for substitutions. */
+  private static final BitParallelEditDistance.CharEquality EQUALITY =
+      (x, y) -> x == y || (x == 'a' && y == 'á') || (x == 'á' && y == 'a');
+
+  @Test
+  public void testKnownDistances() {
+    Assertions.assertThat(distance("recoginze", "recognize")).isEqualTo(1);
+    Assertions.assertThat(distance("sailn", "failing")).isEqualTo(3);
+    Assertions.assertThat(distance("abc", "abcde")).isEqualTo(2);
+    Assertions.assertThat(distance("abka", "abaką")).isEqualTo(2);
+    Assertions.assertThat(distance("ca", "abc")).isEqualTo(3);
+    Assertions.assertThat(distance("kát", "kat")).isEqualTo(0);
+    Assertions.assertThat(distance("", "abc")).isEqualTo(3);
+  }
+
+  @Test
+  public void testMatchesFullMatrix(Random rnd) {
+    BitParallelEditDistance distance = new BitParallelEditDistance(EQUALITY, MAX_CANDIDATE_LENGTH);
+    for (int round = 0; round < 500; round++) {
+      char[] word = randomWord(rnd, RandomNumbers.randomIntInRange(rnd, 0, 64));
+      char[] candidate = randomWord(rnd, RandomNumbers.randomIntInRange(rnd, 0, 70));
+      int[][] expected = fullMatrix(word, candidate);
+
+      distance.reset(word, word.length);
+      for (int j = 0; j <= candidate.length; j++) {
+        if (j > 0) {
+          distance.advance(j - 1, candidate[j - 1]);
+        }
+        Assertions.assertThat(distance.score(j)).isEqualTo(expected[word.length][j]);
+        for (int i = 0; i <= word.length; i++) {
+          Assertions.assertThat(distance.get(i, j)).isEqualTo(expected[i][j]);
+        }
+        int from = rnd.nextInt(word.length + 1);
+        int to = RandomNumbers.randomIntInRange(rnd, from, word.length);
+        int min = Integer.MAX_VALUE;
+        for (int i = from; i <= to; i++) {
+          min = Math.min(min, expected[i][j]);
+        }
+        Assertions.assertThat(distance.min(j, from, to)).isEqualTo(min);
+      }
+    }
+  }
+
+  @Test
+  public void testBacktracking(Random rnd) {
+    BitParallelEditDistance distance = new BitParallelEditDistance(EQUALITY, MAX_CANDIDATE_LENGTH);
+    char[] word = randomWord(rnd, 20);
+    distance.reset(word, word.length);
+    char[] candidate = randomWord(rnd, 20);
+    for (int j = 0; j < candidate.length; j++) {
+      distance.advance(j, candidate[j]);
+    }
+    for (int round = 0; round < 100; round++) {
+      // Rewrite a random suffix of the candidate, starting from an earlier column.
+      int from = rnd.nextInt(candidate.length);
+      for (int j = from; j < candidate.length; j++) {
+        candidate[j] = randomWord(rnd, 1)[0];
+        distance.advance(j, candidate[j]);
+      }
+      Assertions.assertThat(distance.score(candidate.length))
+          .isEqualTo(fullMatrix(word, candidate)[word.length][candidate.length]);
+    }
+  }
+
+  private static int distance(String word, String candidate) {
+    BitParallelEditDistance distance = new BitParallelEditDistance(EQUALITY, MAX_CANDIDATE_LENGTH);
+    distance.reset(word.toCharArray(), word.length());
+    for (int j = 0; j < candidate.length(); j++) {
+      distance.advance(j, candidate.charAt(j));
+    }
+    return distance.score(candidate.length());
+  }
+
+  private static char[] randomWord(Random rnd, int length) {
+    String alphabet = "abcáą";
+    char[] word = new char[length];
+    for (int i = 0; i < length; i++) {
+      word[i] = alphabet.charAt(rnd.nextInt(alphabet.length()));
+    }
+    return word;
+  }
+
+  /** The full matrix with the same recurrence as {@link Speller#ed(int, int, int, int)}. */
+  private static int[][] fullMatrix(char[] word, char[] candidate) {
+    int[][] h = new int[word.length + 1][candidate.length + 1];
+    for (int i = 0; i <= word.length; i++) {
+      h[i][0] = i;
+    }
+    for (int j = 0; j <= candidate.length; j++) {
+      h[0][j] = j;
+    }
+    for (int i = 1; i <= word.length; i++) {
+      for (int j = 1; j <= candidate.length; j++) {
+        if (EQUALITY.areEqual(word[i - 1], candidate[j - 1])) {
+          h[i][j] = h[i - 1][j - 1];
+        } else if (i > 1
+            && j > 1
+            && word[i - 1] == candidate[j - 2]
+            && word[i - 2] == candidate[j - 1]) {
+          h[i][j] = 1 + Math.min(h[i - 2][j - 2], Math.min(h[i][j - 1], h[i - 1][j]));
+        } else {
+          h[i][j] = 1 + Math.min(h[i - 1][j - 1], Math.min(h[i][j - 1], h[i - 1][j]));
+        }
+      }
+    }
+    return h;
+  }
+}
@@ -0,0 +1,169 @@
+package morfologik.speller;
+
+import com.carrotsearch.randomizedtesting.jupiter.Randomized;
+import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
+import com.carrotsearch.randomizedtesting.jupiter.generators.RandomNumbers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@Randomized
+public class ReplacementTrieTest extends RandomizedTest {
+  private static final int MAX_LEVEL = 6;
+
+  /** Catalan-style replacement table (geminated l, digraphs). */
+  private static Map<String, List<String>> catalan() {
+    Map<String, List<String>> pairs = new LinkedHashMap<>();
+    pairs.put("l", Arrays.asList("l·l"));
+    pairs.put("ll", Arrays.asList("l·l"));
+    pairs.put("l·l", Arrays.asList("ll"));
+    pairs.put("ig", Arrays.asList("itx", "ix"));
+    pairs.put("tx", Arrays.asList("ig", "tg"));
+    pairs.put("^h", Arrays.asList("hh"));
+    pairs.put("a$", Arrays.asList("à", "ah"));
+    return pairs;
+  }
+
+  /** Polish-style replacement table (digraphs and nasal vowels). */
+  private static Map<String, List<String>> polish() {
+    Map<String, List<String>> pairs = new LinkedHashMap<>();
+    pairs.put("ż", Arrays.asList("rz", "sz"));
+    pairs.put("rz", Arrays.asList("ż", "sz"));
+    pairs.put("h", Arrays.asList("ch"));
+    pairs.put("ch", Arrays.asList("h"));
+    pairs.put("ę", Arrays.asList("en", "em"));
+    pairs.put("^u", Arrays.asList("ó"));
+    pairs.put("ą$", Arrays.asList("om", "on"));
+    return pairs;
+  }
+
+  @Test
+  public void testCatalanTableMatchesNaiveScan(Random rnd) {
+    checkAgainstNaiveScan(rnd, catalan(), "la·gitxh");
+  }
+
+  @Test
+  public void testPolishTableMatchesNaiveScan(Random rnd) {
+    checkAgainstNaiveScan(rnd, polish(), "rzżhcęuąo");
+  }
+
+  @Test
+  public void testLongestKeyAtFirstPosition() {
+    ReplacementTrie trie = new ReplacementTrie(catalan());
+    ReplacementTrie.Match m = trie.find("cel·la", 0);
+    Assertions.assertThat(m.index).isEqualTo(2);
+    Assertions.assertThat(m.length).isEqualTo(3);
+    Assertions.assertThat(Arrays.asList(m.replacements)).containsExactly("ll");
+
+    Assertions.assertThat(trie.find("cel·la", 6)).isNull();
+    Assertions.assertThat(trie.find("xyz", 0)).isNull();
+  }
+
+  @Test
+  public void testAnchors() {
+    Map<String, List<String>> pairs = new LinkedHashMap<>();
+    pairs.put("^påny$", Arrays.asList("på ny"));
+    pairs.put("^al", Arrays.asList("all"));
+    ReplacementTrie trie = new ReplacementTrie(pairs);
+
+    Assertions.assertThat(variants(trie, "påny", 1000)).containsExactly("påny", "på ny");
+    Assertions.assertThat(variants(trie, "pånyx", 1000)).containsExactly("pånyx");
+    Assertions.assertThat(variants(trie, "xpåny", 1000)).containsExactly("xpåny");
+    Assertions.assertThat(variants(trie, "alal", 1000)).containsExactly("alal", "allal");
+  }
+
+  @Test
+  public void testVariantsAreCapped() {
+    ReplacementTrie trie = new ReplacementTrie(polish());
+    String word = "rzrzrzrzrzrzrzrzrz";
+
+    List<String> all = variants(trie, word, Integer.MAX_VALUE);
+    Assertions.assertThat(all.size()).isGreaterThan(100);
+    Assertions.assertThat(all.get(0)).isEqualTo(word);
+
+    List<String> capped = variants(trie, word, 100);
+    Assertions.assertThat(capped).isEqualTo(all.subList(0, 100));
+    Assertions.assertThat(variants(trie, word, 0)).isEmpty();
+  }
+
+  private static List<String> variants(ReplacementTrie trie, String word, int limit) {
+    List<String> result = new ArrayList<>();
+    Iterator<String> i = trie.variants(word, 0, MAX_LEVEL, limit);
+    while (i.hasNext()) {
+      result.add(i.next());
+    }
+    return result;
+  }
+
+  private static void checkAgainstNaiveScan(
+      Random rnd, Map<String, List<String>> pairs, String alphabet) {
+    ReplacementTrie trie = new ReplacementTrie(pairs);
+    for (int round = 0; round < 1000; round++) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = RandomNumbers.randomIntInRange(rnd, 0, 12); --i >= 0; ) {
+        sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+      String word = sb.toString();
+      Assertions.assertThat(variants(trie, word, Integer.MAX_VALUE))
+          .as(word)
+          .isEqualTo(naiveScan(pairs, word, 0, 0));
+    }
+  }
+
+  /** The original key-by-key scan, kept here as a reference. */
+  private static List<String> naiveScan(
+      Map<String, List<String>> pairs, String str, int fromIndex, int level) {
+    List<String> replaced = new ArrayList<>();
+    if (level > MAX_LEVEL) {
+      replaced.add(str);
+      return replaced;
+    }
+    int index = Integer.MAX_VALUE;
+    String key = null;
+    String stripped = null;
+    for (String auxKey : pairs.keySet()) {
+      boolean startAnchor = auxKey.startsWith("^");
+      boolean endAnchor = auxKey.endsWith("$");
+      String aux = auxKey.substring(startAnchor ? 1 : 0, auxKey.length() - (endAnchor ? 1 : 0));
+      int auxIndex;
+      if (startAnchor) {
+        auxIndex = fromIndex == 0 && str.startsWith(aux) ? 0 : -1;
+      } else if (endAnchor) {
+        int expected = str.length() - aux.length();
+        auxIndex = expected >= fromIndex && str.endsWith(aux) ? expected : -1;
+      } else {
+        auxIndex = str.indexOf(aux, fromIndex);
+      }
+      if (auxIndex > -1
+          && (auxIndex < index || (auxIndex == index && aux.length() >= stripped.length()))) {
+        index = auxIndex;
+        key = auxKey;
+        stripped = aux;
+      }
+    }
+
+    if (key == null) {
+      replaced.add(str);
+      return replaced;
+    }
+
+    replaced.addAll(naiveScan(pairs, str, index + stripped.length(), level + 1));
+    for (String rep : pairs.get(key)) {
+      int ind = str.indexOf(rep, fromIndex - rep.length() + 1);
+      if (rep.length() > stripped.length()
+          && ind > -1
+          && (ind == index || ind == index - rep.length() + 1)) {
+        continue;
+      }
+      String s = str.substring(0, index) + rep + str.substring(index + stripped.length());
+      replaced.addAll(naiveScan(pairs, s, index + rep.length(), level + 1));
+    }
+    return replaced;
+  }
+}
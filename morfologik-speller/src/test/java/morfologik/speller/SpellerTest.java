@@ -7,8 +7,13 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.NodeFrequencies;
+import morfologik.stemming.WordData;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -64,6 +69,28 @@ public class SpellerTest {
     assertTrue(spell2.replaceRunOnWords("foobar").isEmpty());
   }
 
+  @Test
+  public void testRunonWordsMultipleParts() throws IOException {
+    final URL url = getClass().getResource("single-char-word.dict");
+    final Speller spell = new Speller(Dictionary.read(url));
+    Assertions.assertThat(spell.replaceRunOnWords("alotamusement")).isEmpty();
+    Assertions.assertThat(spell.replaceRunOnWords("alotamusement", 3))
+        .containsExactly("a lot amusement");
+    Assertions.assertThat(spell.replaceRunOnWords("AlotLot", 3)).containsExactly("A lot Lot");
+    Assertions.assertThat(spell.replaceRunOnWords("aalot", 3)).containsExactly("aa lot", "a a lot");
+
+    // fewer parts come first (smaller distance).
+    List<Speller.CandidateData> candidates = spell.replaceRunOnWordCandidates("aalotlot", 4);
+    Assertions.assertThat(candidates.toString()).isEqualTo("[aa lot lot/77, a a lot lot/103]");
+
+    // multibyte characters
+    final Speller utfSpell =
+        new Speller(Dictionary.read(getClass().getResource("test-utf-spell.dict")));
+    Assertions.assertThat(utfSpell.replaceRunOnWords("ŚwiętoJaźń")).containsExactly("Święto Jaźń");
+    Assertions.assertThat(utfSpell.replaceRunOnWords("zażółćjaźńjaźń", 3))
+        .containsExactly("zażółć jaźń jaźń");
+  }
+
   @Test
   public void testIsInDictionary() throws IOException {
     // Test on an morphological dictionary, including separators
@@ -173,6 +200,58 @@ public class SpellerTest {
     assertTrue(reps.get(6).equals("gist"));
   }
 
+  @Test
+  public void testCompletionsByFrequency() throws IOException {
+    final URL url = getClass().getResource("dict-with-freq.dict");
+    final Dictionary dictionary = Dictionary.read(url);
+    final Speller spell = new Speller(dictionary);
+    final DictionaryLookup lookup = new DictionaryLookup(dictionary);
+
+    final List<String> all = lookup.completions("", Integer.MAX_VALUE);
+    final List<String> words = new ArrayList<>();
+    for (WordData wd : lookup) {
+      words.add(wd.getWord().toString());
+    }
+    Assertions.assertThat(new HashSet<>(all)).isEqualTo(new HashSet<>(words));
+    assertEquals(words.size(), all.size());
+    for (int i = 1; i < all.size(); i++) {
+      Assertions.assertThat(spell.getFrequency(all.get(i - 1)))
+          .isGreaterThanOrEqualTo(spell.getFrequency(all.get(i)));
+    }
+
+    Assertions.assertThat(lookup.completions("", 2)).containsExactly("just", "list");
+    Assertions.assertThat(lookup.completions("li", 5)).containsExactly("list", "licit");
+    Assertions.assertThat(lookup.completions("di", 2)).containsExactly("digest", "divest");
+  }
+
+  @Test
+  public void testFindReplacementsWithMinFrequency() throws IOException {
+    final URL url = getClass().getResource("dict-with-freq.dict");
+    final Dictionary dictionary = Dictionary.read(url);
+    final Speller spell = new Speller(dictionary);
+
+    // 'P' is the highest frequency in the dictionary.
+    final NodeFrequencies frequencies =
+        new NodeFrequencies(dictionary.fsa, dictionary.metadata.getSeparator());
+    assertEquals('P' - 'A', frequencies.maxFrequency(dictionary.fsa.getRootNode()));
+
+    List<Speller.CandidateData> candidates = spell.findReplacementCandidates("jist", 'J' - 'A');
+    Assertions.assertThat(candidates.toString()).isEqualTo("[just/36, list/37, fist/42, mist/42]");
+
+    for (String word : Arrays.asList("jist", "lisp", "deast", "grust", "hiest")) {
+      for (int minFrequency = 0; minFrequency < Speller.FREQ_RANGES; minFrequency++) {
+        final List<Speller.CandidateData> expected = new ArrayList<>();
+        for (Speller.CandidateData cd : spell.findReplacementCandidates(word)) {
+          if (spell.getFrequency(cd.getWord()) >= minFrequency) {
+            expected.add(cd);
+          }
+        }
+        Assertions.assertThat(spell.findReplacementCandidates(word, minFrequency).toString())
+            .isEqualTo(expected.toString());
+      }
+    }
+  }
+
   @Test
   public void testFindSimilarWords() throws IOException {
     final URL url = getClass().getResource("dict-with-freq.dict");
@@ -222,6 +301,47 @@ public class SpellerTest {
     assertTrue(!spell1.isMisspelled("RZEKUNIA")); // but not here
   }
 
+  @Test
+  public void testIsMisspelledCaseVariants() throws IOException {
+    for (String dict : Arrays.asList("test-utf-spell.dict", "test-infix.dict", "slownik.dict")) {
+      final Dictionary dictionary = Dictionary.read(getClass().getResource(dict));
+      final Locale locale = dictionary.metadata.getLocale();
+      final Speller spell = new Speller(dictionary);
+      final Speller cached = new Speller(dictionary, 1, 3);
+      for (String word :
+          Arrays.asList(
+              "ćwikła",
+              "Ćwikła",
+              "ĆWIKŁA",
+              "święto",
+              "ŚWIĘTO",
+              "Święto",
+              "ŚWIĘTA",
+              "Rzekunia",
+              "RZEKUNIA",
+              "rzekunia",
+              "RZEKUNIAA",
+              "Ż",
+              "ż",
+              "abaka",
+              "ABAKA",
+              "Abaka")) {
+        // the lowercase and initial-uppercase variants looked up separately.
+        final boolean expected =
+            !(dictionary.metadata.isIgnoringAllUppercase() && spell.isAllUppercase(word))
+                && !spell.isInDictionary(word)
+                && !(dictionary.metadata.isConvertingCase()
+                    && (spell.isInDictionary(word.toLowerCase(locale))
+                        || spell.isAllUppercase(word)
+                            && spell.isInDictionary(
+                                word.charAt(0) + word.substring(1).toLowerCase(locale))));
+        assertEquals(expected, spell.isMisspelled(word), dict + ": " + word);
+        assertEquals(expected, cached.isMisspelled(word), dict + ": " + word);
+        assertEquals(expected, cached.isMisspelled(word), dict + ": " + word);
+      }
+    }
+  }
+
   @Test
   public void testCamelCase() {
     final Speller spell = new Speller(dictionary, 1);
@@ -1,11 +1,16 @@
 package morfologik.stemming;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import morfologik.fsa.FSA;
 
 /**
@@ -26,6 +31,9 @@ public final class Dictionary {
   /** Metadata associated with the dictionary. */
   public final DictionaryMetadata metadata;
 
+  /** An index of decoded entries or <code>null</code>, see {@link #expand(long)}. */
+  private final ExpandedIndex expandedIndex;
+
   /**
    * It is strongly recommended to use static methods in this class for reading dictionaries.
    *
@@ -37,48 +45,114 @@ public final class Dictionary {
   public Dictionary(FSA fsa, DictionaryMetadata metadata) {
     this.fsa = fsa;
     this.metadata = metadata;
+    this.expandedIndex = null;
+  }
+
+  private Dictionary(Dictionary dictionary, long maxRamBytes) {
+    this.fsa = dictionary.fsa;
+    this.metadata = dictionary.metadata;
+    this.expandedIndex = new ExpandedIndex(this, maxRamBytes);
+  }
+
+  /**
+   * Returns an "expanded" view of this dictionary (sharing the automaton and metadata), trading
+   * memory for lookup speed: {@link DictionaryLookup}s of the returned dictionary keep the decoded
+   * stems and tags of each form looked up in an {@link ExpandedIndex}, shared by all lookups, and
+   * return them on subsequent lookups of the same form without traversing the automaton. The index
+   * can also be filled in the background (see {@link ExpandedIndex}).
+   *
+   * @param maxRamBytes The maximum heap memory used by the index, in bytes; forms are no longer
+   *     added once it is reached (see {@link ExpandedIndex#estimateRamBytes(Dictionary)} to
+   *     estimate the memory needed for all forms).
+   * @return Returns a new dictionary with an empty index.
+   */
+  public Dictionary expand(long maxRamBytes) {
+    return new Dictionary(this, maxRamBytes);
+  }
+
+  /**
+   * @return Returns the index of decoded entries if this dictionary is {@linkplain #expand(long)
+   *     expanded}, <code>null</code> otherwise.
+   */
+  public ExpandedIndex getExpandedIndex() {
+    return expandedIndex;
   }
 
   /**
    * Attempts to load a dictionary using the path to the FSA file and the expected metadata
-   * extension.
+   * extension. Binary metadata ({@link DictionaryMetadata#BINARY_METADATA_FILE_EXTENSION}) take
+   * precedence over the metadata file, if present. {@linkplain DictionaryContainer Containers} are
+   * mapped in a single call and read with their embedded metadata.
    *
    * @param location The location of the dictionary file (<code>*.dict</code>).
    * @return An instantiated dictionary.
    * @throws IOException if an I/O error occurs.
    */
   public static Dictionary read(Path location) throws IOException {
-    final Path metadata = DictionaryMetadata.getExpectedMetadataLocation(location);
+    try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+      final byte[] header =
+          Channels.newInputStream(channel).readNBytes(DictionaryContainer.HEADER_LENGTH);
+      if (DictionaryContainer.isContainer(ByteBuffer.wrap(header))) {
+        return DictionaryContainer.read(channel).dictionary;
+      }
 
-    try (InputStream fsaStream = Files.newInputStream(location);
-        InputStream metadataStream = Files.newInputStream(metadata)) {
-      return read(fsaStream, metadataStream);
+      channel.position(0);
+      final Path metadata = DictionaryMetadata.getMetadataLocation(location);
+      try (InputStream fsaStream = new BufferedInputStream(Channels.newInputStream(channel));
+          InputStream metadataStream = Files.newInputStream(metadata)) {
+        return read(fsaStream, metadataStream);
+      }
     }
   }
 
   /**
    * Attempts to load a dictionary using the URL to the FSA file and the expected metadata
-   * extension.
+   * extension. Binary metadata ({@link DictionaryMetadata#BINARY_METADATA_FILE_EXTENSION}) take
+   * precedence over the metadata file, if present. {@linkplain DictionaryContainer Containers} are
+   * read with their embedded metadata.
    *
    * @param dictURL The URL pointing to the dictionary file (<code>*.dict</code>).
    * @return An instantiated dictionary.
    * @throws IOException if an I/O error occurs.
    */
   public static Dictionary read(URL dictURL) throws IOException {
-    final URL expectedMetadataURL;
-    try {
-      String external = dictURL.toExternalForm();
-      expectedMetadataURL = new URL(DictionaryMetadata.getExpectedMetadataFileName(external));
-    } catch (MalformedURLException e) {
-      throw new IOException("Couldn't construct relative feature map URL for: " + dictURL, e);
-    }
+    try (InputStream fsaStream = new BufferedInputStream(dictURL.openStream())) {
+      if (isContainer(fsaStream)) {
+        return DictionaryContainer.read(fsaStream).dictionary;
+      }
 
-    try (InputStream fsaStream = dictURL.openStream();
-        InputStream metadataStream = expectedMetadataURL.openStream()) {
-      return read(fsaStream, metadataStream);
+      final URL expectedMetadataURL;
+      final URL expectedBinaryMetadataURL;
+      try {
+        String external = dictURL.toExternalForm();
+        expectedMetadataURL = new URL(DictionaryMetadata.getExpectedMetadataFileName(external));
+        expectedBinaryMetadataURL =
+            new URL(DictionaryMetadata.getExpectedBinaryMetadataFileName(external));
+      } catch (MalformedURLException e) {
+        throw new IOException("Couldn't construct relative feature map URL for: " + dictURL, e);
+      }
+
+      InputStream metadataStream;
+      try {
+        metadataStream = expectedBinaryMetadataURL.openStream();
+      } catch (IOException e) {
+        metadataStream = expectedMetadataURL.openStream();
+      }
+
+      try (InputStream metadata = metadataStream) {
+        return read(fsaStream, metadata);
+      }
     }
   }
 
+  /** Checks the stream's header and resets the stream (which must support marks). */
+  private static boolean isContainer(InputStream stream) throws IOException {
+    stream.mark(DictionaryContainer.HEADER_LENGTH);
+    final byte[] header = stream.readNBytes(DictionaryContainer.HEADER_LENGTH);
+    stream.reset();
+    return DictionaryContainer.isContainer(ByteBuffer.wrap(header));
+  }
+
   /**
    * Attempts to load a dictionary from opened streams of FSA dictionary data and associated
    * metadata. Input streams are not closed automatically.
@@ -0,0 +1,257 @@
+package morfologik.stemming;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import morfologik.fsa.FSA;
+
+/**
+ * A single-file dictionary: the automaton, its metadata and optional auxiliary automata (such as
+ * the synthesis automaton, see {@link DictionarySynthesizer}) in one container, written by the
+ * <code>dict_compile</code> tool with the <code>--container</code> option. {@link
+ * Dictionary#read(Path)} and {@link Dictionary#read(java.net.URL)} recognize containers, so no
+ * metadata file is needed next to them.
+ *
+ * <p>The container consists of (all numbers are big-endian):
+ *
+ * <ul>
+ *   <li>a header: the magic <code>\dic</code>, the version byte, three zero bytes, the number of
+ *       blocks and four zero bytes,
+ *   <li>a table of blocks: each block's type, four zero bytes, offset and length (a long each),
+ *   <li>the blocks, each aligned to {@link #ALIGNMENT} bytes (zero-padded): metadata (in the binary
+ *       form, see {@link DictionaryMetadata#writeBinary(OutputStream)}), the automaton and
+ *       auxiliary blocks; blocks of unknown types are skipped,
+ *   <li>the CRC32 checksum of all preceding bytes, verified when the container is read.
+ * </ul>
+ */
+public final class DictionaryContainer {
+  /** Container magic (4 bytes). */
+  private static final int MAGIC = ('\\' << 24) | ('d' << 16) | ('i' << 8) | ('c');
+
+  /** Container version. */
+  private static final byte VERSION = 1;
+
+  /** Alignment of blocks, in bytes. */
+  public static final int ALIGNMENT = 8;
+
+  /** The length of the header, in bytes. */
+  static final int HEADER_LENGTH = 16;
+
+  /** The length of an entry in the table of blocks, in bytes. */
+  private static final int BLOCK_ENTRY_LENGTH = 24;
+
+  /** Block type: binary metadata. */
+  private static final int BLOCK_METADATA = 1;
+
+  /** Block type: the automaton. */
+  private static final int BLOCK_FSA = 2;
+
+  /** Block type: the synthesis automaton (with the same metadata). */
+  private static final int BLOCK_SYNTHESIS = 3;
+
+  /** The dictionary. */
+  public final Dictionary dictionary;
+
+  /** The synthesis dictionary or <code>null</code> if the container has none. */
+  public final Dictionary synthesis;
+
+  private DictionaryContainer(Dictionary dictionary, Dictionary synthesis) {
+    this.dictionary = dictionary;
+    this.synthesis = synthesis;
+  }
+
+  /**
+   * Writes a container.
+   *
+   * @param os The output stream to write to. The stream is not closed.
+   * @param metadata The metadata of the dictionary.
+   * @param fsa The serialized automaton of the dictionary.
+   * @param synthesis The serialized synthesis automaton or <code>null</code>.
+   * @throws IOException Rethrown if writing fails.
+   */
+  public static void write(
+      OutputStream os, DictionaryMetadata metadata, byte[] fsa, byte[] synthesis)
+      throws IOException {
+    final ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+    metadata.writeBinary(metadataBytes);
+
+    final int[] types =
+        synthesis == null
+            ? new int[] {BLOCK_METADATA, BLOCK_FSA}
+            : new int[] {BLOCK_METADATA, BLOCK_FSA, BLOCK_SYNTHESIS};
+    final byte[][] blocks = {metadataBytes.toByteArray(), fsa, synthesis};
+
+    final CRC32 crc = new CRC32();
+    final DataOutputStream out =
+        new DataOutputStream(
+            new OutputStream() {
+              @Override
+              public void write(int b) throws IOException {
+                crc.update(b);
+                os.write(b);
+              }
+
+              @Override
+              public void write(byte[] b, int off, int len) throws IOException {
+                crc.update(b, off, len);
+                os.write(b, off, len);
+              }
+            });
+
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.write(new byte[3]);
+    out.writeInt(types.length);
+    out.writeInt(0);
+
+    long offset = HEADER_LENGTH + (long) types.length * BLOCK_ENTRY_LENGTH;
+    final long[] offsets = new long[types.length];
+    for (int i = 0; i < types.length; i++) {
+      offset = align(offset);
+      offsets[i] = offset;
+      out.writeInt(types[i]);
+      out.writeInt(0);
+      out.writeLong(offset);
+      out.writeLong(blocks[i].length);
+      offset += blocks[i].length;
+    }
+
+    for (int i = 0; i < types.length; i++) {
+      out.write(new byte[(int) (offsets[i] - out.size())]);
+      out.write(blocks[i]);
+    }
+
+    out.flush();
+    final int checksum = (int) crc.getValue();
+    os.write(ByteBuffer.allocate(4).putInt(checksum).array());
+  }
+
+  /**
+   * Reads a container from a file, mapped in a single call.
+   *
+   * @param location The location of the container.
+   * @return Returns the dictionaries read.
+   * @throws IOException if an I/O error occurs or the container is invalid.
+   */
+  public static DictionaryContainer read(Path location) throws IOException {
+    try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+      return read(channel);
+    }
+  }
+
+  /** Reads a container from an open file, mapped in a single call. */
+  static DictionaryContainer read(FileChannel channel) throws IOException {
+    return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+  }
+
+  /**
+   * Reads a container from a stream.
+   *
+   * @param stream The stream to read the container from. The stream is not closed.
+   * @return Returns the dictionaries read.
+   * @throws IOException if an I/O error occurs or the container is invalid.
+   */
+  public static DictionaryContainer read(InputStream stream) throws IOException {
+    return read(ByteBuffer.wrap(stream.readAllBytes()));
+  }
+
+  /**
+   * Reads a container from a buffer (for example, a mapped file). The automata are copied to the
+   * heap, the buffer is not used afterwards.
+   *
+   * @param data The container's data (between the buffer's position and limit).
+   * @return Returns the dictionaries read.
+   * @throws IOException if the container is invalid.
+   */
+  public static DictionaryContainer read(ByteBuffer data) throws IOException {
+    data = data.slice();
+    if (!isContainer(data)) {
+      throw new IOException("Invalid file header, probably not a dictionary container.");
+    }
+
+    try {
+      final int checksumOffset = data.limit() - 4;
+      final CRC32 crc = new CRC32();
+      crc.update(data.duplicate().limit(checksumOffset));
+      if ((int) crc.getValue() != data.getInt(checksumOffset)) {
+        throw new IOException("Dictionary container checksum mismatch (corrupted data?).");
+      }
+
+      final byte version = data.get(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported dictionary container version: " + version);
+      }
+
+      DictionaryMetadata metadata = null;
+      ByteBuffer fsa = null;
+      ByteBuffer synthesis = null;
+      final int blocks = data.getInt(8);
+      for (int i = 0; i < blocks; i++) {
+        final int entry = HEADER_LENGTH + i * BLOCK_ENTRY_LENGTH;
+        final long offset = data.getLong(entry + 8);
+        final long length = data.getLong(entry + 16);
+        if (offset < 0 || length < 0 || offset + length > checksumOffset) {
+          throw new IOException("Dictionary container block out of bounds: " + i);
+        }
+
+        final ByteBuffer block =
+            data.duplicate().limit((int) (offset + length)).position((int) offset);
+        switch (data.getInt(entry)) {
+          case BLOCK_METADATA:
+            metadata = DictionaryMetadata.read(new ByteArrayInputStream(toArray(block)));
+            break;
+          case BLOCK_FSA:
+            fsa = block;
+            break;
+          case BLOCK_SYNTHESIS:
+            synthesis = block;
+            break;
+          default:
+            // Skip unknown (auxiliary) blocks.
+            break;
+        }
+      }
+
+      if (metadata == null || fsa == null) {
+        throw new IOException("Dictionary container without metadata or automaton.");
+      }
+
+      return new DictionaryContainer(
+          new Dictionary(readFsa(fsa), metadata),
+          synthesis == null ? null : new Dictionary(readFsa(synthesis), metadata));
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Truncated or corrupted dictionary container.", e);
+    }
+  }
+
+  /**
+   * @param data The data to check (from the buffer's position on).
+   * @return Returns <code>true</code> if the data starts with a container header.
+   */
+  public static boolean isContainer(ByteBuffer data) {
+    return data.remaining() >= HEADER_LENGTH && data.getInt(data.position()) == MAGIC;
+  }
+
+  private static FSA readFsa(ByteBuffer block) throws IOException {
+    return FSA.read(new ByteArrayInputStream(toArray(block)));
+  }
+
+  private static byte[] toArray(ByteBuffer block) {
+    final byte[] bytes = new byte[block.remaining()];
+    block.get(bytes);
+    return bytes;
+  }
+
+  private static long align(long offset) {
+    return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+  }
+}
@@ -1,7 +1,6 @@
 package morfologik.stemming;
 
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.CharsetDecoder;
 import java.util.Iterator;
 
@@ -10,22 +9,37 @@ import java.util.Iterator;
  * compressed format or the compressed form can be preserved.
  */
 public final class DictionaryIterator implements Iterator<WordData> {
-  private final CharsetDecoder decoder;
   private final Iterator<ByteBuffer> entriesIter;
   private final WordData entry;
   private final byte separator;
   private final boolean decodeStems;
 
-  private ByteBuffer inflectedBuffer = ByteBuffer.allocate(0);
-  private CharBuffer inflectedCharBuffer = CharBuffer.allocate(0);
-  private ByteBuffer temp = ByteBuffer.allocate(0);
+  /**
+   * A copy of the last entry and views of its fields (reused while the array is the same). The
+   * automaton iterator overwrites its own array on {@link #hasNext()}, so the entry returned by
+   * {@link #next()} must not point at it.
+   */
+  private byte[] array = new byte[0];
+
+  private ByteBuffer inflectedBuffer;
+  private ByteBuffer stemBuffer;
+  private ByteBuffer tagBuffer;
+
   private final ISequenceEncoder sequenceEncoder;
 
   public DictionaryIterator(Dictionary dictionary, CharsetDecoder decoder, boolean decodeStems) {
-    this.entriesIter = dictionary.fsa.iterator();
+    this(dictionary, decoder, decodeStems, dictionary.fsa.iterator());
+  }
+
+  /** Decodes the given entries of the dictionary's automaton. */
+  DictionaryIterator(
+      Dictionary dictionary,
+      CharsetDecoder decoder,
+      boolean decodeStems,
+      Iterator<ByteBuffer> entriesIter) {
+    this.entriesIter = entriesIter;
     this.separator = dictionary.metadata.getSeparator();
     this.sequenceEncoder = dictionary.metadata.getSequenceEncoderType().get();
-    this.decoder = decoder;
     this.entry = new WordData(decoder);
     this.decodeStems = decodeStems;
   }
@@ -35,13 +49,28 @@ public final class DictionaryIterator implements Iterator<WordData> {
   }
 
   public WordData next() {
-    final ByteBuffer entryBuffer = entriesIter.next();
+    return decode(entriesIter.next());
+  }
+
+  /**
+   * Decodes an entry of the automaton (backed by an array, starting at index 0) into the reused
+   * {@link WordData}. The entry is copied once into an array owned by this iterator; fields are
+   * views of that array and the inflected word and the stem are decoded on first access.
+   */
+  WordData decode(ByteBuffer entryBuffer) {
+    final int bbSize = entryBuffer.remaining();
+    if (array.length < bbSize) {
+      array = new byte[Math.max(bbSize, array.length * 2)];
+      inflectedBuffer = ByteBuffer.wrap(array);
+      stemBuffer = ByteBuffer.wrap(array);
+      tagBuffer = ByteBuffer.wrap(array);
+    }
+    final byte[] ba = array;
+    System.arraycopy(entryBuffer.array(), 0, ba, 0, bbSize);
 
     /*
      * Entries are typically: inflected<SEP>codedBase<SEP>tag so try to find this split.
      */
-    byte[] ba = entryBuffer.array();
-    int bbSize = entryBuffer.remaining();
 
     int sepPos;
     for (sepPos = 0; sepPos < bbSize; sepPos++) {
@@ -54,57 +83,37 @@ public final class DictionaryIterator implements Iterator<WordData> {
       throw new RuntimeException("Invalid dictionary " + "entry format (missing separator).");
     }
 
-    inflectedBuffer = BufferUtils.clearAndEnsureCapacity(inflectedBuffer, sepPos);
-    inflectedBuffer.put(ba, 0, sepPos);
-    inflectedBuffer.flip();
-
-    inflectedCharBuffer = BufferUtils.bytesToChars(decoder, inflectedBuffer, inflectedCharBuffer);
-    entry.update(inflectedBuffer, inflectedCharBuffer);
-
-    temp = BufferUtils.clearAndEnsureCapacity(temp, bbSize - sepPos);
-    sepPos++;
-    temp.put(ba, sepPos, bbSize - sepPos);
-    temp.flip();
-
-    ba = temp.array();
-    bbSize = temp.remaining();
+    view(inflectedBuffer, 0, sepPos);
 
     /*
      * Find the next separator byte's position splitting word form and tag.
      */
-    assert sequenceEncoder.prefixBytes() <= bbSize : sequenceEncoder.getClass() + " >? " + bbSize;
-    sepPos = sequenceEncoder.prefixBytes();
-    for (; sepPos < bbSize; sepPos++) {
+    final int stemStart = sepPos + 1;
+    assert sequenceEncoder.prefixBytes() <= bbSize - stemStart
+        : sequenceEncoder.getClass() + " >? " + (bbSize - stemStart);
+    for (sepPos = stemStart + sequenceEncoder.prefixBytes(); sepPos < bbSize; sepPos++) {
       if (ba[sepPos] == separator) break;
     }
-
-    /*
-     * Decode the stem into stem buffer.
-     */
-    if (decodeStems) {
-      entry.stemBuffer =
-          sequenceEncoder.decode(entry.stemBuffer, inflectedBuffer, ByteBuffer.wrap(ba, 0, sepPos));
-    } else {
-      entry.stemBuffer = BufferUtils.clearAndEnsureCapacity(entry.stemBuffer, sepPos);
-      entry.stemBuffer.put(ba, 0, sepPos);
-      entry.stemBuffer.flip();
-    }
+    view(stemBuffer, stemStart, sepPos);
 
     // Skip separator character, if present.
     if (sepPos + 1 <= bbSize) {
       sepPos++;
     }
+    view(tagBuffer, sepPos, bbSize);
 
-    /*
-     * Decode the tag data.
-     */
-    entry.tagBuffer = BufferUtils.clearAndEnsureCapacity(entry.tagBuffer, bbSize - sepPos);
-    entry.tagBuffer.put(ba, sepPos, bbSize - sepPos);
-    entry.tagBuffer.flip();
-
+    entry.updateLazily(
+        inflectedBuffer, stemBuffer, decodeStems ? sequenceEncoder : null, tagBuffer);
     return entry;
   }
 
+  /** Sets the buffer's position and limit to the given range of its array. */
+  private static void view(ByteBuffer buffer, int from, int to) {
+    buffer.clear();
+    buffer.position(from);
+    buffer.limit(to);
+  }
+
   public void remove() {
     throw new UnsupportedOperationException();
   }
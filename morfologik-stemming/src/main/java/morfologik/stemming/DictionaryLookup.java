@@ -6,11 +6,16 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import morfologik.fsa.ArcCursor;
 import morfologik.fsa.ByteSequenceIterator;
 import morfologik.fsa.FSA;
 import morfologik.fsa.FSATraversal;
@@ -24,6 +29,15 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
   /** An FSA used for lookups. */
   private final FSATraversal matcher;
 
+  /** Decodes the separator arc following a matched word. */
+  private final ArcCursor separatorArc;
+
+  /** Decodes arcs below the prefix in {@link #completions(CharSequence, int)}. */
+  private final ArcCursor completionArc;
+
+  /** Maximum frequencies of forms reachable from each node, computed on first use. */
+  private NodeFrequencies nodeFrequencies;
+
   /** An iterator for walking along the final states of {@link #fsa}. */
   private final ByteSequenceIterator finalStatesIterator;
 
@@ -89,6 +103,8 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
     this.rootNode = dictionary.fsa.getRootNode();
     this.fsa = dictionary.fsa;
     this.matcher = new FSATraversal(fsa);
+    this.separatorArc = fsa.newArcCursor();
+    this.completionArc = fsa.newArcCursor();
     this.finalStatesIterator = new ByteSequenceIterator(fsa, fsa.getRootNode());
 
     if (dictionaryMetadata == null) {
@@ -117,23 +133,23 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
     // Reset the output list to zero length.
     formsList.wrap(forms, 0, 0);
 
-    // Encode word characters into bytes in the same encoding as the FSA's.
-    charBuffer = BufferUtils.clearAndEnsureCapacity(charBuffer, word.length());
-    for (int i = 0; i < word.length(); i++) {
-      char chr = word.charAt(i);
-      if (chr == separatorChar) {
-        // No valid input can contain the separator.
+    if (!encode(word)) {
+      return formsList;
+    }
+
+    final ExpandedIndex index = dictionary.getExpandedIndex();
+    if (index != null) {
+      final ExpandedIndex.Table table = index.table();
+      final int record = table.find(byteBuffer.array(), byteBuffer.remaining());
+      if (record >= 0) {
+        final int formsCount = table.entries(record);
+        for (int i = 0; i < formsCount; i++) {
+          final WordData wordData = updateForm(i, word);
+          table.copy(record, i, wordData);
+        }
+        formsList.wrap(forms, 0, formsCount);
         return formsList;
       }
-      charBuffer.put(chr);
-    }
-    charBuffer.flip();
-    try {
-      byteBuffer = BufferUtils.charsToBytes(encoder, charBuffer, byteBuffer);
-    } catch (UnmappableInputException e) {
-      // This should be a rare occurrence, but if it happens it means there is no way
-      // the dictionary can contain the input word.
-      return formsList;
     }
 
     // Try to find a partial match in the dictionary.
@@ -145,40 +161,27 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
        * The entire sequence exists in the dictionary. A separator should
        * be the next symbol.
        */
-      final int arc = fsa.getArc(match.node, separator);
+      final ArcCursor arc = separatorArc;
 
       /*
        * The situation when the arc points to a final node should NEVER
        * happen. After all, we want the word to have SOME base form.
        */
-      if (arc != 0 && !fsa.isArcFinal(arc)) {
+      if (arc.find(match.node, separator) && !arc.isFinal() && !arc.isTerminal()) {
         // There is such a word in the dictionary. Return its base forms.
         int formsCount = 0;
 
-        finalStatesIterator.restartFrom(fsa.getEndNode(arc));
+        finalStatesIterator.restartFrom(arc.getEndNode());
         while (finalStatesIterator.hasNext()) {
           final ByteBuffer bb = finalStatesIterator.next();
           final byte[] ba = bb.array();
           final int bbSize = bb.remaining();
 
-          if (formsCount >= forms.length) {
-            forms = Arrays.copyOf(forms, forms.length + EXPAND_SIZE);
-            for (int k = 0; k < forms.length; k++) {
-              if (forms[k] == null) forms[k] = new WordData(decoder);
-            }
-          }
-
           /*
            * Now, expand the prefix/ suffix 'compression' and store
            * the base form.
            */
-          final WordData wordData = forms[formsCount++];
-          if (dictionaryMetadata.getOutputConversionPairs().isEmpty()) {
-            wordData.update(byteBuffer, word);
-          } else {
-            wordData.update(
-                byteBuffer, applyReplacements(word, dictionaryMetadata.getOutputConversionPairs()));
-          }
+          final WordData wordData = updateForm(formsCount++, word);
 
           /*
            * Find the separator byte's position splitting the inflection instructions
@@ -209,10 +212,13 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
           if (tagSize > 0) {
             wordData.tagBuffer = BufferUtils.clearAndEnsureCapacity(wordData.tagBuffer, tagSize);
             wordData.tagBuffer.put(ba, sepPos, tagSize);
-            wordData.tagBuffer.flip();
           }
+          wordData.tagBuffer.flip();
         }
 
+        if (index != null) {
+          index.add(byteBuffer, forms, formsCount);
+        }
         formsList.wrap(forms, 0, formsCount);
       }
     } else {
@@ -225,6 +231,216 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
     return formsList;
   }
 
+  /**
+   * Points the reusable form at <code>index</code> (created if needed) at the looked up word.
+   *
+   * @return Returns the form.
+   */
+  private WordData updateForm(int index, CharSequence word) {
+    if (index >= forms.length) {
+      forms = Arrays.copyOf(forms, forms.length + EXPAND_SIZE);
+      for (int k = 0; k < forms.length; k++) {
+        if (forms[k] == null) forms[k] = new WordData(decoder);
+      }
+    }
+
+    final WordData wordData = forms[index];
+    if (dictionaryMetadata.getOutputConversionPairs().isEmpty()) {
+      wordData.update(byteBuffer, word);
+    } else {
+      wordData.update(
+          byteBuffer, applyReplacements(word, dictionaryMetadata.getOutputConversionPairs()));
+    }
+    return wordData;
+  }
+
+  /**
+   * Encodes word characters into {@link #byteBuffer}, in the same encoding as the FSA's.
+   *
+   * @return Returns <code>false</code> if the dictionary cannot contain the word.
+   */
+  private boolean encode(CharSequence word) {
+    charBuffer = BufferUtils.clearAndEnsureCapacity(charBuffer, word.length());
+    for (int i = 0; i < word.length(); i++) {
+      char chr = word.charAt(i);
+      if (chr == separatorChar) {
+        // No valid input can contain the separator.
+        return false;
+      }
+      charBuffer.put(chr);
+    }
+    charBuffer.flip();
+    try {
+      byteBuffer = BufferUtils.charsToBytes(encoder, charBuffer, byteBuffer);
+    } catch (UnmappableInputException e) {
+      // This should be a rare occurrence, but if it happens it means there is no way
+      // the dictionary can contain the input word.
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns up to <code>limit</code> distinct inflected forms starting with <code>prefix</code>
+   * (including the prefix itself, if it is a form), for example to complete words as they are
+   * typed.
+   *
+   * <p>If the dictionary {@linkplain DictionaryMetadata#isFrequencyIncluded() includes
+   * frequencies}, the most frequent forms are returned first (the frequency of a form is that of
+   * its first entry). The automaton is then searched best-first, using the maximum frequency of
+   * forms reachable from each node (computed on first use for nodes below the prefix, then cached).
+   * Otherwise forms are returned in the automaton's order and the traversal stops after <code>limit
+   * </code> forms.
+   *
+   * @param prefix The prefix of forms to return. Input and output conversion pairs are applied just
+   *     like in {@link #lookup(CharSequence)}.
+   * @param limit The maximum number of forms to return.
+   * @return Returns a new list of forms (possibly empty).
+   */
+  public List<String> completions(CharSequence prefix, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit must not be negative: " + limit);
+    }
+
+    final List<String> completions = new ArrayList<>();
+    if (!dictionaryMetadata.getInputConversionPairs().isEmpty()) {
+      prefix = applyReplacements(prefix, dictionaryMetadata.getInputConversionPairs());
+    }
+    if (limit == 0 || !encode(prefix)) {
+      return completions;
+    }
+
+    int node = rootNode;
+    if (byteBuffer.hasRemaining()) {
+      final MatchResult match =
+          matcher.match(matchResult, byteBuffer.array(), 0, byteBuffer.remaining(), rootNode);
+      if (match.kind != SEQUENCE_IS_A_PREFIX) {
+        return completions;
+      }
+      node = match.node;
+    }
+
+    if (dictionaryMetadata.isFrequencyIncluded()) {
+      completeByFrequency(node, limit, completions);
+    } else {
+      completeInOrder(node, limit, completions);
+    }
+    return completions;
+  }
+
+  /** Adds forms below <code>node</code> (after {@link #byteBuffer}) in the automaton's order. */
+  private void completeInOrder(int node, int limit, List<String> completions) {
+    final byte separator = dictionaryMetadata.getSeparator();
+    final ArcCursor cursor = completionArc;
+    final int prefixLength = byteBuffer.remaining();
+    byte[] path = Arrays.copyOf(byteBuffer.array(), prefixLength + EXPAND_SIZE);
+    int[] arcs = new int[EXPAND_SIZE];
+    int depth = 0;
+    arcs[depth++] = fsa.getFirstArc(node);
+
+    while (depth > 0 && completions.size() < limit) {
+      final int arc = arcs[depth - 1];
+      if (arc == 0) {
+        depth--;
+        continue;
+      }
+
+      cursor.read(arc);
+      arcs[depth - 1] = cursor.getNextArc();
+      final int length = prefixLength + depth - 1;
+      if (cursor.getLabel() == separator) {
+        completions.add(toForm(path, length));
+      } else if (!cursor.isTerminal()) {
+        if (length == path.length) {
+          path = Arrays.copyOf(path, path.length + EXPAND_SIZE);
+        }
+        if (depth == arcs.length) {
+          arcs = Arrays.copyOf(arcs, arcs.length + EXPAND_SIZE);
+        }
+        path[length] = cursor.getLabel();
+        arcs[depth++] = fsa.getFirstArc(cursor.getEndNode());
+      }
+    }
+  }
+
+  /**
+   * Adds forms below <code>node</code> (following {@link #byteBuffer}) in the order of decreasing
+   * frequency.
+   */
+  private void completeByFrequency(int node, int limit, List<String> completions) {
+    if (nodeFrequencies == null) {
+      nodeFrequencies = new NodeFrequencies(fsa, dictionaryMetadata.getSeparator());
+    }
+
+    final byte separator = dictionaryMetadata.getSeparator();
+    final ArcCursor cursor = completionArc;
+    final PriorityQueue<Completion> queue = new PriorityQueue<>();
+    int order = 0;
+    final byte[] prefix = BufferUtils.toArray(byteBuffer);
+    queue.add(new Completion(prefix, node, false, nodeFrequencies.maxFrequency(node), order++));
+
+    Completion next;
+    while (completions.size() < limit && (next = queue.poll()) != null) {
+      if (next.isForm) {
+        completions.add(toForm(next.path, next.path.length));
+        continue;
+      }
+
+      for (boolean hasArc = cursor.first(next.node); hasArc; hasArc = cursor.next()) {
+        if (cursor.getLabel() == separator) {
+          final int frequency =
+              cursor.isFinal() || cursor.isTerminal()
+                  ? 0
+                  : NodeFrequencies.frequencyAfterSeparator(fsa, cursor.getEndNode());
+          queue.add(new Completion(next.path, 0, true, frequency, order++));
+        } else if (!cursor.isTerminal()) {
+          final byte[] path = Arrays.copyOf(next.path, next.path.length + 1);
+          path[next.path.length] = cursor.getLabel();
+          final int endNode = cursor.getEndNode();
+          final int frequency = nodeFrequencies.maxFrequency(endNode);
+          queue.add(new Completion(path, endNode, false, frequency, order++));
+        }
+      }
+    }
+  }
+
+  /** Decodes a form, applying output conversion pairs. */
+  private String toForm(byte[] path, int length) {
+    charBuffer = BufferUtils.bytesToChars(decoder, ByteBuffer.wrap(path, 0, length), charBuffer);
+    final String form = charBuffer.toString();
+    return dictionaryMetadata.getOutputConversionPairs().isEmpty()
+        ? form
+        : applyReplacements(form, dictionaryMetadata.getOutputConversionPairs());
+  }
+
+  /**
+   * A form or a node below the prefix of {@link #completions(CharSequence, int)}, ordered by
+   * decreasing (maximum) frequency and then by the order of discovery.
+   */
+  private static final class Completion implements Comparable<Completion> {
+    final byte[] path;
+    final int node;
+    final boolean isForm;
+    final int frequency;
+    final int order;
+
+    Completion(byte[] path, int node, boolean isForm, int frequency, int order) {
+      this.path = path;
+      this.node = node;
+      this.isForm = isForm;
+      this.frequency = frequency;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(Completion other) {
+      if (frequency != other.frequency) {
+        return Integer.compare(other.frequency, frequency);
+      }
+      return Integer.compare(order, other.order);
+    }
+  }
+
   /**
    * Apply partial string replacements from a given map.
    *
@@ -258,6 +474,30 @@ public final class DictionaryLookup implements IStemmer, Iterable<WordData> {
     return new DictionaryIterator(dictionary, decoder, true);
   }
 
+  /**
+   * Return a sequential stream of all {@link WordData} entries available in the embedded {@link
+   * Dictionary}, in the same order as {@link #iterator()}. Unlike the iterator, the stream returns
+   * separate copies of entries, with the word, stem and tag decoded up front, which can be kept and
+   * passed between threads. The stream does not use the state of this object.
+   *
+   * @return Returns a stream of all dictionary entries.
+   */
+  public Stream<WordData> stream() {
+    return StreamSupport.stream(new DictionarySpliterator(dictionary, fsa.spliterator()), false);
+  }
+
+  /**
+   * Return a parallel stream of all {@link WordData} entries available in the embedded {@link
+   * Dictionary}. Sub-trees of the automaton are split between threads; the stream is sized if the
+   * automaton has {@link morfologik.fsa.FSAFlags#NUMBERS}.
+   *
+   * @return Returns a parallel stream of all dictionary entries.
+   * @see #stream()
+   */
+  public Stream<WordData> parallelStream() {
+    return stream().parallel();
+  }
+
   /**
    * @return Return the {@link Dictionary} used by this object.
    */
@@ -2,10 +2,14 @@ package morfologik.stemming;
 
 import static morfologik.stemming.DictionaryAttribute.*;
 
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
@@ -13,8 +17,11 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
@@ -88,6 +95,15 @@ public final class DictionaryMetadata {
   /** Expected metadata file extension. */
   public static final String METADATA_FILE_EXTENSION = "info";
 
+  /** Expected binary metadata file extension (see {@link #writeBinary(OutputStream)}). */
+  public static final String BINARY_METADATA_FILE_EXTENSION = "meta";
+
+  /** The header of binary metadata, never found at the start of a property file. */
+  private static final int BINARY_MAGIC = 0x006d666d;
+
+  /** The version of binary metadata. */
+  private static final byte BINARY_VERSION = 1;
+
   /**
    * @return Return all metadata attributes.
    */
@@ -164,6 +180,14 @@ public final class DictionaryMetadata {
    * @see DictionaryMetadataBuilder
    */
   public DictionaryMetadata(Map<DictionaryAttribute, String> attrs) {
+    this(attrs, Collections.<DictionaryAttribute, Object>emptyMap());
+  }
+
+  /**
+   * @param parsed Values of (some) attributes, already converted from strings.
+   */
+  private DictionaryMetadata(
+      Map<DictionaryAttribute, String> attrs, Map<DictionaryAttribute, Object> parsed) {
     this.boolAttributes = new EnumMap<DictionaryAttribute, Boolean>(DictionaryAttribute.class);
     this.attributes = new EnumMap<DictionaryAttribute, String>(DictionaryAttribute.class);
     this.attributes.putAll(attrs);
@@ -178,8 +202,11 @@ public final class DictionaryMetadata {
     for (Map.Entry<DictionaryAttribute, String> e : attributeMap.entrySet()) {
       requiredAttributes.remove(e.getKey());
 
-      // Run validation and conversion on all of them.
-      Object value = e.getKey().fromString(e.getValue());
+      // Run validation and conversion on all of them (unless precompiled).
+      Object value = parsed.get(e.getKey());
+      if (value == null) {
+        value = e.getKey().fromString(e.getValue());
+      }
       switch (e.getKey()) {
         case ENCODING:
           this.encoding = e.getValue();
@@ -344,15 +371,7 @@ public final class DictionaryMetadata {
    * @return Returns the expected name of the metadata file.
    */
   public static String getExpectedMetadataFileName(String dictionaryFile) {
-    final int dotIndex = dictionaryFile.lastIndexOf('.');
-    final String featuresName;
-    if (dotIndex >= 0) {
-      featuresName = dictionaryFile.substring(0, dotIndex) + "." + METADATA_FILE_EXTENSION;
-    } else {
-      featuresName = dictionaryFile + "." + METADATA_FILE_EXTENSION;
-    }
-
-    return featuresName;
+    return replaceExtension(dictionaryFile, METADATA_FILE_EXTENSION);
   }
 
   /**
@@ -365,13 +384,67 @@ public final class DictionaryMetadata {
   }
 
   /**
-   * Read dictionary metadata from a property file (stream).
+   * Returns the expected name of the binary metadata file, based on the name of the dictionary file
+   * (as in {@link #getExpectedMetadataFileName(String)}, but with {@link
+   * DictionaryMetadata#BINARY_METADATA_FILE_EXTENSION}).
+   *
+   * @param dictionaryFile The name of the dictionary (<code>*.dict</code>) file.
+   * @return Returns the expected name of the binary metadata file.
+   */
+  public static String getExpectedBinaryMetadataFileName(String dictionaryFile) {
+    return replaceExtension(dictionaryFile, BINARY_METADATA_FILE_EXTENSION);
+  }
+
+  /**
+   * @param dictionary The location of the dictionary file.
+   * @return Returns the expected location of a binary metadata file.
+   */
+  public static Path getExpectedBinaryMetadataLocation(Path dictionary) {
+    return dictionary.resolveSibling(
+        getExpectedBinaryMetadataFileName(dictionary.getFileName().toString()));
+  }
+
+  /**
+   * @return Returns the location of the binary metadata file of a dictionary if it exists (binary
+   *     metadata take precedence), the location of the metadata file otherwise.
+   */
+  static Path getMetadataLocation(Path dictionary) {
+    final Path binary = getExpectedBinaryMetadataLocation(dictionary);
+    return Files.isRegularFile(binary) ? binary : getExpectedMetadataLocation(dictionary);
+  }
+
+  private static String replaceExtension(String fileName, String extension) {
+    final int dotIndex = fileName.lastIndexOf('.');
+    if (dotIndex >= 0) {
+      return fileName.substring(0, dotIndex) + "." + extension;
+    } else {
+      return fileName + "." + extension;
+    }
+  }
+
+  /**
+   * Read dictionary metadata from a property file (stream) or binary metadata (see {@link
+   * #writeBinary(OutputStream)}).
    *
    * @param metadataStream The stream with metadata.
    * @return Returns {@link DictionaryMetadata} read from a the stream (property file).
    * @throws IOException Thrown if an I/O exception occurs.
    */
   public static DictionaryMetadata read(InputStream metadataStream) throws IOException {
+    if (!metadataStream.markSupported()) {
+      metadataStream = new BufferedInputStream(metadataStream);
+    }
+    metadataStream.mark(4);
+    final byte[] header = metadataStream.readNBytes(4);
+    metadataStream.reset();
+    if (header.length == 4 && ByteBuffer.wrap(header).getInt() == BINARY_MAGIC) {
+      try {
+        return readBinary(ByteBuffer.wrap(metadataStream.readAllBytes()));
+      } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+        throw new IOException("Truncated or corrupted binary metadata.", e);
+      }
+    }
+
     Map<DictionaryAttribute, String> map = new HashMap<DictionaryAttribute, String>();
     final Properties properties = new Properties();
     properties.load(new InputStreamReader(metadataStream, "UTF-8"));
@@ -440,4 +513,136 @@ public final class DictionaryMetadata {
 
     properties.store(writer, "# " + getClass().getName());
   }
+
+  /**
+   * Write dictionary attributes (metadata) in a binary form, with conversion tables, replacement
+   * pairs and equivalent characters stored already parsed, so that they are read without parsing.
+   * {@link #read(InputStream)} reads both forms.
+   *
+   * @param os The output stream to write to.
+   * @throws IOException Thrown when an I/O error occurs.
+   */
+  public void writeBinary(OutputStream os) throws IOException {
+    final DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(BINARY_MAGIC);
+    out.writeByte(BINARY_VERSION);
+
+    out.writeInt(attributes.size());
+    for (Map.Entry<DictionaryAttribute, String> e : attributes.entrySet()) {
+      writeString(out, e.getKey().propertyName);
+      writeString(out, e.getValue());
+    }
+
+    writeStrings(out, attributes.containsKey(INPUT_CONVERSION) ? inputConversion : null);
+    writeStrings(out, attributes.containsKey(OUTPUT_CONVERSION) ? outputConversion : null);
+
+    if (attributes.containsKey(REPLACEMENT_PAIRS)) {
+      out.writeInt(replacementPairs.size());
+      for (Map.Entry<String, List<String>> e : replacementPairs.entrySet()) {
+        writeString(out, e.getKey());
+        out.writeInt(e.getValue().size());
+        for (String value : e.getValue()) {
+          writeString(out, value);
+        }
+      }
+    } else {
+      out.writeInt(-1);
+    }
+
+    if (attributes.containsKey(EQUIVALENT_CHARS)) {
+      out.writeInt(equivalentChars.size());
+      for (Map.Entry<Character, List<Character>> e : equivalentChars.entrySet()) {
+        out.writeChar(e.getKey());
+        out.writeInt(e.getValue().size());
+        for (Character value : e.getValue()) {
+          out.writeChar(value);
+        }
+      }
+    } else {
+      out.writeInt(-1);
+    }
+    out.flush();
+  }
+
+  private static void writeStrings(DataOutputStream out, Map<String, String> map)
+      throws IOException {
+    if (map == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(map.size());
+    for (Map.Entry<String, String> e : map.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue());
+    }
+  }
+
+  private static DictionaryMetadata readBinary(ByteBuffer in) throws IOException {
+    in.getInt();
+    final byte version = in.get();
+    if (version != BINARY_VERSION) {
+      throw new IOException("Unsupported binary metadata version: " + version);
+    }
+
+    final Map<DictionaryAttribute, String> attrs = new HashMap<>();
+    for (int i = in.getInt(); --i >= 0; ) {
+      attrs.put(DictionaryAttribute.fromPropertyName(readString(in)), readString(in));
+    }
+
+    final Map<DictionaryAttribute, Object> parsed = new EnumMap<>(DictionaryAttribute.class);
+    for (DictionaryAttribute attr : EnumSet.of(INPUT_CONVERSION, OUTPUT_CONVERSION)) {
+      final int size = in.getInt();
+      if (size >= 0) {
+        final LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(readString(in), readString(in));
+        }
+        parsed.put(attr, map);
+      }
+    }
+
+    int size = in.getInt();
+    if (size >= 0) {
+      final LinkedHashMap<String, List<String>> map = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        final String key = readString(in);
+        final List<String> values = new ArrayList<>();
+        for (int j = in.getInt(); --j >= 0; ) {
+          values.add(readString(in));
+        }
+        map.put(key, values);
+      }
+      parsed.put(REPLACEMENT_PAIRS, map);
+    }
+
+    size = in.getInt();
+    if (size >= 0) {
+      final LinkedHashMap<Character, List<Character>> map = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        final char key = in.getChar();
+        final List<Character> values = new ArrayList<>();
+        for (int j = in.getInt(); --j >= 0; ) {
+          values.add(in.getChar());
+        }
+        map.put(key, values);
+      }
+      parsed.put(EQUIVALENT_CHARS, map);
+    }
+
+    return new DictionaryMetadata(attrs, parsed);
+  }
+
+  /** Writes a string as UTF-8 (unlike {@link DataOutputStream#writeUTF(String)}, of any length). */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    final int length = in.getInt();
+    final String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+    in.position(in.position() + length);
+    return value;
+  }
 }
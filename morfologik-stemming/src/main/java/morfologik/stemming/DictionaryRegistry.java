@@ -0,0 +1,270 @@
+package morfologik.stemming;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A registry of dictionaries shared by many callers. Dictionaries are {@linkplain #acquire(Path)
+ * acquired} by the location of their <code>*.dict</code> file: callers acquiring the same file
+ * (under any path leading to it) share a single {@link Dictionary} instance, and so do callers
+ * acquiring different files with identical content (of the automaton and metadata).
+ *
+ * <p>Each acquisition returns a {@link Handle} that must be {@linkplain Handle#close() closed} once
+ * no longer needed; a dictionary no longer referenced by any handle is evicted from the registry.
+ *
+ * <p>{@link #reload(Path)} (or {@link #reloadModified()}) re-reads dictionary files modified since
+ * they were loaded and atomically replaces the dictionary returned by {@link Handle#get()}. Readers
+ * are never blocked: they keep using the dictionary they obtained (dictionaries are immutable), so
+ * long-lived {@link DictionaryLookup}s should be recreated from {@link Handle#get()} to see
+ * reloaded data. To avoid reloading half-written data, replace the <code>*.dict</code> and <code>
+ * *.info</code> files with atomic moves.
+ *
+ * <p>All methods of this class are thread-safe.
+ */
+public final class DictionaryRegistry {
+  /** Loaded dictionaries, by the real path of their <code>*.dict</code> file. */
+  private final Map<Path, Entry> entries = new HashMap<>();
+
+  /**
+   * Acquires the dictionary at a given location, reading it unless it is already loaded.
+   *
+   * @param location The location of the dictionary file (<code>*.dict</code>), with metadata in a
+   *     sibling file (see {@link Dictionary#read(Path)}).
+   * @return Returns a new handle to the shared dictionary.
+   * @throws IOException if an I/O error occurs.
+   */
+  public Handle acquire(Path location) throws IOException {
+    final Path key = location.toRealPath();
+    synchronized (this) {
+      final Entry entry = entries.get(key);
+      if (entry != null) {
+        return entry.acquire();
+      }
+    }
+
+    // Read outside of the lock so that other dictionaries can be acquired meanwhile.
+    final Loaded loaded = load(key);
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry(key, share(loaded));
+        entries.put(key, entry);
+      }
+      return entry.acquire();
+    }
+  }
+
+  /**
+   * Reloads the dictionary at a given location if its files have been modified since they were
+   * loaded. Readers are not blocked while the files are read; handles return the new dictionary
+   * once it is loaded.
+   *
+   * @param location The location of the dictionary file (<code>*.dict</code>).
+   * @return Returns <code>true</code> if the dictionary was replaced, <code>false</code> if it was
+   *     not modified (or has not been acquired).
+   * @throws IOException if an I/O error occurs. The current dictionary remains in use then.
+   */
+  public boolean reload(Path location) throws IOException {
+    final Entry entry;
+    synchronized (this) {
+      entry = entries.get(location.toRealPath());
+    }
+    return entry != null && reload(entry);
+  }
+
+  /**
+   * Reloads all dictionaries modified since they were loaded (see {@link #reload(Path)}).
+   *
+   * @return Returns the number of dictionaries replaced.
+   * @throws IOException if an I/O error occurs.
+   */
+  public int reloadModified() throws IOException {
+    final List<Entry> current;
+    synchronized (this) {
+      current = new ArrayList<>(entries.values());
+    }
+
+    int reloaded = 0;
+    for (Entry entry : current) {
+      if (reload(entry)) {
+        reloaded++;
+      }
+    }
+    return reloaded;
+  }
+
+  /**
+   * @return Returns the number of dictionaries in the registry (referenced by open handles).
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private boolean reload(Entry entry) throws IOException {
+    // Reloads of an entry are serialized (but don't block other entries or readers).
+    synchronized (entry) {
+      final Loaded current = entry.loaded;
+      if (current.stamp.equals(stamp(entry.key))) {
+        return false;
+      }
+
+      final Loaded loaded = load(entry.key);
+      synchronized (this) {
+        if (Arrays.equals(current.digest, loaded.digest)) {
+          entry.loaded = current.withStamp(loaded.stamp);
+          return false;
+        }
+        entry.loaded = share(loaded);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns an already loaded dictionary with the same content instead, if there is one. Must be
+   * called with the registry's lock held.
+   */
+  private Loaded share(Loaded loaded) {
+    for (Entry entry : entries.values()) {
+      final Loaded other = entry.loaded;
+      if (Arrays.equals(other.digest, loaded.digest)) {
+        return new Loaded(other.dictionary, other.digest, loaded.stamp);
+      }
+    }
+    return loaded;
+  }
+
+  private static Loaded load(Path location) throws IOException {
+    // Take the stamp first so that modifications made while reading are seen by the next reload.
+    final List<Object> stamp = stamp(location);
+    final byte[] fsaData = Files.readAllBytes(location);
+
+    // Containers embed their metadata.
+    final boolean container = DictionaryContainer.isContainer(ByteBuffer.wrap(fsaData));
+    final byte[] metadataData =
+        container
+            ? new byte[0]
+            : Files.readAllBytes(DictionaryMetadata.getMetadataLocation(location));
+
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    digest.update(fsaData);
+    digest.update((byte) 0);
+    digest.update(metadataData);
+
+    final Dictionary dictionary =
+        container
+            ? DictionaryContainer.read(ByteBuffer.wrap(fsaData)).dictionary
+            : Dictionary.read(
+                new ByteArrayInputStream(fsaData), new ByteArrayInputStream(metadataData));
+    return new Loaded(dictionary, digest.digest(), stamp);
+  }
+
+  /** Returns the metadata file used and the modification times and sizes of the files. */
+  private static List<Object> stamp(Path location) throws IOException {
+    final List<Object> stamp = new ArrayList<>();
+    stamp.add(Files.getLastModifiedTime(location));
+    stamp.add(Files.size(location));
+
+    final Path metadataLocation = DictionaryMetadata.getMetadataLocation(location);
+    if (Files.exists(metadataLocation)) {
+      stamp.add(metadataLocation);
+      stamp.add(Files.getLastModifiedTime(metadataLocation));
+      stamp.add(Files.size(metadataLocation));
+    }
+    return stamp;
+  }
+
+  /** A loaded dictionary, the digest of its files and their modification stamp. */
+  private static final class Loaded {
+    final Dictionary dictionary;
+    final byte[] digest;
+    final List<Object> stamp;
+
+    Loaded(Dictionary dictionary, byte[] digest, List<Object> stamp) {
+      this.dictionary = dictionary;
+      this.digest = digest;
+      this.stamp = stamp;
+    }
+
+    Loaded withStamp(List<Object> stamp) {
+      return new Loaded(dictionary, digest, stamp);
+    }
+  }
+
+  /** A dictionary location in the registry. */
+  private final class Entry {
+    final Path key;
+
+    /** The current dictionary, replaced on reloads. */
+    volatile Loaded loaded;
+
+    /** The number of open handles (guarded by the registry). */
+    int references;
+
+    Entry(Path key, Loaded loaded) {
+      this.key = key;
+      this.loaded = loaded;
+    }
+
+    /** Must be called with the registry's lock held. */
+    Handle acquire() {
+      references++;
+      return new Handle(this);
+    }
+
+    void release() {
+      synchronized (DictionaryRegistry.this) {
+        if (--references == 0) {
+          entries.remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * A reference to a shared dictionary of a {@link DictionaryRegistry}. Handles are thread-safe.
+   */
+  public static final class Handle implements AutoCloseable {
+    private final Entry entry;
+    private volatile boolean closed;
+
+    private Handle(Entry entry) {
+      this.entry = entry;
+    }
+
+    /**
+     * @return Returns the current dictionary (which changes when the dictionary is reloaded).
+     * @throws IllegalStateException If the handle has been closed.
+     */
+    public Dictionary get() {
+      if (closed) {
+        throw new IllegalStateException("Handle closed.");
+      }
+      return entry.loaded.dictionary;
+    }
+
+    /** Releases the dictionary; it is evicted from the registry once all handles are closed. */
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        entry.release();
+      }
+    }
+  }
+}
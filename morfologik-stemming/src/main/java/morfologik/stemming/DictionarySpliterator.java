@@ -0,0 +1,62 @@
+package morfologik.stemming;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over {@link WordData} entries of a {@link Dictionary}, splitting along with
+ * the automaton's {@link Spliterator}. Every entry is a separate copy with its word, stem and tag
+ * decoded up front (see {@link WordData#decodedCopy()}), so entries can be consumed by other
+ * threads and kept after the traversal. Each spliterator decodes with its own {@link
+ * java.nio.charset.CharsetDecoder}.
+ */
+final class DictionarySpliterator implements Spliterator<WordData> {
+  private final Dictionary dictionary;
+  private final Spliterator<ByteBuffer> entries;
+  private final DictionaryIterator entryDecoder;
+
+  /** The last entry returned by {@link #entries}. */
+  private ByteBuffer entry;
+
+  DictionarySpliterator(Dictionary dictionary, Spliterator<ByteBuffer> entries) {
+    this.dictionary = dictionary;
+    this.entries = entries;
+    this.entryDecoder =
+        new DictionaryIterator(
+            dictionary,
+            dictionary.metadata.getDecoder(),
+            true,
+            Collections.<ByteBuffer>emptyIterator());
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super WordData> action) {
+    if (!entries.tryAdvance(bb -> entry = bb)) {
+      return false;
+    }
+
+    final WordData wordData = entryDecoder.decode(entry);
+    entry = null;
+    action.accept(wordData.decodedCopy());
+    return true;
+  }
+
+  @Override
+  public Spliterator<WordData> trySplit() {
+    final Spliterator<ByteBuffer> prefix = entries.trySplit();
+    return prefix == null ? null : new DictionarySpliterator(dictionary, prefix);
+  }
+
+  @Override
+  public long estimateSize() {
+    return entries.estimateSize();
+  }
+
+  @Override
+  public int characteristics() {
+    // Entries are distinct copies, but WordData does not implement equals().
+    return entries.characteristics() & ~DISTINCT;
+  }
+}
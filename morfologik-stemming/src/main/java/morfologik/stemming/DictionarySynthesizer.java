@@ -0,0 +1,300 @@
+package morfologik.stemming;
+
+import static morfologik.fsa.MatchResult.SEQUENCE_IS_A_PREFIX;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import morfologik.fsa.ArcCursor;
+import morfologik.fsa.ByteSequenceIterator;
+import morfologik.fsa.FSA;
+import morfologik.fsa.FSATraversal;
+import morfologik.fsa.MatchResult;
+
+/**
+ * This class implements synthesis (generation) of inflected forms from a lemma and a tag, over a
+ * synthesis dictionary compiled using the <code>dict_compile</code> tool (with the <code>
+ * --synthesis</code> option). This is the reverse of {@link DictionaryLookup}.
+ *
+ * <p>The synthesis automaton stores <code>lemma SEP tag SEP encoded</code> sequences, where the
+ * inflected form is encoded relative to the lemma with the dictionary's {@link ISequenceEncoder}.
+ * It shares the metadata (<code>*.info</code>) file of the dictionary it was compiled with.
+ *
+ * <p>Just like {@link DictionaryLookup}, this class reuses its internal buffers and the returned
+ * {@link WordData} objects (with the inflected form as the word and the lemma as the stem), so they
+ * are only valid until the next call. Instances are not thread-safe. Conversion pairs of the
+ * metadata are not applied: lemmas, tags and forms are as in the dictionary's input.
+ */
+public final class DictionarySynthesizer {
+  /** A file extension of synthesis dictionaries. */
+  public static final String SYNTHESIS_FILE_EXTENSION = "synth";
+
+  /** An FSA used for lookups. */
+  private final FSATraversal matcher;
+
+  /** Decodes the separator arcs following the lemma and the tag. */
+  private final ArcCursor separatorArc;
+
+  /** An iterator for walking along the final states of {@link #fsa}. */
+  private final ByteSequenceIterator finalStatesIterator;
+
+  /** Expand buffers and arrays by this constant. */
+  private static final int EXPAND_SIZE = 10;
+
+  /** Private internal array of reusable word data objects. */
+  private WordData[] forms = new WordData[0];
+
+  /** A "view" over {@link #forms}. */
+  private final ArrayViewList<WordData> formsList =
+      new ArrayViewList<WordData>(forms, 0, forms.length);
+
+  /** Features of the compiled dictionary. */
+  private final DictionaryMetadata dictionaryMetadata;
+
+  /** Charset encoder for the FSA. */
+  private final CharsetEncoder encoder;
+
+  /** Charset decoder for the FSA. */
+  private final CharsetDecoder decoder;
+
+  /** The FSA we are using. */
+  private final FSA fsa;
+
+  /** Internal reusable buffer for the encoded lemma. */
+  private ByteBuffer lemmaBuffer = ByteBuffer.allocate(0);
+
+  /** Internal reusable buffer for the encoded tag. */
+  private ByteBuffer tagBuffer = ByteBuffer.allocate(0);
+
+  /** Internal reusable buffer for encoding characters into byte arrays using {@link #encoder}. */
+  private CharBuffer charBuffer = CharBuffer.allocate(0);
+
+  /** Reusable match result. */
+  private final MatchResult matchResult = new MatchResult();
+
+  /** The {@link Dictionary} this synthesizer is using. */
+  private final Dictionary dictionary;
+
+  private final ISequenceEncoder sequenceEncoder;
+
+  /**
+   * Creates a new object of this class using the given synthesis dictionary.
+   *
+   * @param dictionary The synthesis dictionary (see {@link #getExpectedSynthesisLocation(Path)}).
+   * @throws IllegalArgumentException if the dictionary's metadata is <code>null</code>.
+   */
+  public DictionarySynthesizer(Dictionary dictionary) throws IllegalArgumentException {
+    if (dictionary.metadata == null) {
+      throw new IllegalArgumentException("Dictionary metadata must not be null.");
+    }
+
+    this.dictionary = dictionary;
+    this.dictionaryMetadata = dictionary.metadata;
+    this.sequenceEncoder = dictionary.metadata.getSequenceEncoderType().get();
+    this.fsa = dictionary.fsa;
+    this.matcher = new FSATraversal(fsa);
+    this.separatorArc = fsa.newArcCursor();
+    this.finalStatesIterator = new ByteSequenceIterator(fsa, fsa.getRootNode());
+    this.decoder = dictionary.metadata.getDecoder();
+    this.encoder = dictionary.metadata.getEncoder();
+  }
+
+  /**
+   * Returns the inflected forms of <code>lemma</code> with the given tag.
+   *
+   * @param lemma The lemma (base form), as stored in the dictionary.
+   * @param tag The tag of forms to return (an empty tag if the dictionary has no tags).
+   * @return Returns a list of reused {@link WordData} objects (possibly empty).
+   */
+  public List<WordData> synthesize(CharSequence lemma, CharSequence tag) {
+    formsList.wrap(forms, 0, 0);
+
+    int node = matchLemma(lemma);
+    final ByteBuffer encodedTag = node < 0 ? null : encode(tag, tagBuffer);
+    if (encodedTag == null) {
+      return formsList;
+    }
+    tagBuffer = encodedTag;
+
+    if (tagBuffer.hasRemaining()) {
+      final MatchResult match =
+          matcher.match(matchResult, tagBuffer.array(), 0, tagBuffer.remaining(), node);
+      if (match.kind != SEQUENCE_IS_A_PREFIX) {
+        return formsList;
+      }
+      node = match.node;
+    }
+
+    final ArcCursor arc = separatorArc;
+    if (!arc.find(node, dictionaryMetadata.getSeparator())) {
+      return formsList;
+    }
+
+    int formsCount = 0;
+    if (arc.isFinal()) {
+      // An empty encoded form (possible with EncoderType.NONE).
+      addForm(formsCount++, tagBuffer.array(), 0, 0, tagBuffer.array(), 0, tagBuffer.remaining());
+    }
+    if (!arc.isTerminal()) {
+      finalStatesIterator.restartFrom(arc.getEndNode());
+      while (finalStatesIterator.hasNext()) {
+        final ByteBuffer bb = finalStatesIterator.next();
+        addForm(
+            formsCount++,
+            bb.array(),
+            0,
+            bb.remaining(),
+            tagBuffer.array(),
+            0,
+            tagBuffer.remaining());
+      }
+    }
+
+    formsList.wrap(forms, 0, formsCount);
+    return formsList;
+  }
+
+  /**
+   * Returns all inflected forms of <code>lemma</code>, with their tags.
+   *
+   * @param lemma The lemma (base form), as stored in the dictionary.
+   * @return Returns a list of reused {@link WordData} objects (possibly empty).
+   */
+  public List<WordData> synthesize(CharSequence lemma) {
+    formsList.wrap(forms, 0, 0);
+
+    final int node = matchLemma(lemma);
+    if (node < 0) {
+      return formsList;
+    }
+
+    final byte separator = dictionaryMetadata.getSeparator();
+    int formsCount = 0;
+    finalStatesIterator.restartFrom(node);
+    while (finalStatesIterator.hasNext()) {
+      final ByteBuffer bb = finalStatesIterator.next();
+      final byte[] ba = bb.array();
+      final int bbSize = bb.remaining();
+
+      // Tags contain no separators, the encoded form may (see ISequenceEncoder#prefixBytes()).
+      int sepPos = 0;
+      while (sepPos < bbSize && ba[sepPos] != separator) {
+        sepPos++;
+      }
+      if (sepPos == bbSize) {
+        continue;
+      }
+
+      addForm(formsCount++, ba, sepPos + 1, bbSize - (sepPos + 1), ba, 0, sepPos);
+    }
+
+    formsList.wrap(forms, 0, formsCount);
+    return formsList;
+  }
+
+  /**
+   * Encodes the lemma into {@link #lemmaBuffer} and matches it, followed by a separator.
+   *
+   * @return Returns the node following the separator or <code>-1</code> if there is no such lemma.
+   */
+  private int matchLemma(CharSequence lemma) {
+    final ByteBuffer encoded = encode(lemma, lemmaBuffer);
+    if (encoded == null || encoded.remaining() == 0) {
+      return -1;
+    }
+    lemmaBuffer = encoded;
+
+    final MatchResult match =
+        matcher.match(
+            matchResult, lemmaBuffer.array(), 0, lemmaBuffer.remaining(), fsa.getRootNode());
+    final ArcCursor arc = separatorArc;
+    if (match.kind == SEQUENCE_IS_A_PREFIX
+        && arc.find(match.node, dictionaryMetadata.getSeparator())
+        && !arc.isTerminal()) {
+      return arc.getEndNode();
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes an inflected form of {@link #lemmaBuffer} and stores it, with a copy of the tag, at the
+   * given index of {@link #forms}.
+   */
+  private void addForm(
+      int index,
+      byte[] encoded,
+      int encodedStart,
+      int encodedLength,
+      byte[] tag,
+      int tagStart,
+      int tagLength) {
+    if (index >= forms.length) {
+      forms = Arrays.copyOf(forms, forms.length + EXPAND_SIZE);
+      for (int k = 0; k < forms.length; k++) {
+        if (forms[k] == null) forms[k] = new WordData(decoder);
+      }
+    }
+
+    final WordData wordData = forms[index];
+    final ByteBuffer word =
+        sequenceEncoder.decode(
+            wordData.wordBuffer,
+            lemmaBuffer,
+            ByteBuffer.wrap(encoded, encodedStart, encodedLength));
+
+    // The tag is copied: sequences returned by the iterator are overwritten on advancing it.
+    final ByteBuffer tagCopy = BufferUtils.clearAndEnsureCapacity(wordData.tagBuffer, tagLength);
+    tagCopy.put(tag, tagStart, tagLength);
+    tagCopy.flip();
+
+    wordData.updateLazily(word, lemmaBuffer, null, tagCopy);
+  }
+
+  /**
+   * Encodes characters in the same encoding as the FSA's.
+   *
+   * @return Returns the encoded bytes (possibly in <code>reuse</code>) or <code>null</code> if the
+   *     dictionary cannot contain the input.
+   */
+  private ByteBuffer encode(CharSequence chars, ByteBuffer reuse) {
+    final char separatorChar = dictionaryMetadata.getSeparatorAsChar();
+    charBuffer = BufferUtils.clearAndEnsureCapacity(charBuffer, chars.length());
+    for (int i = 0; i < chars.length(); i++) {
+      char chr = chars.charAt(i);
+      if (chr == separatorChar) {
+        // No valid input can contain the separator.
+        return null;
+      }
+      charBuffer.put(chr);
+    }
+    charBuffer.flip();
+    try {
+      return BufferUtils.charsToBytes(encoder, charBuffer, reuse);
+    } catch (UnmappableInputException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param dictionary The location of the dictionary (<code>*.dict</code>) file.
+   * @return Returns the expected location of the synthesis dictionary compiled along with it. The
+   *     synthesis dictionary shares the metadata file of <code>dictionary</code>.
+   */
+  public static Path getExpectedSynthesisLocation(Path dictionary) {
+    final String name = dictionary.getFileName().toString();
+    final int dotIndex = name.lastIndexOf('.');
+    return dictionary.resolveSibling(
+        (dotIndex >= 0 ? name.substring(0, dotIndex) : name) + "." + SYNTHESIS_FILE_EXTENSION);
+  }
+
+  /**
+   * @return Return the {@link Dictionary} used by this object.
+   */
+  public Dictionary getDictionary() {
+    return dictionary;
+  }
+}
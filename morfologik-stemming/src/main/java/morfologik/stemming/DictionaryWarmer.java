@@ -0,0 +1,116 @@
+package morfologik.stemming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+import morfologik.fsa.FSA;
+
+/**
+ * Warms up a {@link Dictionary} (and the code traversing it) by running lookups of forms sampled
+ * from the dictionary itself. Running the warm-up once the dictionary is loaded (for example in a
+ * background task at application startup) moves class loading, the first touch of the automaton's
+ * data and JIT compilation of the lookup code out of the way of the first real requests.
+ *
+ * <p>Forms are sampled by random walks from the root of the automaton (each one a different path,
+ * so lookups cover the automaton, not just its first forms); walks use a fixed seed, so the warm-up
+ * is repeatable.
+ */
+public final class DictionaryWarmer {
+  /** The default number of lookups (enough for the JIT to compile the lookup code). */
+  public static final int DEFAULT_LOOKUPS = 20000;
+
+  /** The seed of random walks. */
+  private static final long SEED = 0xdeadbeefL;
+
+  /** The maximum length of a sampled form, in bytes (longer walks are abandoned). */
+  private static final int MAX_FORM_LENGTH = 256;
+
+  private DictionaryWarmer() {
+    // No instances.
+  }
+
+  /**
+   * Runs {@link #DEFAULT_LOOKUPS} lookups against the dictionary.
+   *
+   * @param dictionary The dictionary to warm up.
+   * @return Returns the number of {@link WordData} entries found.
+   * @see #warmUp(Dictionary, int)
+   */
+  public static int warmUp(Dictionary dictionary) {
+    return warmUp(dictionary, DEFAULT_LOOKUPS);
+  }
+
+  /**
+   * Runs lookups of forms sampled from the dictionary and decodes the stems and tags found.
+   *
+   * @param dictionary The dictionary to warm up.
+   * @param lookups The number of lookups to run.
+   * @return Returns the number of {@link WordData} entries found (so that the work can't be
+   *     optimized away).
+   */
+  public static int warmUp(Dictionary dictionary, int lookups) {
+    if (lookups < 0) {
+      throw new IllegalArgumentException("The number of lookups must not be negative: " + lookups);
+    }
+
+    final FSA fsa = dictionary.fsa;
+    final byte separator = dictionary.metadata.getSeparator();
+    final Charset charset = dictionary.metadata.getDecoder().charset();
+    final DictionaryLookup lookup = new DictionaryLookup(dictionary);
+    final Random rnd = new Random(SEED);
+    final ByteBuffer form = ByteBuffer.allocate(MAX_FORM_LENGTH);
+
+    int found = 0;
+    for (int i = 0; i < lookups; i++) {
+      if (!sample(fsa, separator, rnd, form)) {
+        continue;
+      }
+
+      final List<WordData> entries = lookup.lookup(BufferUtils.toString(form, charset));
+      for (WordData wd : entries) {
+        wd.getStem();
+        wd.getTag();
+      }
+      found += entries.size();
+    }
+    return found;
+  }
+
+  /**
+   * Fills <code>form</code> with the bytes of a random path from the root to the separator.
+   *
+   * @return Returns <code>false</code> if no form was found (a dead end or a path too long).
+   */
+  private static boolean sample(FSA fsa, byte separator, Random rnd, ByteBuffer form) {
+    form.clear();
+    int node = fsa.getRootNode();
+    while (form.hasRemaining()) {
+      int arcs = 0;
+      for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+        arcs++;
+      }
+      if (arcs == 0) {
+        return false;
+      }
+
+      int arc = fsa.getFirstArc(node);
+      for (int skip = rnd.nextInt(arcs); skip > 0; skip--) {
+        arc = fsa.getNextArc(arc);
+      }
+
+      final byte label = fsa.getArcLabel(arc);
+      if (label == separator) {
+        form.flip();
+        return form.hasRemaining();
+      }
+      if (fsa.isArcTerminal(arc)) {
+        return false;
+      }
+
+      form.put(label);
+      node = fsa.getEndNode(arc);
+    }
+    return false;
+  }
+}
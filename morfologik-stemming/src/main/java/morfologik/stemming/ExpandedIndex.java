@@ -0,0 +1,374 @@
+package morfologik.stemming;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An in-heap index of decoded dictionary entries (stems and tags), keyed by the encoded inflected
+ * form, shared by all {@link DictionaryLookup}s of an {@linkplain Dictionary#expand(long) expanded
+ * dictionary}. Forms are added on their first lookup (or all at once, see {@link
+ * #preload(Executor)}) until the index reaches its memory limit; lookups of forms not in the index
+ * fall back to the automaton.
+ *
+ * <p>The index consists of a few primitive arrays: an open-addressing hash table of records, the
+ * records (offsets and lengths of the form, stems and tags) and the bytes they point to. Tags are
+ * stored once. Lookups are lock-free, additions are synchronized.
+ */
+public final class ExpandedIndex {
+  /** Estimated heap size of an entry in the map of unique tags (excluding the tag's bytes). */
+  private static final int TAG_ENTRY_BYTES = 96;
+
+  /** A record is a form's offset, length, the number of entries and entries' fields. */
+  private static final int RECORD_HEADER = 3;
+
+  /** An entry is the stem's offset, length and the tag's offset, length. */
+  private static final int ENTRY_SIZE = 4;
+
+  /** The maximum length of arrays. */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  /** The dictionary whose entries are indexed. */
+  private final Dictionary dictionary;
+
+  /** The memory limit. */
+  private final long maxRamBytes;
+
+  /** The current arrays, replaced with larger copies when they have to grow. */
+  private volatile Table table = new Table(new AtomicIntegerArray(16), new int[0], new byte[0]);
+
+  /** Offsets of unique tags in {@link Table#bytes}. Guarded by <code>this</code>. */
+  private final Map<ByteBuffer, Integer> tags = new HashMap<>();
+
+  /** Memory used by {@link #tags}. Guarded by <code>this</code>. */
+  private long tagsRamBytes;
+
+  /** The number of indexed forms. Guarded by <code>this</code>. */
+  private int size;
+
+  /** Used sizes of {@link Table#records} and {@link Table#bytes}. Guarded by <code>this</code>. */
+  private int recordsUsed;
+
+  private int bytesUsed;
+
+  /** Set once an addition would exceed {@link #maxRamBytes}. */
+  private volatile boolean full;
+
+  /** The arrays of the index, published together. */
+  static final class Table {
+    /** Record offsets + 1 (0 for empty slots), the length is a power of two. */
+    final AtomicIntegerArray slots;
+
+    final int[] records;
+    final byte[] bytes;
+
+    Table(AtomicIntegerArray slots, int[] records, byte[] bytes) {
+      this.slots = slots;
+      this.records = records;
+      this.bytes = bytes;
+    }
+
+    long ramBytesUsed() {
+      return 4L * slots.length() + 4L * records.length + bytes.length;
+    }
+
+    /**
+     * @return Returns the offset of the record of <code>form</code> in {@link #records} or <code>
+     *     -1</code> if the form is not indexed.
+     */
+    int find(byte[] form, int length) {
+      final int mask = slots.length() - 1;
+      for (int slot = hash(form, 0, length) & mask; ; slot = (slot + 1) & mask) {
+        final int value = slots.get(slot);
+        if (value == 0) {
+          return -1;
+        }
+
+        final int record = value - 1;
+        if (records[record + 1] == length
+            && Arrays.equals(bytes, records[record], records[record] + length, form, 0, length)) {
+          return record;
+        }
+      }
+    }
+
+    /** Returns the number of entries of a record. */
+    int entries(int record) {
+      return records[record + 2];
+    }
+
+    /** Copies the stem and tag of an entry to <code>wordData</code>. */
+    void copy(int record, int entry, WordData wordData) {
+      final int base = record + RECORD_HEADER + entry * ENTRY_SIZE;
+      wordData.stemBuffer = copy(wordData.stemBuffer, records[base], records[base + 1]);
+      wordData.tagBuffer = copy(wordData.tagBuffer, records[base + 2], records[base + 3]);
+    }
+
+    private ByteBuffer copy(ByteBuffer buffer, int offset, int length) {
+      buffer = BufferUtils.clearAndEnsureCapacity(buffer, length);
+      buffer.put(bytes, offset, length);
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  ExpandedIndex(Dictionary dictionary, long maxRamBytes) {
+    if (maxRamBytes < 0) {
+      throw new IllegalArgumentException("Memory limit must not be negative: " + maxRamBytes);
+    }
+    this.dictionary = dictionary;
+    this.maxRamBytes = maxRamBytes;
+  }
+
+  /** Returns the current arrays of the index. */
+  Table table() {
+    return table;
+  }
+
+  /**
+   * Adds a form with its entries (decoded stems and tags), unless already indexed or there is not
+   * enough memory left.
+   *
+   * @param form The encoded form (remaining bytes, starting at index 0 of its array).
+   * @param forms The entries of <code>form</code> (only stem and tag buffers are used).
+   * @param count The number of entries in <code>forms</code>.
+   */
+  synchronized void add(ByteBuffer form, WordData[] forms, int count) {
+    if (full || count == 0) {
+      return;
+    }
+
+    Table t = this.table;
+    final byte[] key = form.array();
+    final int keyLength = form.remaining();
+    if (t.find(key, keyLength) >= 0) {
+      return;
+    }
+
+    // Compute the space needed and grow the arrays (into a new table) if necessary.
+    int bytesNeeded = keyLength;
+    int newTags = 0;
+    for (int i = 0; i < count; i++) {
+      bytesNeeded += forms[i].stemBuffer.remaining();
+      if (!tags.containsKey(forms[i].tagBuffer)) {
+        bytesNeeded += forms[i].tagBuffer.remaining();
+        newTags += TAG_ENTRY_BYTES + forms[i].tagBuffer.remaining();
+      }
+    }
+    final int recordSize = RECORD_HEADER + count * ENTRY_SIZE;
+    if ((long) recordsUsed + recordSize > MAX_ARRAY_LENGTH
+        || (long) bytesUsed + bytesNeeded > MAX_ARRAY_LENGTH) {
+      full = true;
+      return;
+    }
+
+    final int slotsLength =
+        2 * (size + 1) > t.slots.length() ? t.slots.length() * 2 : t.slots.length();
+    final int recordsLength = grow(t.records.length, recordsUsed + recordSize);
+    final int bytesLength = grow(t.bytes.length, bytesUsed + bytesNeeded);
+    if (4L * slotsLength + 4L * recordsLength + bytesLength + tagsRamBytes + newTags
+        > maxRamBytes) {
+      full = true;
+      return;
+    }
+
+    if (slotsLength != t.slots.length()
+        || recordsLength != t.records.length
+        || bytesLength != t.bytes.length) {
+      final int[] records = Arrays.copyOf(t.records, recordsLength);
+      final byte[] bytes = Arrays.copyOf(t.bytes, bytesLength);
+      final AtomicIntegerArray slots = new AtomicIntegerArray(slotsLength);
+      for (int i = 0; i < t.slots.length(); i++) {
+        final int value = t.slots.get(i);
+        if (value != 0) {
+          final int record = value - 1;
+          insert(slots, hash(bytes, records[record], records[record + 1]), value);
+        }
+      }
+      t = new Table(slots, records, bytes);
+    }
+
+    // Append the record and its bytes (not visible to readers until the slot is set).
+    final int record = recordsUsed;
+    final int[] records = t.records;
+    records[record] = append(t, key, 0, keyLength);
+    records[record + 1] = keyLength;
+    records[record + 2] = count;
+    for (int i = 0; i < count; i++) {
+      final int base = record + RECORD_HEADER + i * ENTRY_SIZE;
+      final ByteBuffer stem = forms[i].stemBuffer;
+      records[base] = append(t, stem.array(), stem.position(), stem.remaining());
+      records[base + 1] = stem.remaining();
+
+      final ByteBuffer tag = forms[i].tagBuffer;
+      Integer tagOffset = tags.get(tag);
+      if (tagOffset == null) {
+        tagOffset = append(t, tag.array(), tag.position(), tag.remaining());
+        final ByteBuffer tagKey = ByteBuffer.wrap(BufferUtils.toArray(tag));
+        tags.put(tagKey, tagOffset);
+        tagsRamBytes += TAG_ENTRY_BYTES + tagKey.remaining();
+      }
+      records[base + 2] = tagOffset;
+      records[base + 3] = tag.remaining();
+    }
+    recordsUsed += recordSize;
+    size++;
+
+    insert(t.slots, hash(key, 0, keyLength), record + 1);
+    this.table = t;
+  }
+
+  private int append(Table t, byte[] source, int offset, int length) {
+    final int start = bytesUsed;
+    System.arraycopy(source, offset, t.bytes, start, length);
+    bytesUsed += length;
+    return start;
+  }
+
+  private static int grow(int length, int needed) {
+    return needed <= length
+        ? length
+        : (int) Math.min(MAX_ARRAY_LENGTH, Math.max(needed, length + (long) (length >> 1)));
+  }
+
+  private static void insert(AtomicIntegerArray slots, int hash, int value) {
+    final int mask = slots.length() - 1;
+    int slot = hash & mask;
+    while (slots.get(slot) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots.set(slot, value);
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 0x9747b28c;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ bytes[i]) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Adds all forms of the dictionary in a task run by <code>executor</code> (until the memory limit
+   * is reached). Lookups can run concurrently and use forms added so far.
+   *
+   * @param executor The executor to run the task with.
+   * @return Returns a future completed once all forms have been added.
+   */
+  public CompletableFuture<Void> preload(Executor executor) {
+    return CompletableFuture.runAsync(this::addAll, executor);
+  }
+
+  private void addAll() {
+    final Iterator<WordData> entries =
+        new DictionaryIterator(dictionary, dictionary.metadata.getDecoder(), true);
+    WordData[] forms = new WordData[16];
+    ByteBuffer form = ByteBuffer.allocate(0);
+    int count = 0;
+    while (entries.hasNext() && !full) {
+      final WordData entry = entries.next();
+      if (count > 0 && !form.equals(entry.wordBuffer)) {
+        add(form, forms, count);
+        count = 0;
+      }
+      if (count == 0) {
+        form = BufferUtils.clearAndEnsureCapacity(form, entry.wordBuffer.remaining());
+        form.put(entry.wordBuffer.duplicate()).flip();
+      }
+
+      // Copy the entry, the iterator reuses its buffers.
+      if (count == forms.length) {
+        forms = Arrays.copyOf(forms, count * 2);
+      }
+      if (forms[count] == null) {
+        forms[count] = new WordData(dictionary.metadata.getDecoder());
+      }
+      final WordData copy = forms[count++];
+      copy.stemBuffer = entry.getStemBytes(copy.stemBuffer);
+      copy.tagBuffer = entry.getTagBytes(copy.tagBuffer);
+    }
+    if (count > 0) {
+      add(form, forms, count);
+    }
+  }
+
+  /**
+   * @return Returns the approximate heap memory used by the index, in bytes.
+   */
+  public long ramBytesUsed() {
+    synchronized (this) {
+      return table.ramBytesUsed() + tagsRamBytes;
+    }
+  }
+
+  /**
+   * @return Returns the memory limit of the index, in bytes.
+   */
+  public long maxRamBytes() {
+    return maxRamBytes;
+  }
+
+  /**
+   * @return Returns the number of indexed forms.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return Returns <code>true</code> if a form was not added because of the memory limit.
+   */
+  public boolean isFull() {
+    return full;
+  }
+
+  /**
+   * Estimates the memory needed to index all forms of a dictionary (in a single pass over its
+   * entries), for choosing the limit of {@link Dictionary#expand(long)}.
+   *
+   * @param dictionary The dictionary.
+   * @return Returns the approximate heap memory needed for all forms, in bytes.
+   */
+  public static long estimateRamBytes(Dictionary dictionary) {
+    final Iterator<WordData> entries =
+        new DictionaryIterator(dictionary, dictionary.metadata.getDecoder(), true);
+    final Set<ByteBuffer> uniqueTags = new HashSet<>();
+    ByteBuffer form = null;
+    ByteBuffer stem = null;
+    ByteBuffer tag = null;
+    long forms = 0;
+    long records = 0;
+    long bytes = 0;
+    while (entries.hasNext()) {
+      final WordData entry = entries.next();
+      if (form == null || !form.equals(entry.wordBuffer)) {
+        form = ByteBuffer.wrap(BufferUtils.toArray(entry.wordBuffer));
+        forms++;
+        records += RECORD_HEADER;
+        bytes += form.remaining();
+      }
+      stem = entry.getStemBytes(stem);
+      tag = entry.getTagBytes(tag);
+      records += ENTRY_SIZE;
+      bytes += stem.remaining();
+      if (uniqueTags.add(tag)) {
+        bytes += tag.remaining();
+        tag = null;
+      }
+    }
+
+    long tagsRamBytes = 0;
+    for (ByteBuffer t : uniqueTags) {
+      tagsRamBytes += TAG_ENTRY_BYTES + t.remaining();
+    }
+    final long slots = Long.highestOneBit(Math.max(1, forms * 2 - 1)) * 2;
+    return 4L * slots + 4L * records + bytes + tagsRamBytes;
+  }
+}
@@ -31,7 +31,8 @@ public interface ISequenceEncoder {
    * @param reuse Reuses the provided {@link ByteBuffer} or allocates a new one if there is not
    *     enough remaining space.
    * @param source The source byte sequence.
-   * @param encoded The {@linkplain #encode previously encoded} byte sequence.
+   * @param encoded The {@linkplain #encode previously encoded} byte sequence (the remaining bytes
+   *     of an array-backed buffer, not necessarily starting at the array's index 0).
    * @return Returns the {@link ByteBuffer} with decoded <code>target</code>.
    */
   public ByteBuffer decode(ByteBuffer reuse, ByteBuffer source, ByteBuffer encoded);
@@ -0,0 +1,84 @@
+package morfologik.stemming;
+
+import java.util.Arrays;
+import morfologik.fsa.FSA;
+
+/**
+ * Annotates each node of a dictionary automaton with frequency data (see {@link
+ * DictionaryMetadata#isFrequencyIncluded()}: the last byte of the first sequence following a word's
+ * separator is a letter from the <code>A..Z</code> range) with the maximum frequency of words
+ * reachable from that node. The annotations are computed on demand, in a single depth-first pass
+ * over the nodes reachable from the first node asked for, and cached.
+ */
+public final class NodeFrequencies {
+  /** The number of frequency ranges, frequencies are in range 0..FREQ_RANGES-1. */
+  public static final int FREQ_RANGES = 'Z' - 'A' + 1;
+
+  /** The code of the lowest frequency (less frequent words). */
+  public static final int FIRST_RANGE_CODE = 'A';
+
+  /** Frequency + 1 for each node, 0 for nodes not visited yet. Indexed by node. */
+  private byte[] values = new byte[1024];
+
+  private final FSA fsa;
+  private final byte separator;
+
+  /**
+   * @param fsa The automaton with frequency data.
+   * @param separator The separator following words in the automaton.
+   */
+  public NodeFrequencies(FSA fsa, byte separator) {
+    this.fsa = fsa;
+    this.separator = separator;
+  }
+
+  /**
+   * @param node A node reachable in the automaton (excluding nodes after a separator).
+   * @return The maximum frequency of words reachable from <code>node</code>, in range
+   *     0..FREQ_RANGES-1.
+   */
+  public int maxFrequency(int node) {
+    return node < values.length && values[node] != 0 ? values[node] - 1 : compute(node);
+  }
+
+  private int compute(int node) {
+    int max = 0;
+    for (int arc = fsa.getFirstArc(node); arc != 0; arc = fsa.getNextArc(arc)) {
+      if (fsa.isArcTerminal(arc)) {
+        continue;
+      }
+
+      final int frequency;
+      if (fsa.getArcLabel(arc) == separator) {
+        frequency = fsa.isArcFinal(arc) ? 0 : frequencyAfterSeparator(fsa, fsa.getEndNode(arc));
+      } else {
+        frequency = maxFrequency(fsa.getEndNode(arc));
+      }
+      max = Math.max(max, Math.min(FREQ_RANGES - 1, frequency));
+    }
+
+    if (node >= values.length) {
+      values = Arrays.copyOf(values, Math.max(node + 1, values.length * 2));
+    }
+    values[node] = (byte) (max + 1);
+    return max;
+  }
+
+  /**
+   * @param fsa The automaton with frequency data.
+   * @param node The node following the separator arc of a word.
+   * @return The frequency stored in the first sequence following the separator (its last byte).
+   */
+  public static int frequencyAfterSeparator(FSA fsa, int node) {
+    for (int arc = fsa.getFirstArc(node); arc != 0; ) {
+      if (fsa.isArcFinal(arc)) {
+        return fsa.getArcLabel(arc) - FIRST_RANGE_CODE;
+      }
+      if (fsa.isArcTerminal(arc)) {
+        break;
+      }
+      arc = fsa.getFirstArc(fsa.getEndNode(arc));
+    }
+    return 0;
+  }
+}
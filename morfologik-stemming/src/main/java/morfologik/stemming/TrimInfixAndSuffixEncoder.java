@@ -125,13 +125,13 @@ public class TrimInfixAndSuffixEncoder implements ISequenceEncoder {
     final int len2 = encoded.remaining() - 3;
     reuse = BufferUtils.clearAndEnsureCapacity(reuse, infixIndex + len1 + len2);
 
-    assert encoded.hasArray() && encoded.position() == 0 && encoded.arrayOffset() == 0;
+    assert encoded.hasArray();
 
     assert source.hasArray() && source.position() == 0 && source.arrayOffset() == 0;
 
     reuse.put(source.array(), 0, infixIndex);
     reuse.put(source.array(), infixIndex + infixLength, len1);
-    reuse.put(encoded.array(), 3, len2);
+    reuse.put(encoded.array(), encoded.arrayOffset() + p + 3, len2);
     reuse.flip();
 
     return reuse;
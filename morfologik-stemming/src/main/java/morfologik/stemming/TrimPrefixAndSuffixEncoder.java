@@ -86,14 +86,14 @@ public class TrimPrefixAndSuffixEncoder implements ISequenceEncoder {
 
     assert source.hasArray() && source.position() == 0 && source.arrayOffset() == 0;
 
-    assert encoded.hasArray() && encoded.position() == 0 && encoded.arrayOffset() == 0;
+    assert encoded.hasArray();
 
     final int len1 = source.remaining() - (truncateSuffixBytes + truncatePrefixBytes);
     final int len2 = encoded.remaining() - 2;
     reuse = BufferUtils.clearAndEnsureCapacity(reuse, len1 + len2);
 
     reuse.put(source.array(), truncatePrefixBytes, len1);
-    reuse.put(encoded.array(), 2, len2);
+    reuse.put(encoded.array(), encoded.arrayOffset() + p + 2, len2);
     reuse.flip();
 
     return reuse;
@@ -71,9 +71,12 @@ public class TrimSuffixEncoder implements ISequenceEncoder {
 
     assert source.hasArray() && source.position() == 0 && source.arrayOffset() == 0;
 
-    assert encoded.hasArray() && encoded.position() == 0 && encoded.arrayOffset() == 0;
+    assert encoded.hasArray();
 
-    reuse.put(source.array(), 0, len1).put(encoded.array(), 1, len2).flip();
+    reuse
+        .put(source.array(), 0, len1)
+        .put(encoded.array(), encoded.arrayOffset() + encoded.position() + 1, len2)
+        .flip();
 
     return reuse;
   }
@@ -26,12 +26,21 @@ public final class WordData implements Cloneable {
       "Not suitable for use"
           + " in Java collections framework (volatile content). Refer to documentation.";
 
-  /** Character encoding in internal buffers. */
+  /**
+   * Character encoding in internal buffers, <code>null</code> if all fields are already decoded
+   * (see {@link #decodedCopy()}).
+   */
   private final CharsetDecoder decoder;
 
   /** Inflected word form data. */
   private CharSequence wordCharSequence;
 
+  /**
+   * Character sequence after converting {@link #wordBuffer} using {@link #decoder}, if {@link
+   * #wordCharSequence} is decoded on demand.
+   */
+  private CharBuffer wordCharBuffer;
+
   /** Character sequence after converting {@link #stemBuffer} using {@link #decoder}. */
   private CharBuffer stemCharSequence;
 
@@ -47,12 +56,19 @@ public final class WordData implements Cloneable {
   /** Byte buffer holding tag data. */
   ByteBuffer tagBuffer;
 
+  /** The encoder to decode {@link #stemBuffer} with on demand, <code>null</code> if decoded. */
+  private ISequenceEncoder stemEncoder;
+
+  /** The encoded stem to decode on demand (relative to {@link #wordBuffer}). */
+  private ByteBuffer encodedStem;
+
   /** Package scope constructor. */
   WordData(CharsetDecoder decoder) {
     this.decoder = decoder;
 
     stemBuffer = ByteBuffer.allocate(0);
     tagBuffer = ByteBuffer.allocate(0);
+    wordCharBuffer = CharBuffer.allocate(0);
     stemCharSequence = CharBuffer.allocate(0);
     tagCharSequence = CharBuffer.allocate(0);
   }
@@ -81,6 +97,7 @@ public final class WordData implements Cloneable {
    * @return Returns <code>target</code> or the new reallocated buffer.
    */
   public ByteBuffer getStemBytes(ByteBuffer target) {
+    decodeStem();
     target = BufferUtils.clearAndEnsureCapacity(target, stemBuffer.remaining());
     stemBuffer.mark();
     target.put(stemBuffer);
@@ -134,7 +151,9 @@ public final class WordData implements Cloneable {
    *     tag data exists.
    */
   public CharSequence getTag() {
-    tagCharSequence = BufferUtils.bytesToChars(decoder, tagBuffer, tagCharSequence);
+    if (decoder != null) {
+      tagCharSequence = BufferUtils.bytesToChars(decoder, tagBuffer, tagCharSequence);
+    }
     return tagCharSequence.remaining() == 0 ? null : tagCharSequence;
   }
 
@@ -143,7 +162,10 @@ public final class WordData implements Cloneable {
    *     stem data exists.
    */
   public CharSequence getStem() {
-    stemCharSequence = BufferUtils.bytesToChars(decoder, stemBuffer, stemCharSequence);
+    if (decoder != null) {
+      decodeStem();
+      stemCharSequence = BufferUtils.bytesToChars(decoder, stemBuffer, stemCharSequence);
+    }
     return stemCharSequence.remaining() == 0 ? null : stemCharSequence;
   }
 
@@ -152,9 +174,22 @@ public final class WordData implements Cloneable {
    *     DictionaryLookup#lookup(CharSequence)}.
    */
   public CharSequence getWord() {
+    if (wordCharSequence == null && wordBuffer != null) {
+      wordCharBuffer = BufferUtils.bytesToChars(decoder, wordBuffer, wordCharBuffer);
+      wordCharSequence = wordCharBuffer;
+    }
     return wordCharSequence;
   }
 
+  /** Decodes the stem, if it was not decoded yet. */
+  private void decodeStem() {
+    if (stemEncoder != null) {
+      stemBuffer = stemEncoder.decode(stemBuffer, wordBuffer, encodedStem);
+      stemEncoder = null;
+      encodedStem = null;
+    }
+  }
+
   /*
    *
    */
@@ -182,6 +217,10 @@ public final class WordData implements Cloneable {
    */
   @Override
   public WordData clone() {
+    if (decoder == null) {
+      return decodedCopy();
+    }
+
     final WordData clone = new WordData(this.decoder);
     clone.wordCharSequence = cloneCharSequence(wordCharSequence);
     clone.wordBuffer = getWordBytes(null);
@@ -190,9 +229,28 @@ public final class WordData implements Cloneable {
     return clone;
   }
 
-  /** Clone char sequences only if not immutable. */
+  /**
+   * Returns a copy of this object with the word, stem and tag decoded up front. The copy keeps no
+   * decoder, so it can be passed to (and read by) other threads.
+   */
+  WordData decodedCopy() {
+    decodeStem();
+    final WordData copy = new WordData((CharsetDecoder) null);
+    copy.wordBuffer = getWordBytes(null);
+    copy.stemBuffer = getStemBytes(null);
+    copy.tagBuffer = getTagBytes(null);
+    copy.wordCharSequence =
+        wordCharSequence != null
+            ? cloneCharSequence(wordCharSequence)
+            : BufferUtils.bytesToChars(decoder, copy.wordBuffer, null);
+    copy.stemCharSequence = BufferUtils.bytesToChars(decoder, copy.stemBuffer, null);
+    copy.tagCharSequence = BufferUtils.bytesToChars(decoder, copy.tagBuffer, null);
+    return copy;
+  }
+
+  /** Clone char sequences only if not immutable (or not decoded yet). */
   private CharSequence cloneCharSequence(CharSequence chs) {
-    if (chs instanceof String) return chs;
+    if (chs == null || chs instanceof String) return chs;
     return chs.toString();
   }
 
@@ -204,5 +262,35 @@ public final class WordData implements Cloneable {
 
     this.wordBuffer = wordBuffer;
     this.wordCharSequence = word;
+    this.stemEncoder = null;
+    this.encodedStem = null;
+  }
+
+  /**
+   * Points this object at the fields of a dictionary entry without copying or decoding them. The
+   * inflected word and the stem are decoded on first access; the buffers must not change until
+   * then.
+   *
+   * @param wordBuffer The inflected word (starting at index 0 of its array).
+   * @param stem The stem, encoded relative to the word if <code>stemEncoder</code> is not <code>
+   *     null</code>.
+   * @param stemEncoder The encoder to decode the stem with or <code>null</code> to keep it as is.
+   * @param tag The tag.
+   */
+  void updateLazily(
+      ByteBuffer wordBuffer, ByteBuffer stem, ISequenceEncoder stemEncoder, ByteBuffer tag) {
+    this.stemCharSequence.clear();
+    this.tagCharSequence.clear();
+
+    this.wordBuffer = wordBuffer;
+    this.wordCharSequence = null;
+    if (stemEncoder == null) {
+      this.stemBuffer = stem;
+      this.encodedStem = null;
+    } else {
+      this.encodedStem = stem;
+    }
+    this.stemEncoder = stemEncoder;
+    this.tagBuffer = tag;
   }
 }
@@ -0,0 +1,74 @@
+package morfologik.stemming;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.carrotsearch.randomizedtesting.jupiter.Randomized;
+import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Randomized
+public class DictionaryContainerTest extends RandomizedTest {
+  @Test
+  public void testRoundTrip(@TempDir Path tempDir) throws IOException {
+    Dictionary expected = Dictionary.read(getClass().getResource("test-infix.dict"));
+    byte[] data = container(true);
+
+    DictionaryContainer container = DictionaryContainer.read(ByteBuffer.wrap(data));
+    assertEquals(entries(expected), entries(container.dictionary));
+    assertEquals(entries(expected), entries(container.synthesis));
+    assertEquals(expected.metadata.getAttributes(), container.dictionary.metadata.getAttributes());
+    assertNull(DictionaryContainer.read(ByteBuffer.wrap(container(false))).synthesis);
+
+    // No metadata file is needed.
+    Path dict = tempDir.resolve("container.dict");
+    Files.write(dict, data);
+    assertFalse(Files.exists(DictionaryMetadata.getExpectedMetadataLocation(dict)));
+    assertEquals(entries(expected), entries(Dictionary.read(dict)));
+    assertEquals(entries(expected), entries(Dictionary.read(dict.toUri().toURL())));
+  }
+
+  @Test
+  public void testCorruptedData(Random rnd) throws IOException {
+    byte[] data = container(false);
+
+    byte[] flipped = data.clone();
+    flipped[4 + rnd.nextInt(data.length - 4)] ^= 1 << rnd.nextInt(8);
+    assertThrows(IOException.class, () -> DictionaryContainer.read(ByteBuffer.wrap(flipped)));
+
+    byte[] truncated = Arrays.copyOf(data, rnd.nextInt(data.length));
+    assertThrows(IOException.class, () -> DictionaryContainer.read(ByteBuffer.wrap(truncated)));
+  }
+
+  private byte[] container(boolean synthesis) throws IOException {
+    byte[] fsa;
+    DictionaryMetadata metadata;
+    try (InputStream dictInput = getClass().getResource("test-infix.dict").openStream();
+        InputStream infoInput = getClass().getResource("test-infix.info").openStream()) {
+      fsa = dictInput.readAllBytes();
+      metadata = DictionaryMetadata.read(infoInput);
+    }
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DictionaryContainer.write(baos, metadata, fsa, synthesis ? fsa : null);
+    return baos.toByteArray();
+  }
+
+  private static List<String> entries(Dictionary dictionary) {
+    List<String> entries = new ArrayList<>();
+    for (WordData wd : new DictionaryLookup(dictionary)) {
+      entries.add(wd.getWord() + " " + wd.getStem() + " " + wd.getTag());
+    }
+    return entries;
+  }
+}
@@ -8,7 +8,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.stream.Collectors;
 import morfologik.fsa.FSA;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -138,6 +142,134 @@ public class DictionaryLookupTest {
     }
   }
 
+  /* */
+  @Test
+  public void testStreams() throws IOException {
+    final URL url = this.getClass().getResource("test-infix.dict");
+    final DictionaryLookup s = new DictionaryLookup(Dictionary.read(url));
+
+    final List<String> expected = new ArrayList<String>();
+    for (WordData wd : s) {
+      expected.add(wd.toString());
+    }
+
+    assertEquals(expected, s.stream().map(WordData::toString).collect(Collectors.toList()));
+    assertEquals(expected, s.parallelStream().map(WordData::toString).collect(Collectors.toList()));
+
+    // Entries are copies, they do not change when traversal continues.
+    final List<WordData> entries = s.parallelStream().collect(Collectors.toList());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals(expected.get(i), entries.get(i).toString());
+    }
+
+    // Entries are decoded up front, so they can be read by many threads at once.
+    assertEquals(
+        expected, entries.parallelStream().map(WordData::toString).collect(Collectors.toList()));
+  }
+
+  /* */
+  @Test
+  public void testIteratorEntryValidUntilNext() throws IOException {
+    for (String name : new String[] {"test-infix.dict", "test-prefix.dict", "test-synth.dict"}) {
+      final DictionaryLookup s =
+          new DictionaryLookup(Dictionary.read(this.getClass().getResource(name)));
+
+      final List<String> expected = new ArrayList<String>();
+      for (WordData wd : s) {
+        expected.add(wd.toString());
+      }
+
+      // hasNext() advances the automaton's iterator before the entry is decoded.
+      final List<String> actual = new ArrayList<String>();
+      final Iterator<WordData> i = s.iterator();
+      while (i.hasNext()) {
+        final WordData wd = i.next();
+        i.hasNext();
+        wd.getStem();
+        wd.getWord();
+        actual.add(wd.toString());
+      }
+      assertEquals(expected, actual);
+    }
+  }
+
+  /* */
+  @Test
+  public void testCompletions() throws IOException {
+    final URL url = this.getClass().getResource("test-infix.dict");
+    final DictionaryLookup s = new DictionaryLookup(Dictionary.read(url));
+
+    for (String prefix : new String[] {"", "R", "Rzecz", "Rzeczypospolit", "Rzeczypospolita"}) {
+      final LinkedHashSet<String> expected = new LinkedHashSet<String>();
+      for (WordData wd : s) {
+        if (wd.getWord().toString().startsWith(prefix)) {
+          expected.add(wd.getWord().toString());
+        }
+      }
+
+      final List<String> forms = new ArrayList<String>(expected);
+      assertEquals(forms, s.completions(prefix, Integer.MAX_VALUE));
+      assertEquals(forms.subList(0, Math.min(3, forms.size())), s.completions(prefix, 3));
+    }
+
+    assertThat(s.completions("Rzeczypospolitą", 10)).isEmpty();
+    assertThat(s.completions("Rzecz+", 10)).isEmpty();
+    assertThat(s.completions("Rzecz", 0)).isEmpty();
+  }
+
+  /* */
+  @Test
+  public void testExpandedIndex() throws Exception {
+    for (String name : new String[] {"test-infix.dict", "test-prefix.dict", "test-synth.dict"}) {
+      final Dictionary dictionary = Dictionary.read(this.getClass().getResource(name));
+      final DictionaryLookup plain = new DictionaryLookup(dictionary);
+
+      final LinkedHashSet<String> words = new LinkedHashSet<String>();
+      for (WordData wd : plain) {
+        words.add(wd.getWord().toString());
+      }
+      words.add("nonexistent");
+
+      // Forms are added on first lookup, then looked up in the index.
+      final Dictionary expanded = dictionary.expand(Long.MAX_VALUE);
+      final DictionaryLookup lookup = new DictionaryLookup(expanded);
+      for (int round = 0; round < 2; round++) {
+        for (String word : words) {
+          assertEquals(toStrings(plain.lookup(word)), toStrings(lookup.lookup(word)));
+        }
+      }
+      final ExpandedIndex index = expanded.getExpandedIndex();
+      assertEquals(words.size() - 1, index.size());
+      assertFalse(index.isFull());
+      assertNull(dictionary.getExpandedIndex());
+
+      // Preloading adds all forms, the estimate is close to the memory used.
+      final Dictionary preloaded = dictionary.expand(Long.MAX_VALUE);
+      preloaded.getExpandedIndex().preload(Runnable::run).get();
+      assertEquals(words.size() - 1, preloaded.getExpandedIndex().size());
+      final long estimate = ExpandedIndex.estimateRamBytes(dictionary);
+      assertThat(preloaded.getExpandedIndex().ramBytesUsed()).isBetween(estimate / 2, estimate * 2);
+
+      // Over the memory limit lookups fall back to the automaton.
+      final Dictionary limited = dictionary.expand(estimate / 4);
+      limited.getExpandedIndex().preload(Runnable::run).get();
+      assertTrue(limited.getExpandedIndex().isFull());
+      assertThat(limited.getExpandedIndex().ramBytesUsed()).isLessThanOrEqualTo(estimate / 4);
+      final DictionaryLookup limitedLookup = new DictionaryLookup(limited);
+      for (String word : words) {
+        assertEquals(toStrings(plain.lookup(word)), toStrings(limitedLookup.lookup(word)));
+      }
+    }
+  }
+
+  private static List<String> toStrings(List<WordData> forms) {
+    final List<String> strings = new ArrayList<String>();
+    for (WordData wd : forms) {
+      strings.add(wd.toString());
+    }
+    return strings;
+  }
+
   private void assertEqualSequences(CharSequence s1, CharSequence s2) {
     assertEquals(s1.toString(), s2.toString());
   }
@@ -4,6 +4,7 @@ import com.carrotsearch.randomizedtesting.jupiter.Randomized;
 import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
 import com.carrotsearch.randomizedtesting.jupiter.generators.RandomPicks;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
@@ -56,4 +57,33 @@ public class DictionaryMetadataTest extends RandomizedTest {
     Assertions.assertThat(other.getEncoder().charset()).isEqualTo(encoding);
     Assertions.assertThat(other.getSequenceEncoderType()).isEqualTo(encoder);
   }
+
+  @Test
+  public void testWriteBinaryMetadata() throws IOException {
+    String info =
+        "fsa.dict.separator=+\n"
+            + "fsa.dict.encoding=UTF-8\n"
+            + "fsa.dict.encoder=SUFFIX\n"
+            + "fsa.dict.speller.ignore-numbers=false\n"
+            + "fsa.dict.input-conversion=\uFB01 fi, \uFB02 fl\n"
+            + "fsa.dict.speller.replacement-pairs=rz \u017C, rz sz, ^ch$ h, x ks_s\n"
+            + "fsa.dict.speller.equivalent-chars=\u0142 l, \u0105 a, \u0105 o\n";
+    DictionaryMetadata m =
+        DictionaryMetadata.read(new ByteArrayInputStream(info.getBytes(StandardCharsets.UTF_8)));
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    m.writeBinary(baos);
+    DictionaryMetadata other =
+        DictionaryMetadata.read(new ByteArrayInputStream(baos.toByteArray()));
+
+    Assertions.assertThat(other.getAttributes()).isEqualTo(m.getAttributes());
+    Assertions.assertThat(other.getSeparator()).isEqualTo((byte) '+');
+    Assertions.assertThat(other.getSequenceEncoderType()).isEqualTo(EncoderType.SUFFIX);
+    Assertions.assertThat(other.isIgnoringNumbers()).isFalse();
+    Assertions.assertThat(other.getInputConversionPairs()).isEqualTo(m.getInputConversionPairs());
+    Assertions.assertThat(other.getOutputConversionPairs()).isEqualTo(m.getOutputConversionPairs());
+    Assertions.assertThat(other.getReplacementPairs()).isEqualTo(m.getReplacementPairs());
+    Assertions.assertThat(other.getEquivalentChars()).isEqualTo(m.getEquivalentChars());
+    Assertions.assertThat(other.getReplacementPairs().get("x")).containsExactly("ks s");
+  }
 }
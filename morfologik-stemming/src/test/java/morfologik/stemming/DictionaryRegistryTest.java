@@ -0,0 +1,88 @@
+package morfologik.stemming;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.carrotsearch.randomizedtesting.jupiter.Randomized;
+import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Randomized
+public class DictionaryRegistryTest extends RandomizedTest {
+  @Test
+  public void testSharing(@TempDir Path tempDir) throws IOException {
+    Path dict = copy("test-infix", tempDir.resolve("a.dict"));
+    Path same = copy("test-infix", tempDir.resolve("b.dict"));
+
+    DictionaryRegistry registry = new DictionaryRegistry();
+    try (DictionaryRegistry.Handle h1 = registry.acquire(dict);
+        DictionaryRegistry.Handle h2 = registry.acquire(tempDir.resolve(".").resolve("a.dict"));
+        DictionaryRegistry.Handle h3 = registry.acquire(same)) {
+      assertSame(h1.get(), h2.get());
+      assertSame(h1.get(), h3.get());
+      assertEquals(2, registry.size());
+
+      h2.close();
+      h2.close();
+      assertEquals(2, registry.size());
+      assertThrows(IllegalStateException.class, () -> h2.get());
+    }
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void testReload(@TempDir Path tempDir) throws IOException {
+    Path dict = copy("test-infix", tempDir.resolve("a.dict"));
+
+    DictionaryRegistry registry = new DictionaryRegistry();
+    try (DictionaryRegistry.Handle handle = registry.acquire(dict)) {
+      Dictionary before = handle.get();
+      assertFalse(registry.reload(dict));
+
+      // Modified, but with the same content.
+      touch(dict);
+      assertFalse(registry.reload(dict));
+      assertSame(before, handle.get());
+
+      Path updated = copy("test-prefix", tempDir.resolve("updated.dict"));
+      Files.move(updated, dict, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(
+          DictionaryMetadata.getExpectedMetadataLocation(updated),
+          DictionaryMetadata.getExpectedMetadataLocation(dict),
+          StandardCopyOption.REPLACE_EXISTING);
+      touch(dict);
+      assertEquals(1, registry.reloadModified());
+      assertNotSame(before, handle.get());
+      assertEquals(0, registry.reloadModified());
+
+      assertEquals(EncoderType.PREFIX, handle.get().metadata.getSequenceEncoderType());
+
+      // The old dictionary remains usable.
+      assertEquals(EncoderType.INFIX, before.metadata.getSequenceEncoderType());
+      assertEquals(1, new DictionaryLookup(before).lookup("Rzeczyccy").size());
+    }
+
+    // Not acquired anymore.
+    assertFalse(registry.reload(dict));
+  }
+
+  private Path copy(String name, Path dict) throws IOException {
+    try (InputStream dictInput = getClass().getResource(name + ".dict").openStream();
+        InputStream infoInput = getClass().getResource(name + ".info").openStream()) {
+      Files.copy(dictInput, dict);
+      Files.copy(infoInput, DictionaryMetadata.getExpectedMetadataLocation(dict));
+    }
+    return dict;
+  }
+
+  private static void touch(Path dict) throws IOException {
+    FileTime time = Files.getLastModifiedTime(dict);
+    Files.setLastModifiedTime(dict, FileTime.fromMillis(time.toMillis() + 10000));
+  }
+}
@@ -6,6 +6,7 @@ import com.carrotsearch.randomizedtesting.jupiter.Randomized;
 import com.carrotsearch.randomizedtesting.jupiter.RandomizedTest;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
@@ -26,4 +27,26 @@ public class DictionaryTest extends RandomizedTest {
     assertNotNull(Dictionary.read(dict.toUri().toURL()));
     assertNotNull(Dictionary.read(dict));
   }
+
+  @Test
+  public void testReadBinaryMetadata(@TempDir Path tempDir) throws IOException {
+    Path dict = tempDir.resolve("test.dict");
+    Path info = DictionaryMetadata.getExpectedMetadataLocation(dict);
+    try (InputStream dictInput = this.getClass().getResource("test-infix.dict").openStream();
+        InputStream infoInput = this.getClass().getResource("test-infix.info").openStream()) {
+      Files.copy(dictInput, dict);
+      Files.copy(infoInput, info);
+    }
+
+    DictionaryMetadata metadata = Dictionary.read(dict).metadata;
+    try (OutputStream os =
+        Files.newOutputStream(DictionaryMetadata.getExpectedBinaryMetadataLocation(dict))) {
+      metadata.writeBinary(os);
+    }
+    Files.delete(info);
+
+    assertEquals(metadata.getAttributes(), Dictionary.read(dict).metadata.getAttributes());
+    assertEquals(
+        metadata.getAttributes(), Dictionary.read(dict.toUri().toURL()).metadata.getAttributes());
+  }
 }
@@ -61,5 +61,15 @@ public class SequenceEncodersTest extends RandomizedTest {
       System.out.println("dec: " + BufferUtils.toString(decoded, StandardCharsets.UTF_8));
       Assertions.fail("Mismatch.");
     }
+
+    // Decode from a part of a larger array, as dictionary iterators do.
+    int offset = rnd.nextInt(10);
+    byte[] padded = new byte[offset + encoded.remaining() + rnd.nextInt(10)];
+    encoded.duplicate().get(padded, offset, encoded.remaining());
+    ByteBuffer view = ByteBuffer.wrap(padded, offset, encoded.remaining());
+    if (rnd.nextBoolean()) {
+      view = view.slice();
+    }
+    Assertions.assertThat(coder.decode(ByteBuffer.allocate(0), source, view)).isEqualTo(target);
   }
 }
@@ -0,0 +1,106 @@
+package morfologik.tools;
+
+import com.beust.jcommander.Parameter;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import morfologik.fsa.FSA;
+import morfologik.fsa.builders.ArcFrequencies;
+import morfologik.fsa.builders.FSASerializer;
+
+final class ArcFrequencyInput {
+  private static final String ARG_ARC_FREQUENCIES = "--arc-frequencies";
+
+  @Parameter(
+      names = ArcFrequencyInput.ARG_ARC_FREQUENCIES,
+      description =
+          "Order arcs by how often lookups of words from this file traverse them. One word per"
+              + " \\n-delimited line, optionally followed by a tab and the word's frequency.",
+      validateValueWith = ValidateFileExists.class)
+  private Path input;
+
+  ArcFrequencyInput() {}
+
+  /**
+   * Counts arcs traversed by lookups of the words (each followed by <code>suffix</code>) and makes
+   * the serializer order arcs by these counts. Does nothing if no word frequency file was given.
+   */
+  void configure(FSASerializer serializer, SerializationFormat format, FSA fsa, byte... suffix)
+      throws IOException {
+    if (input == null) {
+      return;
+    }
+
+    if (format == SerializationFormat.CFSA2_SORTED) {
+      throw new ExitStatusException(
+          ExitStatus.ERROR_INVALID_ARGUMENTS,
+          "Arcs of the %s format are sorted by label, %s requires another format.",
+          format,
+          ARG_ARC_FREQUENCIES);
+    }
+
+    final ArcFrequencies frequencies = new ArcFrequencies(fsa);
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(input))) {
+      byte[] buffer = new byte[0];
+      int line = 0;
+      boolean eof = false;
+      while (!eof) {
+        int length = 0;
+        int b;
+        while ((b = is.read()) != -1 && b != '\n') {
+          if (length >= buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length + Math.max(10, buffer.length / 10));
+          }
+          buffer[length++] = (byte) b;
+        }
+        eof = (b == -1);
+        line++;
+
+        if (length > 0 && buffer[length - 1] == '\r') {
+          length--;
+        }
+
+        long count = 1;
+        for (int i = length; --i >= 0; ) {
+          if (buffer[i] == '\t') {
+            count = parseCount(buffer, i + 1, length, line);
+            length = i;
+            break;
+          }
+        }
+
+        if (length > 0) {
+          if (length + suffix.length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, length + suffix.length);
+          }
+          System.arraycopy(suffix, 0, buffer, length, suffix.length);
+          frequencies.add(buffer, 0, length + suffix.length, count);
+        }
+      }
+    }
+
+    serializer.withArcFrequencies(frequencies);
+  }
+
+  private long parseCount(byte[] buffer, int from, int to, int line) {
+    final String value = new String(buffer, from, to - from, StandardCharsets.US_ASCII).trim();
+    try {
+      long count = Long.parseLong(value);
+      if (count > 0) {
+        return count;
+      }
+    } catch (NumberFormatException e) {
+      // Fall through.
+    }
+    throw new ExitStatusException(
+        ExitStatus.ERROR_OTHER,
+        "Invalid word frequency in line %d of %s (a positive integer expected): %s",
+        line,
+        input,
+        value);
+  }
+}
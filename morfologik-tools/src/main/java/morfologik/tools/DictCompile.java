@@ -5,6 +5,7 @@ import com.beust.jcommander.Parameters;
 import com.beust.jcommander.ParametersDelegate;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -12,6 +13,7 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -20,8 +22,10 @@ import morfologik.fsa.builders.FSABuilder;
 import morfologik.fsa.builders.FSASerializer;
 import morfologik.stemming.BufferUtils;
 import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryContainer;
 import morfologik.stemming.DictionaryLookup;
 import morfologik.stemming.DictionaryMetadata;
+import morfologik.stemming.DictionarySynthesizer;
 import morfologik.stemming.ISequenceEncoder;
 
 /** Decompiles morphological dictionary automaton back to source state. */
@@ -51,8 +55,36 @@ public class DictCompile extends CliTool {
   @Parameter(names = ARG_OVERWRITE, description = "Overwrite the output file if it exists.")
   private boolean overwrite;
 
+  @Parameter(
+      names = {"--synthesis"},
+      description =
+          "Also compile a synthesis automaton (*."
+              + DictionarySynthesizer.SYNTHESIS_FILE_EXTENSION
+              + ") from lemma and tag to inflected forms.")
+  private boolean synthesis;
+
+  @Parameter(
+      names = {"--binary-metadata"},
+      description =
+          "Also write the metadata in a precompiled binary form (*."
+              + DictionaryMetadata.BINARY_METADATA_FILE_EXTENSION
+              + "), read instead of *."
+              + DictionaryMetadata.METADATA_FILE_EXTENSION
+              + " without parsing. Without this option, binary metadata left by an earlier"
+              + " compilation is removed.")
+  private boolean binaryMetadata;
+
+  @Parameter(
+      names = {"--container"},
+      description =
+          "Write a single-file dictionary (a container with the automaton, the metadata and the"
+              + " synthesis automaton, if any), read without a metadata file.")
+  private boolean container;
+
   @ParametersDelegate private final BinaryInput binaryInput;
 
+  @ParametersDelegate private final ArcFrequencyInput arcFrequencies = new ArcFrequencyInput();
+
   DictCompile() {
     binaryInput = new BinaryInput();
   }
@@ -70,6 +102,36 @@ public class DictCompile extends CliTool {
     this.binaryInput = new BinaryInput(acceptBom, acceptCr, ignoreEmpty);
   }
 
+  /**
+   * Also compile a synthesis automaton (<code>--synthesis</code>).
+   *
+   * @return Returns this object for call chaining.
+   */
+  public DictCompile withSynthesis() {
+    this.synthesis = true;
+    return this;
+  }
+
+  /**
+   * Also write the metadata in a precompiled binary form (<code>--binary-metadata</code>).
+   *
+   * @return Returns this object for call chaining.
+   */
+  public DictCompile withBinaryMetadata() {
+    this.binaryMetadata = true;
+    return this;
+  }
+
+  /**
+   * Write a single-file dictionary container (<code>--container</code>).
+   *
+   * @return Returns this object for call chaining.
+   */
+  public DictCompile withContainer() {
+    this.container = true;
+    return this;
+  }
+
   @Override
   public ExitStatus call() throws Exception {
     final Path metadataPath = DictionaryMetadata.getExpectedMetadataLocation(input);
@@ -89,12 +151,24 @@ public class DictCompile extends CliTool {
                 .toString()
                 .replaceAll("\\." + DictionaryMetadata.METADATA_FILE_EXTENSION + "$", ".dict"));
 
-    if (!overwrite && Files.exists(output)) {
-      throw new ExitStatusException(
-          ExitStatus.ERROR_CONFIRMATION_REQUIRED,
-          "Output dictionary file already exists: %s, use %s to override.",
-          output,
-          ARG_OVERWRITE);
+    final Path synthesisOutput = DictionarySynthesizer.getExpectedSynthesisLocation(output);
+    final Path binaryMetadataOutput = DictionaryMetadata.getExpectedBinaryMetadataLocation(output);
+    final List<Path> outputs = new ArrayList<>(List.of(output));
+    if (synthesis && !container) {
+      outputs.add(synthesisOutput);
+    }
+    if (!container && (binaryMetadata || Files.exists(binaryMetadataOutput))) {
+      // Binary metadata is either rewritten or removed (it'd take precedence over new metadata).
+      outputs.add(binaryMetadataOutput);
+    }
+    for (Path path : outputs) {
+      if (!overwrite && Files.exists(path)) {
+        throw new ExitStatusException(
+            ExitStatus.ERROR_CONFIRMATION_REQUIRED,
+            "Output dictionary file already exists: %s, use %s to override.",
+            path,
+            ARG_OVERWRITE);
+      }
     }
 
     final DictionaryMetadata metadata;
@@ -149,6 +223,8 @@ public class DictCompile extends CliTool {
     ByteBuffer target = ByteBuffer.allocate(0);
     ByteBuffer tag = ByteBuffer.allocate(0);
     ByteBuffer assembled = ByteBuffer.allocate(0);
+    ByteBuffer synthesisEncoded = ByteBuffer.allocate(0);
+    final List<byte[]> synthesisSequences = new ArrayList<>();
     for (int i = 0, max = sequences.size(); i < max; i++) {
       byte[] row = sequences.get(i);
       int sep1 = indexOf(separator, row, 0);
@@ -174,6 +250,9 @@ public class DictCompile extends CliTool {
       tag.flip();
 
       encoded = sequenceEncoder.encode(encoded, target, source);
+      if (synthesis) {
+        synthesisEncoded = sequenceEncoder.encode(synthesisEncoded, source, target);
+      }
 
       assembled =
           BufferUtils.clearAndEnsureCapacity(
@@ -189,22 +268,85 @@ public class DictCompile extends CliTool {
       assembled.flip();
 
       sequences.set(i, BufferUtils.toArray(assembled));
+
+      if (synthesis) {
+        // Synthesis looks up the lemma and the tag (always separated, even if empty).
+        tag.rewind();
+        assembled =
+            BufferUtils.clearAndEnsureCapacity(
+                assembled,
+                source.remaining() + 1 + tag.remaining() + 1 + synthesisEncoded.remaining());
+        assembled.put(source);
+        assembled.put(separator);
+        assembled.put(tag);
+        assembled.put(separator);
+        assembled.put(synthesisEncoded);
+        assembled.flip();
+        synthesisSequences.add(BufferUtils.toArray(assembled));
+      }
     }
 
     Collections.sort(sequences, FSABuilder.LEXICAL_ORDERING);
     FSA fsa = FSABuilder.build(sequences);
 
     FSASerializer serializer = format.getSerializer();
-    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
-      serializer.serialize(fsa, os);
+    // Lookups traverse the inflected form and the separator that follows it.
+    arcFrequencies.configure(serializer, format, fsa, separator);
+
+    FSA synthesisFsa = null;
+    if (synthesis) {
+      Collections.sort(synthesisSequences, FSABuilder.LEXICAL_ORDERING);
+      synthesisFsa = FSABuilder.build(synthesisSequences);
+    }
+
+    if (container) {
+      final byte[] synthesisData =
+          synthesisFsa == null
+              ? null
+              : format
+                  .getSerializer()
+                  .serialize(synthesisFsa, new ByteArrayOutputStream())
+                  .toByteArray();
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
+        DictionaryContainer.write(
+            os,
+            metadata,
+            serializer.serialize(fsa, new ByteArrayOutputStream()).toByteArray(),
+            synthesisData);
+      }
+    } else {
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
+        serializer.serialize(fsa, os);
+      }
+
+      if (synthesisFsa != null) {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(synthesisOutput))) {
+          format.getSerializer().serialize(synthesisFsa, os);
+        }
+      }
+
+      if (binaryMetadata) {
+        try (OutputStream os = Files.newOutputStream(binaryMetadataOutput)) {
+          metadata.writeBinary(new BufferedOutputStream(os));
+        }
+      } else {
+        Files.deleteIfExists(binaryMetadataOutput);
+      }
     }
 
     // If validating, try to scan the input
     if (validate) {
-      DictionaryLookup dictionaryLookup = new DictionaryLookup(new Dictionary(fsa, metadata));
-      for (Iterator<?> i = dictionaryLookup.iterator(); i.hasNext(); i.next()) {
-        // Do nothing, just scan and make sure no exceptions are thrown.
+      if (container) {
+        // Make sure the container can be read back.
+        DictionaryContainer.read(output);
       }
+
+      DictionaryLookup dictionaryLookup = new DictionaryLookup(new Dictionary(fsa, metadata));
+      dictionaryLookup.parallelStream()
+          .forEach(
+              wd -> {
+                // Do nothing, just scan and make sure no exceptions are thrown.
+              });
     }
 
     return ExitStatus.SUCCESS;
@@ -0,0 +1,97 @@
+package morfologik.tools;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import morfologik.fsa.FSAPattern;
+import morfologik.fsa.PatternMatchIterator;
+import morfologik.stemming.BufferUtils;
+import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryLookup;
+import morfologik.stemming.WordData;
+
+/** Finds inflected forms of a morphological dictionary matching a pattern. */
+@Parameters(
+    commandNames = "dict_query",
+    commandDescription =
+        "Finds dictionary forms matching a wildcard pattern (or a regular expression).")
+public class DictQuery extends CliTool {
+  @Parameter(
+      names = {"-d", "--dictionary"},
+      description = "The dictionary (*.dict and a sibling *.info metadata) to query.",
+      required = true,
+      validateValueWith = ValidateFileExists.class)
+  private Path dictionary;
+
+  @Parameter(
+      names = {"-p", "--pattern"},
+      description =
+          "The pattern to match inflected forms against: ? (any character), * (any sequence),"
+              + " [a-z] and [^a-z] (character classes), \\x (literal x).",
+      required = true)
+  private String pattern;
+
+  @Parameter(
+      names = {"--regex"},
+      description =
+          "Interpret the pattern as a regular expression (with ., groups, |, *, +, ? and"
+              + " {m,n} repetition).")
+  private boolean regex;
+
+  @Parameter(
+      names = {"--limit"},
+      description = "The maximum number of matching forms to print.")
+  private int limit = 1000;
+
+  @Parameter(
+      names = {"--skip-tags"},
+      required = false,
+      description = "Skip tags in the output, only print base forms.")
+  private boolean skipTags = false;
+
+  DictQuery() {}
+
+  public DictQuery(Path dictionary, String pattern, boolean regex, int limit) {
+    this.dictionary = checkNotNull(dictionary);
+    this.pattern = checkNotNull(pattern);
+    this.regex = regex;
+    this.limit = limit;
+  }
+
+  @Override
+  public ExitStatus call() throws Exception {
+    final Dictionary dict = Dictionary.read(this.dictionary);
+    final Charset charset = dict.metadata.getDecoder().charset();
+
+    final FSAPattern compiled;
+    try {
+      compiled = regex ? FSAPattern.regex(pattern, charset) : FSAPattern.wildcard(pattern, charset);
+    } catch (IllegalArgumentException e) {
+      throw new ExitStatusException(ExitStatus.ERROR_INVALID_ARGUMENTS, e.getMessage());
+    }
+
+    final DictionaryLookup lookup = new DictionaryLookup(dict);
+    final PatternMatchIterator matches =
+        new PatternMatchIterator(dict.fsa, compiled, dict.metadata.getSeparator(), limit);
+    while (matches.hasNext()) {
+      final ByteBuffer match = matches.next();
+      final String form = BufferUtils.toString(match, charset);
+
+      List<WordData> wordData = lookup.lookup(form);
+      for (WordData wd : wordData) {
+        CharSequence stem = wd.getStem();
+        CharSequence tag = wd.getTag();
+        System.out.println(form + " => " + ((skipTags || tag == null) ? stem : stem + " " + tag));
+      }
+    }
+
+    return ExitStatus.SUCCESS;
+  }
+
+  public static void main(String[] args) {
+    main(args, new DictQuery());
+  }
+}
@@ -39,6 +39,8 @@ public class FSACompile extends CliTool {
 
   @ParametersDelegate private final BinaryInput binaryInput;
 
+  @ParametersDelegate private final ArcFrequencyInput arcFrequencies = new ArcFrequencyInput();
+
   FSACompile() {
     binaryInput = new BinaryInput();
   }
@@ -52,6 +54,7 @@ public class FSACompile extends CliTool {
       boolean ignoreEmpty) {
     this.input = checkNotNull(input);
     this.output = checkNotNull(output);
+    this.format = checkNotNull(format);
     this.binaryInput = new BinaryInput(acceptBom, acceptCr, ignoreEmpty);
   }
 
@@ -63,6 +66,7 @@ public class FSACompile extends CliTool {
     FSA fsa = FSABuilder.build(sequences);
 
     FSASerializer serializer = format.getSerializer();
+    arcFrequencies.configure(serializer, format, fsa);
     try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
       serializer.serialize(fsa, os);
     }
@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.util.Locale;
 import morfologik.fsa.CFSA;
 import morfologik.fsa.CFSA2;
+import morfologik.fsa.DoubleArrayFSA;
 import morfologik.fsa.FSA;
 import morfologik.fsa.FSA5;
 
@@ -73,6 +74,14 @@ public class FSAInfo extends CliTool {
       }
     }
 
+    if (fsa instanceof DoubleArrayFSA) {
+      DoubleArrayFSA da = (DoubleArrayFSA) fsa;
+      int slots = da.getSlotCount();
+      int used = da.getUsedSlotCount();
+      printf("%-25s : %,d", "Double-array slots", slots);
+      printf("%-25s : %,d (%.1f%%)", "Double-array used slots", used, 100d * used / slots);
+    }
+
     return ExitStatus.SUCCESS;
   }
 
@@ -15,6 +15,7 @@ public final class Launcher {
         new FSAInfo(),
         new DictCompile(),
         new DictDecompile(),
-        new DictApply());
+        new DictApply(),
+        new DictQuery());
   }
 }
@@ -1,6 +1,7 @@
 package morfologik.tools;
 
 import morfologik.fsa.builders.CFSA2Serializer;
+import morfologik.fsa.builders.DoubleArraySerializer;
 import morfologik.fsa.builders.FSA5Serializer;
 import morfologik.fsa.builders.FSASerializer;
 
@@ -18,6 +19,20 @@ public enum SerializationFormat {
     CFSA2Serializer getSerializer() {
       return new CFSA2Serializer();
     }
+  },
+
+  CFSA2_SORTED {
+    @Override
+    CFSA2Serializer getSerializer() {
+      return new CFSA2Serializer().withSortedArcs();
+    }
+  },
+
+  DOUBLE_ARRAY {
+    @Override
+    DoubleArraySerializer getSerializer() {
+      return new DoubleArraySerializer();
+    }
   };
 
   abstract FSASerializer getSerializer();
@@ -9,17 +9,24 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 import morfologik.stemming.Dictionary;
+import morfologik.stemming.DictionaryContainer;
 import morfologik.stemming.DictionaryLookup;
 import morfologik.stemming.DictionaryMetadata;
+import morfologik.stemming.DictionarySynthesizer;
 import morfologik.stemming.EncoderType;
 import morfologik.stemming.WordData;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 @Randomized
@@ -149,4 +156,140 @@ public class DictCompileTest extends RandomizedTest {
     List<String> allLines = Files.readAllLines(input, StandardCharsets.UTF_8);
     Assertions.assertThat(allLines).containsOnlyElementsOf(sequences);
   }
+
+  @RepeatedTest(50)
+  public void testSynthesis(@TempDir Path tempDir, Random rnd) throws Exception {
+    final Path input = tempDir.resolve("dictionary.input");
+    final Path metadata = DictionaryMetadata.getExpectedMetadataLocation(input);
+
+    try (Writer writer = Files.newBufferedWriter(metadata, StandardCharsets.UTF_8)) {
+      DictionaryMetadata.builder()
+          .separator('|')
+          .encoder(RandomPicks.randomFrom(rnd, EncoderType.values()))
+          .encoding(StandardCharsets.UTF_8)
+          .build()
+          .write(writer);
+    }
+
+    final boolean useTags = rnd.nextBoolean();
+    Map<String, Set<String>> expected = new HashMap<>();
+    try (Writer writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+      for (int seqs = RandomNumbers.randomIntInRange(rnd, 1, 100); --seqs >= 0; ) {
+        String base = RandomStrings.randomAsciiLettersOfLengthBetween(rnd, 1, 10);
+        String inflected =
+            rnd.nextBoolean()
+                ? base + RandomStrings.randomAsciiLettersOfLengthBetween(rnd, 0, 3)
+                : RandomStrings.randomAsciiLettersOfLengthBetween(rnd, 0, 10);
+        String tag = useTags ? RandomStrings.randomAsciiLettersOfLengthBetween(rnd, 0, 3) : "";
+
+        writer.write(base + "|" + inflected + (useTags ? "|" + tag : "") + "\n");
+        expected.computeIfAbsent(base, k -> new TreeSet<>()).add(inflected + "|" + tag);
+      }
+    }
+
+    Assertions.assertThat(
+            new DictCompile(input, false, true, false, false, false).withSynthesis().call())
+        .isEqualTo(ExitStatus.SUCCESS);
+
+    Path synth =
+        DictionarySynthesizer.getExpectedSynthesisLocation(input.resolveSibling("dictionary.dict"));
+    Assertions.assertThat(synth).isRegularFile();
+
+    DictionarySynthesizer synthesizer = new DictionarySynthesizer(Dictionary.read(synth));
+    for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+      Set<String> forms = new TreeSet<>();
+      for (WordData wd : synthesizer.synthesize(e.getKey())) {
+        Assertions.assertThat(wd.getStem().toString()).isEqualTo(e.getKey());
+        forms.add(wd.getWord() + "|" + (wd.getTag() == null ? "" : wd.getTag()));
+      }
+      Assertions.assertThat(forms).isEqualTo(e.getValue());
+
+      for (String form : e.getValue()) {
+        String tag = form.substring(form.indexOf('|') + 1);
+        Set<String> tagged = new TreeSet<>();
+        for (WordData wd : synthesizer.synthesize(e.getKey(), tag)) {
+          tagged.add(wd.getWord() + "|" + tag);
+        }
+        Assertions.assertThat(tagged).contains(form);
+        Assertions.assertThat(e.getValue()).containsAll(tagged);
+      }
+    }
+
+    Assertions.assertThat(synthesizer.synthesize("")).isEmpty();
+    Assertions.assertThat(synthesizer.synthesize("a|b", "")).isEmpty();
+  }
+
+  @Test
+  public void testBinaryMetadata(@TempDir Path tempDir) throws Exception {
+    final Path input = tempDir.resolve("dictionary.input");
+    final Path metadata = DictionaryMetadata.getExpectedMetadataLocation(input);
+    Files.write(
+        metadata,
+        Arrays.asList(
+            "fsa.dict.separator=|",
+            "fsa.dict.encoding=UTF-8",
+            "fsa.dict.encoder=SUFFIX",
+            "fsa.dict.speller.replacement-pairs=rz ż, ch h"),
+        StandardCharsets.UTF_8);
+    Files.write(input, Arrays.asList("dom|domy|pl", "morze|morza|sg"), StandardCharsets.UTF_8);
+
+    Assertions.assertThat(
+            new DictCompile(input, false, true, false, false, false).withBinaryMetadata().call())
+        .isEqualTo(ExitStatus.SUCCESS);
+
+    Path dict = input.resolveSibling("dictionary.dict");
+    Assertions.assertThat(DictionaryMetadata.getExpectedBinaryMetadataLocation(dict))
+        .isRegularFile();
+
+    Dictionary dictionary = Dictionary.read(dict);
+    Assertions.assertThat(dictionary.metadata.getReplacementPairs().keySet())
+        .containsExactly("rz", "ch");
+    Assertions.assertThat(
+            new DictionaryLookup(dictionary).lookup("morza").get(0).getStem().toString())
+        .isEqualTo("morze");
+
+    // Recompiling without binary metadata removes the stale file.
+    Files.write(
+        metadata,
+        Arrays.asList("fsa.dict.separator=|", "fsa.dict.encoding=UTF-8", "fsa.dict.encoder=SUFFIX"),
+        StandardCharsets.UTF_8);
+    Assertions.assertThat(new DictCompile(input, true, true, false, false, false).call())
+        .isEqualTo(ExitStatus.SUCCESS);
+    Assertions.assertThat(DictionaryMetadata.getExpectedBinaryMetadataLocation(dict))
+        .doesNotExist();
+    Assertions.assertThat(Dictionary.read(dict).metadata.getReplacementPairs()).isEmpty();
+  }
+
+  @Test
+  public void testContainer(@TempDir Path tempDir) throws Exception {
+    final Path input = tempDir.resolve("dictionary.input");
+    final Path metadata = DictionaryMetadata.getExpectedMetadataLocation(input);
+    Files.write(
+        metadata,
+        Arrays.asList("fsa.dict.separator=|", "fsa.dict.encoding=UTF-8", "fsa.dict.encoder=SUFFIX"),
+        StandardCharsets.UTF_8);
+    Files.write(input, Arrays.asList("dom|domy|pl", "morze|morza|sg"), StandardCharsets.UTF_8);
+
+    Assertions.assertThat(
+            new DictCompile(input, false, true, false, false, false)
+                .withSynthesis()
+                .withContainer()
+                .call())
+        .isEqualTo(ExitStatus.SUCCESS);
+
+    // A single file, with no separate synthesis automaton.
+    Path dict = input.resolveSibling("dictionary.dict");
+    Files.delete(metadata);
+    Assertions.assertThat(Files.exists(DictionarySynthesizer.getExpectedSynthesisLocation(dict)))
+        .isFalse();
+
+    Assertions.assertThat(
+            new DictionaryLookup(Dictionary.read(dict)).lookup("morza").get(0).getStem().toString())
+        .isEqualTo("morze");
+
+    DictionarySynthesizer synthesizer =
+        new DictionarySynthesizer(DictionaryContainer.read(dict).synthesis);
+    Assertions.assertThat(synthesizer.synthesize("dom", "pl").get(0).getWord().toString())
+        .isEqualTo("domy");
+  }
 }
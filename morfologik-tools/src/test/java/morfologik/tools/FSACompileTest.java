@@ -152,6 +152,34 @@ public class FSACompileTest extends RandomizedTest {
     Assertions.assertThat(out).contains("UTF-8 BOM");
   }
 
+  @Test
+  public void testArcFrequencies(@TempDir Path tempDir) throws Exception {
+    final Path input = Files.createTempFile(tempDir, "input", "in");
+    final Path frequencies = Files.createTempFile(tempDir, "input", "freq");
+    final Path output = Files.createTempFile(tempDir, "input", "out");
+
+    Files.write(input, "abc\nbcd\ncde\n".getBytes(StandardCharsets.US_ASCII));
+    Files.write(
+        frequencies, "cde\t10\nbcd\t5\nbcd\nxyz\t100\n".getBytes(StandardCharsets.US_ASCII));
+
+    FSACompile.main(
+        new String[] {
+          "--exit", "false",
+          "--input", input.toAbsolutePath().toString(),
+          "--output", output.toAbsolutePath().toString(),
+          "--arc-frequencies", frequencies.toAbsolutePath().toString()
+        });
+
+    try (InputStream is = Files.newInputStream(output)) {
+      FSA fsa = FSA.read(is);
+      StringBuilder labels = new StringBuilder();
+      for (int arc = fsa.getFirstArc(fsa.getRootNode()); arc != 0; arc = fsa.getNextArc(arc)) {
+        labels.append((char) fsa.getArcLabel(arc));
+      }
+      Assertions.assertThat(labels.toString()).isEqualTo("cba");
+    }
+  }
+
   private String sysouts(Callable<Void> callable) throws Exception {
     PrintStream sout = System.out;
     PrintStream serr = System.err;